@@ -57,6 +57,9 @@ bean{ name="TestType", type=2, initsize=256, maxsize=65536, comment="测试生
 	{ id=18, name="v18", type="linkedmap<binary,TestBean>", comment="有序映射容器(LinkedHashMap)" },
 	{ id=19, name="v19", type="TestBean",                   comment="嵌入其它bean" },
 	{ id= 0, name="v20", type="java.lang.String",           comment="非序列化字段" },
+	{ id=21, name="v21", type="vector<int>",                primitive=true, comment="基础类型数组容器(IntArrayList)" },
+	{ id=22, name="v22", type="set<long>",                  primitive=true, comment="基础类型无序集合容器(LongHashSet)" },
+	{ id=23, name="v23", type="map<long,TestBean>",         primitive=true, comment="基础类型key的无序映射容器(LongHashMap)" },
 	handlers="TestServer,TestClient",
 attach_java=
 [[
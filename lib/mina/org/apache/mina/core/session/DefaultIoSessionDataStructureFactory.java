@@ -94,5 +94,18 @@ public class DefaultIoSessionDataStructureFactory implements IoSessionDataStruct
 
 	private static final class DefaultWriteRequestQueue extends ConcurrentLinkedQueue<WriteRequest> implements WriteRequestQueue {
 		private static final long serialVersionUID = 1L;
+
+		@Override
+		public int peek(WriteRequest[] reqs, int pos, int count) {
+			int n = 0;
+			if (count > 0) {
+				for (WriteRequest req : this) {
+					reqs[pos + n] = req;
+					if (++n >= count)
+						break;
+				}
+			}
+			return n;
+		}
 	}
 }
@@ -39,6 +39,19 @@ public interface WriteRequestQueue {
 	 */
 	WriteRequest poll();
 
+	/**
+	 * Copies the first requests in the queue without removing them.
+	 * Only the single consumer of the queue can rely on them staying at the head.
+	 *
+	 * @param reqs The array to receive the requests
+	 * @param pos The start position in the array
+	 * @param count The maximum number of requests to copy
+	 * @return The number of requests copied
+	 */
+	default int peek(WriteRequest[] reqs, int pos, int count) {
+		return 0;
+	}
+
 	/**
 	 * @return the number of objects currently stored in the queue.
 	 */
@@ -33,6 +33,9 @@ public abstract class AbstractSocketSessionConfig {
 	/** The maximum size of the buffer used to read incoming data */
 	private int maxReadBufferSize = 65536;
 
+	/** The maximum number of buffers gathered into one write call */
+	private int maxGatherWriteCount = 16;
+
 	/**
 	 * @return the size of the read buffer that I/O processor allocates per each read.
 	 * It's unusual to adjust this property because it's often adjusted automatically by the I/O processor.
@@ -97,6 +100,26 @@ public abstract class AbstractSocketSessionConfig {
 		this.maxReadBufferSize = maxReadBufferSize;
 	}
 
+	/**
+	 * @return the maximum number of queued buffers that I/O processor gathers into one write call.
+	 * The total size is also limited by the written bytes limit of each flush.
+	 */
+	public int getMaxGatherWriteCount() {
+		return maxGatherWriteCount;
+	}
+
+	/**
+	 * Sets the maximum number of queued buffers that I/O processor gathers into one write call.
+	 * 1 means writing the buffers one by one.
+	 *
+	 * @param maxGatherWriteCount The maximum number of buffers per write call
+	 */
+	public void setMaxGatherWriteCount(int maxGatherWriteCount) {
+		if (maxGatherWriteCount <= 0)
+			throw new IllegalArgumentException("maxGatherWriteCount: " + maxGatherWriteCount + " (expected: 1+)");
+		this.maxGatherWriteCount = maxGatherWriteCount;
+	}
+
 	/**
 	 * Sets all configuration properties retrieved from the specified <tt>config</tt>.
 	 *
@@ -109,6 +132,7 @@ public abstract class AbstractSocketSessionConfig {
 		setReadBufferSize(config.getReadBufferSize());
 		setMinReadBufferSize(config.getMinReadBufferSize());
 		setMaxReadBufferSize(config.getMaxReadBufferSize());
+		setMaxGatherWriteCount(config.getMaxGatherWriteCount());
 
 		// Minimize unnecessary system calls by checking all 'propertyChanged' properties.
 		if (config.isReceiveBufferSizeChanged())
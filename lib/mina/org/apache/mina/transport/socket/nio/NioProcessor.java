@@ -19,15 +19,19 @@
 package org.apache.mina.transport.socket.nio;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.file.FileRegion;
@@ -43,6 +47,16 @@ import org.apache.mina.util.ExceptionMonitor;
  * This class is in charge of active polling a set of {@link IoSession} and trigger events when some I/O operation is possible.
  */
 public final class NioProcessor implements IoProcessor<NioSession> {
+	private static final LongAdder writeCallCount = new LongAdder();
+	private static final LongAdder writeBufferCount = new LongAdder();
+	private static final ThreadLocal<FlushBatch> flushBatch = ThreadLocal.withInitial(FlushBatch::new);
+
+	/** The processors to wake up at the end of a flush batch of current thread */
+	private static final class FlushBatch {
+		final ArrayList<NioProcessor> processors = new ArrayList<>();
+		boolean active;
+	}
+
 	private final Executor executor;
 	private Selector selector;
 	private final AtomicReference<Processor> processorRef = new AtomicReference<>();
@@ -64,6 +78,54 @@ public final class NioProcessor implements IoProcessor<NioSession> {
 		selector = Selector.open();
 	}
 
+	/**
+	 * @return the number of buffer write calls of all processors
+	 */
+	public static long getWriteCallCount() {
+		return writeCallCount.sum();
+	}
+
+	/**
+	 * @return the number of buffers written by all processors
+	 */
+	public static long getWriteBufferCount() {
+		return writeBufferCount.sum();
+	}
+
+	/**
+	 * @return the average number of buffers per write call
+	 */
+	public static double getAverageBuffersPerWrite() {
+		long calls = writeCallCount.sum();
+		return calls > 0 ? (double)writeBufferCount.sum() / calls : 0;
+	}
+
+	/**
+	 * Begins a flush batch in current thread.
+	 * The flushes scheduled in the batch wake up each processor only once, when {@link #endBatchFlush()} is called.
+	 *
+	 * @return false if current thread is already in a batch, and {@link #endBatchFlush()} should not be called for this one
+	 */
+	public static boolean beginBatchFlush() {
+		FlushBatch batch = flushBatch.get();
+		if (batch.active)
+			return false;
+		batch.active = true;
+		return true;
+	}
+
+	/**
+	 * Ends the flush batch of current thread, and wakes up the processors which have sessions to flush.
+	 */
+	public static void endBatchFlush() {
+		FlushBatch batch = flushBatch.get();
+		batch.active = false;
+		ArrayList<NioProcessor> processors = batch.processors;
+		for (int i = 0, n = processors.size(); i < n; i++)
+			processors.get(i).wakeup();
+		processors.clear();
+	}
+
 	private void wakeup() {
 		wakeupCalled.set(true);
 		selector.wakeup();
@@ -114,7 +176,11 @@ public final class NioProcessor implements IoProcessor<NioSession> {
 
 		if (session.setScheduledForFlush()) {
 			flushingSessions.add(session);
-			wakeup();
+			FlushBatch batch = flushBatch.get();
+			if (!batch.active)
+				wakeup();
+			else if (!batch.processors.contains(this))
+				batch.processors.add(this);
 		}
 	}
 
@@ -166,6 +232,9 @@ public final class NioProcessor implements IoProcessor<NioSession> {
 	}
 
 	private final class Processor implements Runnable, Consumer<SelectionKey> {
+		private WriteRequest[] gatherReqs = new WriteRequest[0];
+		private ByteBuffer[] gatherBufs = new ByteBuffer[0];
+
 		@Override
 		public void run() {
 			processorThread = Thread.currentThread();
@@ -316,6 +385,21 @@ public final class NioProcessor implements IoProcessor<NioSession> {
 
 					if (message instanceof IoBuffer) {
 						IoBuffer buf = (IoBuffer)message;
+						maxWrittenBytes = session.getConfig().getMaxReadBufferSize() + (session.getConfig().getMaxReadBufferSize() >>> 1);
+						int maxGatherCount = session.getConfig().getMaxGatherWriteCount();
+						if (maxGatherCount > 1 && buf.hasRemaining() && !session.getWriteRequestQueue().isEmpty()) {
+							localWrittenBytes = gatherWrite(session, req, maxGatherCount, maxWrittenBytes - writtenBytes);
+							if (localWrittenBytes < 0)
+								return;
+							req = null;
+							writtenBytes += localWrittenBytes;
+							if (writtenBytes >= maxWrittenBytes) { // Wrote too much
+								scheduleFlush(session);
+								session.setInterestedInWrite(false);
+								return;
+							}
+							continue;
+						}
 						if (buf.hasRemaining()) {
 							try {
 								localWrittenBytes = session.getChannel().write(buf.buf());
@@ -329,12 +413,13 @@ public final class NioProcessor implements IoProcessor<NioSession> {
 								return;
 							}
 
+							writeCallCount.increment();
+							writeBufferCount.increment();
 							if (buf.hasRemaining()) { // the buffer isn't empty, we re-interest it in writing
 								session.setInterestedInWrite(true);
 								return;
 							}
 						}
-						maxWrittenBytes = session.getConfig().getMaxReadBufferSize() + (session.getConfig().getMaxReadBufferSize() >>> 1);
 					} else if (message instanceof FileRegion) {
 						maxWrittenBytes = session.getConfig().getMaxReadBufferSize() + (session.getConfig().getMaxReadBufferSize() >>> 1);
 						FileRegion region = (FileRegion)message;
@@ -380,6 +465,69 @@ public final class NioProcessor implements IoProcessor<NioSession> {
 			}
 		}
 
+		/**
+		 * Writes the current request and the following queued buffers with one gathering write call.
+		 * The following requests are removed from the queue only after they are written completely.
+		 *
+		 * @return the written bytes, or -1 if the flush should stop now
+		 */
+		private int gatherWrite(NioSession session, WriteRequest req, int maxCount, int maxBytes) throws Exception {
+			WriteRequest[] reqs = gatherReqs;
+			ByteBuffer[] bufs = gatherBufs;
+			if (reqs.length < maxCount) {
+				gatherReqs = reqs = new WriteRequest[maxCount];
+				gatherBufs = bufs = new ByteBuffer[maxCount];
+			}
+			reqs[0] = req;
+			int n = 1 + session.getWriteRequestQueue().peek(reqs, 1, maxCount - 1);
+			int count = 0;
+			for (long bytes = 0; count < n;) {
+				Object message = reqs[count].writeRequestMessage();
+				if (!(message instanceof IoBuffer)) // stop at FileRegion or close request
+					break;
+				ByteBuffer bb = ((IoBuffer)message).buf();
+				bufs[count++] = bb;
+				if ((bytes += bb.remaining()) >= maxBytes)
+					break;
+			}
+
+			try {
+				long written;
+				try {
+					written = session.getChannel().write(bufs, 0, count);
+				} catch (IOException ioe) {
+					session.setCurrentWriteRequest(null);
+					req.writeRequestFuture().setException(ioe);
+					((IoBuffer)req.writeRequestMessage()).free();
+					// we have had an issue while trying to send data to the peer, let's close the session
+					session.closeNow();
+					session.removeNow(ioe);
+					return -1;
+				}
+				writeCallCount.increment();
+				writeBufferCount.add(count);
+
+				for (int i = 0; i < count; i++) {
+					WriteRequest r = reqs[i];
+					if (i > 0) {
+						session.pollWriteRequest(); // must be r, only this thread polls the queue
+						session.setCurrentWriteRequest(r);
+					}
+					if (bufs[i].hasRemaining()) { // the buffer isn't empty, we re-interest it in writing
+						session.setInterestedInWrite(true);
+						return -1;
+					}
+					session.setCurrentWriteRequest(null);
+					session.getFilterChain().fireMessageSent(r);
+					((IoBuffer)r.writeRequestMessage()).free();
+				}
+				return (int)written;
+			} finally {
+				Arrays.fill(reqs, 0, n, null);
+				Arrays.fill(bufs, 0, count, null);
+			}
+		}
+
 		private int fixSelector(int nbTries, long selectTime) throws IOException {
 			if (Thread.interrupted()) {
 				// Thread was interrupted so reset selected keys and break so we not run into a busy loop.
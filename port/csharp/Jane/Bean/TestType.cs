@@ -33,12 +33,15 @@ namespace Jane.Bean
 		public  /* 17*/ SortedDictionary<TestBean, bool> v17; // 排序映射容器(TreeMap);
 		public  /* 18*/ Dictionary<Octets, TestBean> v18; // 有序映射容器(LinkedHashMap);
 		public  /* 19*/ TestBean v19; // 嵌入其它bean;
+		public  /* 21*/ List<int> v21; // 基础类型数组容器(IntArrayList);
+		public  /* 22*/ HashSet<long> v22; // 基础类型无序集合容器(LongHashSet);
+		public  /* 23*/ Dictionary<long, TestBean> v23; // 基础类型key的无序映射容器(LongHashMap);
 
 		public TestType()
 		{
 		}
 
-		public TestType(bool v1, sbyte v2, short v3, int v4, long v5, float v6, double v7, Octets v8, string v9, ICollection<bool> v10, ICollection<sbyte> v11, ICollection<int> v12, ICollection<long> v13, ICollection<float> v14, ICollection<double> v15, IDictionary<long, string> v16, IDictionary<TestBean, bool> v17, IDictionary<Octets, TestBean> v18, TestBean v19)
+		public TestType(bool v1, sbyte v2, short v3, int v4, long v5, float v6, double v7, Octets v8, string v9, ICollection<bool> v10, ICollection<sbyte> v11, ICollection<int> v12, ICollection<long> v13, ICollection<float> v14, ICollection<double> v15, IDictionary<long, string> v16, IDictionary<TestBean, bool> v17, IDictionary<Octets, TestBean> v18, TestBean v19, ICollection<int> v21, ICollection<long> v22, IDictionary<long, TestBean> v23)
 		{
 			this.v1 = v1;
 			this.v2 = v2;
@@ -59,6 +62,9 @@ namespace Jane.Bean
 			this.v17 = new SortedDictionary<TestBean, bool>(); if (v17 != null) Util.AddAll(this.v17, v17);
 			this.v18 = new Dictionary<Octets, TestBean>(); if (v18 != null) Util.AddAll(this.v18, v18);
 			this.v19 = TestBean.Create();
+			this.v21 = new List<int>(); if (v21 != null) this.v21.AddRange(v21);
+			this.v22 = new HashSet<long>(); if (v22 != null) this.v22.UnionWith(v22);
+			this.v23 = new Dictionary<long, TestBean>(); if (v23 != null) Util.AddAll(this.v23, v23);
 		}
 
 		public void Reset()
@@ -82,6 +88,9 @@ namespace Jane.Bean
 			if (v17 != null) v17.Clear();
 			if (v18 != null) v18.Clear();
 			if (v19 != null) v19.Reset();
+			if (v21 != null) v21.Clear();
+			if (v22 != null) v22.Clear();
+			if (v23 != null) v23.Clear();
 		}
 
 		public void Assign(TestType b)
@@ -105,6 +114,9 @@ namespace Jane.Bean
 			if (this.v17 == null) this.v17 = new SortedDictionary<TestBean, bool>(); else this.v17.Clear(); if (b.v17 != null) Util.AddAll(this.v17, b.v17);
 			if (this.v18 == null) this.v18 = new Dictionary<Octets, TestBean>(); else this.v18.Clear(); if (b.v18 != null) Util.AddAll(this.v18, b.v18);
 			if (this.v19 == null) this.v19 = TestBean.Create(); else this.v19.Reset(); if (b.v19 != null) this.v19.Assign(b.v19);
+			if (this.v21 == null) this.v21 = new List<int>(); else this.v21.Clear(); if (b.v21 != null) this.v21.AddRange(b.v21);
+			if (this.v22 == null) this.v22 = new HashSet<long>(); else this.v22.Clear(); if (b.v22 != null) this.v22.UnionWith(v22);
+			if (this.v23 == null) this.v23 = new Dictionary<long, TestBean>(); else this.v23.Clear(); if (b.v23 != null) Util.AddAll(this.v23, b.v23);
 		}
 /*
 		public bool GetV1()
@@ -296,6 +308,36 @@ namespace Jane.Bean
 		{
 			this.v19 = v19 ?? new Octets();
 		}
+
+		public List<int> GetV21()
+		{
+			return v21;
+		}
+
+		public void setV21(List<int> v21)
+		{
+			this.v21 = v21 ?? new Octets();
+		}
+
+		public HashSet<long> GetV22()
+		{
+			return v22;
+		}
+
+		public void setV22(HashSet<long> v22)
+		{
+			this.v22 = v22 ?? new Octets();
+		}
+
+		public Dictionary<long, TestBean> GetV23()
+		{
+			return v23;
+		}
+
+		public void setV23(Dictionary<long, TestBean> v23)
+		{
+			this.v23 = v23 ?? new Octets();
+		}
 */
 		public int Type()
 		{
@@ -326,6 +368,9 @@ namespace Jane.Bean
 			v17 = new SortedDictionary<TestBean, bool>();
 			v18 = new Dictionary<Octets, TestBean>();
 			v19 = TestBean.Create();
+			v21 = new List<int>();
+			v22 = new HashSet<long>();
+			v23 = new Dictionary<long, TestBean>();
 		}
 
 		public static TestType Create()
@@ -413,6 +458,24 @@ namespace Jane.Bean
 				this.v19.Marshal(s.Marshal1((byte)0x4e));
 				if (s.Size() - n < 3) s.Resize(n);
 			}
+			if (this.v21 != null && this.v21.Count > 0)
+			{
+				s.Marshal2(0x5700).MarshalUInt(this.v21.Count);
+				foreach(int e in Util.Enum(this.v21))
+					s.Marshal(e);
+			}
+			if (this.v22 != null && this.v22.Count > 0)
+			{
+				s.Marshal2(0x5b00).MarshalUInt(this.v22.Count);
+				foreach(long e in Util.Enum(this.v22))
+					s.Marshal(e);
+			}
+			if (this.v23 != null && this.v23.Count > 0)
+			{
+				s.Marshal2(0x5f42).MarshalUInt(this.v23.Count);
+				foreach(KeyValuePair<long, TestBean> p in Util.Enum(this.v23))
+					s.Marshal(p.Key).Marshal(p.Value);
+			}
 			return s.Marshal1((byte)0);
 		}
 
@@ -518,13 +581,43 @@ namespace Jane.Bean
 						this.v18.Add(s.UnmarshalOctetsKV(k), (TestBean)s.UnmarshalBeanKV(TestBean.Create(), t));
 				} break;
 				case 19: s.UnmarshalBean(this.v19, t); break;
+				case 21:
+				{
+					this.v21.Clear();
+					if (t != 3) { s.UnmarshalSkipVar(t); break; }
+					t = s.UnmarshalUInt1();
+					if (t >= 8) { s.UnmarshalSkipVarSub(t); break; }
+					int n = s.UnmarshalUInt();
+					this.v21.Capacity = (n < 0x10000 ? n : 0x10000);
+					for (; n > 0; --n)
+						this.v21.Add(s.UnmarshalIntKV(t));
+				} break;
+				case 22:
+				{
+					this.v22.Clear();
+					if (t != 3) { s.UnmarshalSkipVar(t); break; }
+					t = s.UnmarshalUInt1();
+					if (t >= 8) { s.UnmarshalSkipVarSub(t); break; }
+					for (int n = s.UnmarshalUInt(); n > 0; --n)
+						this.v22.Add(s.UnmarshalLongKV(t));
+				} break;
+				case 23:
+				{
+					this.v23.Clear();
+					if (t != 3) { s.UnmarshalSkipVar(t); break; }
+					t = s.UnmarshalUInt1();
+					if ((t >> 6) != 1) { s.UnmarshalSkipVarSub(t); break; }
+					int k = (t >> 3) & 7; t &= 7;
+					for (int n = s.UnmarshalUInt(); n > 0; --n)
+						this.v23.Add(s.UnmarshalLongKV(k), (TestBean)s.UnmarshalBeanKV(TestBean.Create(), t));
+				} break;
 				default: s.UnmarshalSkipVar(t); break;
 			}}
 		}
 
 		public object Clone()
 		{
-			return new TestType(v1, v2, v3, v4, v5, v6, v7, v8, v9, v10, v11, v12, v13, v14, v15, v16, v17, v18, v19);
+			return new TestType(v1, v2, v3, v4, v5, v6, v7, v8, v9, v10, v11, v12, v13, v14, v15, v16, v17, v18, v19, v21, v22, v23);
 		}
 
 		public override int GetHashCode()
@@ -549,6 +642,9 @@ namespace Jane.Bean
 			h = h * 16777619 + this.v17.GetHashCode();
 			h = h * 16777619 + this.v18.GetHashCode();
 			h = h * 16777619 + this.v19.GetHashCode();
+			h = h * 16777619 + this.v21.GetHashCode();
+			h = h * 16777619 + this.v22.GetHashCode();
+			h = h * 16777619 + this.v23.GetHashCode();
 			return h;
 		}
 
@@ -573,6 +669,9 @@ namespace Jane.Bean
 			if (!this.v17.Equals(b.v17)) return false;
 			if (!this.v18.Equals(b.v18)) return false;
 			if (!this.v19.Equals(b.v19)) return false;
+			if (!this.v21.Equals(b.v21)) return false;
+			if (!this.v22.Equals(b.v22)) return false;
+			if (!this.v23.Equals(b.v23)) return false;
 			return true;
 		}
 
@@ -599,6 +698,9 @@ namespace Jane.Bean
 			if (!this.v17.Equals(b.v17)) return false;
 			if (!this.v18.Equals(b.v18)) return false;
 			if (!this.v19.Equals(b.v19)) return false;
+			if (!this.v21.Equals(b.v21)) return false;
+			if (!this.v22.Equals(b.v22)) return false;
+			if (!this.v23.Equals(b.v23)) return false;
 			return true;
 		}
 
@@ -634,6 +736,9 @@ namespace Jane.Bean
 			c = Util.CompareTo(this.v17, b.v17); if (c != 0) return c;
 			c = Util.CompareTo(this.v18, b.v18); if (c != 0) return c;
 			c = this.v19.CompareTo(b.v19); if (c != 0) return c;
+			c = Util.CompareTo(this.v21, b.v21); if (c != 0) return c;
+			c = Util.CompareTo(this.v22, b.v22); if (c != 0) return c;
+			c = Util.CompareTo(this.v23, b.v23); if (c != 0) return c;
 			return 0;
 		}
 
@@ -669,6 +774,9 @@ namespace Jane.Bean
 			Util.Append(s, this.v17);
 			Util.Append(s, this.v18);
 			s.Append(this.v19).Append(',');
+			Util.Append(s, this.v21);
+			Util.Append(s, this.v22);
+			Util.Append(s, this.v23);
 			--s.Length;
 			return s.Append('}').ToString();
 		}
@@ -696,6 +804,9 @@ namespace Jane.Bean
 			if (this.v17 != null) Util.AppendJson(s.Append("\"v17\":"), this.v17);
 			if (this.v18 != null) Util.AppendJson(s.Append("\"v18\":"), this.v18);
 			if (this.v19 != null) this.v19.ToJson(s.Append("\"v19\":")).Append(',');
+			if (this.v21 != null) Util.AppendJson(s.Append("\"v21\":"), this.v21);
+			if (this.v22 != null) Util.AppendJson(s.Append("\"v22\":"), this.v22);
+			if (this.v23 != null) Util.AppendJson(s.Append("\"v23\":"), this.v23);
 			--s.Length;
 			return s.Append('}');
 		}
@@ -728,6 +839,9 @@ namespace Jane.Bean
 			if (this.v17 != null) Util.AppendLua(s.Append("v17="), this.v17);
 			if (this.v18 != null) Util.AppendLua(s.Append("v18="), this.v18);
 			if (this.v19 != null) this.v19.ToLua(s.Append("v19=")).Append(',');
+			if (this.v21 != null) Util.AppendLua(s.Append("v21="), this.v21);
+			if (this.v22 != null) Util.AppendLua(s.Append("v22="), this.v22);
+			if (this.v23 != null) Util.AppendLua(s.Append("v23="), this.v23);
 			--s.Length;
 			return s.Append('}');
 		}
@@ -24,6 +24,9 @@ namespace Jane.Handler
 		|*| SortedDictionary<TestBean, bool> v17; // 排序映射容器(TreeMap);
 		|*| Dictionary<Octets, TestBean> v18; // 有序映射容器(LinkedHashMap);
 		|*| TestBean v19; // 嵌入其它bean;
+		|*| List<int> v21; // 基础类型数组容器(IntArrayList);
+		|*| HashSet<long> v22; // 基础类型无序集合容器(LongHashSet);
+		|*| Dictionary<long, TestBean> v23; // 基础类型key的无序映射容器(LongHashMap);
 		\*/
 
 		public static void OnProcess(NetManager.NetSession session, IBean _arg_)
@@ -29,6 +29,9 @@ return require "util".initBeans {
 		[ 17] = { name = "v17", type = map, key = "TestBean", value = bool }, -- 排序映射容器(TreeMap)
 		[ 18] = { name = "v18", type = map, key = str, value = "TestBean" }, -- 有序映射容器(LinkedHashMap)
 		[ 19] = { name = "v19", type = "TestBean" }, -- 嵌入其它bean
+		[ 21] = { name = "v21", type = vec, value = num }, -- 基础类型数组容器(IntArrayList)
+		[ 22] = { name = "v22", type = vec, value = num }, -- 基础类型无序集合容器(LongHashSet)
+		[ 23] = { name = "v23", type = map, key = num, value = "TestBean" }, -- 基础类型key的无序映射容器(LongHashMap)
 	}},
 	TestEmpty = { __type = 3, __base = { -- 测试空bean
 	}},
@@ -3,6 +3,7 @@ package jane.bean;
 
 import java.lang.reflect.Field;
 import jane.core.Bean;
+import jane.core.FieldSet;
 import jane.core.MarshalException;
 import jane.core.Octets;
 import jane.core.OctetsStream;
@@ -128,6 +129,18 @@ public class TestBean extends Bean<TestBean>
 		}}
 	}
 
+	@Override
+	public OctetsStream unmarshal(OctetsStream _s_, FieldSet _f_) throws MarshalException
+	{
+		for (;;) { int _i_ = _s_.unmarshalInt1(), _t_ = _i_ & 3; if ((_i_ >>= 2) == 63) _i_ += _s_.unmarshalInt1(); if (_i_ > 0 && !_f_.contains(_i_)) { _s_.unmarshalSkipVar(_t_); continue; } switch(_i_)
+		{
+			case 0: return _s_;
+			case 1: this.value1 = _s_.unmarshalInt(_t_); break;
+			case 2: this.value2 = _s_.unmarshalLong(_t_); break;
+			default: _s_.unmarshalSkipVar(_t_);
+		}}
+	}
+
 	@Override
 	public TestBean clone()
 	{
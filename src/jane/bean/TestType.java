@@ -16,13 +16,17 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import jane.core.Bean;
 import jane.core.DynBean;
+import jane.core.FieldSet;
 import jane.core.MarshalException;
 import jane.core.Octets;
 import jane.core.OctetsStream;
 import jane.core.SBase;
 import jane.core.SContext;
 import jane.core.SDeque;
+import jane.core.SIntList;
 import jane.core.SList;
+import jane.core.SLongMap;
+import jane.core.SLongSet;
 import jane.core.SMap;
 import jane.core.SMap.SMapListener;
 import jane.core.SSMap;
@@ -30,13 +34,16 @@ import jane.core.SSSet;
 import jane.core.SSet;
 import jane.core.SSet.SSetListener;
 import jane.core.Util;
+import jane.core.map.IntArrayList;
+import jane.core.map.LongHashMap;
+import jane.core.map.LongHashSet;
 
 /**
  * 测试生成所有支持的类型
  */
 public final class TestType extends Bean<TestType>
 {
-	private static final long serialVersionUID = 0xbeacabe90777739dL;
+	private static final long serialVersionUID = 0xbeac0dca879fbc3dL;
 	public  static final int BEAN_TYPE = 2;
 	public  static final String BEAN_TYPENAME = TestType.class.getSimpleName();
 	public  static final TestType BEAN_STUB = new TestType();
@@ -61,6 +68,9 @@ public final class TestType extends Bean<TestType>
 	private /* 18*/ final LinkedHashMap<Octets, TestBean> v18; // 有序映射容器(LinkedHashMap)
 	private /* 19*/ final TestBean v19; // 嵌入其它bean
 	private /*  0*/ java.lang.String v20; // 非序列化字段
+	private /* 21*/ final IntArrayList v21; // 基础类型数组容器(IntArrayList)
+	private /* 22*/ final LongHashSet v22; // 基础类型无序集合容器(LongHashSet)
+	private /* 23*/ final LongHashMap<TestBean> v23; // 基础类型key的无序映射容器(LongHashMap)
 
 	public TestType()
 	{
@@ -77,9 +87,12 @@ public final class TestType extends Bean<TestType>
 		v18 = new LinkedHashMap<>();
 		v19 = new TestBean();
 		v20 = null;
+		v21 = new IntArrayList();
+		v22 = new LongHashSet();
+		v23 = new LongHashMap<>();
 	}
 
-	public TestType(boolean v1, byte v2, short v3, int v4, long v5, float v6, double v7, Octets v8, String v9, Collection<Boolean> v10, Collection<Byte> v11, Collection<Integer> v12, Collection<Long> v13, Collection<Float> v14, Collection<Double> v15, Map<Long, String> v16, Map<TestBean, Boolean> v17, Map<Octets, TestBean> v18, TestBean v19, java.lang.String v20)
+	public TestType(boolean v1, byte v2, short v3, int v4, long v5, float v6, double v7, Octets v8, String v9, Collection<Boolean> v10, Collection<Byte> v11, Collection<Integer> v12, Collection<Long> v13, Collection<Float> v14, Collection<Double> v15, Map<Long, String> v16, Map<TestBean, Boolean> v17, Map<Octets, TestBean> v18, TestBean v19, java.lang.String v20, IntArrayList v21, LongHashSet v22, LongHashMap<TestBean> v23)
 	{
 		this.v1 = v1;
 		this.v2 = v2;
@@ -101,6 +114,9 @@ public final class TestType extends Bean<TestType>
 		Util.appendDeep(v18, this.v18 = new LinkedHashMap<>());
 		this.v19 = (v19 != null ? v19.clone() : new TestBean());
 		this.v20 = v20;
+		this.v21 = (v21 != null ? v21.clone() : new IntArrayList());
+		this.v22 = (v22 != null ? v22.clone() : new LongHashSet());
+		Util.appendDeep(v23, this.v23 = new LongHashMap<>());
 	}
 
 	@Override
@@ -126,6 +142,9 @@ public final class TestType extends Bean<TestType>
 		v18.clear();
 		v19.reset();
 		v20 = null;
+		v21.clear();
+		v22.clear();
+		v23.clear();
 	}
 
 	@Override
@@ -153,6 +172,9 @@ public final class TestType extends Bean<TestType>
 		this.v18.clear(); Util.appendDeep(_b_.v18, this.v18);
 		this.v19.assign(_b_.v19);
 		this.v20 = _b_.v20;
+		this.v21.clear(); this.v21.addAll(_b_.v21);
+		this.v22.clear(); this.v22.addAll(_b_.v22);
+		this.v23.clear(); Util.appendDeep(_b_.v23, this.v23);
 	}
 
 	/** @return 1字节布尔,0表示假,1表示真,其它默认表示真 */
@@ -358,6 +380,24 @@ public final class TestType extends Bean<TestType>
 		this.v20 = v20;
 	}
 
+	/** @return 基础类型数组容器(IntArrayList) */
+	public IntArrayList getV21()
+	{
+		return v21;
+	}
+
+	/** @return 基础类型无序集合容器(LongHashSet) */
+	public LongHashSet getV22()
+	{
+		return v22;
+	}
+
+	/** @return 基础类型key的无序映射容器(LongHashMap) */
+	public LongHashMap<TestBean> getV23()
+	{
+		return v23;
+	}
+
 	@Override
 	public int type()
 	{
@@ -467,6 +507,24 @@ public final class TestType extends Bean<TestType>
 			this.v19.marshal(_s_.marshal1((byte)0x4e));
 			if (_s_.size() - _n_ < 3) _s_.resize(_n_);
 		}
+		if (!this.v21.isEmpty())
+		{
+			int _i_ = 0, _n_ = this.v21.size();
+			_s_.marshal2(0x5700).marshalUInt(_n_);
+			do
+				_s_.marshal(this.v21.get(_i_));
+			while (++_i_ < _n_);
+		}
+		if (!this.v22.isEmpty())
+		{
+			_s_.marshal2(0x5b00).marshalUInt(this.v22.size());
+			this.v22.foreach(_s_::marshal);
+		}
+		if (!this.v23.empty())
+		{
+			_s_.marshal2(0x5f42).marshalUInt(this.v23.size());
+			this.v23.foreach((k, v) -> _s_.marshal(k).marshal(v));
+		}
 		return _s_.marshalZero();
 	}
 
@@ -572,6 +630,172 @@ public final class TestType extends Bean<TestType>
 					this.v18.put(_s_.unmarshalOctetsKV(_k_), _s_.unmarshalBeanKV(new TestBean(), _t_));
 			} break;
 			case 19: _s_.unmarshalBean(this.v19, _t_); break;
+			case 21:
+			{
+				this.v21.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				int _n_ = _s_.unmarshalUInt();
+				this.v21.ensureCapacity(_n_ < 1000 ? _n_ : 1000);
+				for (; _n_ > 0; --_n_)
+					this.v21.add(_s_.unmarshalIntKV(_t_));
+			} break;
+			case 22:
+			{
+				this.v22.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v22.add(_s_.unmarshalLongKV(_t_));
+			} break;
+			case 23:
+			{
+				this.v23.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if ((_t_ >> 6) != 1) { _s_.unmarshalSkipVarSub(_t_); break; }
+				int _k_ = (_t_ >> 3) & 7; _t_ &= 7;
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v23.put(_s_.unmarshalLongKV(_k_), _s_.unmarshalBeanKV(new TestBean(), _t_));
+			} break;
+			default: _s_.unmarshalSkipVar(_t_);
+		}}
+	}
+
+	@Override
+	public OctetsStream unmarshal(OctetsStream _s_, FieldSet _f_) throws MarshalException
+	{
+		for (;;) { int _i_ = _s_.unmarshalInt1(), _t_ = _i_ & 3; if ((_i_ >>= 2) == 63) _i_ += _s_.unmarshalInt1(); if (_i_ > 0 && !_f_.contains(_i_)) { _s_.unmarshalSkipVar(_t_); continue; } switch(_i_)
+		{
+			case 0: return _s_;
+			case 1: this.v1 = (_s_.unmarshalLong(_t_) != 0); break;
+			case 2: this.v2 = (byte)_s_.unmarshalInt(_t_); break;
+			case 3: this.v3 = (short)_s_.unmarshalInt(_t_); break;
+			case 4: this.v4 = _s_.unmarshalInt(_t_); break;
+			case 5: this.v5 = _s_.unmarshalLong(_t_); break;
+			case 6: this.v6 = _s_.unmarshalFloat(_t_); break;
+			case 7: this.v7 = _s_.unmarshalDouble(_t_); break;
+			case 8: _s_.unmarshal(this.v8, _t_); break;
+			case 9: this.v9 = _s_.unmarshalString(_t_); break;
+			case 10:
+			{
+				this.v10.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				int _n_ = _s_.unmarshalUInt();
+				this.v10.ensureCapacity(_n_ < 1000 ? _n_ : 1000);
+				for (; _n_ > 0; --_n_)
+					this.v10.add((_s_.unmarshalLongKV(_t_) != 0));
+			} break;
+			case 11:
+			{
+				this.v11.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v11.add((byte)_s_.unmarshalIntKV(_t_));
+			} break;
+			case 12:
+			{
+				this.v12.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v12.add(_s_.unmarshalIntKV(_t_));
+			} break;
+			case 13:
+			{
+				this.v13.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v13.add(_s_.unmarshalLongKV(_t_));
+			} break;
+			case 14:
+			{
+				this.v14.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v14.add(_s_.unmarshalFloatKV(_t_));
+			} break;
+			case 15:
+			{
+				this.v15.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v15.add(_s_.unmarshalDoubleKV(_t_));
+			} break;
+			case 16:
+			{
+				this.v16.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if ((_t_ >> 6) != 1) { _s_.unmarshalSkipVarSub(_t_); break; }
+				int _k_ = (_t_ >> 3) & 7; _t_ &= 7;
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v16.put(_s_.unmarshalLongKV(_k_), _s_.unmarshalStringKV(_t_));
+			} break;
+			case 17:
+			{
+				this.v17.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if ((_t_ >> 6) != 1) { _s_.unmarshalSkipVarSub(_t_); break; }
+				int _k_ = (_t_ >> 3) & 7; _t_ &= 7;
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v17.put(_s_.unmarshalBeanKV(new TestBean(), _k_), (_s_.unmarshalLongKV(_t_) != 0));
+			} break;
+			case 18:
+			{
+				this.v18.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if ((_t_ >> 6) != 1) { _s_.unmarshalSkipVarSub(_t_); break; }
+				int _k_ = (_t_ >> 3) & 7; _t_ &= 7;
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v18.put(_s_.unmarshalOctetsKV(_k_), _s_.unmarshalBeanKV(new TestBean(), _t_));
+			} break;
+			case 19: _s_.unmarshalBean(this.v19, _t_); break;
+			case 21:
+			{
+				this.v21.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				int _n_ = _s_.unmarshalUInt();
+				this.v21.ensureCapacity(_n_ < 1000 ? _n_ : 1000);
+				for (; _n_ > 0; --_n_)
+					this.v21.add(_s_.unmarshalIntKV(_t_));
+			} break;
+			case 22:
+			{
+				this.v22.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if (_t_ >= 8) { _s_.unmarshalSkipVarSub(_t_); break; }
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v22.add(_s_.unmarshalLongKV(_t_));
+			} break;
+			case 23:
+			{
+				this.v23.clear();
+				if (_t_ != 3) { _s_.unmarshalSkipVar(_t_); break; }
+				_t_ = _s_.unmarshalInt1();
+				if ((_t_ >> 6) != 1) { _s_.unmarshalSkipVarSub(_t_); break; }
+				int _k_ = (_t_ >> 3) & 7; _t_ &= 7;
+				for (int _n_ = _s_.unmarshalUInt(); _n_ > 0; --_n_)
+					this.v23.put(_s_.unmarshalLongKV(_k_), _s_.unmarshalBeanKV(new TestBean(), _t_));
+			} break;
 			default: _s_.unmarshalSkipVar(_t_);
 		}}
 	}
@@ -579,7 +803,7 @@ public final class TestType extends Bean<TestType>
 	@Override
 	public TestType clone()
 	{
-		return new TestType(v1, v2, v3, v4, v5, v6, v7, v8, v9, v10, v11, v12, v13, v14, v15, v16, v17, v18, v19, v20);
+		return new TestType(v1, v2, v3, v4, v5, v6, v7, v8, v9, v10, v11, v12, v13, v14, v15, v16, v17, v18, v19, v20, v21, v22, v23);
 	}
 
 	@Override
@@ -605,6 +829,9 @@ public final class TestType extends Bean<TestType>
 		_h_ = _h_ * 16777619 + this.v17.hashCode();
 		_h_ = _h_ * 16777619 + this.v18.hashCode();
 		_h_ = _h_ * 16777619 + this.v19.hashCode();
+		_h_ = _h_ * 16777619 + this.v21.hashCode();
+		_h_ = _h_ * 16777619 + this.v22.hashCode();
+		_h_ = _h_ * 16777619 + this.v23.hashCode();
 		return _h_;
 	}
 
@@ -633,6 +860,9 @@ public final class TestType extends Bean<TestType>
 		if (!this.v17.equals(_b_.v17)) return false;
 		if (!this.v18.equals(_b_.v18)) return false;
 		if (!this.v19.equals(_b_.v19)) return false;
+		if (!this.v21.equals(_b_.v21)) return false;
+		if (!this.v22.equals(_b_.v22)) return false;
+		if (!this.v23.equals(_b_.v23)) return false;
 		return true;
 	}
 
@@ -661,6 +891,9 @@ public final class TestType extends Bean<TestType>
 		_c_ = Util.compareTo(this.v17, _b_.v17); if (_c_ != 0) return _c_;
 		_c_ = Util.compareTo(this.v18, _b_.v18); if (_c_ != 0) return _c_;
 		_c_ = this.v19.compareTo(_b_.v19); if (_c_ != 0) return _c_;
+		_c_ = this.v21.compareTo(_b_.v21); if (_c_ != 0) return _c_;
+		_c_ = this.v22.size() - _b_.v22.size(); if (_c_ != 0) return _c_;
+		_c_ = this.v23.size() - _b_.v23.size(); if (_c_ != 0) return _c_;
 		return 0;
 	}
 
@@ -688,6 +921,9 @@ public final class TestType extends Bean<TestType>
 		Util.append(_s_, this.v18);
 		_s_.append(this.v19).append(',');
 		_s_.append(this.v20).append(',');
+		this.v21.appendTo(_s_).append(',');
+		this.v22.appendTo(_s_).append(',');
+		_s_.append(this.v23).append(',');
 		_s_.setLength(_s_.length() - 1);
 		return _s_.append('}').toString();
 	}
@@ -1092,5 +1328,44 @@ public final class TestType extends Bean<TestType>
 			if (initSContext()) _sctx.addOnRollback(new SBase.SObject(_bean, FIELD_v20, _bean.getV20()));
 			_bean.setV20(v20);
 		}
+
+		/** @return 基础类型数组容器(IntArrayList) */
+		public SIntList getV21()
+		{
+			return new SIntList(this, _bean.getV21());
+		}
+
+		/** @return 基础类型数组容器(IntArrayList) */
+		@Deprecated
+		public IntArrayList unsafeV21()
+		{
+			return _bean.getV21();
+		}
+
+		/** @return 基础类型无序集合容器(LongHashSet) */
+		public SLongSet getV22()
+		{
+			return new SLongSet(this, _bean.getV22());
+		}
+
+		/** @return 基础类型无序集合容器(LongHashSet) */
+		@Deprecated
+		public LongHashSet unsafeV22()
+		{
+			return _bean.getV22();
+		}
+
+		/** @return 基础类型key的无序映射容器(LongHashMap) */
+		public SLongMap<TestBean, TestBean.Safe> getV23()
+		{
+			return new SLongMap<>(this, _bean.getV23());
+		}
+
+		/** @return 基础类型key的无序映射容器(LongHashMap) */
+		@Deprecated
+		public LongHashMap<TestBean> unsafeV23()
+		{
+			return _bean.getV23();
+		}
 	}
 }
@@ -170,6 +170,31 @@ public abstract class Bean<B extends Bean<B>> implements Comparable<B>, Cloneabl
 		return unmarshal(os);
 	}
 
+	/**
+	 * 从os中投影反序列化到此bean中(用于数据库的记录)
+	 * <p>
+	 * 只解码fields中的字段,其余字段跳过并保持原值<br>
+	 * 生成的bean会重写此方法直接跳过不需要的字段. 默认实现先复制需要的字段再整体反序列化
+	 * @return 必须是参数os
+	 */
+	public OctetsStream unmarshal(OctetsStream os, FieldSet fields) throws MarshalException
+	{
+		OctetsStream sub = new OctetsStream();
+		byte[] buf = os.array();
+		for (;;)
+		{
+			int begin = os.position(), i = os.unmarshalInt1(), t = i & 3;
+			if ((i >>= 2) == 63) i += os.unmarshalInt1();
+			if (i == 0) break;
+			os.unmarshalSkipVar(t);
+			if (fields.contains(i))
+				sub.append(buf, begin, os.position() - begin);
+		}
+		sub.marshalZero();
+		unmarshal(sub);
+		return os;
+	}
+
 	@Override
 	public abstract B clone();
 
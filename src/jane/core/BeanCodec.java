@@ -1,6 +1,7 @@
 package jane.core;
 
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.SimpleBufferAllocator;
 import org.apache.mina.core.filterchain.IoFilter;
 import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.session.IoSession;
@@ -12,6 +13,9 @@ import org.apache.mina.core.write.WriteRequest;
  */
 public class BeanCodec implements IoFilter
 {
+	private static final int				 ENCODE_BUF_MAX_KEEP = 1 << 16;											 // 线程编码缓存保留的最大容量,超过则编码后释放
+	private static final ThreadLocal<Octets> _encodeBuf			 = ThreadLocal.withInitial(() -> new Octets(1024)); // 每个线程的编码缓存,仅在使用缓冲区池时使用
+
 	protected final NetManager	 _mgr;
 	protected final OctetsStream _os	= new OctetsStream(); // 用于解码器的数据缓存
 	protected int				 _ptype;					  // 当前数据缓存中获得的协议类型
@@ -81,14 +85,25 @@ public class BeanCodec implements IoFilter
 		{
 			int serial = bean.serial();
 			int reserveLen = Octets.marshalUIntLen(type) + Octets.marshalLen(serial) + 5;
-			Octets os = new Octets(reserveLen + bean.initSize());
+			boolean pooled = (IoBuffer.getAllocator() != SimpleBufferAllocator.instance);
+			Octets os = (pooled ? _encodeBuf.get() : new Octets(reserveLen + bean.initSize()));
 			os.resize(reserveLen);
 			int end = bean.marshalProtocol(os).size();
 			int len = end - reserveLen;
 			int pos = 5 - Octets.marshalUIntLen(len);
 			os.resize(pos);
 			os.marshalUInt(type).marshal(serial).marshalUInt(len);
-			IoBuffer buf = IoBuffer.wrap(os.array(), pos, end - pos);
+			IoBuffer buf;
+			if (pooled)
+			{
+				// 序列化前不知道bean的实际长度,无法预先分配合适的池化缓冲区,所以先编码到线程缓存再复制一次
+				buf = IoBuffer.allocate(end - pos); // 由NioProcessor发送完后free回收
+				buf.put(os.array(), pos, end - pos).flip();
+				if (os.capacity() > ENCODE_BUF_MAX_KEEP)
+					_encodeBuf.remove();
+			}
+			else
+				buf = IoBuffer.wrap(os.array(), pos, end - pos);
 			WriteFuture wf = writeRequest.writeRequestFuture();
 			next.filterWrite(wf == DefaultWriteRequest.UNUSED_FUTURE ? buf : new DefaultWriteRequest(buf, wf));
 		}
@@ -0,0 +1,222 @@
+package jane.core;
+
+import java.util.Arrays;
+
+/**
+ * bean序列化数据的只读视图
+ * <p>
+ * 直接在原始数据上按需解码字段,不创建bean对象. 首次访问某字段时才向后扫描字段头并记录各字段的位置,未访问的字段只跳过不解码<br>
+ * 可以调用wraps复用同一个对象访问不同的数据. 字段不存在时返回类型的默认值,类型不匹配时按OctetsStream的规则兼容转换或返回默认值<br>
+ * 不能同时由多个线程访问. 在遍历回调中获得的视图只在回调中有效,需要保留时应调用toBean
+ */
+public final class BeanView
+{
+	private final OctetsStream _os	  = new OctetsStream(); // 读取字段值的流,包装原始数据
+	private int[]			   _ids	  = new int[16];		// 已扫描的字段ID
+	private int[]			   _poses = new int[16];		// 已扫描字段的值位置<<2|类型
+	private int				   _count;						// 已扫描的字段数量
+	private int				   _begin;						// bean数据的起始位置
+	private int				   _scanPos;					// 下一个待扫描字段头的位置. -1表示已扫描完毕
+
+	public BeanView()
+	{
+	}
+
+	public BeanView(byte[] data, int pos, int size)
+	{
+		wraps(data, pos, size);
+	}
+
+	/**
+	 * 包装数据库记录的原始value数据(含格式前缀)
+	 */
+	public static BeanView ofRecord(byte[] raw)
+	{
+		return new BeanView().wrapsRecord(raw);
+	}
+
+	/**
+	 * 包装bean的序列化数据[pos,pos+size). 会丢弃之前的扫描结果
+	 */
+	public BeanView wraps(byte[] data, int pos, int size)
+	{
+		_os.wraps(data, pos + size);
+		_count = 0;
+		_begin = pos;
+		_scanPos = pos;
+		return this;
+	}
+
+	public BeanView wraps(Octets o)
+	{
+		return wraps(o.array(), 0, o.size());
+	}
+
+	/**
+	 * 包装数据库记录的原始value数据(含格式前缀)
+	 */
+	public BeanView wrapsRecord(byte[] raw)
+	{
+		if (raw.length <= 0 || raw[0] != 0)
+			throw new IllegalStateException("unknown record value format(" + (raw.length > 0 ? raw[0] : -1) + ')');
+		return wraps(raw, 1, raw.length - 1);
+	}
+
+	private int find(int id) throws MarshalException
+	{
+		int[] ids = _ids;
+		for (int i = 0, n = _count; i < n; ++i)
+		{
+			if (ids[i] == id)
+				return _poses[i];
+		}
+		if (_scanPos < 0)
+			return -1;
+		OctetsStream os = _os;
+		os.setPosition(_scanPos);
+		for (;;)
+		{
+			int i = os.unmarshalInt1(), t = i & 3;
+			if ((i >>= 2) == 63) i += os.unmarshalInt1();
+			if (i == 0)
+			{
+				_scanPos = -1;
+				return -1;
+			}
+			int p = os.position();
+			os.unmarshalSkipVar(t);
+			int n = _count;
+			if (n == ids.length)
+			{
+				_ids = ids = Arrays.copyOf(ids, n * 2);
+				_poses = Arrays.copyOf(_poses, n * 2);
+			}
+			ids[n] = i;
+			_poses[n] = (p << 2) + t;
+			_count = n + 1;
+			if (i == id)
+			{
+				_scanPos = os.position();
+				return (p << 2) + t;
+			}
+		}
+	}
+
+	/**
+	 * 定位到字段的值
+	 * @return 字段的类型. -1表示字段不存在
+	 */
+	private int seek(int id) throws MarshalException
+	{
+		int pt = find(id);
+		if (pt < 0)
+			return -1;
+		_os.setPosition(pt >>> 2);
+		return pt & 3;
+	}
+
+	public boolean has(int id) throws MarshalException
+	{
+		return find(id) >= 0;
+	}
+
+	public boolean getBool(int id) throws MarshalException
+	{
+		int t = seek(id);
+		return t >= 0 && _os.unmarshalLong(t) != 0;
+	}
+
+	public int getInt(int id) throws MarshalException
+	{
+		int t = seek(id);
+		return t >= 0 ? _os.unmarshalInt(t) : 0;
+	}
+
+	public long getLong(int id) throws MarshalException
+	{
+		int t = seek(id);
+		return t >= 0 ? _os.unmarshalLong(t) : 0;
+	}
+
+	public float getFloat(int id) throws MarshalException
+	{
+		int t = seek(id);
+		return t >= 0 ? _os.unmarshalFloat(t) : 0;
+	}
+
+	public double getDouble(int id) throws MarshalException
+	{
+		int t = seek(id);
+		return t >= 0 ? _os.unmarshalDouble(t) : 0;
+	}
+
+	public String getString(int id) throws MarshalException
+	{
+		int t = seek(id);
+		return t >= 0 ? _os.unmarshalString(t) : "";
+	}
+
+	/**
+	 * 获取octets字段到o中
+	 * @return 参数o. 字段不存在或类型不匹配时o不变
+	 */
+	public Octets getOctets(int id, Octets o) throws MarshalException
+	{
+		int t = seek(id);
+		if (t >= 0)
+			_os.unmarshal(o, t);
+		return o;
+	}
+
+	public Octets getOctets(int id) throws MarshalException
+	{
+		return getOctets(id, new Octets());
+	}
+
+	/**
+	 * 获取bean字段到b中
+	 * @return 参数b. 字段不存在或类型不匹配时b不变
+	 */
+	public <B extends Bean<B>> B getBean(int id, B b) throws MarshalException
+	{
+		int t = seek(id);
+		if (t >= 0)
+			_os.unmarshalBean(b, t);
+		return b;
+	}
+
+	/**
+	 * 获取bean字段的只读视图,和此视图共享原始数据
+	 * @return 字段不存在或类型不匹配时返回null
+	 */
+	public BeanView getView(int id) throws MarshalException
+	{
+		int t = seek(id);
+		if (t != 2)
+			return null;
+		int pos = _os.position();
+		return new BeanView(_os.array(), pos, _os.size() - pos);
+	}
+
+	/**
+	 * 反序列化所有字段到b中
+	 * @return 参数b
+	 */
+	public <B extends Bean<B>> B toBean(B b) throws MarshalException
+	{
+		_os.setPosition(_begin);
+		b.unmarshal(_os);
+		return b;
+	}
+
+	/**
+	 * 只反序列化fields中的字段到b中
+	 * @return 参数b
+	 */
+	public <B extends Bean<B>> B toBean(B b, FieldSet fields) throws MarshalException
+	{
+		_os.setPosition(_begin);
+		b.unmarshal(_os, fields);
+		return b;
+	}
+}
@@ -43,6 +43,7 @@ public abstract class CacheRef<V> extends SoftReference<V> implements Supplier<V
 		}, "SoftRefCleanerThread");
 		thread.setDaemon(true);
 		thread.start();
+		Metrics.counter("jane_cache_ref_remove_total", "soft references removed by GC", CacheRef::getRefRemoveCount);
 	}
 
 	public static long getRefRemoveCount()
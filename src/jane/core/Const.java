@@ -15,41 +15,72 @@ import jane.core.map.IntHashMap;
  */
 public final class Const
 {
-	public static final long   startupTime = System.currentTimeMillis();
-	public static final int	   connectTimeout;
-	public static final int	   closeOnFlushTimeout;
-	public static final int	   askCheckInterval;
-	public static final int	   askDefaultTimeout;
-	public static final int	   beanDefaultMaxSize;
-	public static final int	   httpHeadMaxSize;
-	public static final int	   httpBodyDefaultMaxSize;
-	public static final String dbFilename;
-	public static final String dbBackupPath;
-	public static final int	   dbThreadCount;
-	public static final int	   deadlockCheckInterval;
-	public static final int	   maxSessionProcedure;
-	public static final int	   maxBatchProceduer;
-	public static final int	   maxProceduerRedo;
-	public static final int	   lockPoolSize;
-	public static final int	   maxLockPerProcedure;
-	public static final int	   dbSimpleCacheSize;
-	public static final int	   dbCommitResaveCount;
-	public static final int	   dbCommitModCount;
-	public static final long   dbCommitPeriod;
-	public static final String dbBackupBase;
-	public static final long   dbBackupPeriod;
-	public static final int	   procedureTimeout;
-	public static final int	   procedureDeadlockTimeout;
-	public static final int	   procedureShutdownTimeout;
-	public static final int	   procedureShutdownNowTimeout;
-	public static final int	   autoIdBegin;
-	public static final int	   autoIdStride;
-	public static final String levelDBNativePath;
-	public static final int	   levelDBWriteBufferSize;
-	public static final int	   levelDBMaxOpenFiles;
-	public static final int	   levelDBCacheSize;
-	public static final int	   levelDBFileSize;
-	public static final long   levelDBFullBackupPeriod;
+	public static final long	startupTime = System.currentTimeMillis();
+	public static final int		connectTimeout;
+	public static final int		closeOnFlushTimeout;
+	public static final int		askCheckInterval;
+	public static final int		askDefaultTimeout;
+	public static final int		beanDefaultMaxSize;
+	public static final int		httpHeadMaxSize;
+	public static final int		httpBodyDefaultMaxSize;
+	public static final int		ioBufferPoolSize;
+	public static final int		ioBufferCachedSize;
+	public static final boolean	ioBufferDirect;
+	public static final String	dbStorage;
+	public static final String	dbCachePolicy;
+	public static final String	dbFilename;
+	public static final String	dbBackupPath;
+	public static final int		dbThreadCount;
+	public static final boolean	dbThreadSharded;
+	public static final int		dbThreadQueueSize;
+	public static final String	dbThreadQueueOverflow;
+	public static final int		deadlockCheckInterval;
+	public static final int		deadlockDetectDepth;
+	public static final int		maxSessionProcedure;
+	public static final int		maxBatchProceduer;
+	public static final int		maxProceduerRedo;
+	public static final int		optimisticProcedureRetry;
+	public static final int		lockPoolSize;
+	public static final int		maxLockPerProcedure;
+	public static final int		dbSimpleCacheSize;
+	public static final int		dbCommitResaveCount;
+	public static final int		dbCommitModCount;
+	public static final long	dbCommitPeriod;
+	public static final int		dbCommitThreads;
+	public static final int		dbCommitSplitSize;
+	public static final int		dbCommitInterval;
+	public static final int		dbCommitBatchCount;
+	public static final int		dbCommitRateCount;
+	public static final long	dbCommitRateBytes;
+	public static final int		dbCommitEpochSize;
+	public static final int		dbRedoSyncPeriod;
+	public static final int		dbRedoSyncSize;
+	public static final int		dbOffHeapCacheSize;
+	public static final int		dbCacheBudget;
+	public static final int		dbCacheBudgetPeriod;
+	public static final int		dbBloomBitsPerKey;
+	public static final int		dbBloomRebuildPeriod;
+	public static final int		dbNegativeCacheSize;
+	public static final int		dbPrefetchThreads;
+	public static final int		dbWalkParallelism;
+	public static final int		dbWalkRateLimit;
+	public static final String	dbBackupBase;
+	public static final long	dbBackupPeriod;
+	public static final int		procedureTimeout;
+	public static final int		procedureDeadlockTimeout;
+	public static final boolean	procedureStat;
+	public static final int		procedureShutdownTimeout;
+	public static final int		procedureShutdownNowTimeout;
+	public static final int		autoIdBegin;
+	public static final int		autoIdStride;
+	public static final String	levelDBNativePath;
+	public static final int		levelDBWriteBufferSize;
+	public static final int		levelDBMaxOpenFiles;
+	public static final int		levelDBCacheSize;
+	public static final int		levelDBFileSize;
+	public static final long	levelDBFullBackupPeriod;
+	public static final int		mappedFileSize;
+	public static final int		mappedCompactRatio;
 
 	static
 	{
@@ -85,23 +116,52 @@ public final class Const
 		beanDefaultMaxSize = getPropInt("jane.maxRawBeanSize", 65536, 0);
 		httpHeadMaxSize = getPropInt("jane.maxHttpHeadSize", 4096, 0);
 		httpBodyDefaultMaxSize = getPropInt("jane.maxHttpBodySize", 65536, 0);
+		ioBufferPoolSize = getPropInt("jane.ioBufferPoolSize", 0, 0);
+		ioBufferCachedSize = getPropInt("jane.ioBufferCachedSize", 65536, 0, 0x4000_0000);
+		ioBufferDirect = Boolean.parseBoolean(System.getProperty("jane.ioBufferDirect", "false").trim());
+		dbStorage = System.getProperty("jane.dbStorage", "leveldb");
+		dbCachePolicy = System.getProperty("jane.dbCachePolicy", "lru").trim();
 		dbFilename = System.getProperty("jane.dbFilename", "db/jane");
 		dbBackupPath = System.getProperty("jane.dbBackupPath", "db");
 		dbThreadCount = getPropInt("jane.dbThreadCount", 0, 0);
+		dbThreadSharded = Boolean.parseBoolean(System.getProperty("jane.dbThreadSharded", "false").trim());
+		dbThreadQueueSize = getPropInt("jane.dbThreadQueueSize", 0, 0, 0x4000_0000);
+		dbThreadQueueOverflow = System.getProperty("jane.dbThreadQueueOverflow", "block").trim();
 		deadlockCheckInterval = getPropInt("jane.deadlockCheckInterval", 10, 0);
+		deadlockDetectDepth = getPropInt("jane.deadlockDetectDepth", 16, 0);
 		maxSessionProcedure = getPropInt("jane.maxSessionProceduer", 65536, 1);
 		maxBatchProceduer = getPropInt("jane.maxBatchProceduer", 256, 1);
 		maxProceduerRedo = getPropInt("jane.maxProceduerRedo", 256, 1);
+		optimisticProcedureRetry = getPropInt("jane.optimisticProcedureRetry", 3, 0);
 		lockPoolSize = IntHashMap.nextPowerOfTwo(getPropInt("jane.lockPoolSize", 65536, 1, 0x4000_0000));
 		maxLockPerProcedure = getPropInt("jane.maxLockPerProcedure", 16, 4, 256);
 		dbSimpleCacheSize = getPropInt("jane.dbSimpleCacheSize", 10000, 1);
 		dbCommitResaveCount = getPropInt("jane.dbCommitResaveCount", 200000, 1);
 		dbCommitModCount = getPropInt("jane.dbCommitModCount", 200000, 1);
 		dbCommitPeriod = getPropLong("jane.dbCommitPeriod", 60, 1, 86400L * 366 * 10000); // 0x49_A06B_5000L
+		dbCommitThreads = getPropInt("jane.dbCommitThreads", 0, 0, 1024);
+		dbCommitSplitSize = getPropInt("jane.dbCommitSplitSize", 10000, 1);
+		dbCommitInterval = getPropInt("jane.dbCommitInterval", 0, 0, 60000);
+		dbCommitBatchCount = getPropInt("jane.dbCommitBatchCount", 10000, 1);
+		dbCommitRateCount = getPropInt("jane.dbCommitRateCount", 0, 0);
+		dbCommitRateBytes = getPropLong("jane.dbCommitRateBytes", 0, 0);
+		dbCommitEpochSize = getPropInt("jane.dbCommitEpochSize", 64, 1, 4096);
+		dbRedoSyncPeriod = getPropInt("jane.dbRedoSyncPeriod", 0, 0, 60000);
+		dbRedoSyncSize = getPropInt("jane.dbRedoSyncSize", 1024, 1, 1024 * 1024);
+		dbOffHeapCacheSize = getPropInt("jane.dbOffHeapCacheSize", 0, 0, 1024 * 1024);
+		dbCacheBudget = getPropInt("jane.dbCacheBudget", 0, 0, 1024 * 1024);
+		dbCacheBudgetPeriod = getPropInt("jane.dbCacheBudgetPeriod", 10, 1);
+		dbBloomBitsPerKey = getPropInt("jane.dbBloomBitsPerKey", 0, 0, 64);
+		dbBloomRebuildPeriod = getPropInt("jane.dbBloomRebuildPeriod", 600, 1);
+		dbNegativeCacheSize = getPropInt("jane.dbNegativeCacheSize", 0, 0);
+		dbPrefetchThreads = getPropInt("jane.dbPrefetchThreads", 4, 1, 256);
+		dbWalkParallelism = getPropInt("jane.dbWalkParallelism", 4, 1, 256);
+		dbWalkRateLimit = getPropInt("jane.dbWalkRateLimit", 0, 0);
 		dbBackupBase = System.getProperty("jane.dbBackupBase", "2014-01-06 04:00:00");
 		dbBackupPeriod = getPropLong("jane.dbBackupPeriod", 3600, 1, 86400L * 366 * 10000); // 0x49_A06B_5000L
 		procedureTimeout = getPropInt("jane.procedureTimeout", 60, 1);
 		procedureDeadlockTimeout = getPropInt("jane.procedureDeadlockTimeout", 5, 1);
+		procedureStat = Boolean.parseBoolean(System.getProperty("jane.procedureStat", "true").trim());
 		procedureShutdownTimeout = getPropInt("jane.procedureShutdownTimeout", 5, 0);
 		procedureShutdownNowTimeout = getPropInt("jane.procedureShutdownNowTimeout", 1, 0);
 		autoIdBegin = getPropInt("jane.autoIdBegin", 1, 1);
@@ -112,6 +172,8 @@ public final class Const
 		levelDBCacheSize = getPropInt("jane.levelDBCacheSize", 32, 1, 1024);
 		levelDBFileSize = getPropInt("jane.levelDBFileSize", 10, 1, 1024);
 		levelDBFullBackupPeriod = getPropLong("jane.levelDBFullBackupPeriod", 604800, 1, 86400L * 366 * 10000); // 0x49_A06B_5000L
+		mappedFileSize = getPropInt("jane.mappedFileSize", 64, 1, 1024);
+		mappedCompactRatio = getPropInt("jane.mappedCompactRatio", 50, 0, 100);
 	}
 
 	public static int getPropInt(String key, int def, int min)
@@ -5,13 +5,17 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -30,18 +34,48 @@ public final class DBManager
 
 	private static volatile boolean _hasCreated; // 是否创建过此类的对象
 
+	/**
+	 * 分片模式下绑定sid的事务. 开始运行时减少此sid的未运行事务数量
+	 */
+	private static final class ShardProcedure implements Runnable
+	{
+		private final Procedure		_proc;	// 实际的事务
+		private final AtomicInteger	_count;	// 此sid在分片中未运行的事务数量
+
+		ShardProcedure(Procedure proc, AtomicInteger count)
+		{
+			_proc = proc;
+			_count = count;
+		}
+
+		@Override
+		public void run()
+		{
+			_count.getAndDecrement();
+			_proc.run();
+		}
+	}
+
 	private final CommitThread								   _commitThread = new CommitThread();			// 处理数据提交的线程
 	private final ThreadPoolExecutor						   _procThreads;								// 事务线程池
+	private final ThreadPoolExecutor[]						   _procShards;									// 按sid分片的单线程事务线程池. null表示不使用分片模式
+	private final AtomicInteger								   _shardCounter = new AtomicInteger();			// 无sid事务轮流分配分片的计数器
+	private final ThreadPoolExecutor						   _prefetchThreads;							// 预读记录的线程池. 线程在首次预读时创建
 	private final ConcurrentMap<Object, ArrayDeque<Procedure>> _qmap		 = Util.newConcurrentHashMap();	// 当前sid队列的数量
+	private final ConcurrentMap<Object, AtomicInteger>		   _shardCounts	 = Util.newConcurrentHashMap();	// 分片模式下各sid在分片中未运行的事务数量
 	private final AtomicLong								   _procCount	 = new AtomicLong();			// 绑定过sid的在队列中未运行的事务数量
 	private final AtomicLong								   _modCount	 = new AtomicLong();			// 当前缓存修改的记录数
 	private String											   _dbFilename;									// 数据库的文件名(不含父路径,对LevelDB而言是目录名)
 	private String											   _dbBackupPath;								// 数据库的备份路径
 	private Storage											   _storage;									// 存储引擎
+	private volatile RedoLog								   _redoLog;									// 重做日志. null表示不使用
+	private OffHeapCache									   _offHeapCache;								// 各表共享的堆外缓存. null表示不使用
 	private volatile boolean								   _exiting;									// 是否在退出状态(已经执行了ShutdownHook)
 
 	/**
 	 * 周期向数据库存储提交事务性修改的线程(checkpoint)
+	 * <p>
+	 * 配置dbCommitInterval后为连续提交模式: 平时按限速分批保存已修改的记录,提交时只需短暂暂停事务来封存提交点
 	 */
 	private final class CommitThread extends Thread
 	{
@@ -51,12 +85,19 @@ public final class DBManager
 		private final long			   _backupPeriod = Const.dbBackupPeriod * 1000;				   // 备份数据库的周期 //NOSONAR
 		private volatile long		   _commitTime	 = System.currentTimeMillis() + _commitPeriod; // 下次提交数据库的时间
 		private volatile long		   _backupTime;												   // 下次备份数据库的时间
+		private final long			   _epochSize	 = Const.dbCommitEpochSize * 0x10_0000L;	   // 连续提交模式下触发提交的写缓冲区大小
+		private long				   _saveTime	 = System.currentTimeMillis();				   // 连续提交模式下上次分批保存的时间
+		private long				   _saveBytes;												   // 连续提交模式下分批保存的剩余字节配额(负数表示已超出的字节数)
+		private volatile long		   _epochBytes;												   // 连续提交模式下自上次提交后分批保存的字节数
+		private volatile boolean	   _allCommitted = true;									   // 已保存到存储的记录是否都已提交
+		private long				   _budgetTime;												   // 下次重新分配读缓存内存预算的时间
 
 		CommitThread()
 		{
 			super("CommitThread");
 			setDaemon(true);
 			setPriority(Thread.NORM_PRIORITY + 2);
+			_budgetTime = System.currentTimeMillis() + Const.dbCacheBudgetPeriod * 1000L;
 			try
 			{
 				long base = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(Const.dbBackupBase).getTime();
@@ -85,24 +126,129 @@ public final class DBManager
 			{
 				try
 				{
-					Thread.sleep(1000);
+					Thread.sleep(Const.dbCommitInterval > 0 ? Const.dbCommitInterval : 1000);
 				}
 				catch (InterruptedException e)
 				{
 					break;
 				}
+				if (Const.dbBloomBitsPerKey > 0)
+					tryBuildBloomFilters();
+				if (Const.dbCommitInterval > 0)
+					trySaveSome();
+				if (Const.dbCacheBudget > 0)
+					tryRebalanceCacheBudget();
 				if (!tryCommit(false))
 					break;
 			}
 		}
 
+		/**
+		 * 连续提交模式下按限速分批保存已修改的记录. 此时和其它事务可以并发
+		 * <p>
+		 * 写缓冲区达到上限后停止保存,等待下次提交
+		 */
+		void trySaveSome()
+		{
+			try
+			{
+				synchronized (DBManager.this)
+				{
+					Storage storage = getStorage();
+					if (storage == null)
+						return;
+					long t = System.currentTimeMillis();
+					long dt = t - _saveTime;
+					_saveTime = t;
+					long maxCount = Const.dbCommitBatchCount;
+					if (Const.dbCommitRateCount > 0)
+						maxCount = Math.min(maxCount, Math.max(Const.dbCommitRateCount * dt / 1000, 1));
+					if (Const.dbCommitRateBytes > 0)
+					{
+						_saveBytes = Math.min(_saveBytes + Const.dbCommitRateBytes * dt / 1000, Const.dbCommitRateBytes); // 最多积累1秒的配额
+						if (_saveBytes <= 0)
+							return;
+					}
+					if (_epochBytes >= _epochSize)
+						return;
+					_allCommitted = false;
+					storage.putBegin();
+					long size = storage.getPutSize();
+					_counts[0] = _counts[1] = _counts[2] = 0;
+					TableBase.trySaveModifiedSome(_counts, maxCount);
+					size = storage.getPutSize() - size;
+					_saveBytes -= size;
+					_epochBytes += size;
+				}
+			}
+			catch (Throwable e)
+			{
+				Log.error("db-commit fatal exception:", e);
+			}
+		}
+
+		/**
+		 * 按周期重新分配各表读缓存的内存预算
+		 */
+		void tryRebalanceCacheBudget()
+		{
+			long t = System.currentTimeMillis();
+			if (t < _budgetTime)
+				return;
+			_budgetTime = t + Const.dbCacheBudgetPeriod * 1000L;
+			try
+			{
+				synchronized (DBManager.this)
+				{
+					TableBase.rebalanceCacheBudget();
+				}
+			}
+			catch (Throwable e)
+			{
+				Log.error("db-commit rebalance cache budget exception:", e);
+			}
+		}
+
+		/**
+		 * 启动需要建立或重建的布隆过滤器
+		 * <p>
+		 * 只在已保存的记录都已提交时启动,此时存储中的key由后台线程遍历,写缓存中的key在持有锁时加入,之后的修改由put加入
+		 */
+		void tryBuildBloomFilters()
+		{
+			if (!_allCommitted)
+				return;
+			try
+			{
+				synchronized (DBManager.this)
+				{
+					if (getStorage() != null)
+						TableBase.startBloomFilters();
+				}
+			}
+			catch (Throwable e)
+			{
+				Log.error("db-commit build bloom filter exception:", e);
+			}
+		}
+
+		/**
+		 * 连续提交模式下判断自上次提交后分批保存的数据是否已达到上限,需要提交
+		 * <p>
+		 * 不能用存储引擎的getPutSize判断,因为引擎提交后要到下次putBegin才会清空写缓冲区
+		 */
+		private boolean isEpochFull()
+		{
+			return Const.dbCommitInterval > 0 && _epochBytes >= _epochSize;
+		}
+
 		boolean tryCommit(boolean force)
 		{
 			try
 			{
 				long t = System.currentTimeMillis();
 				long commitTime = _commitTime;
-				if (t < commitTime && _modCount.get() < Const.dbCommitModCount)
+				if (t < commitTime && _modCount.get() < Const.dbCommitModCount && !isEpochFull())
 					return true;
 				synchronized (DBManager.this)
 				{
@@ -125,8 +271,10 @@ public final class DBManager
 						{
 							// 1.首先尝试遍历单个加锁的方式保存已修改的记录. 此时和其它事务可以并发
 							long t0 = System.currentTimeMillis(), t1 = 0;
+							int redoSeq = -1;
 							Log.info("db-commit saving: {}...", modCount);
 							_counts[0] = _counts[1] = _counts[2] = 0;
+							_allCommitted = false;
 							storage.putBegin();
 							TableBase.trySaveModifiedAll(_counts);
 							// 2.如果前一轮遍历之后仍然有过多的修改记录,则再试一轮
@@ -137,7 +285,8 @@ public final class DBManager
 								TableBase.trySaveModifiedAll(_counts);
 							}
 							// 3.然后加全局事务锁,待其它事务都停止等待时,保存剩余已修改的记录. 只有此步骤不能和其它事务并发
-							if (_counts[2] != 0 || _counts[1] != 0 || _counts[0] != 0 || force)
+							// 连续提交模式下即使没有剩余的修改记录,只要有分批保存过的记录,也要暂停一次来封存一致的提交点
+							if (_counts[2] != 0 || _counts[1] != 0 || _counts[0] != 0 || storage.getPutCount() != 0 || force)
 							{
 								Log.info("db-commit saved: {}=>{}({}), flushing...", _counts[0], _counts[1], _counts[2]);
 								storage.putFlush(false);
@@ -150,25 +299,27 @@ public final class DBManager
 									Log.info("db-commit saving left...");
 									Log.info("db-commit saved: {}, flushing left...", TableBase.saveModifiedAll());
 									storage.putFlush(true);
+									if (_redoLog != null)
+										redoSeq = _redoLog.rotate();
 								}
 								finally
 								{
 									Procedure.writeUnlock();
 								}
 								t1 = System.currentTimeMillis() - t1;
-								if (storage instanceof StorageLevelDB)
-								{
-									StorageLevelDB stoLDB = (StorageLevelDB)storage;
-									Log.info("db-commit procedure continued, committing({}:{})...", stoLDB.getPutCount(), stoLDB.getPutSize());
-								}
-								else
-									Log.info("db-commit procedure continued, committing...");
+								Log.info("db-commit procedure continued, committing({}:{})...", storage.getPutCount(), storage.getPutSize());
 							}
 							else
 								Log.info("db-commit not found modified record");
 							// 4.最后恢复其它事务的运行,并对数据库存储系统做提交操作,完成一整轮的事务性持久化
 							long t2 = System.currentTimeMillis();
-							storage.commit();
+							if (storage.commit())
+							{
+								_allCommitted = true;
+								if (redoSeq >= 0)
+									_redoLog.deleteBefore(redoSeq);
+							}
+							_epochBytes = 0;
 							t3 = System.currentTimeMillis();
 							Log.info("db-commit done ({}/{}/{} ms)", t1, t3 - t2, t3 - t0);
 						}
@@ -219,13 +370,109 @@ public final class DBManager
 	{
 		_hasCreated = true;
 		AtomicInteger counter = new AtomicInteger();
-		_procThreads = (ThreadPoolExecutor)Executors.newFixedThreadPool(
-				Const.dbThreadCount > 0 ? Const.dbThreadCount : Runtime.getRuntime().availableProcessors(), r ->
+		int threadCount = (Const.dbThreadCount > 0 ? Const.dbThreadCount : Runtime.getRuntime().availableProcessors());
+		if (Const.dbThreadSharded)
+		{
+			_procThreads = null;
+			_procShards = new ThreadPoolExecutor[threadCount];
+			for (int i = 0; i < threadCount; ++i)
+			{
+				String name = "ProcShard-" + (i + 1);
+				_procShards[i] = createProcExecutor(1, r ->
+				{
+					Thread t = new ProcThread(name, r);
+					t.setDaemon(true);
+					return t;
+				});
+			}
+		}
+		else
+		{
+			_procThreads = createProcExecutor(threadCount, r ->
+			{
+				Thread t = new ProcThread("ProcThread-" + counter.incrementAndGet(), r);
+				t.setDaemon(true);
+				return t;
+			});
+			_procShards = null;
+		}
+		AtomicInteger prefetchCounter = new AtomicInteger();
+		_prefetchThreads = new ThreadPoolExecutor(Const.dbPrefetchThreads, Const.dbPrefetchThreads, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(), r ->
 				{
-					Thread t = new ProcThread("ProcThread-" + counter.incrementAndGet(), r);
+					Thread t = new Thread(r, "PrefetchThread-" + prefetchCounter.incrementAndGet());
 					t.setDaemon(true);
 					return t;
 				});
+		Metrics.gauge("jane_proc_session_count", "sessions with procedure queue", this::getSessionCount);
+		Metrics.gauge("jane_proc_queued_count", "procedures waiting in session queues", this::getProcQueuedCount);
+		Metrics.gauge("jane_proc_submitted_count", "procedures waiting in thread pool queues", this::getProcSubmittedCount);
+		Metrics.gauge("jane_proc_running_count", "procedures running", this::getProcRunningCount);
+		Metrics.counter("jane_proc_completed_total", "procedures completed", this::getProcCompletedCount);
+	}
+
+	/**
+	 * 创建固定线程数量的事务线程池
+	 * <p>
+	 * 配置dbThreadQueueSize后使用{@link RingBlockingQueue}作为任务队列,否则同Executors.newFixedThreadPool
+	 */
+	private static ThreadPoolExecutor createProcExecutor(int threadCount, ThreadFactory threadFactory)
+	{
+		if (Const.dbThreadQueueSize <= 0)
+			return new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+		RejectedExecutionHandler overflowHandler;
+		switch (Const.dbThreadQueueOverflow)
+		{
+		case "abort":
+			overflowHandler = new ThreadPoolExecutor.AbortPolicy();
+			break;
+		case "run":
+		case "block":
+			boolean callerRuns = "run".equals(Const.dbThreadQueueOverflow);
+			overflowHandler = (r, executor) ->
+			{
+				if (callerRuns && Thread.currentThread() instanceof ProcThread)
+				{
+					r.run();
+					return;
+				}
+				try
+				{
+					while (!executor.getQueue().offer(r, 100, TimeUnit.MILLISECONDS))
+					{
+						if (executor.isShutdown())
+							throw new RejectedExecutionException("procedure executor has been shutdown");
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException(e);
+				}
+			};
+			break;
+		default:
+			throw new IllegalArgumentException("unknown dbThreadQueueOverflow: " + Const.dbThreadQueueOverflow);
+		}
+		return new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new RingBlockingQueue(Const.dbThreadQueueSize, threadCount == 1), threadFactory, overflowHandler);
+	}
+
+	/**
+	 * 获取sid固定对应的事务线程分片
+	 */
+	private ThreadPoolExecutor getShard(Object sid)
+	{
+		int h = sid.hashCode();
+		return _procShards[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % _procShards.length];
+	}
+
+	/**
+	 * 获取下一个轮流分配的事务线程分片. 用于无sid的事务
+	 */
+	private ThreadPoolExecutor nextShard()
+	{
+		return _procShards[(_shardCounter.getAndIncrement() & Integer.MAX_VALUE) % _procShards.length];
 	}
 
 	/**
@@ -236,6 +483,24 @@ public final class DBManager
 		return _storage;
 	}
 
+	/**
+	 * 获取当前的重做日志
+	 * @return null表示没有开启重做日志
+	 */
+	public RedoLog getRedoLog()
+	{
+		return _redoLog;
+	}
+
+	/**
+	 * 获取各表共享的堆外缓存
+	 * @return null表示没有开启堆外缓存
+	 */
+	public OffHeapCache getOffHeapCache()
+	{
+		return _offHeapCache;
+	}
+
 	/**
 	 * 增加一次记录修改计数
 	 */
@@ -279,6 +544,9 @@ public final class DBManager
 		_dbBackupPath = dbBackupPath;
 		_storage = sto;
 		sto.openDB(dbfile);
+		_offHeapCache = (Const.dbOffHeapCacheSize > 0 ? new OffHeapCache((long)Const.dbOffHeapCacheSize << 20) : null);
+		if (Const.dbRedoSyncPeriod > 0)
+			_redoLog = new RedoLog(new File(dbfile.getPath() + ".redo"), Const.dbRedoSyncPeriod, Const.dbRedoSyncSize * 1024);
 		ExitManager.getShutdownSystemCallbacks().add(() ->
 		{
 			Log.info("DBManager.OnJVMShutDown: db shutdown");
@@ -287,13 +555,19 @@ public final class DBManager
 				synchronized (DBManager.this)
 				{
 					_exiting = true;
-					_procThreads.shutdown();
-					if (!_procThreads.awaitTermination(Const.procedureShutdownTimeout, TimeUnit.SECONDS))
+					ThreadPoolExecutor[] executors = getProcExecutors();
+					for (ThreadPoolExecutor executor : executors)
+						executor.shutdown();
+					long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(Const.procedureShutdownTimeout);
+					for (ThreadPoolExecutor executor : executors)
 					{
-						List<Runnable> procs = _procThreads.shutdownNow();
-						Log.warn("DBManager.OnJVMShutDown: {} procedures aborted", procs.size());
-						if (!_procThreads.awaitTermination(Const.procedureShutdownNowTimeout, TimeUnit.SECONDS))
-							Log.warn("DBManager.OnJVMShutDown: current procedures aborted");
+						if (!executor.awaitTermination(Math.max(timeout - System.nanoTime(), 0), TimeUnit.NANOSECONDS))
+						{
+							List<Runnable> procs = executor.shutdownNow();
+							Log.warn("DBManager.OnJVMShutDown: {} procedures aborted", procs.size());
+							if (!executor.awaitTermination(Const.procedureShutdownNowTimeout, TimeUnit.SECONDS))
+								Log.warn("DBManager.OnJVMShutDown: current procedures aborted");
+						}
 					}
 				}
 			}
@@ -313,11 +587,11 @@ public final class DBManager
 	 * 启动数据库系统
 	 * <p>
 	 * 必须在openTable和操作数据库之前启动<br>
-	 * 默认使用StorageLevelDB.instance()作为存储引擎
+	 * 默认使用StorageLevelDB.instance()作为存储引擎, 配置dbStorage=mapped时使用StorageMapped.instance()
 	 */
 	public void startup() throws IOException
 	{
-		startup(StorageLevelDB.instance(), Const.dbFilename, Const.dbBackupPath);
+		startup("mapped".equalsIgnoreCase(Const.dbStorage) ? StorageMapped.instance() : StorageLevelDB.instance(), Const.dbFilename, Const.dbBackupPath);
 	}
 
 	/**
@@ -338,7 +612,10 @@ public final class DBManager
 			throw new IllegalArgumentException("call DBManager.startup before open any table");
 		tableName = (tableName != null && !(tableName = tableName.trim()).isEmpty() ? tableName : '[' + String.valueOf(tableId) + ']');
 		Storage.Table<K, V> stoTable = (tableId >= 0 ? _storage.<K, V>openTable(tableId, tableName, stubK, stubV) : null);
-		return new Table<>(tableId, tableName, stoTable, lockName, cacheSize, stubV);
+		Table<K, V, S> table = new Table<>(tableId, tableName, stoTable, lockName, cacheSize, stubV, _offHeapCache);
+		if (_redoLog != null && stoTable != null)
+			_redoLog.replay(table, stubK, stubV);
+		return table;
 	}
 
 	/**
@@ -358,7 +635,10 @@ public final class DBManager
 			throw new IllegalArgumentException("call DBManager.startup before open any table");
 		tableName = (tableName != null && !(tableName = tableName.trim()).isEmpty() ? tableName : '[' + String.valueOf(tableId) + ']');
 		Storage.TableLong<V> stoTable = (tableId >= 0 ? _storage.openTable(tableId, tableName, stubV) : null);
-		return new TableLong<>(tableId, tableName, stoTable, lockName, cacheSize, stubV);
+		TableLong<V, S> table = new TableLong<>(tableId, tableName, stoTable, lockName, cacheSize, stubV, _offHeapCache);
+		if (_redoLog != null && stoTable != null)
+			_redoLog.replay(table, stubV);
+		return table;
 	}
 
 	/**
@@ -368,6 +648,8 @@ public final class DBManager
 	 */
 	public synchronized void startCommitThread()
 	{
+		if (_redoLog != null)
+			_redoLog.clearReplays();
 		if (!_commitThread.isAlive())
 			_commitThread.start();
 	}
@@ -415,7 +697,14 @@ public final class DBManager
 			{
 				checkpoint();
 				_storage = null;
+				TableBase.stopBloomFilters();
 				sto.close();
+				RedoLog redoLog = _redoLog;
+				if (redoLog != null)
+				{
+					_redoLog = null;
+					redoLog.close();
+				}
 			}
 		}
 		try
@@ -431,35 +720,70 @@ public final class DBManager
 	/**
 	 * 获取当前sid队列的数量
 	 * <p>
-	 * 现在只能通过clearSession或clearAllSessions来减少队列的数量
+	 * 现在只能通过clearSession或clearAllSessions来减少队列的数量. 分片模式下是记录了未运行事务数量的sid数量
 	 */
 	public long getSessionCount()
 	{
-		return _qmap.size();
+		return _procShards == null ? _qmap.size() : _shardCounts.size();
 	}
 
 	/**
 	 * 获取绑定过sid的在队列中未运行的事务数量
+	 * <p>
+	 * 分片模式下是所有分片中未运行的事务数量
 	 */
 	public long getProcQueuedCount()
 	{
-		return _procCount.get();
+		if (_procShards == null)
+			return _procCount.get();
+		long n = 0;
+		for (ThreadPoolExecutor shard : _procShards)
+			n += shard.getQueue().size();
+		return n;
 	}
 
 	/**
 	 * 获取当前事务线程池对象
+	 * <p>
+	 * 分片模式下事务都提交到各分片中,不创建此线程池而返回null,见{@link #getProcShards}
 	 */
 	public ThreadPoolExecutor getProcThreads()
 	{
 		return _procThreads;
 	}
 
+	/**
+	 * 获取按sid分片的事务线程池数组. null表示不使用分片模式
+	 */
+	public ThreadPoolExecutor[] getProcShards()
+	{
+		return _procShards;
+	}
+
+	/**
+	 * 获取预读记录的线程池
+	 * <p>
+	 * 预读线程只读取存储和访问读缓存,不是ProcThread,不能运行事务
+	 */
+	public ThreadPoolExecutor getPrefetchThreads()
+	{
+		return _prefetchThreads;
+	}
+
+	private ThreadPoolExecutor[] getProcExecutors()
+	{
+		return _procShards == null ? new ThreadPoolExecutor[] { _procThreads } : _procShards;
+	}
+
 	/**
 	 * 获取当前事务线程池待运行的事务数量
 	 */
 	public int getProcSubmittedCount()
 	{
-		return _procThreads.getQueue().size();
+		int n = 0;
+		for (ThreadPoolExecutor executor : getProcExecutors())
+			n += executor.getQueue().size();
+		return n;
 	}
 
 	/**
@@ -467,7 +791,10 @@ public final class DBManager
 	 */
 	public int getProcRunningCount()
 	{
-		return _procThreads.getActiveCount();
+		int n = 0;
+		for (ThreadPoolExecutor executor : getProcExecutors())
+			n += executor.getActiveCount();
+		return n;
 	}
 
 	/**
@@ -475,7 +802,10 @@ public final class DBManager
 	 */
 	public long getProcCompletedCount()
 	{
-		return _procThreads.getCompletedTaskCount();
+		long n = 0;
+		for (ThreadPoolExecutor executor : getProcExecutors())
+			n += executor.getCompletedTaskCount();
+		return n;
 	}
 
 	/**
@@ -483,6 +813,18 @@ public final class DBManager
 	 */
 	public void stopQueue(Object sid)
 	{
+		if (_procShards != null)
+		{
+			ThreadPoolExecutor shard = getShard(sid);
+			shard.execute(() -> shard.getQueue().removeIf(r ->
+			{
+				if (!(r instanceof ShardProcedure) || !sid.equals(((ShardProcedure)r)._proc.getSid()))
+					return false;
+				((ShardProcedure)r)._count.getAndDecrement();
+				return true;
+			}));
+			return;
+		}
 		submit(sid, new Procedure()
 		{
 			@Override
@@ -524,6 +866,12 @@ public final class DBManager
 			}
 		});
 		counts[1] = _qmap.size();
+		// 分片模式的计数在回收后仍可能被并发的submit使用,此时只会暂时放宽这个sid的数量上限
+		_shardCounts.forEach((sid, n) ->
+		{
+			if (n.get() == 0)
+				_shardCounts.remove(sid, n);
+		});
 	}
 
 	/**
@@ -531,7 +879,7 @@ public final class DBManager
 	 */
 	public void submit(Procedure p)
 	{
-		_procThreads.execute(p);
+		(_procShards != null ? nextShard() : _procThreads).execute(p);
 	}
 
 	/**
@@ -539,7 +887,7 @@ public final class DBManager
 	 */
 	public Future<?> submitFuture(Procedure p)
 	{
-		return _procThreads.submit(p);
+		return (_procShards != null ? nextShard() : _procThreads).submit(p);
 	}
 
 	/**
@@ -548,13 +896,80 @@ public final class DBManager
 	 * 不同sid的事务会并发处理,但相同的sid会按照提交顺序排队处理<br>
 	 * 如果队列中的事务数量超过上限(Const.maxSessionProcedure),则会清除这个sid的整个队列并输出错误日志<br>
 	 * sid即SessionId,一般表示网络连接的ID,事务运行时可以获取这个对象({@link Procedure#getSid})<br>
-	 * 当这个sid失效且不需要处理其任何未处理的事务时,应该调用clearSession清除这个sid的队列以避免少量的内存泄漏
+	 * 当这个sid失效且不需要处理其任何未处理的事务时,应该调用clearSession清除这个sid的队列以避免少量的内存泄漏<br>
+	 * 分片模式下相同sid的事务固定提交到同一个分片线程,按提交顺序运行,同样按sid统计未运行的事务数量并检查上限
 	 */
 	public void submit(Object sid, Procedure p)
 	{
+		if (_procShards != null)
+		{
+			p.setSid(sid);
+			if (sid == null)
+			{
+				nextShard().execute(p);
+				return;
+			}
+			AtomicInteger n = _shardCounts.computeIfAbsent(sid, __ -> new AtomicInteger());
+			int qs = n.getAndIncrement();
+			if (qs >= Const.maxSessionProcedure)
+			{
+				n.getAndDecrement();
+				throw new IllegalStateException("procedure overflow: procedure=" + p.getClass().getName() +
+						",sid=" + sid + ",size=" + qs + ",maxsize=" + Const.maxSessionProcedure);
+			}
+			try
+			{
+				getShard(sid).execute(new ShardProcedure(p, n));
+			}
+			catch (Throwable e)
+			{
+				n.getAndDecrement();
+				throw e;
+			}
+			return;
+		}
 		submit(_procThreads, sid, p);
 	}
 
+	/**
+	 * 同{@link #submit(Object sid, Procedure p)},但先开始预读事务将要访问的记录,预读完成后再提交事务
+	 * <p>
+	 * 预读在预读线程池中并行进行,等待期间不占用事务线程,也不持有任何记录锁<br>
+	 * 事务在预读完成后才进入sid的队列,所以可能排在之后提交的相同sid的事务之后. 提交失败(如超过队列上限)时只输出错误日志
+	 */
+	public void submit(Object sid, Procedure p, TableLong<?, ?> table, long... keys)
+	{
+		submitAfter(table.prefetchAsync(keys), sid, p);
+	}
+
+	/**
+	 * 见{@link #submit(Object sid, Procedure p, TableLong table, long... keys)}
+	 */
+	public <K> void submit(Object sid, Procedure p, Table<K, ?, ?> table, Collection<? extends K> keys)
+	{
+		submitAfter(table.prefetchAsync(keys), sid, p);
+	}
+
+	private void submitAfter(CompletableFuture<Void> prefetch, Object sid, Procedure p)
+	{
+		if (prefetch.isDone())
+		{
+			submit(sid, p);
+			return;
+		}
+		prefetch.whenComplete((r, e) ->
+		{
+			try
+			{
+				submit(sid, p);
+			}
+			catch (Throwable ex)
+			{
+				Log.error("submit after prefetch failed: procedure=" + p.getClass().getName() + ",sid=" + sid, ex);
+			}
+		});
+	}
+
 	/**
 	 * 见{@link #submit(Object sid, Procedure p)}<br>
 	 * 可使用自定义的线程池(必须是ProcThread)
@@ -0,0 +1,75 @@
+package jane.core;
+
+import java.util.Arrays;
+
+/**
+ * bean字段ID的不可变集合
+ * <p>
+ * 用于投影反序列化,只解码集合中的字段,其余字段跳过. 字段ID的范围是[1,190]
+ */
+public final class FieldSet
+{
+	public static final int	MAX_ID = 190;		  // 字段ID的最大值
+
+	private final long[]	_bits  = new long[3]; // 字段ID的位集合
+
+	private FieldSet()
+	{
+	}
+
+	/**
+	 * 创建包含指定字段ID的集合
+	 */
+	public static FieldSet of(int... ids)
+	{
+		FieldSet fs = new FieldSet();
+		for (int id : ids)
+		{
+			if (id < 1 || id > MAX_ID)
+				throw new IllegalArgumentException("invalid field id: " + id);
+			fs._bits[id >> 6] |= 1L << id;
+		}
+		return fs;
+	}
+
+	public boolean contains(int id)
+	{
+		return id > 0 && id <= MAX_ID && (_bits[id >> 6] & (1L << id)) != 0;
+	}
+
+	public boolean isEmpty()
+	{
+		return (_bits[0] | _bits[1] | _bits[2]) == 0;
+	}
+
+	public int size()
+	{
+		return Long.bitCount(_bits[0]) + Long.bitCount(_bits[1]) + Long.bitCount(_bits[2]);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(_bits);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return this == o || o instanceof FieldSet && Arrays.equals(_bits, ((FieldSet)o)._bits);
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder().append('{');
+		for (int id = 1; id <= MAX_ID; ++id)
+		{
+			if (contains(id))
+				sb.append(id).append(',');
+		}
+		if (sb.length() > 1)
+			sb.setLength(sb.length() - 1);
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,120 @@
+package jane.core;
+
+/**
+ * 按对数分段的计数直方图
+ * <p>
+ * 每个2的幂区间再均分成4段,相对误差不超过25%. 记录时不分配对象也不同步,只能由一个线程记录<br>
+ * 读取其它线程记录中的直方图只是近似值,一般先合并({@link #merge})到新的直方图再读取
+ */
+public final class LogHistogram
+{
+	private static final int SUB_BITS	  = 2;							  // 每个2的幂区间再分段的位数
+	private static final int SUB_COUNT	  = 1 << SUB_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT; // 覆盖全部非负long值
+
+	private final long[] _counts = new long[BUCKET_COUNT];
+	private long		 _count;										 // 记录的总次数
+	private long		 _sum;											 // 记录的值总和
+	private long		 _max;											 // 记录的最大值
+
+	static int bucketIndex(long v)
+	{
+		if (v < SUB_COUNT)
+			return v > 0 ? (int)v : 0;
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		return ((e - SUB_BITS + 1) << SUB_BITS) + (int)((v >>> (e - SUB_BITS)) & (SUB_COUNT - 1));
+	}
+
+	/**
+	 * 获取分段的最小值
+	 */
+	static long bucketLowerBound(int i)
+	{
+		if (i < SUB_COUNT)
+			return i;
+		int e = (i >> SUB_BITS) + SUB_BITS - 1;
+		return (long)(SUB_COUNT + (i & (SUB_COUNT - 1))) << (e - SUB_BITS);
+	}
+
+	/**
+	 * 记录一个值. 负数按0记录
+	 */
+	public void record(long v)
+	{
+		if (v < 0)
+			v = 0;
+		++_counts[bucketIndex(v)];
+		++_count;
+		_sum += v;
+		if (v > _max)
+			_max = v;
+	}
+
+	/**
+	 * 把另一个直方图的记录累加到当前直方图中
+	 */
+	public void merge(LogHistogram h)
+	{
+		long[] counts = h._counts;
+		for (int i = 0; i < BUCKET_COUNT; ++i)
+			_counts[i] += counts[i];
+		_count += h._count;
+		_sum += h._sum;
+		if (h._max > _max)
+			_max = h._max;
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < BUCKET_COUNT; ++i)
+			_counts[i] = 0;
+		_count = 0;
+		_sum = 0;
+		_max = 0;
+	}
+
+	public long getCount()
+	{
+		return _count;
+	}
+
+	public long getSum()
+	{
+		return _sum;
+	}
+
+	public long getMax()
+	{
+		return _max;
+	}
+
+	public long getMean()
+	{
+		return _count > 0 ? _sum / _count : 0;
+	}
+
+	/**
+	 * 获取百分位数的近似值(所在分段的上限,不超过最大值)
+	 * @param percent 百分比,范围[0,100]
+	 */
+	public long getPercentile(double percent)
+	{
+		long n = _count;
+		if (n <= 0)
+			return 0;
+		long rank = Math.max((long)Math.ceil(n * Math.min(Math.max(percent, 0), 100) / 100), 1);
+		long c = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i)
+		{
+			if ((c += _counts[i]) >= rank)
+				return i + 1 < BUCKET_COUNT ? Math.min(bucketLowerBound(i + 1) - 1, _max) : _max;
+		}
+		return _max;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "{count=" + _count + ",mean=" + getMean() + ",p50=" + getPercentile(50) + ",p99=" + getPercentile(99) + ",max=" + _max + '}';
+	}
+}
@@ -0,0 +1,316 @@
+package jane.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * 全局的监控指标注册表
+ * <p>
+ * 各模块注册计数器(counter),即时值(gauge)和直方图(summary),由{@link #writePrometheus}和{@link #writeJson}输出<br>
+ * 指标名,标签和说明在注册时就编码好,输出时只格式化数值,除了合并直方图的临时对象外不分配内存<br>
+ * 同名和同标签的重复注册会替换之前的注册<br>
+ * 取值返回{@link #ABSENT}或抛出异常时表示当前没有值,Prometheus格式省略这个序列,JSON格式输出null
+ */
+public final class Metrics
+{
+	/**
+	 * 直方图的数据来源. 需要把当前数据合并到参数的直方图中
+	 */
+	public interface HistogramSource
+	{
+		void mergeTo(LogHistogram h);
+	}
+
+	public static final long ABSENT = Long.MIN_VALUE; // 表示当前没有值
+
+	private static final double[] QUANTILE_PERCENTS	= { 50, 90, 99, 100 };
+	private static final byte[][] QUANTILE_LABELS	= { bytes("quantile=\"0.5\"} "), bytes("quantile=\"0.9\"} "), bytes("quantile=\"0.99\"} "), bytes("quantile=\"1\"} ") };
+	private static final byte[][] QUANTILE_KEYS		= { bytes(",\"p50\":"), bytes(",\"p90\":"), bytes(",\"p99\":"), bytes(",\"max\":") };
+
+	private static final class Series
+	{
+		final String		  labelKey;	  // 用于判断是否同一序列
+		final byte[]		  promLabels; // Prometheus格式的标签,不含结尾的'}',空标签时为空数组
+		final byte[]		  jsonLabels; // JSON格式的标签对象
+		final LongSupplier	  value;
+		final HistogramSource histogram;
+
+		Series(String[] labels, LongSupplier value, HistogramSource histogram)
+		{
+			StringBuilder key = new StringBuilder();
+			StringBuilder prom = new StringBuilder();
+			StringBuilder json = new StringBuilder().append('{');
+			for (int i = 0; i + 1 < labels.length; i += 2)
+			{
+				key.append(labels[i]).append('\0').append(labels[i + 1]).append('\0');
+				prom.append(i == 0 ? '{' : ',').append(labels[i]).append("=\"");
+				escape(prom, labels[i + 1]).append('"');
+				if (i > 0)
+					json.append(',');
+				escape(json.append('"'), labels[i]).append("\":\"");
+				escape(json, labels[i + 1]).append('"');
+			}
+			labelKey = key.toString();
+			promLabels = prom.toString().getBytes(StandardCharsets.UTF_8);
+			jsonLabels = json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+			this.value = value;
+			this.histogram = histogram;
+		}
+	}
+
+	private static final class Family
+	{
+		final String					   type;
+		final byte[]					   name;
+		final byte[]					   promHead;							 // "# HELP ...\n# TYPE ...\n"
+		final byte[]					   jsonHead;							 // "\"name\":{\"type\":...,\"help\":...,\"series\":["
+		final CopyOnWriteArrayList<Series> series = new CopyOnWriteArrayList<>();
+
+		Family(String name, String type, String help)
+		{
+			this.type = type;
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			StringBuilder sb = new StringBuilder();
+			sb.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+			promHead = sb.toString().getBytes(StandardCharsets.UTF_8);
+			sb.setLength(0);
+			sb.append('"').append(name).append("\":{\"type\":\"").append(type).append("\",\"help\":\"");
+			escape(sb, help).append("\",\"series\":[");
+			jsonHead = sb.toString().getBytes(StandardCharsets.UTF_8);
+		}
+
+		synchronized void add(Series s)
+		{
+			for (int i = 0, n = series.size(); i < n; ++i)
+			{
+				if (series.get(i).labelKey.equals(s.labelKey))
+				{
+					series.set(i, s);
+					return;
+				}
+			}
+			series.add(s);
+		}
+	}
+
+	private static final ConcurrentHashMap<String, Family> _familyMap = new ConcurrentHashMap<>();	  // 指标名到指标族的映射
+	private static final CopyOnWriteArrayList<Family>	   _families  = new CopyOnWriteArrayList<>(); // 按注册顺序的全部指标族
+	private static final ThreadLocal<Octets>			   _outBuf	  = ThreadLocal.withInitial(() -> new Octets(0x10000));
+
+	private Metrics()
+	{
+	}
+
+	private static byte[] bytes(String s)
+	{
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static StringBuilder escape(StringBuilder sb, String s)
+	{
+		for (int i = 0, n = s.length(); i < n; ++i)
+		{
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c == '\n')
+				sb.append("\\n");
+			else if (c >= 0x20)
+				sb.append(c);
+		}
+		return sb;
+	}
+
+	private static void register(String name, String type, String help, Series s)
+	{
+		Family f = _familyMap.get(name);
+		if (f == null)
+		{
+			synchronized (_families)
+			{
+				f = _familyMap.get(name);
+				if (f == null)
+				{
+					f = new Family(name, type, help);
+					_families.add(f);
+					_familyMap.put(name, f);
+				}
+			}
+		}
+		if (!f.type.equals(type))
+			throw new IllegalArgumentException("metric type unmatched: name=" + name + ",type=" + f.type + ",newType=" + type);
+		f.add(s);
+	}
+
+	/**
+	 * 注册只增不减的计数器
+	 * @param labels 交替的标签名和标签值
+	 */
+	public static void counter(String name, String help, LongSupplier value, String... labels)
+	{
+		register(name, "counter", help, new Series(labels, value, null));
+	}
+
+	/**
+	 * 注册即时值
+	 * @param labels 交替的标签名和标签值
+	 */
+	public static void gauge(String name, String help, LongSupplier value, String... labels)
+	{
+		register(name, "gauge", help, new Series(labels, value, null));
+	}
+
+	/**
+	 * 注册直方图,输出百分位数,总数和总和
+	 * @param labels 交替的标签名和标签值
+	 */
+	public static void summary(String name, String help, HistogramSource histogram, String... labels)
+	{
+		register(name, "summary", help, new Series(labels, null, histogram));
+	}
+
+	/**
+	 * 获取当前线程输出指标用的缓冲区(已清空)
+	 */
+	public static Octets localBuffer()
+	{
+		Octets buf = _outBuf.get();
+		buf.clear();
+		return buf;
+	}
+
+	private static Octets appendAscii(Octets out, String s)
+	{
+		for (int i = 0, n = s.length(); i < n; ++i)
+			out.append((byte)s.charAt(i));
+		return out;
+	}
+
+	static Octets appendLong(Octets out, long v)
+	{
+		if (v < 0)
+		{
+			if (v == Long.MIN_VALUE)
+				return appendAscii(out, "-9223372036854775808");
+			out.append((byte)'-');
+			v = -v;
+		}
+		int len = 1;
+		for (long t = v; t >= 10; t /= 10)
+			++len;
+		int n = out.size();
+		out.resize(n + len);
+		byte[] buf = out.array();
+		for (int i = n + len - 1; i >= n; --i, v /= 10)
+			buf[i] = (byte)('0' + v % 10);
+		return out;
+	}
+
+	private static long getValue(LongSupplier value)
+	{
+		try
+		{
+			return value.getAsLong();
+		}
+		catch (Exception e)
+		{
+			return ABSENT;
+		}
+	}
+
+	/**
+	 * 以Prometheus文本格式(version 0.0.4)输出全部指标
+	 */
+	public static Octets writePrometheus(Octets out)
+	{
+		LogHistogram h = null;
+		for (Family f : _families)
+		{
+			out.append(f.promHead);
+			for (Series s : f.series)
+			{
+				byte[] labels = s.promLabels;
+				if (s.histogram == null)
+				{
+					long v = getValue(s.value);
+					if (v == ABSENT)
+						continue;
+					out.append(f.name).append(labels);
+					if (labels.length > 0)
+						out.append((byte)'}');
+					appendLong(out.append((byte)' '), v).append((byte)'\n');
+					continue;
+				}
+				if (h == null)
+					h = new LogHistogram();
+				else
+					h.reset();
+				s.histogram.mergeTo(h);
+				for (int i = 0; i < QUANTILE_PERCENTS.length; ++i)
+				{
+					out.append(f.name).append(labels).append((byte)(labels.length > 0 ? ',' : '{')).append(QUANTILE_LABELS[i]);
+					appendLong(out, h.getPercentile(QUANTILE_PERCENTS[i])).append((byte)'\n');
+				}
+				appendAscii(out.append(f.name), "_sum").append(labels);
+				if (labels.length > 0)
+					out.append((byte)'}');
+				appendLong(out.append((byte)' '), h.getSum()).append((byte)'\n');
+				appendAscii(out.append(f.name), "_count").append(labels);
+				if (labels.length > 0)
+					out.append((byte)'}');
+				appendLong(out.append((byte)' '), h.getCount()).append((byte)'\n');
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * 以JSON格式输出全部指标
+	 * <p>
+	 * 格式: {"指标名":{"type":"类型","help":"说明","series":[{"labels":{...},"value":值},...]},...}<br>
+	 * summary类型的序列没有value,而是count,sum,p50,p90,p99,max
+	 */
+	public static Octets writeJson(Octets out)
+	{
+		LogHistogram h = null;
+		out.append((byte)'{');
+		boolean firstFamily = true;
+		for (Family f : _families)
+		{
+			if (!firstFamily)
+				out.append((byte)',');
+			firstFamily = false;
+			out.append(f.jsonHead);
+			boolean first = true;
+			for (Series s : f.series)
+			{
+				if (!first)
+					out.append((byte)',');
+				first = false;
+				appendAscii(out, "{\"labels\":").append(s.jsonLabels);
+				if (s.histogram == null)
+				{
+					long v = getValue(s.value);
+					appendAscii(out, ",\"value\":");
+					(v != ABSENT ? appendLong(out, v) : appendAscii(out, "null")).append((byte)'}');
+					continue;
+				}
+				if (h == null)
+					h = new LogHistogram();
+				else
+					h.reset();
+				s.histogram.mergeTo(h);
+				appendLong(appendAscii(out, ",\"count\":"), h.getCount());
+				appendLong(appendAscii(out, ",\"sum\":"), h.getSum());
+				for (int i = 0; i < QUANTILE_PERCENTS.length; ++i)
+					appendLong(out.append(QUANTILE_KEYS[i]), h.getPercentile(QUANTILE_PERCENTS[i]));
+				out.append((byte)'}');
+			}
+			out.append((byte)']').append((byte)'}');
+		}
+		return out.append((byte)'}');
+	}
+}
@@ -0,0 +1,157 @@
+package jane.core;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * 无锁的多生产者多消费者的定长Object Ring Buffer队列
+ * <p>
+ * 元素不能为null. 不会阻塞,满时offer返回false,空时poll返回null<br>
+ * 每个位置有独立的序号,生产者和消费者只竞争各自的位置,不需要按顺序等待其它线程完成
+ */
+public final class MpmcRingBuffer<T>
+{
+	static final class PaddingAtomicLong extends AtomicLong
+	{
+		private static final long serialVersionUID = 1L;
+		long					  v3, v4, v5, v6, v7;
+	}
+
+	private final AtomicReferenceArray<T> _buffer;
+	private final AtomicLongArray		  _seqs;							  // 每个位置的序号: 等于位置号时可写,等于位置号+1时可读
+	private final int					  _idxMask;
+	private final PaddingAtomicLong		  _writeIdx	= new PaddingAtomicLong();
+	private final PaddingAtomicLong		  _readIdx	= new PaddingAtomicLong();
+
+	/**
+	 * @param bufSize buffer数组的长度,也是最大容量. 必须是2的幂
+	 */
+	public MpmcRingBuffer(int bufSize)
+	{
+		if (bufSize <= 0 || Integer.highestOneBit(bufSize) != bufSize)
+			throw new IllegalArgumentException("bufSize=" + bufSize);
+		_buffer = new AtomicReferenceArray<>(bufSize);
+		_seqs = new AtomicLongArray(bufSize);
+		for (int i = 0; i < bufSize; ++i)
+			_seqs.set(i, i);
+		_idxMask = bufSize - 1;
+	}
+
+	public int capacity()
+	{
+		return _idxMask + 1;
+	}
+
+	public int size()
+	{
+		long n = _writeIdx.get() - _readIdx.get();
+		return n <= 0 ? 0 : (int)Math.min(n, _idxMask + 1);
+	}
+
+	public boolean isEmpty()
+	{
+		return _writeIdx.get() == _readIdx.get();
+	}
+
+	public boolean offer(T obj)
+	{
+		if (obj == null)
+			throw new NullPointerException();
+		for (;;)
+		{
+			long wi = _writeIdx.get();
+			int i = (int)wi & _idxMask;
+			long d = _seqs.get(i) - wi;
+			if (d == 0)
+			{
+				if (_writeIdx.compareAndSet(wi, wi + 1))
+				{
+					_buffer.lazySet(i, obj);
+					_seqs.set(i, wi + 1); // 需要volatile写,保证之后读取等待状态时不会重排
+					return true;
+				}
+			}
+			else if (d < 0) // 此位置还没被上一轮的消费者取走
+				return false;
+		}
+	}
+
+	/**
+	 * 生产者已占用但还没写入的位置也视为空
+	 */
+	public T poll()
+	{
+		for (;;)
+		{
+			long ri = _readIdx.get();
+			int i = (int)ri & _idxMask;
+			long ri1 = ri + 1;
+			long d = _seqs.get(i) - ri1;
+			if (d == 0)
+			{
+				if (_readIdx.compareAndSet(ri, ri1))
+				{
+					T obj = _buffer.getAndSet(i, null);
+					_seqs.lazySet(i, ri + _idxMask + 1);
+					return obj;
+				}
+			}
+			else if (d < 0)
+				return null;
+		}
+	}
+
+	public T peek()
+	{
+		for (;;)
+		{
+			long ri = _readIdx.get();
+			int i = (int)ri & _idxMask;
+			if (_seqs.get(i) != ri + 1)
+				return null;
+			T obj = _buffer.get(i);
+			if (obj != null && _readIdx.get() == ri)
+				return obj;
+		}
+	}
+
+	/**
+	 * 把队列中满足条件的元素原地替换成另一个元素,不改变队列长度和顺序
+	 * <p>
+	 * 正在写入或正被取出的元素可能会错过
+	 * @return 替换的元素数量
+	 */
+	public int replaceIf(Predicate<? super T> filter, T replacement)
+	{
+		if (replacement == null)
+			throw new NullPointerException();
+		int n = 0;
+		for (long ri = _readIdx.get(), wi = _writeIdx.get(); ri < wi; ++ri)
+		{
+			int i = (int)ri & _idxMask;
+			if (_seqs.get(i) != ri + 1)
+				continue;
+			T obj = _buffer.get(i);
+			if (obj != null && filter.test(obj) && _buffer.compareAndSet(i, obj, replacement))
+				++n;
+		}
+		return n;
+	}
+
+	/**
+	 * 把队列中当前的元素按顺序复制到集合中. 只是近似的快照
+	 */
+	public void copyTo(Collection<? super T> out)
+	{
+		for (long ri = _readIdx.get(), wi = _writeIdx.get(); ri < wi; ++ri)
+		{
+			int i = (int)ri & _idxMask;
+			T obj = _buffer.get(i);
+			if (obj != null && _seqs.get(i) == ri + 1)
+				out.add(obj);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package jane.core;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+import jane.core.MpmcRingBuffer.PaddingAtomicLong;
+
+/**
+ * 无锁的多生产者单消费者的定长Object Ring Buffer队列
+ * <p>
+ * 元素不能为null. 不会阻塞,满时offer返回false,空时poll返回null<br>
+ * 消费者(poll)只能固定一个线程访问
+ */
+public final class MpscRingBuffer<T>
+{
+	private final AtomicReferenceArray<T> _buffer;
+	private final int					  _idxMask;
+	private final PaddingAtomicLong		  _writeIdx	= new PaddingAtomicLong();
+	private final PaddingAtomicLong		  _readIdx	= new PaddingAtomicLong();
+	private long						  _writeCacheIdx;					  // 消费者缓存的_writeIdx
+	private long						  _readCacheIdx;					  // 生产者缓存的_readIdx,只是提示值
+
+	/**
+	 * @param bufSize buffer数组的长度. 必须是2的幂,至少是2. 最大容量是bufSize-1
+	 */
+	public MpscRingBuffer(int bufSize)
+	{
+		if (bufSize < 2 || Integer.highestOneBit(bufSize) != bufSize)
+			throw new IllegalArgumentException("bufSize=" + bufSize);
+		_buffer = new AtomicReferenceArray<>(bufSize);
+		_idxMask = bufSize - 1;
+	}
+
+	public int capacity()
+	{
+		return _idxMask;
+	}
+
+	public int size()
+	{
+		long n = _writeIdx.get() - _readIdx.get();
+		return n <= 0 ? 0 : (int)Math.min(n, _idxMask);
+	}
+
+	public boolean isEmpty()
+	{
+		return _writeIdx.get() == _readIdx.get();
+	}
+
+	public boolean offer(T obj)
+	{
+		if (obj == null)
+			throw new NullPointerException();
+		for (;;)
+		{
+			long wi = _writeIdx.get();
+			long p = wi - _idxMask;
+			if (_readCacheIdx <= p && (_readCacheIdx = _readIdx.get()) <= p)
+				return false;
+			if (_writeIdx.compareAndSet(wi, wi + 1))
+			{
+				_buffer.lazySet((int)wi & _idxMask, obj);
+				return true;
+			}
+		}
+	}
+
+	public T poll()
+	{
+		long ri = _readIdx.get();
+		if (ri == _writeCacheIdx && ri == (_writeCacheIdx = _writeIdx.get()))
+			return null;
+		_readIdx.lazySet(ri + 1);
+		for (int i = (int)ri & _idxMask, n = 0;;) // 生产者已占用位置但可能还没写入
+		{
+			T obj = _buffer.get(i);
+			if (obj != null)
+			{
+				_buffer.lazySet(i, null);
+				return obj;
+			}
+			if (++n > 50)
+				Thread.yield();
+		}
+	}
+
+	public T peek()
+	{
+		long ri = _readIdx.get();
+		if (ri == _writeIdx.get())
+			return null;
+		for (int i = (int)ri & _idxMask, n = 0;;)
+		{
+			T obj = _buffer.get(i);
+			if (obj != null)
+				return obj;
+			if (++n > 50)
+				Thread.yield();
+		}
+	}
+
+	/**
+	 * 把队列中满足条件的元素原地替换成另一个元素,不改变队列长度和顺序
+	 * <p>
+	 * 正在写入或正被取出的元素可能会错过
+	 * @return 替换的元素数量
+	 */
+	public int replaceIf(Predicate<? super T> filter, T replacement)
+	{
+		if (replacement == null)
+			throw new NullPointerException();
+		int n = 0;
+		for (long ri = _readIdx.get(), wi = _writeIdx.get(); ri < wi; ++ri)
+		{
+			int i = (int)ri & _idxMask;
+			T obj = _buffer.get(i);
+			if (obj != null && filter.test(obj) && _buffer.compareAndSet(i, obj, replacement))
+				++n;
+		}
+		return n;
+	}
+
+	/**
+	 * 把队列中当前的元素按顺序复制到集合中. 只是近似的快照
+	 */
+	public void copyTo(Collection<? super T> out)
+	{
+		for (long ri = _readIdx.get(), wi = _writeIdx.get(); ri < wi; ++ri)
+		{
+			T obj = _buffer.get((int)ri & _idxMask);
+			if (obj != null)
+				out.add(obj);
+		}
+	}
+}
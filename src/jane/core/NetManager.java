@@ -25,11 +25,13 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.core.write.DefaultWriteRequest;
 import org.apache.mina.core.write.WriteRequest;
 import org.apache.mina.transport.socket.DefaultSocketSessionConfig;
+import org.apache.mina.transport.socket.nio.NioProcessor;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.apache.mina.transport.socket.nio.NioSocketConnector;
 import jane.core.map.IntHashMap;
 import jane.core.map.LongConcurrentHashMap;
 import jane.core.map.LongMap.MapIterator;
+import jane.tool.CachedIoBufferAllocator;
 
 /**
  * 网络管理器
@@ -79,6 +81,9 @@ public class NetManager implements IoHandler
 
 	static
 	{
+		if (Const.ioBufferPoolSize > 0)
+			CachedIoBufferAllocator.globalSet(Const.ioBufferDirect, Const.ioBufferPoolSize, Const.ioBufferCachedSize);
+		Metrics.gauge("jane_net_ask_count", "asks waiting for answer", NetManager::getAskCount);
 		_scheduledThread = Executors.newSingleThreadScheduledExecutor(r ->
 		{
 			Thread t = new Thread(r, "ScheduledThread");
@@ -631,6 +636,40 @@ public class NetManager implements IoHandler
 		return true;
 	}
 
+	/**
+	 * 向多个连接广播同一个bean
+	 * <p>
+	 * bean只序列化一次,所有连接共享同一份只读数据,不会复制. 同一个IO线程上的连接只唤醒一次IO线程<br>
+	 * 连接上不能有原地修改发送数据的过滤器(如加密过滤器). 此操作是异步的
+	 * @param bean 如果其type==0,则认为是RawBean类型,仅仅发送RawBean的数据部分
+	 * @return 成功投递的连接数量
+	 */
+	public int broadcast(Collection<IoSession> sessions, Bean<?> bean)
+	{
+		if (bean == null || sessions.isEmpty())
+			return 0;
+		bean.serial(0);
+		RawBean rawBean = (bean.type() == 0 ? (RawBean)bean : new RawBean(bean));
+		int n = 0;
+		boolean batch = NioProcessor.beginBatchFlush();
+		try
+		{
+			for (IoSession session : sessions)
+			{
+				if (write(session, rawBean))
+					++n;
+			}
+		}
+		finally
+		{
+			if (batch)
+				NioProcessor.endBatchFlush();
+		}
+		if (_enableTrace)
+			Log.trace("{}: broadcast({}/{}): {}:{}", _name, n, sessions.size(), bean.typeName(), bean);
+		return n;
+	}
+
 	/**
 	 * 向某个连接发送bean
 	 * <p>
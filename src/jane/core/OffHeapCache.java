@@ -0,0 +1,320 @@
+package jane.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆外记录缓存
+ * <p>
+ * 作为各表读缓存和存储引擎之间的二级缓存,保存记录序列化后的数据. 数据放在直接内存中,不占用堆空间,不受GC影响<br>
+ * 按key的hash分成多段,每段一个环形缓冲区,新数据依次追加,写满后从头覆盖最早的数据(FIFO淘汰)<br>
+ * 每段的索引只在堆上保存key的64位hash到写入位置的映射,读取时再比较表ID和key数据,避免hash冲突
+ */
+public final class OffHeapCache
+{
+	private static final int ENTRY_HEAD_SIZE   = 12;			   // 每条数据的头: tableId(4)+keySize(4)+valueSize(4)
+	private static final int MAX_SEGMENT_SIZE  = 0x4000_0000;	   // 每段的最大容量(1GB)
+	private static final int MIN_SEGMENT_COUNT = 16;			   // 最少的分段数量
+	private final Segment[]	 _segments;							   // 全部的分段
+	private final long		 _capacity;							   // 全部分段的总容量(字节)
+	private final AtomicLong _putCount		   = new AtomicLong(); // 写入次数统计
+	private final AtomicLong _evictCount	   = new AtomicLong(); // 覆盖旧数据的写入次数统计
+
+	private static final class Segment
+	{
+		private final ByteBuffer _buf;	  // 环形缓冲区. 只在持有本段锁时访问,可以使用相对位置读写
+		private final int		 _cap;	  // 环形缓冲区的容量
+		private long			 _wpos;	  // 逻辑写入位置,只增不减. 逻辑位置在[_wpos-_cap,_wpos)范围内的数据有效
+		private long[]			 _hashes; // 索引的key hash数组. 0表示空位
+		private long[]			 _poses;  // 索引的数据逻辑位置数组
+		private int				 _count;  // 索引中的条数(包括已被覆盖但还没清理的)
+
+		Segment(int cap)
+		{
+			_buf = ByteBuffer.allocateDirect(cap);
+			_cap = cap;
+			_hashes = new long[64];
+			_poses = new long[64];
+		}
+
+		private int find(long hash)
+		{
+			long[] hashes = _hashes;
+			int mask = hashes.length - 1;
+			for (int i = (int)(hash ^ (hash >>> 32)) & mask;; i = (i + 1) & mask)
+			{
+				long h = hashes[i];
+				if (h == hash || h == 0)
+					return i;
+			}
+		}
+
+		private boolean isValid(long pos)
+		{
+			return pos >= _wpos - _cap;
+		}
+
+		private void removeAt(int i)
+		{
+			long[] hashes = _hashes;
+			long[] poses = _poses;
+			int mask = hashes.length - 1;
+			for (int j = i;;) // 线性探测的删除,把后续冲突的条目前移
+			{
+				hashes[i] = 0;
+				long h;
+				int k;
+				do
+				{
+					j = (j + 1) & mask;
+					if ((h = hashes[j]) == 0)
+					{
+						--_count;
+						return;
+					}
+					k = (int)(h ^ (h >>> 32)) & mask;
+				}
+				while (i <= j ? (i < k && k <= j) : (i < k || k <= j));
+				hashes[i] = h;
+				poses[i] = poses[j];
+				i = j;
+			}
+		}
+
+		private void rehash()
+		{
+			long[] oldHashes = _hashes;
+			long[] oldPoses = _poses;
+			int n = 0;
+			for (int i = 0, m = oldHashes.length; i < m; ++i)
+			{
+				if (oldHashes[i] != 0 && isValid(oldPoses[i]))
+					++n;
+			}
+			int size = oldHashes.length;
+			while (n * 2 >= size) // 清理已被覆盖的条目后仍然过多才扩容
+				size <<= 1;
+			_hashes = new long[size];
+			_poses = new long[size];
+			_count = n;
+			for (int i = 0, m = oldHashes.length; i < m; ++i)
+			{
+				long h = oldHashes[i];
+				long pos = oldPoses[i];
+				if (h != 0 && isValid(pos))
+				{
+					int j = find(h);
+					_hashes[j] = h;
+					_poses[j] = pos;
+				}
+			}
+		}
+
+		private boolean matchKey(int p, int tableId, Octets key)
+		{
+			ByteBuffer buf = _buf;
+			int keySize = key.size();
+			if (buf.getInt(p) != tableId || buf.getInt(p + 4) != keySize)
+				return false;
+			byte[] keyBuf = key.array();
+			p += ENTRY_HEAD_SIZE;
+			for (int i = 0; i < keySize; ++i)
+			{
+				if (buf.get(p + i) != keyBuf[i])
+					return false;
+			}
+			return true;
+		}
+
+		synchronized byte[] get(long hash, int tableId, Octets key)
+		{
+			int i = find(hash);
+			if (_hashes[i] == 0)
+				return null;
+			long pos = _poses[i];
+			int p = (int)(pos % _cap);
+			if (!isValid(pos) || !matchKey(p, tableId, key))
+			{
+				removeAt(i);
+				return null;
+			}
+			ByteBuffer buf = _buf;
+			byte[] val = new byte[buf.getInt(p + 8)];
+			buf.position(p + ENTRY_HEAD_SIZE + key.size());
+			buf.get(val);
+			return val;
+		}
+
+		synchronized boolean put(long hash, int tableId, Octets key, Octets val)
+		{
+			int keySize = key.size();
+			int valSize = val.size();
+			int size = ENTRY_HEAD_SIZE + keySize + valSize;
+			if (size > _cap)
+				return false;
+			long pos = _wpos;
+			int p = (int)(pos % _cap);
+			if (p + size > _cap) // 不跨越缓冲区的尾部,跳过剩余的空间从头写
+			{
+				pos += _cap - p;
+				p = 0;
+			}
+			ByteBuffer buf = _buf;
+			buf.putInt(p, tableId);
+			buf.putInt(p + 4, keySize);
+			buf.putInt(p + 8, valSize);
+			buf.position(p + ENTRY_HEAD_SIZE);
+			buf.put(key.array(), 0, keySize);
+			buf.put(val.array(), 0, valSize);
+			_wpos = pos + size;
+			boolean evict = (_wpos > _cap); // 写满一圈之后的写入都会覆盖旧数据
+			int i = find(hash);
+			if (_hashes[i] == 0)
+			{
+				_hashes[i] = hash;
+				if (++_count * 2 >= _hashes.length)
+				{
+					_poses[i] = pos;
+					rehash();
+					return evict;
+				}
+			}
+			_poses[i] = pos;
+			return evict;
+		}
+
+		synchronized void remove(long hash)
+		{
+			int i = find(hash);
+			if (_hashes[i] != 0)
+				removeAt(i);
+		}
+
+		synchronized int count()
+		{
+			return _count;
+		}
+
+		synchronized long used()
+		{
+			return Math.min(_wpos, _cap);
+		}
+	}
+
+	/**
+	 * 计算表ID和key数据的64位hash. 结果不会为0
+	 */
+	private static long hash(int tableId, Octets key)
+	{
+		byte[] buf = key.array();
+		long h = 0xcbf2_9ce4_8422_2325L ^ tableId; // FNV-1a
+		for (int i = 0, n = key.size(); i < n; ++i)
+			h = (h ^ buf[i]) * 0x100_0000_01b3L;
+		h ^= h >>> 33; // 再混合一次,让高低位都均匀
+		h *= 0xff51_afd7_ed55_8ccdL;
+		h ^= h >>> 33;
+		return h != 0 ? h : 1;
+	}
+
+	/**
+	 * 创建堆外缓存
+	 * @param capacity 总容量(字节). 会按分段数均分,每段不超过1GB
+	 */
+	public OffHeapCache(long capacity)
+	{
+		int n = MIN_SEGMENT_COUNT;
+		while (capacity / n > MAX_SEGMENT_SIZE)
+			n <<= 1;
+		int segSize = (int)(capacity / n);
+		_segments = new Segment[n];
+		for (int i = 0; i < n; ++i)
+			_segments[i] = new Segment(segSize);
+		_capacity = (long)segSize * n;
+	}
+
+	private Segment segment(long hash)
+	{
+		return _segments[(int)(hash >>> 40) & (_segments.length - 1)];
+	}
+
+	/**
+	 * 获取缓存的记录数据
+	 * @param key 记录key的序列化数据
+	 * @return 记录value的序列化数据(新分配的数组). null表示不在缓存中
+	 */
+	public byte[] get(int tableId, Octets key)
+	{
+		long h = hash(tableId, key);
+		return segment(h).get(h, tableId, key);
+	}
+
+	/**
+	 * 写入记录数据. 会覆盖同key的旧数据
+	 * @param key 记录key的序列化数据
+	 * @param val 记录value的序列化数据. 单条数据超过每段容量时忽略
+	 */
+	public void put(int tableId, Octets key, Octets val)
+	{
+		long h = hash(tableId, key);
+		Segment seg = segment(h);
+		if (seg.put(h, tableId, key, val))
+			_evictCount.getAndIncrement();
+		_putCount.getAndIncrement();
+	}
+
+	/**
+	 * 删除记录数据
+	 * @param key 记录key的序列化数据
+	 */
+	public void remove(int tableId, Octets key)
+	{
+		long h = hash(tableId, key);
+		segment(h).remove(h);
+	}
+
+	/**
+	 * 获取总容量(字节)
+	 */
+	public long getCapacity()
+	{
+		return _capacity;
+	}
+
+	/**
+	 * 获取已使用的空间(字节). 包括已失效但还没被覆盖的数据
+	 */
+	public long getUsedSize()
+	{
+		long n = 0;
+		for (Segment seg : _segments)
+			n += seg.used();
+		return n;
+	}
+
+	/**
+	 * 获取索引中的记录数. 包括已被覆盖但还没清理的索引
+	 */
+	public long getCount()
+	{
+		long n = 0;
+		for (Segment seg : _segments)
+			n += seg.count();
+		return n;
+	}
+
+	/**
+	 * 获取写入次数的统计
+	 */
+	public long getPutCount()
+	{
+		return _putCount.get();
+	}
+
+	/**
+	 * 获取覆盖旧数据的写入次数的统计
+	 */
+	public long getEvictCount()
+	{
+		return _evictCount.get();
+	}
+}
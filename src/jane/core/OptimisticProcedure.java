@@ -0,0 +1,153 @@
+package jane.core;
+
+import java.lang.invoke.VarHandle;
+import jane.core.SContext.Safe;
+
+/**
+ * 乐观只读事务的基类(抽象类)
+ * <p>
+ * 读取记录时不加锁,只记下记录锁的版本号,在{@link #onRead}结束后统一检查,期间有修改则通过Redo重做<br>
+ * 连续失败{@link Const#optimisticProcedureRetry}次或读取的记录不在缓存中时,改为加读锁的方式执行<br>
+ * onRead可能执行多次,只能读取记录,不能修改. 对外的结果应在最后一次onRead中通过addOnCommit处理
+ */
+public abstract class OptimisticProcedure extends Procedure
+{
+	private int[]	_lockIds;	// 已读取记录的lockId
+	private long[]	_versions;	// 已读取记录在读取前的锁版本号
+	private int		_readCount;	// 已读取记录的数量
+	private int		_failCount;	// 乐观读失败的次数
+	private boolean	_locked;	// 当前是否以加读锁的方式执行
+
+	/**
+	 * 由子类实现的只读事务
+	 * <p>
+	 * 只能通过{@link #read}读取记录
+	 */
+	protected abstract void onRead() throws Exception;
+
+	/**
+	 * 当前是否以加读锁的方式执行
+	 */
+	protected final boolean isLockedMode()
+	{
+		return _locked;
+	}
+
+	@Override
+	public boolean execute() throws Exception
+	{
+		_failCount = 0;
+		return super.execute();
+	}
+
+	@Override
+	protected final void onProcess() throws Exception
+	{
+		_readCount = 0;
+		_locked = (_failCount >= Const.optimisticProcedureRetry);
+		if (_locked)
+		{
+			onRead();
+			return;
+		}
+		try
+		{
+			onRead();
+		}
+		catch (Exception | Error e) // 读到不一致的数据时可能抛出异常
+		{
+			if (e == redoException() || validate())
+				throw e;
+			fail();
+		}
+		if (!validate())
+			fail();
+	}
+
+	private void fail()
+	{
+		++_failCount;
+		redo();
+	}
+
+	private void beginRead(int lockId)
+	{
+		long version = Procedure.getLockVersion(lockId);
+		if (Procedure.isWriteLocked(lockId))
+			fail();
+		int n = _readCount;
+		for (int i = 0; i < n; ++i)
+		{
+			if (_lockIds[i] == lockId)
+				return;
+		}
+		if (n >= Const.maxLockPerProcedure)
+			throw new IllegalStateException("read exceed: " + (n + 1) + '>' + Const.maxLockPerProcedure);
+		if (_lockIds == null)
+		{
+			_lockIds = new int[Const.maxLockPerProcedure];
+			_versions = new long[Const.maxLockPerProcedure];
+		}
+		_lockIds[n] = lockId;
+		_versions[n] = version;
+		_readCount = n + 1;
+	}
+
+	private boolean validate()
+	{
+		VarHandle.acquireFence(); // 确保之前读取记录的操作不会重排到检查版本号之后
+		for (int i = 0, n = _readCount; i < n; ++i)
+		{
+			int lockId = _lockIds[i];
+			if (Procedure.isWriteLocked(lockId) || Procedure.getLockVersion(lockId) != _versions[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 读取一条记录
+	 * <p>
+	 * 返回的记录只能读取,不能修改,也不能在onRead之外保存引用
+	 */
+	@SuppressWarnings("deprecation")
+	protected final <V extends Bean<V>, S extends Safe<V>> V read(TableLong<V, S> t, long k) throws InterruptedException
+	{
+		if (_locked)
+		{
+			appendLockRead(t.lockId(k));
+			return t.getReadOnly(k);
+		}
+		beginRead(t.lockId(k));
+		V v = t.getCacheOnly(k);
+		if (v == null) // 不在缓存中时不能不加锁地从数据库加载
+		{
+			_failCount = Const.optimisticProcedureRetry;
+			redo();
+		}
+		return v != t._deleted ? v : null;
+	}
+
+	/**
+	 * 读取一条记录
+	 * <p>
+	 * 返回的记录只能读取,不能修改,也不能在onRead之外保存引用
+	 */
+	@SuppressWarnings("deprecation")
+	protected final <K, V extends Bean<V>, S extends Safe<V>> V read(Table<K, V, S> t, K k) throws InterruptedException
+	{
+		if (_locked)
+		{
+			appendLockRead(t.lockId(k));
+			return t.getReadOnly(k);
+		}
+		beginRead(t.lockId(k));
+		V v = t.getCacheOnly(k);
+		if (v == null) // 不在缓存中时不能不加锁地从数据库加载
+		{
+			_failCount = Const.optimisticProcedureRetry;
+			redo();
+		}
+		return v != t._deleted ? v : null;
+	}
+}
@@ -0,0 +1,233 @@
+package jane.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * 并行遍历数据库表的执行器
+ * <p>
+ * 由表把key空间切分成多个区间,每个区间作为一个子任务在独立的ForkJoinPool中遍历,不占用公共池和事务线程<br>
+ * 无序模式下各子任务直接调用用户的handler,handler需要线程安全<br>
+ * 有序模式下子任务把记录收集到列表中,由调用线程按区间顺序依次交给handler,同时最多预读parallelism*2个区间<br>
+ * 所有子任务共享中断标记和限速(Const.dbWalkRateLimit)
+ */
+final class ParallelWalker
+{
+	interface RangeWalker<T>
+	{
+		/**
+		 * 遍历第index个区间
+		 * @param out 有序模式时收集记录的列表. 无序模式时为null,应直接调用用户的handler
+		 * @return 返回false表示被中断或出错
+		 */
+		boolean walk(int index, List<T> out) throws Exception;
+	}
+
+	interface Deliverer<T>
+	{
+		/**
+		 * 把有序模式收集的一条记录交给用户的handler. 抛出异常时记录日志并中断遍历
+		 * @return 返回false表示中断遍历
+		 */
+		boolean deliver(T t) throws Exception;
+	}
+
+	private final int		 _parallelism;					  // 并行遍历的线程数
+	private final long		 _beginTime	= System.nanoTime();  // 开始遍历的时间
+	private final AtomicLong _walkCount	= new AtomicLong();	  // 已遍历的记录数量
+	private volatile boolean _stopped;						  // 是否已被中断
+
+	ParallelWalker(int parallelism)
+	{
+		_parallelism = Math.max(parallelism, 1);
+	}
+
+	int getParallelism()
+	{
+		return _parallelism;
+	}
+
+	/**
+	 * 在存储层的两个已有key之间用二分定位选取切分点,最多约2n次定位,不遍历其间的记录
+	 * <p>
+	 * 每次取两端key公共前缀之后的8字节当作无符号整数的中点,定位中点之后(没有时改为之前)最近的已有key作为切分点,再分别切分两侧<br>
+	 * 按key的字节空间而不是记录数量二分,key分布不均匀时各区间的记录数量也不均匀
+	 * @param ceiling 返回不小于指定key的第一个已有key,没有时返回null
+	 * @param lower 返回小于指定key的最后一个已有key,没有时返回null
+	 * @return 按顺序排列且不重复的最多n-1个已有key,都在(first,last)之内
+	 */
+	static List<Octets> splitKeys(Octets first, Octets last, int n, UnaryOperator<Octets> ceiling, UnaryOperator<Octets> lower)
+	{
+		ArrayList<Octets> keys = new ArrayList<>();
+		bisect(first, last, n, ceiling, lower, keys);
+		return keys;
+	}
+
+	private static void bisect(Octets lo, Octets hi, int n, UnaryOperator<Octets> ceiling, UnaryOperator<Octets> lower, List<Octets> out)
+	{
+		if (n <= 1)
+			return;
+		Octets mid = midKey(lo, hi);
+		if (mid == null)
+			return;
+		Octets key = ceiling.apply(mid);
+		if (key == null || key.compareTo(hi) >= 0)
+		{
+			key = lower.apply(mid);
+			if (key == null || key.compareTo(lo) <= 0)
+				return;
+		}
+		bisect(lo, key, n / 2, ceiling, lower, out);
+		out.add(key);
+		bisect(key, hi, n - n / 2, ceiling, lower, out);
+	}
+
+	private static Octets midKey(Octets lo, Octets hi)
+	{
+		byte[] b0 = lo.array(), b1 = hi.array();
+		int s0 = lo.size(), s1 = hi.size();
+		int p = 0, m = Math.min(s0, s1);
+		while (p < m && b0[p] == b1[p])
+			++p;
+		long v0 = 0, v1 = 0;
+		for (int i = p; i < p + 8; ++i)
+		{
+			v0 = (v0 << 8) + (i < s0 ? b0[i] & 0xff : 0);
+			v1 = (v1 << 8) + (i < s1 ? b1[i] & 0xff : 0);
+		}
+		if (Long.compareUnsigned(v1 - v0, 2) < 0 || Long.compareUnsigned(v0, v1) >= 0)
+			return null;
+		return Octets.createSpace(p + 8).append(b0, 0, p).marshal8(v0 + ((v1 - v0) >>> 1));
+	}
+
+	/**
+	 * 子任务遍历每条记录前调用,检查中断并按配置限速
+	 * @return 返回false表示已被中断
+	 */
+	boolean onRecord()
+	{
+		if (_stopped)
+			return false;
+		int rateLimit = Const.dbWalkRateLimit;
+		if (rateLimit > 0)
+		{
+			long n = _walkCount.incrementAndGet();
+			if ((n & 0xff) == 0)
+			{
+				long aheadMs = (n * 1000 / rateLimit) - (System.nanoTime() - _beginTime) / 1_000_000;
+				if (aheadMs > 0)
+				{
+					try
+					{
+						Thread.sleep(aheadMs);
+					}
+					catch (InterruptedException e)
+					{
+						_stopped = true;
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 中断所有子任务
+	 * @return 总是返回false,便于在handler中直接返回
+	 */
+	boolean stop()
+	{
+		_stopped = true;
+		return false;
+	}
+
+	/**
+	 * 无序地并行遍历所有区间
+	 * @return 返回true表示已完全遍历, 返回false表示被用户中断或出错
+	 */
+	<T> boolean walk(int rangeCount, RangeWalker<T> walker)
+	{
+		ForkJoinPool pool = new ForkJoinPool(_parallelism);
+		try
+		{
+			ArrayList<ForkJoinTask<Boolean>> tasks = new ArrayList<>(rangeCount);
+			for (int i = 0; i < rangeCount; ++i)
+			{
+				int index = i;
+				tasks.add(pool.submit(() -> _stopped || walker.walk(index, null) || stop()));
+			}
+			boolean r = true;
+			for (ForkJoinTask<Boolean> task : tasks)
+				r &= task.join();
+			return r && !_stopped;
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * 并行遍历所有区间,并在当前线程按区间顺序交给deliverer
+	 * @return 返回true表示已完全遍历, 返回false表示被用户中断或出错
+	 */
+	<T> boolean walkOrdered(int rangeCount, RangeWalker<T> walker, Deliverer<T> deliverer)
+	{
+		ForkJoinPool pool = new ForkJoinPool(_parallelism);
+		try
+		{
+			ArrayList<ForkJoinTask<List<T>>> tasks = new ArrayList<>(rangeCount);
+			int window = _parallelism * 2;
+			for (int i = 0; i < rangeCount; ++i)
+			{
+				if (i >= window)
+				{
+					List<T> out = tasks.get(i - window).join();
+					tasks.set(i - window, null);
+					if (out == null || !deliverAll(out, deliverer))
+						return stop();
+				}
+				int index = i;
+				tasks.add(pool.submit(() ->
+				{
+					ArrayList<T> out = new ArrayList<>();
+					return !_stopped && walker.walk(index, out) ? out : null;
+				}));
+			}
+			for (int i = Math.max(rangeCount - window, 0); i < rangeCount; ++i)
+			{
+				List<T> out = tasks.get(i).join();
+				if (out == null || !deliverAll(out, deliverer))
+					return stop();
+			}
+			return !_stopped;
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	private static <T> boolean deliverAll(List<T> out, Deliverer<T> deliverer)
+	{
+		try
+		{
+			for (T t : out)
+			{
+				if (!deliverer.deliver(t))
+					return false;
+			}
+			return true;
+		}
+		catch (Exception e)
+		{
+			Log.error("walk exception:", e);
+			return false;
+		}
+	}
+}
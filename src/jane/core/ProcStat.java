@@ -0,0 +1,184 @@
+package jane.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每种事务类的运行统计
+ * <p>
+ * 统计执行时间,等待锁的时间,重做/撤销/异常次数. 时间单位都是纳秒<br>
+ * 每个事务线程独立记录,读取时再合并,记录时没有分配和同步的开销. 读取的结果只是近似值
+ */
+public final class ProcStat
+{
+	/**
+	 * 一个事务线程的独立记录
+	 */
+	static final class Local
+	{
+		final LogHistogram execTime		= new LogHistogram(); // 执行时间
+		final LogHistogram lockWaitTime	= new LogHistogram(); // 每次执行等待锁的总时间(不含无需等待的加锁)
+		long			   redoCount;						  // 重做次数
+		long			   undoCount;						  // 撤销次数
+		long			   exceptionCount;					  // 异常次数
+	}
+
+	private static final class StatCreator extends ClassValue<ProcStat>
+	{
+		/**
+		 * 并发时可能对同一个类调用多次,只保留其中一个结果,所以不能有副作用
+		 */
+		@Override
+		protected ProcStat computeValue(Class<?> cls)
+		{
+			return new ProcStat(cls.getName());
+		}
+	}
+
+	private static final ConcurrentLinkedQueue<ProcStat> _allStats = new ConcurrentLinkedQueue<>(); // 全部事务类的运行统计
+	private static final StatCreator					 _stats	   = new StatCreator();				// 事务类到运行统计的映射
+	private static final AtomicInteger					 _idGen	   = new AtomicInteger();			// 运行统计的序号分配器
+
+	private final int						  _id		  = _idGen.getAndIncrement();	  // 序号. 用于在事务线程中索引独立记录
+	private final String					  _name;									  // 事务类的完整类名
+	private final CopyOnWriteArrayList<Local> _locals	  = new CopyOnWriteArrayList<>(); // 全部线程的独立记录
+	private final AtomicBoolean				  _registered = new AtomicBoolean();		  // 是否已加入全部统计并注册监控指标
+
+	/**
+	 * 获取事务类的运行统计. 不存在则创建
+	 */
+	public static ProcStat get(Class<?> cls)
+	{
+		ProcStat stat = _stats.get(cls);
+		if (!stat._registered.get() && stat._registered.compareAndSet(false, true))
+			stat.register();
+		return stat;
+	}
+
+	/**
+	 * 获取全部事务类的运行统计
+	 */
+	public static Collection<ProcStat> getAll()
+	{
+		return new ArrayList<>(_allStats);
+	}
+
+	private ProcStat(String name)
+	{
+		_name = name;
+	}
+
+	/**
+	 * 加入全部统计并注册监控指标. 只对ClassValue最终保留的对象调用一次
+	 */
+	private void register()
+	{
+		String name = _name;
+		_allStats.add(this);
+		Metrics.summary("jane_proc_exec_time_ns", "procedure execution time", this::mergeExecTime, "class", name);
+		Metrics.summary("jane_proc_lock_wait_time_ns", "procedure lock waiting time per execution", this::mergeLockWaitTime, "class", name);
+		Metrics.counter("jane_proc_redo_total", "procedure redo count", this::getRedoCount, "class", name);
+		Metrics.counter("jane_proc_undo_total", "procedure undo count", this::getUndoCount, "class", name);
+		Metrics.counter("jane_proc_exception_total", "procedure exception count", this::getExceptionCount, "class", name);
+	}
+
+	/**
+	 * 获取事务线程的独立记录. 只能由该线程调用和修改
+	 */
+	Local local(ProcThread pt)
+	{
+		Local[] locals = pt.stats;
+		int id = _id;
+		if (id >= locals.length)
+			pt.stats = locals = Arrays.copyOf(locals, Math.max(id + 1, locals.length * 2));
+		Local local = locals[id];
+		if (local == null)
+		{
+			locals[id] = local = new Local();
+			_locals.add(local);
+		}
+		return local;
+	}
+
+	/**
+	 * 事务类的完整类名
+	 */
+	public String getName()
+	{
+		return _name;
+	}
+
+	/**
+	 * 合并后的执行时间直方图
+	 */
+	public LogHistogram getExecTime()
+	{
+		LogHistogram h = new LogHistogram();
+		mergeExecTime(h);
+		return h;
+	}
+
+	/**
+	 * 把执行时间直方图合并到参数的直方图中
+	 */
+	public void mergeExecTime(LogHistogram h)
+	{
+		for (Local local : _locals)
+			h.merge(local.execTime);
+	}
+
+	/**
+	 * 合并后的每次执行等待锁的总时间直方图
+	 */
+	public LogHistogram getLockWaitTime()
+	{
+		LogHistogram h = new LogHistogram();
+		mergeLockWaitTime(h);
+		return h;
+	}
+
+	/**
+	 * 把每次执行等待锁的总时间直方图合并到参数的直方图中
+	 */
+	public void mergeLockWaitTime(LogHistogram h)
+	{
+		for (Local local : _locals)
+			h.merge(local.lockWaitTime);
+	}
+
+	public long getRedoCount()
+	{
+		long n = 0;
+		for (Local local : _locals)
+			n += local.redoCount;
+		return n;
+	}
+
+	public long getUndoCount()
+	{
+		long n = 0;
+		for (Local local : _locals)
+			n += local.undoCount;
+		return n;
+	}
+
+	public long getExceptionCount()
+	{
+		long n = 0;
+		for (Local local : _locals)
+			n += local.exceptionCount;
+		return n;
+	}
+
+	@Override
+	public String toString()
+	{
+		return _name + ":exec=" + getExecTime() + ",lockWait=" + getLockWaitTime() +
+				",redo=" + getRedoCount() + ",undo=" + getUndoCount() + ",exception=" + getExceptionCount();
+	}
+}
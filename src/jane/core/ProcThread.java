@@ -2,19 +2,30 @@ package jane.core;
 
 import java.lang.management.ManagementFactory;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import jane.core.Procedure.IndexLock;
 
 public class ProcThread extends Thread
 {
-	private static final ConcurrentLinkedQueue<ProcThread> _procThreads	= new ConcurrentLinkedQueue<>(); // 当前运行的全部事务线程. 用于判断是否超时
-	private static volatile long						   _interruptCount;								 // 事务被打断的次数统计
+	private static final ConcurrentLinkedQueue<ProcThread> _procThreads		  = new ConcurrentLinkedQueue<>(); // 当前运行的全部事务线程. 用于判断是否超时
+	private static volatile long						   _interruptCount;									   // 事务被打断的次数统计
+	private static final AtomicLong						   _deadlockRedoCount = new AtomicLong();			   // 检测到死锁而重做事务的次数统计
 
-	final IndexLock[] locks	   = new IndexLock[Const.maxLockPerProcedure]; // 当前线程已经加过的锁
-	int				  lockCount;										   // 当前进程已经加过锁的数量
-	final SContext	  sctx	   = new SContext();						   // 当前线程上的安全修改的上下文
-	Procedure		  proc;												   // 当前运行的事务
-	long			  beginTime;										   // 当前/上个事务运行的起始时间. 用于判断是否超时
-	final long[]	  versions = new long[Const.maxLockPerProcedure];	   // 当前线程已经加过的锁版本号(只在需要时临时设置,这里只是为了避免反复分配)
+	final IndexLock[]		 locks		   = new IndexLock[Const.maxLockPerProcedure]; // 当前线程已经加过的锁
+	int						 lockCount;												   // 当前进程已经加过锁的数量
+	final SContext			 sctx		   = new SContext();						   // 当前线程上的安全修改的上下文
+	Procedure				 proc;													   // 当前运行的事务
+	long					 beginTime;												   // 当前/上个事务运行的起始时间. 用于判断是否超时
+	final long[]			 versions	   = new long[Const.maxLockPerProcedure];	   // 当前线程已经加过的锁版本号(只在需要时临时设置,这里只是为了避免反复分配)
+	final boolean[]			 shareds	   = new boolean[Const.maxLockPerProcedure];   // 当前线程已经加过的锁是否为读锁(同上)
+	final StripedRWLock.Slot commitSlot	   = Procedure.newCommitSlot();				   // 当前线程独占的提交读锁计数槽
+	volatile IndexLock		 waitingLock;											   // 当前正在等待加的锁. 用于检测死锁
+	private final Object	 deadlockMutex = new Object();							   // 保护deadlockBlocked和deadlockKicked
+	private boolean			 deadlockBlocked;										   // 是否已开始等待加锁并参与死锁检测
+	private boolean			 deadlockKicked;										   // 是否被其它线程选为死锁环中重做的事务并打断
+	long					 lockWaitTime;											   // 当前事务等待锁的总时间(纳秒). 用于统计
+	ProcStat.Local[]		 stats		   = new ProcStat.Local[16];				   // 当前线程对每种事务类的独立统计记录. 按ProcStat的序号索引
 
 	public ProcThread(String name)
 	{
@@ -27,72 +38,140 @@ public class ProcThread extends Thread
 		_procThreads.add(this);
 	}
 
-/*
-	volatile IndexLock nowLock;
-
-	private static boolean mayDeadLock0(java.util.ArrayList<ProcThread> otherLockingThreads, IndexLock checkLock, IndexLock nowLock)
+	/**
+	 * 等待加锁. 开始等待前先检查等待图,发现死锁时只重做死锁环中最年轻的事务
+	 * <p>
+	 * 重做的事务是自己则直接重做. 否则对方可能已在检测前开始等待,由当前线程打断对方的等待,对方被打断后重做
+	 */
+	void waitLock(IndexLock indexLock, Lock lock) throws InterruptedException
 	{
-		for(ProcThread pt : otherLockingThreads)
+		boolean detect = (lockCount > 0 && Const.deadlockDetectDepth > 0);
+		waitingLock = indexLock;
+		try
 		{
-			if(pt.nowLock != checkLock) continue;
-			IndexLock[] ls = pt.locks;
-			for(int j = pt.lockCount - 1; j >= 0; --j)
+			if (detect)
+			{
+				synchronized (deadlockMutex)
+				{
+					deadlockBlocked = true;
+				}
+				ProcThread victim = findDeadLock(indexLock, 0, this);
+				if (victim == this)
+				{
+					_deadlockRedoCount.getAndIncrement();
+					Procedure.redo();
+				}
+				if (victim != null)
+					victim.kickDeadlock();
+			}
+			boolean stat = Const.procedureStat;
+			long t = (stat ? System.nanoTime() : 0);
+			try
 			{
-				IndexLock lk = ls[j];
-				if(lk != null && lk != checkLock && (lk == nowLock || mayDeadLock0(otherLockingThreads, lk, nowLock)))
-					return true;
+				lock.lockInterruptibly();
+			}
+			catch (InterruptedException e)
+			{
+				if (detect && clearDeadlockKicked())
+				{
+					_deadlockRedoCount.getAndIncrement();
+					Procedure.redo();
+				}
+				throw e;
+			}
+			finally
+			{
+				if (stat)
+					lockWaitTime += System.nanoTime() - t;
+			}
+		}
+		finally
+		{
+			waitingLock = null;
+			if (detect)
+			{
+				synchronized (deadlockMutex)
+				{
+					deadlockBlocked = false;
+					if (deadlockKicked) // 已经重做或加锁成功,清除多余的打断
+					{
+						deadlockKicked = false;
+						Thread.interrupted();
+					}
+				}
 			}
 		}
-		return false;
 	}
 
-	private boolean mayDeadLock()
+	/**
+	 * 把正在等待加锁的当前线程选为死锁环中重做的事务,打断其等待
+	 */
+	private void kickDeadlock()
 	{
-		if(lockCount < 1) return false;
-		java.util.ArrayList<ProcThread> otherLockingThreads = new java.util.ArrayList<>();
-		for(ProcThread pt : _procThreads)
+		synchronized (deadlockMutex)
 		{
-			if(pt != this && pt.nowLock != null)
-				otherLockingThreads.add(pt);
+			if (deadlockBlocked && !deadlockKicked)
+			{
+				deadlockKicked = true;
+				interrupt();
+			}
 		}
-		IndexLock[] ls = locks;
-		IndexLock nl = nowLock;
-		for(int i = lockCount - 1; i >= 0; --i)
+	}
+
+	private boolean clearDeadlockKicked()
+	{
+		synchronized (deadlockMutex)
 		{
-			if(mayDeadLock0(otherLockingThreads, ls[i], nl))
-				return true;
+			boolean kicked = deadlockKicked;
+			deadlockKicked = false;
+			return kicked;
 		}
-		return false;
 	}
 
-	void safeLock(IndexLock lock) throws InterruptedException
+	/**
+	 * 从等待的锁出发,沿着"持有该锁的线程正在等待的锁"搜索等待图,回到当前线程则说明有死锁
+	 * <p>
+	 * 不同步地读取其它线程的加锁状态,结果只是近似的. 误判只会多一次重做,漏判仍由超时检查处理<br>
+	 * 死锁环上的每个线程都会选出相同的重做事务,避免同时检测到死锁的多个线程都重做
+	 * @param victim 已搜索路径上最年轻的线程
+	 * @return 死锁环中最年轻(事务起始时间最晚,相同时线程ID较大)的线程. 没有死锁时返回null
+	 */
+	private ProcThread findDeadLock(IndexLock lock, int depth, ProcThread victim)
 	{
-		nowLock = lock;
-		if(!lock.tryLock())
+		for (ProcThread pt : _procThreads)
 		{
-			if(mayDeadLock())
-				Procedure.redo();
-			lock.lockInterruptibly();
+			IndexLock wl = pt.waitingLock; // 先读volatile,确保能看到对方开始等待前的锁状态
+			if (pt == this)
+			{
+				if (pt.holdsLock(lock))
+					return victim;
+			}
+			else if (wl != null && depth < Const.deadlockDetectDepth && pt.holdsLock(lock))
+			{
+				ProcThread r = findDeadLock(wl, depth + 1, pt.isYoungerThan(victim) ? pt : victim);
+				if (r != null)
+					return r;
+			}
 		}
-		nowLock = null;
-		locks[++lockCount] = lock;
+		return null;
 	}
 
-	void safeLock(IndexLock lock, int i) throws InterruptedException
+	private boolean isYoungerThan(ProcThread pt)
 	{
-		lockCount = i;
-		nowLock = lock;
-		if(!lock.tryLock())
+		long t0 = beginTime, t1 = pt.beginTime;
+		return t0 != t1 ? t0 > t1 : getId() > pt.getId();
+	}
+
+	private boolean holdsLock(IndexLock lock)
+	{
+		IndexLock[] ls = locks;
+		for (int i = Math.min(lockCount, ls.length) - 1; i >= 0; --i)
 		{
-			if(mayDeadLock())
-				Procedure.redo();
-			lock.lockInterruptibly();
+			if (ls[i] == lock)
+				return true;
 		}
-		nowLock = null;
-		locks[i] = lock;
-		lockCount = i + 1;
+		return false;
 	}
-//*/
 
 	/**
 	 * 获取事务被打断的次数统计
@@ -102,8 +181,18 @@ public class ProcThread extends Thread
 		return _interruptCount;
 	}
 
+	/**
+	 * 获取检测到死锁而重做事务的次数统计
+	 */
+	public static long getDeadlockRedoCount()
+	{
+		return _deadlockRedoCount.get();
+	}
+
 	static
 	{
+		Metrics.counter("jane_proc_interrupt_total", "procedures interrupted for timeout", ProcThread::getInterruptCount);
+		Metrics.counter("jane_proc_deadlock_redo_total", "procedures redone for detected deadlock", ProcThread::getDeadlockRedoCount);
 		if (Const.deadlockCheckInterval > 0)
 		{
 			NetManager.scheduleWithFixedDelay(Const.deadlockCheckInterval, Const.deadlockCheckInterval, () ->
@@ -169,7 +258,10 @@ public class ProcThread extends Thread
 							}
 						}
 						else
+						{
 							_procThreads.remove(pt);
+							Procedure.removeCommitSlot(pt.commitSlot);
+						}
 					}
 				}
 				catch (Throwable e)
@@ -3,9 +3,11 @@ package jane.core;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReferenceArray;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Supplier;
 import jane.core.SContext.Safe;
 
@@ -19,7 +21,10 @@ public abstract class Procedure implements Runnable
 		void onException(Throwable e);
 	}
 
-	static final class IndexLock extends ReentrantLock
+	/**
+	 * 锁池中的读写锁. 默认加解写锁,读锁只用于只读的事务
+	 */
+	static final class IndexLock extends ReentrantReadWriteLock
 	{
 		private static final long serialVersionUID = 1L;
 
@@ -29,13 +34,49 @@ public abstract class Procedure implements Runnable
 		{
 			index = i;
 		}
+
+		void lockInterruptibly() throws InterruptedException
+		{
+			lockInterruptibly(false);
+		}
+
+		/**
+		 * 加锁. 需要等待时会检测死锁,发现死锁则抛出Redo异常
+		 */
+		void lockInterruptibly(boolean shared) throws InterruptedException
+		{
+			Lock lock = (shared ? readLock() : writeLock());
+			if (lock.tryLock(0, TimeUnit.NANOSECONDS)) // 不同于tryLock(),读锁也会遵守公平策略
+				return;
+			Thread t = Thread.currentThread();
+			if (t instanceof ProcThread)
+				((ProcThread)t).waitLock(this, lock);
+			else
+				lock.lockInterruptibly();
+		}
+
+		boolean tryLock(boolean shared)
+		{
+			return shared ? readLock().tryLock() : writeLock().tryLock();
+		}
+
+		/**
+		 * 解当前线程加的锁. 事务中同一个锁只会加读锁或写锁之一
+		 */
+		void unlock()
+		{
+			if (isWriteLockedByCurrentThread())
+				writeLock().unlock();
+			else
+				readLock().unlock();
+		}
 	}
 
 	private static final IndexLock[]					 _lockPool	   = new IndexLock[Const.lockPoolSize];		  // 全局共享的锁池
 	private static final AtomicLongArray				 _lockVersions = new AtomicLongArray(Const.lockPoolSize); // 全局共享的锁版本号池
 	private static final AtomicReferenceArray<IndexLock> _lockCreator  = new AtomicReferenceArray<>(_lockPool);	  // 锁池中锁的线程安全创造器(副本)
 	private static final int							 _lockMask	   = Const.lockPoolSize - 1;				  // 锁池下标的掩码
-	private static final FastRWLock						 _rwlCommit	   = new FastRWLock();						  // 用于数据提交的读写锁
+	private static final StripedRWLock					 _rwlCommit	   = new StripedRWLock();					  // 用于数据提交的读写锁(每个事务线程独立的读计数槽)
 	private static ExceptionHandler						 _defaultEh;											  // 默认的全局异常处理
 
 	private ProcThread _pt;	 // 事务所属的线程上下文. 只在事务运行中有效
@@ -61,6 +102,16 @@ public abstract class Procedure implements Runnable
 		_rwlCommit.writeUnlock();
 	}
 
+	static StripedRWLock.Slot newCommitSlot()
+	{
+		return _rwlCommit.newSlot();
+	}
+
+	static void removeCommitSlot(StripedRWLock.Slot slot)
+	{
+		_rwlCommit.removeSlot(slot);
+	}
+
 	/**
 	 * 设置当前默认的异常处理器
 	 */
@@ -179,6 +230,30 @@ public abstract class Procedure implements Runnable
 		return t.getNoLock(k);
 	}
 
+	/**
+	 * 追加读锁并获取记录
+	 * <p>
+	 * 获取的记录只能读取,修改时会抛出异常
+	 */
+	@SuppressWarnings("deprecation")
+	public final <V extends Bean<V>, S extends Safe<V>> S lockGetReadOnly(TableLong<V, S> t, long k) throws InterruptedException
+	{
+		appendLockRead(t.lockId(k));
+		return t.getNoLock(k);
+	}
+
+	/**
+	 * 追加读锁并获取记录
+	 * <p>
+	 * 获取的记录只能读取,修改时会抛出异常
+	 */
+	@SuppressWarnings("deprecation")
+	public final <K, V extends Bean<V>, S extends Safe<V>> S lockGetReadOnly(Table<K, V, S> t, K k) throws InterruptedException
+	{
+		appendLockRead(t.lockId(k));
+		return t.getNoLock(k);
+	}
+
 	@SuppressWarnings("unchecked")
 	public final <V extends Bean<V>, S extends Safe<V>> S lockGetOrNew(TableLong<V, S> t, long k, Supplier<V> supplier) throws InterruptedException
 	{
@@ -350,32 +425,76 @@ public abstract class Procedure implements Runnable
 	}
 
 	/**
-	 * 判断lockId是否已被获取到锁
+	 * 判断lockId是否已被获取到锁(读锁或写锁)
 	 */
 	public static boolean isLocked(int lockId)
 	{
-		return getLock(lockId & _lockMask).isLocked();
+		IndexLock lock = getLock(lockId & _lockMask);
+		return lock.isWriteLocked() || lock.getReadLockCount() > 0;
 	}
 
 	/**
-	 * 判断lockId是否已被当前线程获取到锁
+	 * 判断lockId是否已被当前线程获取到写锁
 	 */
 	public static boolean isLockedByCurrentThread(int lockId)
 	{
-		return getLock(lockId & _lockMask).isHeldByCurrentThread();
+		return getLock(lockId & _lockMask).isWriteLockedByCurrentThread();
+	}
+
+	/**
+	 * 判断lockId是否已被当前线程获取到读锁或写锁
+	 */
+	public static boolean isReadLockedByCurrentThread(int lockId)
+	{
+		IndexLock lock = getLock(lockId & _lockMask);
+		return lock.isWriteLockedByCurrentThread() || lock.getReadHoldCount() > 0;
+	}
+
+	/**
+	 * 判断lockId是否已被任何线程获取到写锁
+	 */
+	static boolean isWriteLocked(int lockId)
+	{
+		return getLock(lockId & _lockMask).isWriteLocked();
 	}
 
 	/**
-	 * 尝试加锁一个lockId
+	 * 获取lockId当前的锁版本号. 记录修改提交或回滚时会增加
+	 */
+	static long getLockVersion(int lockId)
+	{
+		return _lockVersions.get(lockId & _lockMask);
+	}
+
+	/**
+	 * 尝试加写锁一个lockId
 	 * <p>
 	 * 只用于内部提交数据
 	 */
-	static IndexLock tryLock(int lockId)
+	static Lock tryLock(int lockId)
 	{
-		IndexLock lock = getLock(lockId & _lockMask);
+		Lock lock = getLock(lockId & _lockMask).writeLock();
 		return lock.tryLock() ? lock : null;
 	}
 
+	/**
+	 * 并行预读多条记录到读缓存并等待完成
+	 * <p>
+	 * 应在加锁前调用,使加锁后的get不再读存储,缩短持有锁的时间. 见{@link TableLong#prefetchAsync}
+	 */
+	protected final void prefetch(TableLong<?, ?> table, long... keys)
+	{
+		table.prefetchAsync(keys).join();
+	}
+
+	/**
+	 * 见{@link #prefetch(TableLong, long...)}
+	 */
+	protected final <K> void prefetch(Table<K, ?, ?> table, Collection<? extends K> keys)
+	{
+		table.prefetchAsync(keys).join();
+	}
+
 	/**
 	 * 加锁一个lockId
 	 * <p>
@@ -390,13 +509,43 @@ public abstract class Procedure implements Runnable
 		pt.lockCount = 1;
 	}
 
+	/**
+	 * 加读锁一个lockId
+	 * <p>
+	 * 多个事务可以同时加同一个读锁,但加读锁的记录不能修改<br>
+	 * 只能在事务中调用, 加锁前会释放当前事务已经加过的锁
+	 */
+	protected final void lockRead(int lockId) throws InterruptedException
+	{
+		unlock();
+		ProcThread pt = _pt;
+		(pt.locks[0] = getLock(lockId & _lockMask)).lockInterruptibly(true);
+		pt.lockCount = 1;
+	}
+
 	/**
 	 * 追加一个lockId的锁
 	 * <p>
 	 * 可能会引发已加锁的重排序并重锁,并检测两次锁之间是否有修改的序列号变化,如果有则抛出Redo异常<br>
+	 * 如果之前已加了此lockId的读锁,则会升级成写锁<br>
 	 * 只能在事务中调用. 且此调用之前的事务不能有写操作
 	 */
 	protected final void appendLock(int lockId) throws InterruptedException
+	{
+		appendLock(lockId, false);
+	}
+
+	/**
+	 * 追加一个lockId的读锁
+	 * <p>
+	 * 同{@link #appendLock(int)},如果之前已加了此lockId的读锁或写锁则直接返回
+	 */
+	protected final void appendLockRead(int lockId) throws InterruptedException
+	{
+		appendLock(lockId, true);
+	}
+
+	private void appendLock(int lockId, boolean shared) throws InterruptedException
 	{
 		final ProcThread pt = _pt;
 		if (pt == null)
@@ -404,40 +553,32 @@ public abstract class Procedure implements Runnable
 		final IndexLock[] locks = pt.locks;
 		final int lockIdx = lockId & _lockMask;
 		final int n = pt.lockCount;
-		IndexLock lock = getLock(lockIdx);
-		if (n == 0)
-		{
-			(locks[0] = lock).lockInterruptibly(); // 之前没有加任何锁则可以直接加锁
-			pt.lockCount = 1;
-			return;
-		}
-		IndexLock lastLock = locks[n - 1];
-		int lastLockIdx = lastLock.index;
-		if (lastLockIdx <= lockIdx)
-		{
-			if (lastLockIdx != lockIdx)
-			{
-				if (n >= Const.maxLockPerProcedure)
-					throw new IllegalStateException("appendLock exceed: " + (n + 1) + '>' + Const.maxLockPerProcedure);
-				(locks[n] = lock).lockInterruptibly(); // 要加的锁比之前的锁都大则直接加锁
-				pt.lockCount = n + 1;
-			}
-			return;
-		}
-		int i = n - 1;
+		final IndexLock lock = getLock(lockIdx);
+		int i = n;
 		for (; i > 0; --i) // 算出需要插入锁的下标位置i时跳出循环
 		{
-			lastLockIdx = locks[i - 1].index;
+			int lastLockIdx = locks[i - 1].index;
 			if (lastLockIdx <= lockIdx)
 			{
 				if (lastLockIdx == lockIdx)
-					return; // 之前加过当前锁则直接返回
+				{
+					if (shared || lock.isWriteLockedByCurrentThread())
+						return; // 之前加过当前锁则直接返回
+					relock(pt, i - 1, lock, false, false); // 读锁升级成写锁只能先解锁再重锁
+					return;
+				}
 				break;
 			}
 		}
 		if (n >= Const.maxLockPerProcedure)
 			throw new IllegalStateException("appendLock exceed: " + (n + 1) + '>' + Const.maxLockPerProcedure);
-		if (lock.tryLock()) // 尝试直接加锁,成功则直接按顺序插入锁
+		if (i == n)
+		{
+			(locks[n] = lock).lockInterruptibly(shared); // 要加的锁比之前的锁都大则直接加锁
+			pt.lockCount = n + 1;
+			return;
+		}
+		if (lock.tryLock(shared)) // 尝试直接加锁,成功则直接按顺序插入锁
 		{
 			for (int j = n - 1; j >= i; --j)
 				locks[j + 1] = locks[j];
@@ -445,28 +586,42 @@ public abstract class Procedure implements Runnable
 			pt.lockCount = n + 1;
 			return;
 		}
+		relock(pt, i, lock, shared, true);
+	}
+
+	/**
+	 * 解开从下标i开始的所有锁,再按顺序加上lock及之后的锁,并检查重锁的版本号
+	 * @param insert lock是否插入到下标i. 否则下标i就是lock本身,只是换成新的读写方式重锁
+	 */
+	private static void relock(ProcThread pt, int i, IndexLock lock, boolean shared, boolean insert) throws InterruptedException
+	{
 		if (pt.sctx.hasDirty()) // 必须要解部分锁了,所以确保之前不能有修改操作
 			throw new IllegalStateException("invalid appendLock after any dirty record");
+		final IndexLock[] locks = pt.locks;
 		final long[] versions = pt.versions;
+		final boolean[] shareds = pt.shareds;
+		int n = pt.lockCount;
 		for (int j = n - 1; j >= i; --j)
 		{
-			lastLock = locks[j];
-			versions[j] = _lockVersions.get(lastLock.index);
-			lastLock.unlock(); // 尝试解所有比当前锁大的锁
+			IndexLock lk = locks[j];
+			int k = (insert ? j + 1 : j);
+			versions[k] = _lockVersions.get(lk.index);
+			shareds[k] = !lk.isWriteLockedByCurrentThread();
+			locks[k] = lk;
+			lk.unlock(); // 尝试解所有比当前锁大的锁
 		}
 		pt.lockCount = i;
-		(locks[i] = lock).lockInterruptibly(); // 加当前锁
-		pt.lockCount = ++i;
-		for (;;)
+		if (insert)
+			++n;
+		locks[i] = lock;
+		shareds[i] = shared;
+		for (int j = i; j < n;)
 		{
-			lock = locks[i];
-			(locks[i] = lastLock).lockInterruptibly(); // 继续加比当前锁大的所有锁
-			pt.lockCount = ++i;
-			if (_lockVersions.get(lastLock.index) != versions[i - 2])
+			IndexLock lk = locks[j];
+			lk.lockInterruptibly(shareds[j]); // 按顺序重新加锁
+			pt.lockCount = ++j;
+			if ((j > i + 1 || !insert) && _lockVersions.get(lk.index) != versions[j - 1])
 				redo(); // 发现解锁和加锁期间有版本变化则回滚重做
-			if (i > n)
-				return;
-			lastLock = lock;
 		}
 	}
 
@@ -802,7 +957,10 @@ public abstract class Procedure implements Runnable
 		}
 		ProcThread pt = (ProcThread)Thread.currentThread();
 		SContext sctx = pt.sctx;
-		_rwlCommit.readLock();
+		ProcStat.Local stat = (Const.procedureStat ? ProcStat.get(getClass()).local(pt) : null);
+		long beginTime = (stat != null ? System.nanoTime() : 0);
+		pt.lockWaitTime = 0;
+		_rwlCommit.readLock(pt.commitSlot);
 		try
 		{
 			synchronized (this)
@@ -825,6 +983,8 @@ public abstract class Procedure implements Runnable
 				catch (Redo e)
 				{
 				}
+				if (stat != null)
+					++stat.redoCount;
 				sctx.rollback();
 				unlock();
 				if (--n <= 0)
@@ -836,6 +996,13 @@ public abstract class Procedure implements Runnable
 		}
 		catch (Throwable e)
 		{
+			if (stat != null)
+			{
+				if (e == Undo._instance)
+					++stat.undoCount;
+				else
+					++stat.exceptionCount;
+			}
 			try
 			{
 				if (e instanceof InterruptedException && DBManager.instance().isExiting())
@@ -863,7 +1030,12 @@ public abstract class Procedure implements Runnable
 				pt.proc = null;
 				Thread.interrupted(); // 清除interrupted标识
 			}
-			_rwlCommit.readUnlock();
+			_rwlCommit.readUnlock(pt.commitSlot);
+			if (stat != null)
+			{
+				stat.execTime.record(System.nanoTime() - beginTime);
+				stat.lockWaitTime.record(pt.lockWaitTime);
+			}
 		}
 	}
 
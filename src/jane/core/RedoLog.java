@@ -0,0 +1,445 @@
+package jane.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import jane.core.map.IntHashMap;
+
+/**
+ * 事务的重做日志(write-ahead log)
+ * <p>
+ * 事务提交时把修改过的记录的最终状态序列化追加到内存缓冲区,由刷新线程按周期或缓冲区大小批量写入文件并刷新到磁盘(group commit)<br>
+ * 每批数据是一帧: size(4) + crc32(4) + 若干条目; 条目: tableId(UInt) + size(4) + flag(1:put,0:remove) + key + [value]<br>
+ * 数据库提交时(所有事务暂停时)切换到新的日志文件,提交成功后删除旧的日志文件<br>
+ * 启动时读取残留的日志文件,在打开各表时把对应的修改重新加入到表的写缓存中,等待下次提交
+ */
+public final class RedoLog
+{
+	private static final int					FRAME_HEAD_SIZE	= 8;												// 帧头大小: size(4)+crc32(4)
+	private static final ThreadLocal<Octets>	_entryBuf		= ThreadLocal.withInitial(() -> new Octets(0x100));	// 各事务线程序列化日志条目的缓冲区
+	private final File							_path;																// 日志文件所在的目录
+	private final long							_syncPeriod;														// 刷新到磁盘的周期(毫秒)
+	private final int							_syncSize;															// 缓冲区达到此大小时立即刷新到磁盘
+	private final Object						_fileLock		= new Object();										// 文件操作的锁
+	private final CRC32							_crc32			= new CRC32();										// 只在_fileLock中使用
+	private final IntHashMap<ArrayList<byte[]>>	_replays		= new IntHashMap<>();								// 启动时读取的待恢复条目(按表ID分组)
+	private final Thread						_syncThread;														// 刷新线程
+	private Octets								_buf			= new Octets(0x10000);								// 待写入的缓冲区. 由this同步
+	private Octets								_bufWriting		= new Octets(0x10000);								// 正在写入的缓冲区. 只在_fileLock中使用
+	private RandomAccessFile					_raf;																// 当前的日志文件. 只在_fileLock中使用
+	private int									_fileSeq;															// 当前日志文件的序号
+	private volatile boolean					_closed;															// 是否已关闭
+	private volatile long						_logCount;															// 记录的事务数量
+	private volatile long						_logSize;															// 记录的字节数
+	private volatile long						_syncCount;															// 刷新到磁盘的次数
+	private volatile long						_syncBytes;															// 刷新到磁盘的字节数
+	private volatile long						_syncTime;															// 刷新到磁盘的总耗时(纳秒)
+	private long								_replayCount;														// 启动时读取的待恢复条目数量
+
+	/**
+	 * 打开重做日志
+	 * <p>
+	 * 先读取目录中残留的日志文件等待恢复,再创建新的日志文件并启动刷新线程
+	 * @param path 日志文件所在的目录. 不存在时会自动创建
+	 * @param syncPeriod 刷新到磁盘的周期(毫秒)
+	 * @param syncSize 缓冲区达到此大小(字节)时立即刷新到磁盘
+	 */
+	public RedoLog(File path, long syncPeriod, int syncSize) throws IOException
+	{
+		if (!path.isDirectory() && !path.mkdirs())
+			throw new IOException("create redo log path failed: " + path);
+		_path = path;
+		_syncPeriod = syncPeriod;
+		_syncSize = syncSize;
+		for (File file : listFiles())
+		{
+			_fileSeq = Math.max(_fileSeq, getFileSeq(file));
+			load(file);
+		}
+		if (_replayCount > 0)
+			Log.info("RedoLog: loaded {} entries for {} tables", _replayCount, _replays.size());
+		_raf = openFile(++_fileSeq);
+		_syncThread = new Thread(this::syncLoop, "RedoLogThread");
+		_syncThread.setDaemon(true);
+		_syncThread.start();
+	}
+
+	private static int getFileSeq(File file)
+	{
+		String name = file.getName();
+		return Integer.parseInt(name.substring(0, name.length() - 4));
+	}
+
+	private File[] listFiles()
+	{
+		File[] files = _path.listFiles((dir, name) -> name.length() == 10 && name.endsWith(".log"));
+		if (files == null)
+			return new File[0];
+		Arrays.sort(files, (f0, f1) -> Integer.compare(getFileSeq(f0), getFileSeq(f1)));
+		return files;
+	}
+
+	private RandomAccessFile openFile(int seq) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(new File(_path, String.format("%06d.log", seq)), "rw");
+		raf.setLength(0);
+		return raf;
+	}
+
+	/**
+	 * 读取一个日志文件的全部有效帧. 遇到不完整或校验失败的帧则忽略此帧及之后的数据
+	 */
+	private void load(File file) throws IOException
+	{
+		byte[] data = Files.readAllBytes(file.toPath());
+		CRC32 crc32 = new CRC32();
+		OctetsStream os = OctetsStream.wrap(data);
+		try
+		{
+			while (os.remain() >= FRAME_HEAD_SIZE)
+			{
+				int size = os.unmarshalInt4();
+				int crc = os.unmarshalInt4();
+				int pos = os.position();
+				if (size <= 0 || size > data.length - pos)
+					break;
+				crc32.reset();
+				crc32.update(data, pos, size);
+				if ((int)crc32.getValue() != crc)
+					break;
+				for (int end = pos + size; os.position() < end;)
+				{
+					int tableId = os.unmarshalUInt();
+					int n = os.unmarshalInt4();
+					int p = os.position();
+					ArrayList<byte[]> entries = _replays.get(tableId);
+					if (entries == null)
+						_replays.put(tableId, entries = new ArrayList<>());
+					entries.add(Arrays.copyOfRange(data, p, p + n));
+					os.setPosition(p + n);
+					++_replayCount;
+				}
+			}
+		}
+		catch (MarshalException e)
+		{
+			Log.error(e, "RedoLog: load exception: {}", file);
+		}
+		if (os.remain() > 0)
+			Log.warn("RedoLog: ignored {} bytes at the end of {}", os.remain(), file);
+	}
+
+	/**
+	 * 按表的key类型序列化key
+	 */
+	static void marshalKey(Octets os, Object k)
+	{
+		if (k instanceof Octets)
+			os.marshal((Octets)k);
+		else if (k instanceof String)
+			os.marshal((String)k);
+		else if (k instanceof Bean)
+			((Bean<?>)k).marshal(os);
+		else
+			throw new UnsupportedOperationException("unsupported key type: " + (k != null ? k.getClass().getName() : "null"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K> K unmarshalKey(OctetsStream os, Object stubK) throws MarshalException
+	{
+		if (stubK instanceof Octets)
+			return (K)os.unmarshalOctets();
+		if (stubK instanceof String)
+			return (K)os.unmarshalString();
+		if (stubK instanceof Bean)
+		{
+			Bean<?> k = ((Bean<?>)stubK).create();
+			k.unmarshal(os);
+			return (K)k;
+		}
+		throw new UnsupportedOperationException("unsupported key type: " + (stubK != null ? stubK.getClass().getName() : "null"));
+	}
+
+	/**
+	 * 把启动时读取的此表的修改重新加入到表的写缓存中
+	 * <p>
+	 * 只在打开表时调用
+	 */
+	@SuppressWarnings("deprecation")
+	<K, V extends Bean<V>> void replay(Table<K, V, ?> table, Object stubK, V stubV)
+	{
+		ArrayList<byte[]> entries = _replays.remove(table.getTableId());
+		if (entries == null)
+			return;
+		try
+		{
+			for (byte[] entry : entries)
+			{
+				OctetsStream os = OctetsStream.wrap(entry);
+				boolean put = (os.unmarshalInt1() != 0);
+				K k = unmarshalKey(os, stubK);
+				if (put)
+				{
+					V v = stubV.create();
+					v.unmarshal(os);
+					table.putUnsafe(k, v);
+				}
+				else
+					table.removeUnsafe(k);
+			}
+		}
+		catch (MarshalException e)
+		{
+			throw new IllegalStateException("RedoLog: replay failed for table " + table.getTableName(), e);
+		}
+		Log.info("RedoLog: replayed {} entries for table {}", entries.size(), table.getTableName());
+	}
+
+	/**
+	 * 把启动时读取的此表的修改重新加入到表的写缓存中
+	 * <p>
+	 * 只在打开表时调用
+	 */
+	@SuppressWarnings("deprecation")
+	<V extends Bean<V>> void replay(TableLong<V, ?> table, V stubV)
+	{
+		ArrayList<byte[]> entries = _replays.remove(table.getTableId());
+		if (entries == null)
+			return;
+		try
+		{
+			for (byte[] entry : entries)
+			{
+				OctetsStream os = OctetsStream.wrap(entry);
+				boolean put = (os.unmarshalInt1() != 0);
+				long k = os.unmarshalLong();
+				if (put)
+				{
+					V v = stubV.create();
+					v.unmarshal(os);
+					table.putUnsafe(k, v);
+				}
+				else
+					table.removeUnsafe(k);
+			}
+		}
+		catch (MarshalException e)
+		{
+			throw new IllegalStateException("RedoLog: replay failed for table " + table.getTableName(), e);
+		}
+		Log.info("RedoLog: replayed {} entries for table {}", entries.size(), table.getTableName());
+	}
+
+	/**
+	 * 丢弃启动时读取但没有对应表的待恢复条目
+	 * <p>
+	 * 在所有表都打开之后调用
+	 */
+	void clearReplays()
+	{
+		if (_replays.size() > 0)
+		{
+			_replays.foreach((tableId, entries) -> Log.warn("RedoLog: discarded {} entries for unknown table id {}", entries.size(), tableId));
+			_replays.clear();
+		}
+	}
+
+	/**
+	 * 追加一个事务修改过的记录
+	 * <p>
+	 * 在事务提交时持有记录锁的情况下调用. 只追加到内存缓冲区,由刷新线程写入文件
+	 * @param redoKeys 依次存放的表和key
+	 */
+	void append(ArrayList<Object> redoKeys)
+	{
+		Octets os = _entryBuf.get();
+		os.clear();
+		for (int i = 0, n = redoKeys.size(); i < n; i += 2)
+		{
+			TableBase<?> table = (TableBase<?>)redoKeys.get(i);
+			int pos = os.size();
+			os.marshalUInt(table.getTableId());
+			int sizePos = os.size();
+			os.marshal4(0);
+			if (table.marshalRedo(os, redoKeys.get(i + 1)))
+			{
+				int size = os.size() - sizePos - 4;
+				byte[] buf = os.array();
+				buf[sizePos] = (byte)(size >> 24);
+				buf[sizePos + 1] = (byte)(size >> 16);
+				buf[sizePos + 2] = (byte)(size >> 8);
+				buf[sizePos + 3] = (byte)size;
+			}
+			else
+				os.resize(pos);
+		}
+		int size = os.size();
+		if (size <= 0)
+			return;
+		synchronized (this)
+		{
+			if (_closed)
+				return;
+			_buf.append(os);
+			_logCount++;
+			_logSize += size;
+			if (_buf.size() >= _syncSize)
+				notify();
+		}
+	}
+
+	private void syncLoop()
+	{
+		while (!_closed)
+		{
+			try
+			{
+				synchronized (this)
+				{
+					if (_buf.size() < _syncSize)
+						wait(_syncPeriod);
+				}
+				sync();
+			}
+			catch (InterruptedException e)
+			{
+				break;
+			}
+			catch (Throwable e)
+			{
+				Log.error("RedoLog: sync exception:", e);
+			}
+		}
+	}
+
+	/**
+	 * 把缓冲区中的数据作为一帧写入当前日志文件并刷新到磁盘
+	 */
+	private void sync() throws IOException
+	{
+		synchronized (_fileLock)
+		{
+			Octets buf;
+			synchronized (this)
+			{
+				buf = _buf;
+				if (buf.size() <= 0)
+					return;
+				_buf = _bufWriting;
+				_bufWriting = buf;
+			}
+			long t = System.nanoTime();
+			int size = buf.size();
+			_crc32.reset();
+			_crc32.update(buf.array(), 0, size);
+			ByteBuffer bb = ByteBuffer.allocate(FRAME_HEAD_SIZE);
+			bb.putInt(size).putInt((int)_crc32.getValue()).flip();
+			FileChannel fc = _raf.getChannel();
+			while (bb.hasRemaining())
+				fc.write(bb);
+			ByteBuffer data = ByteBuffer.wrap(buf.array(), 0, size);
+			while (data.hasRemaining())
+				fc.write(data);
+			fc.force(false);
+			buf.clear();
+			_syncCount++;
+			_syncBytes += FRAME_HEAD_SIZE + size;
+			_syncTime += System.nanoTime() - t;
+		}
+	}
+
+	/**
+	 * 刷新当前日志文件并切换到新的日志文件
+	 * <p>
+	 * 在所有事务暂停的情况下调用,保证旧日志文件只包含本次数据库提交之前的修改
+	 * @return 旧日志文件的序号. 用于数据库提交成功后调用{@link #deleteBefore}
+	 */
+	int rotate() throws IOException
+	{
+		synchronized (_fileLock)
+		{
+			sync();
+			int seq = _fileSeq;
+			RandomAccessFile raf = openFile(seq + 1);
+			_raf.close();
+			_raf = raf;
+			_fileSeq = seq + 1;
+			return seq;
+		}
+	}
+
+	/**
+	 * 删除序号不大于seq的全部日志文件
+	 * <p>
+	 * 在这些日志的修改都已提交到数据库存储之后调用
+	 */
+	void deleteBefore(int seq)
+	{
+		for (File file : listFiles())
+		{
+			if (getFileSeq(file) <= seq && !file.delete())
+				Log.warn("RedoLog: delete file failed: {}", file);
+		}
+	}
+
+	/**
+	 * 刷新并关闭日志
+	 */
+	public void close()
+	{
+		synchronized (this)
+		{
+			if (_closed)
+				return;
+			_closed = true;
+			notify();
+		}
+		try
+		{
+			_syncThread.join();
+			synchronized (_fileLock)
+			{
+				sync();
+				_raf.close();
+			}
+		}
+		catch (Exception e)
+		{
+			Log.error("RedoLog: close exception:", e);
+		}
+	}
+
+	public long getLogCount()
+	{
+		return _logCount;
+	}
+
+	public long getLogSize()
+	{
+		return _logSize;
+	}
+
+	public long getSyncCount()
+	{
+		return _syncCount;
+	}
+
+	public long getSyncBytes()
+	{
+		return _syncBytes;
+	}
+
+	/**
+	 * 获取刷新到磁盘的总耗时(纳秒)
+	 */
+	public long getSyncTime()
+	{
+		return _syncTime;
+	}
+}
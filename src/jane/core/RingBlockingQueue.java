@@ -0,0 +1,276 @@
+package jane.core;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 基于无锁定长ring buffer的任务阻塞队列
+ * <p>
+ * 用于事务线程池(ThreadPoolExecutor)的任务队列,入队不分配对象也不加锁<br>
+ * 单消费者时使用{@link MpscRingBuffer},否则使用{@link MpmcRingBuffer}<br>
+ * 消费者空闲时先自旋,再让出CPU,最后才挂起等待. 只有存在挂起的消费者时,生产者才需要加锁唤醒<br>
+ * 删除元素只是把元素原地替换成空任务. 遍历只是近似的快照<br>
+ * 单消费者时,线程池shutdownNow等在其它线程中的poll/drainTo会先抢占消费者标记,不会和消费者线程同时取出
+ */
+public final class RingBlockingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable>
+{
+	private static final int	  SPIN_COUNT  = 100;					 // 空闲时自旋的次数
+	private static final int	  YIELD_COUNT = 10;						 // 空闲时自旋后让出CPU的次数
+	private static final Runnable NOOP		  = RingBlockingQueue::noop; // 替换被删除元素的空任务
+
+	private final MpscRingBuffer<Runnable> _mpsc;							// 单消费者时使用
+	private final MpmcRingBuffer<Runnable> _mpmc;							// 多消费者时使用
+	private final AtomicBoolean			   _polling	 = new AtomicBoolean();	// 单消费者时是否有线程正在取出
+	private final ReentrantLock			   _lock	 = new ReentrantLock();	// 只用于挂起和唤醒消费者
+	private final Condition				   _notEmpty = _lock.newCondition();
+	private volatile int				   _waiting;						// 挂起等待的消费者数量(只在_lock中修改)
+
+	private static void noop()
+	{
+	}
+
+	/**
+	 * @param capacity 队列容量,会向上取2的幂
+	 * @param singleConsumer 是否只有一个消费者线程
+	 */
+	public RingBlockingQueue(int capacity, boolean singleConsumer)
+	{
+		int bufSize = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		if (singleConsumer)
+		{
+			_mpsc = new MpscRingBuffer<>(bufSize);
+			_mpmc = null;
+		}
+		else
+		{
+			_mpsc = null;
+			_mpmc = new MpmcRingBuffer<>(bufSize);
+		}
+	}
+
+	public int capacity()
+	{
+		return _mpsc != null ? _mpsc.capacity() : _mpmc.capacity();
+	}
+
+	@Override
+	public int size()
+	{
+		return _mpsc != null ? _mpsc.size() : _mpmc.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return _mpsc != null ? _mpsc.isEmpty() : _mpmc.isEmpty();
+	}
+
+	@Override
+	public int remainingCapacity()
+	{
+		return Math.max(capacity() - size(), 0);
+	}
+
+	@Override
+	public boolean offer(Runnable r)
+	{
+		if (!(_mpsc != null ? _mpsc.offer(r) : _mpmc.offer(r)))
+			return false;
+		if (_waiting > 0)
+		{
+			_lock.lock();
+			try
+			{
+				_notEmpty.signal();
+			}
+			finally
+			{
+				_lock.unlock();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean offer(Runnable r, long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (int n = 0; !offer(r); ++n)
+		{
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (System.nanoTime() - deadline >= 0)
+				return false;
+			if (n < SPIN_COUNT)
+				Thread.onSpinWait();
+			else if (n < SPIN_COUNT + YIELD_COUNT)
+				Thread.yield();
+			else
+				LockSupport.parkNanos(this, 100_000);
+		}
+		return true;
+	}
+
+	@Override
+	public void put(Runnable r) throws InterruptedException
+	{
+		offer(r, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 单消费者时抢占消费者标记,保证同时只有一个线程从{@link MpscRingBuffer}中取出
+	 */
+	private void lockPoll()
+	{
+		while (!_polling.compareAndSet(false, true))
+			Thread.onSpinWait();
+	}
+
+	@Override
+	public Runnable poll()
+	{
+		if (_mpsc == null)
+			return _mpmc.poll();
+		lockPoll();
+		try
+		{
+			return _mpsc.poll();
+		}
+		finally
+		{
+			_polling.set(false);
+		}
+	}
+
+	@Override
+	public Runnable peek()
+	{
+		return _mpsc != null ? _mpsc.peek() : _mpmc.peek();
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException
+	{
+		Runnable r = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		if (r == null)
+			throw new IllegalStateException();
+		return r;
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		for (int n = 0; n < SPIN_COUNT + YIELD_COUNT; ++n)
+		{
+			Runnable r = poll();
+			if (r != null)
+				return r;
+			if (n < SPIN_COUNT)
+				Thread.onSpinWait();
+			else
+				Thread.yield();
+		}
+		long nanos = unit.toNanos(timeout);
+		_lock.lockInterruptibly();
+		try
+		{
+			++_waiting; //NOSONAR 只在_lock中修改
+			try
+			{
+				for (;;)
+				{
+					Runnable r = poll(); // 必须在_waiting增加后再检查一次,避免错过生产者的唤醒
+					if (r != null)
+						return r;
+					if (nanos <= 0)
+						return null;
+					nanos = _notEmpty.awaitNanos(nanos);
+				}
+			}
+			finally
+			{
+				--_waiting; //NOSONAR
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c)
+	{
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements)
+	{
+		int n = 0;
+		if (_mpsc == null)
+		{
+			for (Runnable r; n < maxElements && (r = _mpmc.poll()) != null;)
+			{
+				if (r != NOOP)
+				{
+					c.add(r);
+					++n;
+				}
+			}
+			return n;
+		}
+		lockPoll();
+		try
+		{
+			for (Runnable r; n < maxElements && (r = _mpsc.poll()) != null;)
+			{
+				if (r != NOOP)
+				{
+					c.add(r);
+					++n;
+				}
+			}
+		}
+		finally
+		{
+			_polling.set(false);
+		}
+		return n;
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super Runnable> filter)
+	{
+		Predicate<Runnable> f = r -> r != NOOP && filter.test(r);
+		return (_mpsc != null ? _mpsc.replaceIf(f, NOOP) : _mpmc.replaceIf(f, NOOP)) > 0;
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		return o != null && removeIf(r -> r == o);
+	}
+
+	@Override
+	public Iterator<Runnable> iterator()
+	{
+		ArrayList<Runnable> list = new ArrayList<>();
+		if (_mpsc != null)
+			_mpsc.copyTo(list);
+		else
+			_mpmc.copyTo(list);
+		list.removeIf(r -> r == NOOP);
+		return Collections.unmodifiableList(list).iterator();
+	}
+}
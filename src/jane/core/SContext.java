@@ -294,6 +294,7 @@ public final class SContext
 	private final ArrayList<RecordLong<?, ?>> _recordLongs = new ArrayList<>();
 	private final ArrayList<Runnable>		  _onRollbacks = new ArrayList<>();
 	private final ArrayList<Runnable>		  _onCommits   = new ArrayList<>();
+	private final ArrayList<Object>			  _redoKeys	   = new ArrayList<>(); // 需要写重做日志的表和key(依次存放)
 	private boolean							  _hasDirty;
 
 	public static SContext current()
@@ -396,9 +397,22 @@ public final class SContext
 		_hasDirty = true;
 	}
 
+	/**
+	 * 添加一条提交时需要写重做日志的记录. 没有开启重做日志时忽略
+	 */
+	void addRedo(TableBase<?> table, Object key)
+	{
+		if (DBManager.instance().getRedoLog() != null)
+		{
+			_redoKeys.add(table);
+			_redoKeys.add(key);
+		}
+	}
+
 	void commit()
 	{
 		_onRollbacks.clear();
+		RedoLog redoLog = DBManager.instance().getRedoLog();
 
 		int n = _records.size();
 		if (n > 0)
@@ -408,7 +422,14 @@ public final class SContext
 			{
 				Record<?, ?, ?> r = _records.get(i);
 				if (r._value.isDirtyAndClear())
+				{
 					r._table.modify(r._key, r._value.unsafe());
+					if (redoLog != null)
+					{
+						_redoKeys.add(r._table);
+						_redoKeys.add(r._key);
+					}
+				}
 			}
 			while (++i < n);
 			_records.clear();
@@ -422,12 +443,26 @@ public final class SContext
 			{
 				RecordLong<?, ?> r = _recordLongs.get(i);
 				if (r._value.isDirtyAndClear())
+				{
 					r._table.modify(r._key, r._value.unsafe());
+					if (redoLog != null)
+					{
+						_redoKeys.add(r._table);
+						_redoKeys.add(r._key);
+					}
+				}
 			}
 			while (++i < n);
 			_recordLongs.clear();
 		}
 
+		if (!_redoKeys.isEmpty())
+		{
+			if (redoLog != null)
+				redoLog.append(_redoKeys);
+			_redoKeys.clear();
+		}
+
 		n = _onCommits.size();
 		if (n > 0)
 		{
@@ -452,9 +487,22 @@ public final class SContext
 
 	void rollback()
 	{
+		for (int i = 0, n = _records.size(); i < n; ++i)
+		{
+			Record<?, ?, ?> r = _records.get(i);
+			if (r._value.isDirty())
+				Procedure.incVersion(r._lockId); // 回滚也要增加版本号,通知乐观读的事务可能读到了回滚前的修改
+		}
+		for (int i = 0, n = _recordLongs.size(); i < n; ++i)
+		{
+			RecordLong<?, ?> r = _recordLongs.get(i);
+			if (r._value.isDirty())
+				Procedure.incVersion(r._lockId);
+		}
 		_records.clear();
 		_recordLongs.clear();
 		_onCommits.clear();
+		_redoKeys.clear();
 
 		for (int i = _onRollbacks.size(); --i >= 0;)
 		{
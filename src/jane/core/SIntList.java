@@ -0,0 +1,179 @@
+package jane.core;
+
+import java.util.function.IntConsumer;
+import jane.core.SContext.Safe;
+import jane.core.map.IntArrayList;
+
+/**
+ * IntArrayList类型的安全修改类
+ * <p>
+ * 回滚记录直接保存int值,没有装箱开销
+ */
+public final class SIntList implements Cloneable
+{
+	private final Safe<?>	   _owner;
+	private final IntArrayList _list;
+	private SContext		   _sctx;
+
+	public SIntList(Safe<?> owner, IntArrayList list)
+	{
+		_owner = owner;
+		_list = list;
+	}
+
+	private SContext sContext()
+	{
+		_owner.checkLock();
+		if (_sctx != null)
+			return _sctx;
+		_owner.dirty();
+		return _sctx = SContext.current();
+	}
+
+	public int size()
+	{
+		return _list.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return _list.isEmpty();
+	}
+
+	public boolean contains(int v)
+	{
+		return _list.contains(v);
+	}
+
+	public int indexOf(int v)
+	{
+		return _list.indexOf(v);
+	}
+
+	public int lastIndexOf(int v)
+	{
+		return _list.lastIndexOf(v);
+	}
+
+	public int get(int idx)
+	{
+		return _list.get(idx);
+	}
+
+	public int set(int idx, int v)
+	{
+		SContext ctx = sContext();
+		int vOld = _list.set(idx, v);
+		ctx.addOnRollback(() -> _list.set(idx, vOld));
+		return vOld;
+	}
+
+	public void add(int v)
+	{
+		SContext ctx = sContext();
+		_list.add(v);
+		ctx.addOnRollback(_list::removeLast);
+	}
+
+	public void add(int idx, int v)
+	{
+		SContext ctx = sContext();
+		_list.add(idx, v);
+		ctx.addOnRollback(() -> _list.removeAt(idx));
+	}
+
+	public void addAll(IntArrayList list)
+	{
+		for (int i = 0, n = list.size(); i < n; ++i)
+			add(list.get(i));
+	}
+
+	public int removeAt(int idx)
+	{
+		SContext ctx = sContext();
+		int vOld = _list.removeAt(idx);
+		ctx.addOnRollback(() -> _list.add(idx, vOld));
+		return vOld;
+	}
+
+	public boolean removeValue(int v)
+	{
+		int idx = _list.indexOf(v);
+		if (idx < 0)
+			return false;
+		removeAt(idx);
+		return true;
+	}
+
+	public void clear()
+	{
+		if (_list.isEmpty())
+			return;
+		SContext ctx = sContext();
+		IntArrayList saved = _list.clone();
+		_list.clear();
+		ctx.addOnRollback(() ->
+		{
+			_list.clear();
+			_list.addAll(saved);
+		});
+	}
+
+	public void foreach(IntConsumer consumer)
+	{
+		_list.foreach(consumer);
+	}
+
+	public int[] toArray()
+	{
+		return _list.toArray();
+	}
+
+	public SIntList append(IntArrayList list)
+	{
+		addAll(list);
+		return this;
+	}
+
+	public SIntList assign(IntArrayList list)
+	{
+		clear();
+		addAll(list);
+		return this;
+	}
+
+	public void appendTo(IntArrayList list)
+	{
+		list.addAll(_list);
+	}
+
+	public void cloneTo(IntArrayList list)
+	{
+		list.clear();
+		list.addAll(_list);
+	}
+
+	@Override
+	public IntArrayList clone()
+	{
+		return _list.clone();
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return _list.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return this == o || _list.equals(o);
+	}
+
+	@Override
+	public String toString()
+	{
+		return _list.toString();
+	}
+}
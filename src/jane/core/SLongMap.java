@@ -0,0 +1,179 @@
+package jane.core;
+
+import jane.core.SContext.Safe;
+import jane.core.map.LongHashMap;
+import jane.core.map.LongHashMap.LongObjectConsumer;
+
+/**
+ * LongHashMap类型的安全修改类
+ * <p>
+ * key直接保存为long,没有装箱开销. 不支持value为null
+ */
+public final class SLongMap<V, S> implements Cloneable
+{
+	private final Safe<?>		 _owner;
+	private final LongHashMap<V> _map;
+	private SContext			 _sctx;
+
+	public SLongMap(Safe<?> owner, LongHashMap<V> map)
+	{
+		_owner = owner;
+		_map = map;
+	}
+
+	private SContext sContext()
+	{
+		_owner.checkLock();
+		if (_sctx != null)
+			return _sctx;
+		_owner.dirty();
+		return _sctx = SContext.current();
+	}
+
+	private void addUndoPut(SContext ctx, long k, V vOld)
+	{
+		ctx.addOnRollback(() ->
+		{
+			if (vOld != null)
+				_map.put(k, vOld);
+			else
+				_map.remove(k);
+		});
+	}
+
+	public int size()
+	{
+		return _map.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return _map.empty();
+	}
+
+	public boolean containsKey(long k)
+	{
+		return _map.containsKey(k);
+	}
+
+	@Deprecated
+	public V getUnsafe(long k)
+	{
+		return _map.get(k);
+	}
+
+	public S get(long k)
+	{
+		return SContext.safe(_owner, _map.get(k));
+	}
+
+	public V putDirect(long k, V v)
+	{
+		if (v == null)
+			throw new NullPointerException();
+		SContext ctx = sContext();
+		V vOld = _map.put(k, v);
+		addUndoPut(ctx, k, vOld);
+		return vOld;
+	}
+
+	public S put(long k, S s)
+	{
+		return SContext.safeAlone(putDirect(k, SContext.unsafe(s)));
+	}
+
+	public void putAllDirect(LongHashMap<V> map)
+	{
+		if (_map != map)
+			map.foreach(this::putDirect);
+	}
+
+	public V removeDirect(long k)
+	{
+		SContext ctx = sContext();
+		V vOld = _map.remove(k);
+		if (vOld != null)
+			ctx.addOnRollback(() -> _map.put(k, vOld));
+		return vOld;
+	}
+
+	public S remove(long k)
+	{
+		return SContext.safeAlone(removeDirect(k));
+	}
+
+	public void clear()
+	{
+		if (_map.empty())
+			return;
+		SContext ctx = sContext();
+		LongHashMap<V> saved = new LongHashMap<>(_map.size());
+		_map.foreach(saved::put);
+		_map.clear();
+		ctx.addOnRollback(() ->
+		{
+			_map.clear();
+			saved.foreach(_map::put);
+		});
+	}
+
+	@Deprecated
+	public void foreachUnsafe(LongObjectConsumer<V> consumer)
+	{
+		_map.foreach(consumer);
+	}
+
+	public void foreach(LongObjectConsumer<S> consumer)
+	{
+		_map.foreach((k, v) -> consumer.accept(k, SContext.safe(_owner, v)));
+	}
+
+	@SuppressWarnings("unchecked")
+	public SLongMap<V, S> append(LongHashMap<V> map)
+	{
+		if (_map != map)
+			map.foreach((k, v) -> putDirect(k, v instanceof Bean ? (V)((Bean<?>)v).clone() : v));
+		return this;
+	}
+
+	public SLongMap<V, S> assign(LongHashMap<V> map)
+	{
+		clear();
+		return append(map);
+	}
+
+	public void appendTo(LongHashMap<V> map)
+	{
+		Util.appendDeep(_map, map);
+	}
+
+	public void cloneTo(LongHashMap<V> map)
+	{
+		map.clear();
+		Util.appendDeep(_map, map);
+	}
+
+	@Override
+	public LongHashMap<V> clone()
+	{
+		return Util.appendDeep(_map, new LongHashMap<>(_map.size()));
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return _map.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return this == o || _map.equals(o);
+	}
+
+	@Override
+	public String toString()
+	{
+		return _map.toString();
+	}
+}
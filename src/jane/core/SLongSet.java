@@ -0,0 +1,148 @@
+package jane.core;
+
+import java.util.function.LongConsumer;
+import jane.core.SContext.Safe;
+import jane.core.map.LongHashSet;
+
+/**
+ * LongHashSet类型的安全修改类
+ * <p>
+ * 回滚记录直接保存long值,没有装箱开销
+ */
+public final class SLongSet implements Cloneable
+{
+	private final Safe<?>	  _owner;
+	private final LongHashSet _set;
+	private SContext		  _sctx;
+
+	public SLongSet(Safe<?> owner, LongHashSet set)
+	{
+		_owner = owner;
+		_set = set;
+	}
+
+	private SContext sContext()
+	{
+		_owner.checkLock();
+		if (_sctx != null)
+			return _sctx;
+		_owner.dirty();
+		return _sctx = SContext.current();
+	}
+
+	public int size()
+	{
+		return _set.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return _set.isEmpty();
+	}
+
+	public boolean contains(long v)
+	{
+		return _set.contains(v);
+	}
+
+	public boolean add(long v)
+	{
+		SContext ctx = sContext();
+		if (!_set.add(v))
+			return false;
+		ctx.addOnRollback(() -> _set.remove(v));
+		return true;
+	}
+
+	public boolean addAll(LongHashSet set)
+	{
+		boolean[] r = new boolean[1];
+		set.foreach(v ->
+		{
+			if (add(v))
+				r[0] = true;
+		});
+		return r[0];
+	}
+
+	public boolean remove(long v)
+	{
+		SContext ctx = sContext();
+		if (!_set.remove(v))
+			return false;
+		ctx.addOnRollback(() -> _set.add(v));
+		return true;
+	}
+
+	public void clear()
+	{
+		if (_set.isEmpty())
+			return;
+		SContext ctx = sContext();
+		LongHashSet saved = _set.clone();
+		_set.clear();
+		ctx.addOnRollback(() ->
+		{
+			_set.clear();
+			_set.addAll(saved);
+		});
+	}
+
+	public void foreach(LongConsumer consumer)
+	{
+		_set.foreach(consumer);
+	}
+
+	public long[] toArray()
+	{
+		return _set.toArray();
+	}
+
+	public SLongSet append(LongHashSet set)
+	{
+		addAll(set);
+		return this;
+	}
+
+	public SLongSet assign(LongHashSet set)
+	{
+		clear();
+		addAll(set);
+		return this;
+	}
+
+	public void appendTo(LongHashSet set)
+	{
+		set.addAll(_set);
+	}
+
+	public void cloneTo(LongHashSet set)
+	{
+		set.clear();
+		set.addAll(_set);
+	}
+
+	@Override
+	public LongHashSet clone()
+	{
+		return _set.clone();
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return _set.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return this == o || _set.equals(o);
+	}
+
+	@Override
+	public String toString()
+	{
+		return _set.toString();
+	}
+}
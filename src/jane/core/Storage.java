@@ -3,6 +3,8 @@ package jane.core;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 存储引擎接口
@@ -62,6 +64,23 @@ public interface Storage extends Closeable
 		boolean onWalk(K k, byte[] v) throws Exception;
 	}
 
+	/**
+	 * 遍历数据库表的用户接口(遍历key和value的只读视图)
+	 * <p>
+	 * 适用于key是非id类型的表
+	 */
+	public interface WalkViewHandler<K>
+	{
+		/**
+		 * 每次遍历一个记录都会调用此接口
+		 * <p>
+		 * @param k 记录的key
+		 * @param v 记录value的只读视图. 只在此次调用中有效,遍历时会复用
+		 * @return 返回true表示继续遍历, 返回false表示中断遍历
+		 */
+		boolean onWalk(K k, BeanView v) throws Exception;
+	}
+
 	/**
 	 * 遍历数据库表的用户接口(仅遍历key)
 	 * <p>
@@ -113,6 +132,23 @@ public interface Storage extends Closeable
 		boolean onWalk(long k, byte[] v) throws Exception;
 	}
 
+	/**
+	 * 遍历数据库表的用户接口(遍历key和value的只读视图)
+	 * <p>
+	 * 适用于key是id类型的表
+	 */
+	public interface WalkLongViewHandler
+	{
+		/**
+		 * 每次遍历一个记录都会调用此接口
+		 * <p>
+		 * @param k 记录的key
+		 * @param v 记录value的只读视图. 只在此次调用中有效,遍历时会复用
+		 * @return 返回true表示继续遍历, 返回false表示中断遍历
+		 */
+		boolean onWalk(long k, BeanView v) throws Exception;
+	}
+
 	public static final class Helper
 	{
 		private Helper()
@@ -223,18 +259,32 @@ public interface Storage extends Closeable
 		 */
 		V get(K k);
 
+		/**
+		 * 批量获取多个key的value
+		 * <p>
+		 * keys可以是任意顺序,引擎可以按存储的key顺序排序后一次顺序遍历读取. 默认实现逐个调用get
+		 * @return 与keys顺序对应的value列表,不存在的记录为null
+		 */
+		default List<V> getMulti(List<K> keys)
+		{
+			ArrayList<V> values = new ArrayList<>(keys.size());
+			for (K k : keys)
+				values.add(get(k));
+			return values;
+		}
+
 		/**
 		 * 存储记录的key和value
 		 * <p>
 		 * 已存在key的记录会被覆盖<br>
-		 * 目前的引擎实现不会出现并发的put,remove和setCounter
+		 * 提交时可能有多个线程并发调用put,remove和setIdCounter,引擎实现要保证线程安全
 		 */
 		void put(K k, V v);
 
 		/**
 		 * 根据记录的key删除记录
 		 * <p>
-		 * 目前的引擎实现不会出现并发的put,remove和setCounter
+		 * 提交时可能有多个线程并发调用put,remove和setIdCounter,引擎实现要保证线程安全
 		 */
 		void remove(K k);
 
@@ -274,6 +324,30 @@ public interface Storage extends Closeable
 		 * @return 返回true表示已完全遍历, 返回false表示被用户中断
 		 */
 		boolean walkRaw(WalkRawHandler<K> handler, K from, K to, boolean inclusive, boolean reverse);
+
+		/**
+		 * 在[from,to]内选取大致均匀分布的已有key作为切分点,用于并行遍历时切分区间
+		 * <p>
+		 * 引擎应该只用少量的定位实现,不能遍历整个范围. 默认实现只抽样范围开头的最多count*64个key,之后的记录都归入最后一个区间
+		 * @param from 最小key. null表示最小值
+		 * @param to 最大key. null表示最大值
+		 * @param count 期望切分的区间数量
+		 * @return 按顺序排列且不重复的最多count-1个切分点. null表示范围内没有记录
+		 */
+		default List<K> splitKeys(K from, K to, int count)
+		{
+			int budget = count * 64;
+			ArrayList<K> samples = new ArrayList<>();
+			walk(k -> samples.add(k) && samples.size() < budget, from, to, true, false);
+			int n = samples.size();
+			if (n == 0)
+				return null;
+			int m = Math.min(count, n);
+			ArrayList<K> keys = new ArrayList<>(m);
+			for (int i = 1; i < m; ++i)
+				keys.add(samples.get((int)((long)n * i / m)));
+			return keys;
+		}
 	}
 
 	public interface TableLong<V extends Bean<V>> extends TableBase
@@ -283,18 +357,32 @@ public interface Storage extends Closeable
 		 */
 		V get(long k);
 
+		/**
+		 * 批量获取多个key的value
+		 * <p>
+		 * keys必须已按从小到大排序,引擎可以一次顺序遍历读取. 默认实现逐个调用get
+		 * @return 与keys顺序对应的value列表,不存在的记录为null
+		 */
+		default List<V> getMulti(long[] keys)
+		{
+			ArrayList<V> values = new ArrayList<>(keys.length);
+			for (long k : keys)
+				values.add(get(k));
+			return values;
+		}
+
 		/**
 		 * 存储记录的key和value
 		 * <p>
 		 * 已存在key的记录会被覆盖<br>
-		 * 目前的引擎实现不会出现并发的put,remove和setCounter
+		 * 提交时可能有多个线程并发调用put,remove和setIdCounter,引擎实现要保证线程安全
 		 */
 		void put(long k, V v);
 
 		/**
 		 * 根据记录的key删除记录
 		 * <p>
-		 * 目前的引擎实现不会出现并发的put,remove和setCounter
+		 * 提交时可能有多个线程并发调用put,remove和setIdCounter,引擎实现要保证线程安全
 		 */
 		void remove(long k);
 
@@ -308,7 +396,7 @@ public interface Storage extends Closeable
 		/**
 		 * 设置计数器当前值,用于保存自增长ID
 		 * <p>
-		 * 目前的引擎实现不会出现并发的put,remove和setCounter
+		 * 提交时可能有多个线程并发调用put,remove和setIdCounter,引擎实现要保证线程安全
 		 */
 		void setIdCounter(long v);
 
@@ -381,7 +469,7 @@ public interface Storage extends Closeable
 	/**
 	 * 准备批量写操作
 	 * <p>
-	 * 目前对存储引擎的操作是多线程读和单线程批量写和提交,读写操作可以并发<br>
+	 * 目前对存储引擎的操作是多线程读和多线程批量写(提交时并行保存各表)及单线程提交,读写操作可以并发<br>
 	 * 此方法是在一轮批量写操作前调用的,和commit的调用成对出现,put调用只会出现在这两个调用之间
 	 */
 	void putBegin();
@@ -394,6 +482,18 @@ public interface Storage extends Closeable
 	 */
 	void putFlush(boolean isLast);
 
+	/**
+	 * 获取本轮批量写操作(提交前)已写入的记录数量
+	 */
+	int getPutCount();
+
+	/**
+	 * 获取本轮批量写操作(提交前)已写入的数据大小(字节)
+	 * <p>
+	 * 用于限制批量写操作占用的缓冲区大小
+	 */
+	long getPutSize();
+
 	/**
 	 * 提交并刷新数据库
 	 * <p>
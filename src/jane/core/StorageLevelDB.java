@@ -7,8 +7,11 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicLong;
@@ -21,18 +24,22 @@ import java.util.zip.CRC32;
  */
 public final class StorageLevelDB implements Storage
 {
-	private static final StorageLevelDB	_instance	  = new StorageLevelDB();
-	private static final Slice			_deletedSlice = new Slice(null, 0, 0);					   // 表示已删除的slice
-	private int							_writeCount;											   // 提交中的写缓冲区记录数量
-	private final Octets				_writeBuf	  = new Octets(0x10000);					   // 提交中的写缓冲区
-	private final Map<Slice, Slice>		_writeMap	  = Util.newConcurrentHashMap();			   // 提交中的写记录
-	private final FastRWLock			_writeBufLock = new FastRWLock();						   // 访问_writeBuf和_writeMap的读写锁
-	private long						_db;													   // LevelDB的数据库对象句柄
-	private File						_dbFile;												   // 当前数据库的文件
-	private final SimpleDateFormat		_sdf		  = new SimpleDateFormat("yy-MM-dd-HH-mm-ss"); // 备份文件后缀名的时间格式
-	private final long					_backupBase;											   // 备份数据的基准时间
-	private boolean						_useSnappy	  = true;									   // 是否使用LevelDB内置的snappy压缩
-	private boolean						_reuseLogs	  = true;									   // 是否使用LevelDB内置的reuse_logs功能
+	private static final StorageLevelDB		 _instance	   = new StorageLevelDB();
+	private static final Slice				 _deletedSlice = new Slice(null, 0, 0);							   // 表示已删除的slice
+	private static final ThreadLocal<Octets> _valueBuf	   = ThreadLocal.withInitial(() -> new Octets(0x100)); // 各线程在锁外序列化记录值的缓冲区
+	private int								 _writeCount;													   // 提交中的写缓冲区记录数量
+	private final Octets					 _writeBuf	   = new Octets(0x10000);							   // 提交中的写缓冲区
+	private final Map<Slice, Slice>			 _writeMap	   = Util.newConcurrentHashMap();					   // 提交中的写记录
+	private final FastRWLock				 _writeBufLock = new FastRWLock();								   // 访问_writeBuf和_writeMap的读写锁
+	private volatile int					 _writeMapEpoch;												   // _writeMap被清空的次数. 用于判断批量读的迭代器是否过时
+	private long							 _db;															   // LevelDB的数据库对象句柄
+	private File							 _dbFile;														   // 当前数据库的文件
+	private final SimpleDateFormat			 _sdf		   = new SimpleDateFormat("yy-MM-dd-HH-mm-ss");		   // 备份文件后缀名的时间格式
+	private final long						 _backupBase;													   // 备份数据的基准时间
+	private boolean							 _useSnappy	   = true;											   // 是否使用LevelDB内置的snappy压缩
+	private boolean							 _reuseLogs	   = true;											   // 是否使用LevelDB内置的reuse_logs功能
+	private volatile long					 _memoryUsage  = Metrics.ABSENT;								   // LevelDB的近似内存占用,提交时更新,监控读取时不加锁
+	private boolean							 _metricsRegistered;											   // 是否已注册监控指标
 
 	private static final class Slice
 	{
@@ -223,6 +230,23 @@ public final class StorageLevelDB implements Storage
 		return vpos;
 	}
 
+	private int writeValue(Octets val) // size(VarUInt) + data
+	{
+		writeVarUInt(val.size());
+		int vpos = _writeBuf.size();
+		_writeBuf.append(val);
+		return vpos;
+	}
+
+	private static Octets marshalValue(Bean<?> bean)
+	{
+		Octets os = _valueBuf.get();
+		os.clear();
+		os.marshalZero(); // format
+		bean.marshal(os);
+		return os;
+	}
+
 	public static native long leveldb_open(String path, int writeBufSize, int cacheSize, boolean useSnappy);
 
 	public static native long leveldb_open2(String path, int writeBufSize, int cacheSize, int fileSize, boolean useSnappy);
@@ -275,14 +299,16 @@ public final class StorageLevelDB implements Storage
 
 		private Octets marshalKey(long k)
 		{
-			int tableIdLen = _tableIdLen;
-			Octets keyOs = Octets.createSpace(tableIdLen + Octets.marshalLen(k));
-			if (tableIdLen == 1)
+			return marshalKey(Octets.createSpace(_tableIdLen + Octets.marshalLen(k)), k);
+		}
+
+		private Octets marshalKey(Octets keyOs, long k)
+		{
+			if (_tableIdLen == 1)
 				keyOs.marshal1((byte)_tableId);
 			else
 				keyOs.marshalUInt(_tableId);
-			keyOs.marshal(k);
-			return keyOs;
+			return keyOs.marshal(k);
 		}
 
 		@Override
@@ -307,7 +333,27 @@ public final class StorageLevelDB implements Storage
 		@Override
 		public V get(long k)
 		{
-			byte[] buf = dbget(marshalKey(k));
+			return toValue(dbget(marshalKey(k)), k);
+		}
+
+		@Override
+		public List<V> getMulti(long[] keys)
+		{
+			ArrayList<V> values = new ArrayList<>(keys.length);
+			Octets keyOs = Octets.createSpace(_tableIdLen + 9); // 复用同一个key缓冲区
+			try (MultiGetter getter = new MultiGetter())
+			{
+				for (long k : keys)
+				{
+					keyOs.clear();
+					values.add(toValue(getter.get(marshalKey(keyOs, k)), k));
+				}
+			}
+			return values;
+		}
+
+		private V toValue(byte[] buf, long k)
+		{
 			if (buf == null)
 				return null;
 			_getCount.getAndIncrement();
@@ -331,37 +377,44 @@ public final class StorageLevelDB implements Storage
 		@Override
 		public void put(long k, V v)
 		{
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
-			int klen = _tableIdLen + Octets.marshalLen(k);
-			os.marshal1((byte)klen);
-			int kpos = os.size();
-			if (_tableIdLen == 1)
-				os.marshal1((byte)_tableId);
-			else
-				os.marshalUInt(_tableId);
-			os.marshal(k);
-			int vpos = writeValue(v);
-			byte[] buf = os.array();
-			_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, os.size() - vpos));
+			Octets val = marshalValue(v); // 在锁外序列化,可以并发
+			synchronized (StorageLevelDB.this)
+			{
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
+				int klen = _tableIdLen + Octets.marshalLen(k);
+				os.marshal1((byte)klen);
+				int kpos = os.size();
+				if (_tableIdLen == 1)
+					os.marshal1((byte)_tableId);
+				else
+					os.marshalUInt(_tableId);
+				os.marshal(k);
+				int vpos = writeValue(val);
+				byte[] buf = os.array();
+				_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, os.size() - vpos));
+			}
 		}
 
 		@Override
 		public void remove(long k)
 		{
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshalZero(); // leveldb::ValueType::kTypeDeletion
-			int klen = _tableIdLen + Octets.marshalLen(k);
-			os.marshal1((byte)klen);
-			int kpos = os.size();
-			if (_tableIdLen == 1)
-				os.marshal1((byte)_tableId);
-			else
-				os.marshalUInt(_tableId);
-			os.marshal(k);
-			_writeMap.put(new Slice(os.array(), kpos, klen), _deletedSlice);
+			synchronized (StorageLevelDB.this)
+			{
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshalZero(); // leveldb::ValueType::kTypeDeletion
+				int klen = _tableIdLen + Octets.marshalLen(k);
+				os.marshal1((byte)klen);
+				int kpos = os.size();
+				if (_tableIdLen == 1)
+					os.marshal1((byte)_tableId);
+				else
+					os.marshalUInt(_tableId);
+				os.marshal(k);
+				_writeMap.put(new Slice(os.array(), kpos, klen), _deletedSlice);
+			}
 		}
 
 		@Override
@@ -386,19 +439,22 @@ public final class StorageLevelDB implements Storage
 		{
 			if (v == getIdCounter())
 				return;
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
-			int klen = _tableIdCounter.size();
-			os.marshal1((byte)klen);
-			int kpos = os.size();
-			os.append(_tableIdCounter);
-			int vlen = Octets.marshalLen(v);
-			os.marshal1((byte)vlen);
-			int vpos = os.size();
-			os.marshal(v);
-			byte[] buf = os.array();
-			_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, vlen));
+			synchronized (StorageLevelDB.this)
+			{
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
+				int klen = _tableIdCounter.size();
+				os.marshal1((byte)klen);
+				int kpos = os.size();
+				os.append(_tableIdCounter);
+				int vlen = Octets.marshalLen(v);
+				os.marshal1((byte)vlen);
+				int vpos = os.size();
+				os.marshal(v);
+				byte[] buf = os.array();
+				_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, vlen));
+			}
 		}
 
 		@Override
@@ -598,6 +654,49 @@ public final class StorageLevelDB implements Storage
 			return n > 0 ? (int)(_getSize.get() / n) : -1;
 		}
 
+		@Override
+		public List<V> getMulti(List<K> keys)
+		{
+			int n = keys.size();
+			Octets[] keyOss = new Octets[n];
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; ++i)
+			{
+				keyOss[i] = marshalKey(keys.get(i));
+				order[i] = i;
+			}
+			Arrays.sort(order, (i0, i1) -> keyOss[i0].compareTo(keyOss[i1])); // 按存储中key的字节序排序
+			ArrayList<V> values = new ArrayList<>(n);
+			for (int i = 0; i < n; ++i)
+				values.add(null);
+			try (MultiGetter getter = new MultiGetter())
+			{
+				for (int i : order)
+				{
+					byte[] buf = getter.get(keyOss[i]);
+					if (buf == null)
+						continue;
+					addValueSize(buf.length);
+					OctetsStreamEx val = OctetsStreamEx.wrap(buf);
+					try
+					{
+						int format = val.unmarshalInt1();
+						if (format != 0)
+							throw new IllegalStateException(
+									String.format("unknown record value format(%d) in table(%s,%d),key=%s", format, _tableName, _tableId, keys.get(i)));
+						V v = _stubV.create();
+						v.unmarshal(val);
+						values.set(i, v);
+					}
+					catch (MarshalException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}
+			}
+			return values;
+		}
+
 		@Override
 		public boolean walk(WalkHandler<K> handler, K from, K to, boolean inclusive, boolean reverse)
 		{
@@ -740,6 +839,59 @@ public final class StorageLevelDB implements Storage
 			}
 			return true;
 		}
+
+		private byte[] seekKey(Octets key, int type)
+		{
+			long iter = leveldb_iter_new(_db, key.array(), key.size(), type);
+			try
+			{
+				return type < 2 ? leveldb_iter_prev(iter) : leveldb_iter_next(iter);
+			}
+			finally
+			{
+				if (iter != 0)
+					leveldb_iter_delete(iter);
+			}
+		}
+
+		/**
+		 * 先定位范围内的第一个和最后一个key,再在两者之间二分定位切分点,每个切分点最多2次定位
+		 */
+		@Override
+		public List<K> splitKeys(K from, K to, int count)
+		{
+			if (_db == 0)
+				throw new IllegalStateException("db closed");
+			Octets keyFrom = (from != null ? marshalKey(from) : Octets.createSpace(5).marshalUInt(_tableId));
+			Octets keyTo = (to != null ? marshalKey(to) : _tableIdNext);
+			byte[] first = seekKey(keyFrom, 2);
+			byte[] last = seekKey(keyTo, to != null ? 1 : 0);
+			if (first == null || last == null || Octets.wrap(first).compareTo(Octets.wrap(last)) > 0)
+				return null;
+			ArrayList<K> keys = new ArrayList<>();
+			try
+			{
+				for (Octets key : ParallelWalker.splitKeys(Octets.wrap(first), Octets.wrap(last), count, k ->
+				{
+					byte[] buf = seekKey(k, 2);
+					return buf != null ? Octets.wrap(buf) : null;
+				}, k ->
+				{
+					byte[] buf = seekKey(k, 0);
+					return buf != null ? Octets.wrap(buf) : null;
+				}))
+				{
+					OctetsStreamEx keyOs = OctetsStreamEx.wrap(key.array(), key.size());
+					keyOs.setPosition(_tableIdLen);
+					keys.add(unmarshalKey(keyOs));
+				}
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return keys;
+		}
 	}
 
 	private final class TableOctets<V extends Bean<V>> extends TableBase<Octets, V>
@@ -795,42 +947,49 @@ public final class StorageLevelDB implements Storage
 		@Override
 		public void put(Octets k, V v)
 		{
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
-			int ksize = k.size();
-			int klen = _tableIdLen + ksize;
-			int kpos = writeVarUInt(klen);
-			if (_tableIdLen == 1)
-				os.marshal1((byte)_tableId);
-			else
-				os.marshalUInt(_tableId);
-			int pos = os.size();
-			os.resize(pos + ksize);
-			System.arraycopy(k.array(), 0, os.array(), pos, ksize);
-			int vpos = writeValue(v);
-			byte[] buf = os.array();
-			_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, os.size() - vpos));
+			Octets val = marshalValue(v); // 在锁外序列化,可以并发
+			synchronized (StorageLevelDB.this)
+			{
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
+				int ksize = k.size();
+				int klen = _tableIdLen + ksize;
+				int kpos = writeVarUInt(klen);
+				if (_tableIdLen == 1)
+					os.marshal1((byte)_tableId);
+				else
+					os.marshalUInt(_tableId);
+				int pos = os.size();
+				os.resize(pos + ksize);
+				System.arraycopy(k.array(), 0, os.array(), pos, ksize);
+				int vpos = writeValue(val);
+				byte[] buf = os.array();
+				_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, os.size() - vpos));
+			}
 		}
 
 		@Override
 		public void remove(Octets k)
 		{
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshalZero(); // leveldb::ValueType::kTypeDeletion
-			int ksize = k.size();
-			int klen = _tableIdLen + ksize;
-			int kpos = writeVarUInt(klen);
-			if (_tableIdLen == 1)
-				os.marshal1((byte)_tableId);
-			else
-				os.marshalUInt(_tableId);
-			int pos = os.size();
-			os.resize(pos + ksize);
-			byte[] buf = os.array();
-			System.arraycopy(k.array(), 0, buf, pos, ksize);
-			_writeMap.put(new Slice(buf, kpos, klen), _deletedSlice);
+			synchronized (StorageLevelDB.this)
+			{
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshalZero(); // leveldb::ValueType::kTypeDeletion
+				int ksize = k.size();
+				int klen = _tableIdLen + ksize;
+				int kpos = writeVarUInt(klen);
+				if (_tableIdLen == 1)
+					os.marshal1((byte)_tableId);
+				else
+					os.marshalUInt(_tableId);
+				int pos = os.size();
+				os.resize(pos + ksize);
+				byte[] buf = os.array();
+				System.arraycopy(k.array(), 0, buf, pos, ksize);
+				_writeMap.put(new Slice(buf, kpos, klen), _deletedSlice);
+			}
 		}
 	}
 
@@ -897,57 +1056,64 @@ public final class StorageLevelDB implements Storage
 		@Override
 		public void put(String k, V v)
 		{
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
-			int bn = Octets.marshalStrLen(k);
-			int klen = _tableIdLen + bn;
-			int kpos = writeVarUInt(klen);
-			if (_tableIdLen == 1)
-				os.marshal1((byte)_tableId);
-			else
-				os.marshalUInt(_tableId);
-			int cn = k.length();
-			if (bn == cn)
+			Octets val = marshalValue(v); // 在锁外序列化,可以并发
+			synchronized (StorageLevelDB.this)
 			{
-				for (int i = 0; i < cn; ++i)
-					os.marshal1((byte)k.charAt(i));
-			}
-			else
-			{
-				for (int i = 0; i < cn; ++i)
-					os.marshalUTF8(k.charAt(i));
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
+				int bn = Octets.marshalStrLen(k);
+				int klen = _tableIdLen + bn;
+				int kpos = writeVarUInt(klen);
+				if (_tableIdLen == 1)
+					os.marshal1((byte)_tableId);
+				else
+					os.marshalUInt(_tableId);
+				int cn = k.length();
+				if (bn == cn)
+				{
+					for (int i = 0; i < cn; ++i)
+						os.marshal1((byte)k.charAt(i));
+				}
+				else
+				{
+					for (int i = 0; i < cn; ++i)
+						os.marshalUTF8(k.charAt(i));
+				}
+				int vpos = writeValue(val);
+				byte[] buf = os.array();
+				_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, os.size() - vpos));
 			}
-			int vpos = writeValue(v);
-			byte[] buf = os.array();
-			_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, os.size() - vpos));
 		}
 
 		@Override
 		public void remove(String k)
 		{
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshalZero(); // leveldb::ValueType::kTypeDeletion
-			int bn = Octets.marshalStrLen(k);
-			int klen = _tableIdLen + bn;
-			int kpos = writeVarUInt(klen);
-			if (_tableIdLen == 1)
-				os.marshal1((byte)_tableId);
-			else
-				os.marshalUInt(_tableId);
-			int cn = k.length();
-			if (bn == cn)
-			{
-				for (int i = 0; i < cn; ++i)
-					os.marshal1((byte)k.charAt(i));
-			}
-			else
+			synchronized (StorageLevelDB.this)
 			{
-				for (int i = 0; i < cn; ++i)
-					os.marshalUTF8(k.charAt(i));
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshalZero(); // leveldb::ValueType::kTypeDeletion
+				int bn = Octets.marshalStrLen(k);
+				int klen = _tableIdLen + bn;
+				int kpos = writeVarUInt(klen);
+				if (_tableIdLen == 1)
+					os.marshal1((byte)_tableId);
+				else
+					os.marshalUInt(_tableId);
+				int cn = k.length();
+				if (bn == cn)
+				{
+					for (int i = 0; i < cn; ++i)
+						os.marshal1((byte)k.charAt(i));
+				}
+				else
+				{
+					for (int i = 0; i < cn; ++i)
+						os.marshalUTF8(k.charAt(i));
+				}
+				_writeMap.put(new Slice(os.array(), kpos, klen), _deletedSlice);
 			}
-			_writeMap.put(new Slice(os.array(), kpos, klen), _deletedSlice);
 		}
 	}
 
@@ -1010,24 +1176,31 @@ public final class StorageLevelDB implements Storage
 		@Override
 		public void put(K k, V v)
 		{
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
-			int kpos = writeValue((Bean<?>)k);
-			int klen = os.size() - kpos;
-			int vpos = writeValue(v);
-			byte[] buf = os.array();
-			_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, os.size() - vpos));
+			Octets val = marshalValue(v); // 在锁外序列化,可以并发
+			synchronized (StorageLevelDB.this)
+			{
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshal1((byte)1); // leveldb::ValueType::kTypeValue
+				int kpos = writeValue((Bean<?>)k);
+				int klen = os.size() - kpos;
+				int vpos = writeValue(val);
+				byte[] buf = os.array();
+				_writeMap.put(new Slice(buf, kpos, klen), new Slice(buf, vpos, os.size() - vpos));
+			}
 		}
 
 		@Override
 		public void remove(K k)
 		{
-			incWriteCount();
-			Octets os = _writeBuf;
-			os.marshalZero(); // leveldb::ValueType::kTypeDeletion
-			int kpos = writeValue((Bean<?>)k);
-			_writeMap.put(new Slice(os.array(), kpos, os.size() - kpos), _deletedSlice);
+			synchronized (StorageLevelDB.this)
+			{
+				incWriteCount();
+				Octets os = _writeBuf;
+				os.marshalZero(); // leveldb::ValueType::kTypeDeletion
+				int kpos = writeValue((Bean<?>)k);
+				_writeMap.put(new Slice(os.array(), kpos, os.size() - kpos), _deletedSlice);
+			}
 		}
 	}
 
@@ -1073,6 +1246,98 @@ public final class StorageLevelDB implements Storage
 		return _db != 0 && leveldb_compact(_db, null, 0, null, 0);
 	}
 
+	/**
+	 * 按key的字节序批量读取记录
+	 * <p>
+	 * 必须按key从小到大的顺序调用get. 每个key先从_writeMap取,再用一个迭代器顺序前进读取<br>
+	 * _writeMap被清空过时重新定位迭代器. 相邻key之间跳过的记录过多时说明key比较稀疏,
+	 * 之后改为逐个读取,因为创建迭代器比单次读取慢很多
+	 */
+	private final class MultiGetter implements AutoCloseable
+	{
+		private static final int MAX_SKIP = 8; // 相邻key之间迭代器最多跳过的记录数
+
+		private long	_iter;	   // 当前的迭代器. 0表示未创建
+		private int		_epoch;	   // 创建迭代器时的_writeMapEpoch
+		private byte[]	_curKey;   // 迭代器最后读出的key. null表示已到末尾
+		private byte[]	_curValue; // 迭代器最后读出的value
+		private boolean	_sparse;   // 是否已改为逐个读取
+
+		private void next()
+		{
+			_curValue = leveldb_iter_value(_iter);
+			_curKey = leveldb_iter_next(_iter);
+		}
+
+		/**
+		 * @return 数据不能改动
+		 */
+		byte[] get(Octets k)
+		{
+			if (_writeBufLock.tryReadLock())
+			{
+				try
+				{
+					@SuppressWarnings("unlikely-arg-type")
+					Slice s = _writeMap.get(k);
+					if (s == _deletedSlice)
+						return null;
+					if (s != null)
+						return s.getBytes();
+				}
+				finally
+				{
+					_writeBufLock.readUnlock();
+				}
+			}
+			if (_db == 0)
+				throw new IllegalStateException("db closed. key=" + k.dump());
+			byte[] key = k.array();
+			int keyLen = k.size();
+			if (_sparse)
+				return leveldb_get(_db, key, keyLen);
+			if (_iter != 0)
+			{
+				if (_epoch == _writeMapEpoch)
+				{
+					for (int i = 0;; ++i)
+					{
+						if (_curKey == null)
+							return null;
+						int c = Arrays.compareUnsigned(_curKey, 0, _curKey.length, key, 0, keyLen);
+						if (c == 0)
+							return _curValue;
+						if (c > 0)
+							return null;
+						if (i >= MAX_SKIP)
+						{
+							_sparse = true;
+							break;
+						}
+						next();
+					}
+				}
+				close();
+				if (_sparse)
+					return leveldb_get(_db, key, keyLen);
+			}
+			_epoch = _writeMapEpoch;
+			_iter = leveldb_iter_new(_db, key, keyLen, 2);
+			next();
+			return _curKey != null && Arrays.equals(_curKey, 0, _curKey.length, key, 0, keyLen) ? _curValue : null;
+		}
+
+		@Override
+		public void close()
+		{
+			if (_iter != 0)
+			{
+				leveldb_iter_delete(_iter);
+				_iter = 0;
+			}
+		}
+	}
+
 	/**
 	 * 先尝试从_writeMap取
 	 * @return 数据不能改动
@@ -1268,6 +1533,31 @@ public final class StorageLevelDB implements Storage
 		if (_db == 0)
 			throw new IOException("StorageLevelDB.openDB: leveldb_open3 failed: " + file.getAbsolutePath());
 		_dbFile = file;
+		updateMemoryUsage();
+		if (!_metricsRegistered)
+		{
+			_metricsRegistered = true;
+			Metrics.gauge("jane_leveldb_memory_bytes", "approximate memory usage of LevelDB", () -> _memoryUsage);
+			Metrics.gauge("jane_leveldb_put_count", "records to put in current commit", this::getPutCount);
+			Metrics.gauge("jane_leveldb_put_bytes", "bytes to put in current commit", this::getPutSize);
+		}
+	}
+
+	private void updateMemoryUsage()
+	{
+		String value = (_db != 0 ? leveldb_property(_db, "leveldb.approximate-memory-usage") : null);
+		long v = Metrics.ABSENT;
+		if (value != null && !value.isEmpty())
+		{
+			try
+			{
+				v = Long.parseLong(value.trim());
+			}
+			catch (NumberFormatException e)
+			{
+			}
+		}
+		_memoryUsage = v;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -1290,12 +1580,14 @@ public final class StorageLevelDB implements Storage
 		return new TableLong<>(tableId, tableName, stubV);
 	}
 
+	@Override
 	public int getPutCount()
 	{
 		return _writeMap.size();
 	}
 
-	public int getPutSize()
+	@Override
+	public long getPutSize()
 	{
 		return _writeBuf.size();
 	}
@@ -1305,6 +1597,7 @@ public final class StorageLevelDB implements Storage
 	{
 		if (_writeCount == 0)
 		{
+			++_writeMapEpoch; // 先于清空,使批量读在_writeMap中查不到时能发现迭代器可能已过时
 			_writeMap.clear();
 			_writeBuf.resize(4);
 			_writeBufLock.waitLock(); // 确保此时没有线程在读_writeBuf
@@ -1337,6 +1630,7 @@ public final class StorageLevelDB implements Storage
 			}
 			_writeCount = 0;
 		}
+		updateMemoryUsage();
 		return true;
 	}
 
@@ -1350,6 +1644,7 @@ public final class StorageLevelDB implements Storage
 			leveldb_close(_db);
 			_db = 0;
 		}
+		_memoryUsage = Metrics.ABSENT;
 		putBegin(); // only for clearing the write buffer
 	}
 
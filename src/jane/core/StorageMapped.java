@@ -0,0 +1,1173 @@
+package jane.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于内存映射文件的存储引擎的实现(纯Java实现,不依赖本地库)
+ * <p>
+ * 记录只追加写入到数据库目录中若干个固定大小的分段文件(??????.seg)中,内存中维护所有key的有序索引<br>
+ * 读取记录时直接从映射内存复制到线程内复用的OctetsStream中反序列化,不经过JNI,也不会为每次读取分配新的缓冲区<br>
+ * 每次提交会追加提交标记并刷新到磁盘,启动时只恢复到最后一个提交标记为止的记录<br>
+ * 每次提交后选出已写满的分段中有效记录比例最低的分段,比例过低时把其中的有效记录迁移到最新的分段中,然后删除此分段<br>
+ * 此类也可非单件实例化使用
+ */
+public final class StorageMapped implements Storage
+{
+	private static final StorageMapped				 _instance	   = new StorageMapped();
+	private static final int						 SEG_MAGIC	   = 0x4a4d5347;										 // 分段文件头的标识("JMSG")
+	private static final int						 SEG_OBSOLETE  = 1;													 // 分段文件头的状态: 已废弃(已迁移完有效记录)
+	private static final int						 SEG_HEAD_SIZE = 8;													 // 分段文件头的大小: magic(4)+state(4)
+	private static final int						 REC_HEAD_SIZE = 8;													 // 记录头的大小: keyLen(4)+valueLen(4)
+	private static final int						 REC_COMMIT	   = -1;												 // keyLen为此值表示提交标记
+	private static final int						 REC_DELETED   = -1;												 // valueLen为此值表示删除记录
+	private static final String						 SEG_SUFFIX	   = ".seg";											 // 分段文件的后缀名
+	private static final ThreadLocal<OctetsStreamEx> _threadBuf	   = ThreadLocal.withInitial(OctetsStreamEx::new);		 // 每个线程读写记录值时复用的缓冲区
+	private final ConcurrentSkipListMap<Octets, Long> _index	   = new ConcurrentSkipListMap<>();						 // 所有记录的有序索引: key => (segId<<32)+offset
+	private final ArrayList<Segment>				 _dirtySegs	   = new ArrayList<>();									 // 上次提交后写入过的分段
+	private volatile Segment[]						 _segs		   = new Segment[16];									 // 所有打开的分段(以segId为下标)
+	private Segment									 _curSeg;															 // 当前写入的分段
+	private ByteBuffer								 _curBuf;															 // 当前写入分段的写视图(只在写操作中访问)
+	private int										 _writePos;															 // 当前写入分段的写位置
+	private Segment									 _commitSeg;														 // 最后提交标记所在的分段
+	private int										 _commitPos;														 // 最后提交标记之后的位置
+	private int										 _writeCount;														 // 提交中的写记录数量
+	private long									 _writeSize;														 // 提交中的写记录字节数
+	private File									 _dbFile;															 // 当前数据库的目录
+
+	private static final class Segment
+	{
+		final int			   id;		 // 分段ID,也是文件名的序号
+		final File			   file;	 // 分段文件
+		final MappedByteBuffer buf;		 // 整个分段文件的映射内存,只用于绝对位置的读写
+		final int			   capacity; // 分段文件的大小
+		long				   liveSize; // 分段中有效记录的字节数(只在写锁中访问)
+		long				   delSize;	 // 分段中删除记录的字节数,迁移非最旧分段时需要保留(只在写锁中访问)
+
+		Segment(int id, File file, MappedByteBuffer buf)
+		{
+			this.id = id;
+			this.file = file;
+			this.buf = buf;
+			capacity = buf.capacity();
+		}
+	}
+
+	private static <B extends Bean<B>> B toBean(OctetsStream os, B beanStub) throws MarshalException
+	{
+		int format = os.unmarshalInt1();
+		if (format != 0)
+			throw new IllegalStateException("unknown record value format(" + format + ") for type(" + beanStub.typeName() + ")");
+		B bean = beanStub.create();
+		bean.unmarshal(os);
+		return bean;
+	}
+
+	private static long makePos(int segId, int offset)
+	{
+		return ((long)segId << 32) + offset;
+	}
+
+	private final class TableLong<V extends Bean<V>> implements Storage.TableLong<V>
+	{
+		private final String	 _tableName;
+		private final int		 _tableId;
+		private final int		 _tableIdLen;
+		private final Octets	 _tableIdCounter;
+		private final V			 _stubV;
+		private final AtomicLong _getCount = new AtomicLong();
+		private final AtomicLong _getSize  = new AtomicLong();
+
+		public TableLong(int tableId, String tableName, V stubV)
+		{
+			_tableName = tableName;
+			_tableId = tableId;
+			_tableIdLen = Octets.marshalUIntLen(tableId);
+			_tableIdCounter = Octets.createSpace(1 + Octets.marshalUIntLen(tableId))
+					.marshal1((byte)0xf1).marshalUInt(tableId); // 0xf1前缀用于idcounter
+			_stubV = stubV;
+		}
+
+		private Octets marshalKey(long k)
+		{
+			return marshalKey(Octets.createSpace(_tableIdLen + Octets.marshalLen(k)), k);
+		}
+
+		private Octets marshalKey(Octets keyOs, long k)
+		{
+			if (_tableIdLen == 1)
+				keyOs.marshal1((byte)_tableId);
+			else
+				keyOs.marshalUInt(_tableId);
+			return keyOs.marshal(k);
+		}
+
+		@Override
+		public int getTableId()
+		{
+			return _tableId;
+		}
+
+		@Override
+		public String getTableName()
+		{
+			return _tableName;
+		}
+
+		@Override
+		public int getAverageValueSize()
+		{
+			long n = _getCount.get();
+			return n > 0 ? (int)(_getSize.get() / n) : -1;
+		}
+
+		@Override
+		public V get(long k)
+		{
+			return toValue(dbget(marshalKey(k)), k);
+		}
+
+		@Override
+		public List<V> getMulti(long[] keys)
+		{
+			ArrayList<V> values = new ArrayList<>(keys.length);
+			Octets keyOs = Octets.createSpace(_tableIdLen + 9); // 复用同一个key缓冲区,索引中查找时不会保存key
+			for (long k : keys)
+			{
+				keyOs.clear();
+				values.add(toValue(dbget(marshalKey(keyOs, k)), k));
+			}
+			return values;
+		}
+
+		private V toValue(OctetsStreamEx val, long k)
+		{
+			if (val == null)
+				return null;
+			_getCount.getAndIncrement();
+			_getSize.getAndAdd(val.size());
+			try
+			{
+				int format = val.unmarshalInt1();
+				if (format != 0)
+					throw new IllegalStateException(String.format("unknown record value format(%d) in table(%s,%d),key=%d", format, _tableName, _tableId, k));
+				V v = _stubV.create();
+				v.unmarshal(val);
+				return v;
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void put(long k, V v)
+		{
+			dbput(marshalKey(k), v);
+		}
+
+		@Override
+		public void remove(long k)
+		{
+			dbremove(marshalKey(k));
+		}
+
+		@Override
+		public long getIdCounter()
+		{
+			OctetsStreamEx val = dbget(_tableIdCounter);
+			if (val == null)
+				return 0;
+			try
+			{
+				return val.unmarshalLong();
+			}
+			catch (MarshalException e)
+			{
+				Log.error("unmarshal idCounter failed", e);
+				return 0;
+			}
+		}
+
+		@Override
+		public void setIdCounter(long v)
+		{
+			if (v == getIdCounter())
+				return;
+			OctetsStreamEx val = _threadBuf.get();
+			val.clear();
+			val.marshal(v);
+			dbput(_tableIdCounter.clone(), val);
+		}
+
+		@Override
+		public boolean walk(WalkLongHandler handler, long from, long to, boolean inclusive, boolean reverse)
+		{
+			try
+			{
+				for (Entry<Octets, Long> e : subIndex(marshalKey(from), marshalKey(to), inclusive, reverse).entrySet())
+				{
+					Octets key = e.getKey();
+					OctetsStreamEx keyOs = OctetsStreamEx.wrap(key.array(), key.size());
+					keyOs.setPosition(_tableIdLen);
+					if (!Helper.onWalkLongSafe(handler, keyOs.unmarshalLong()))
+						return false;
+				}
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean walkValue(WalkLongValueHandler<V> handler, V beanStub, long from, long to, boolean inclusive, boolean reverse)
+		{
+			OctetsStreamEx val = new OctetsStreamEx();
+			try
+			{
+				for (Entry<Octets, Long> e : subIndex(marshalKey(from), marshalKey(to), inclusive, reverse).entrySet())
+				{
+					Octets key = e.getKey();
+					if (!readValue(key, e.getValue(), val))
+						continue;
+					OctetsStreamEx keyOs = OctetsStreamEx.wrap(key.array(), key.size());
+					keyOs.setPosition(_tableIdLen);
+					if (!Helper.onWalkLongValueSafe(handler, keyOs.unmarshalLong(), toBean(val, beanStub)))
+						return false;
+				}
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean walkRaw(WalkLongRawHandler handler, long from, long to, boolean inclusive, boolean reverse)
+		{
+			OctetsStreamEx val = new OctetsStreamEx();
+			try
+			{
+				for (Entry<Octets, Long> e : subIndex(marshalKey(from), marshalKey(to), inclusive, reverse).entrySet())
+				{
+					Octets key = e.getKey();
+					if (!readValue(key, e.getValue(), val))
+						continue;
+					OctetsStreamEx keyOs = OctetsStreamEx.wrap(key.array(), key.size());
+					keyOs.setPosition(_tableIdLen);
+					if (!Helper.onWalkLongRawSafe(handler, keyOs.unmarshalLong(), val.getBytes()))
+						return false;
+				}
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return true;
+		}
+	}
+
+	private abstract class TableBase<K, V extends Bean<V>> implements Storage.Table<K, V>
+	{
+		protected final String	   _tableName;
+		protected final int		   _tableId;
+		protected final int		   _tableIdLen;
+		protected final Octets	   _tableIdNext	= Octets.createSpace(5);
+		protected final V		   _stubV;
+		protected final AtomicLong _getCount	= new AtomicLong();
+		protected final AtomicLong _getSize		= new AtomicLong();
+
+		protected TableBase(int tableId, String tableName, V stubV)
+		{
+			_tableName = tableName;
+			_tableId = tableId;
+			_tableIdLen = Octets.marshalUIntLen(tableId);
+			if (tableId < Integer.MAX_VALUE)
+				_tableIdNext.marshalUInt(tableId + 1);
+			else
+				_tableIdNext.marshal1((byte)0xf1);
+			_stubV = stubV;
+		}
+
+		protected abstract Octets marshalKey(K k);
+
+		protected abstract K unmarshalKey(OctetsStream keyOs) throws MarshalException;
+
+		@Override
+		public int getTableId()
+		{
+			return _tableId;
+		}
+
+		@Override
+		public String getTableName()
+		{
+			return _tableName;
+		}
+
+		@Override
+		public int getAverageValueSize()
+		{
+			long n = _getCount.get();
+			return n > 0 ? (int)(_getSize.get() / n) : -1;
+		}
+
+		@Override
+		public V get(K k)
+		{
+			OctetsStreamEx val = dbget(marshalKey(k));
+			if (val == null)
+				return null;
+			_getCount.getAndIncrement();
+			_getSize.getAndAdd(val.size());
+			try
+			{
+				int format = val.unmarshalInt1();
+				if (format != 0)
+					throw new IllegalStateException(String.format("unknown record value format(%d) in table(%s,%d),key=%s", format, _tableName, _tableId, k));
+				V v = _stubV.create();
+				v.unmarshal(val);
+				return v;
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void put(K k, V v)
+		{
+			dbput(marshalKey(k), v);
+		}
+
+		@Override
+		public void remove(K k)
+		{
+			dbremove(marshalKey(k));
+		}
+
+		private NavigableMap<Octets, Long> subIndex(K from, K to, boolean inclusive, boolean reverse)
+		{
+			Octets keyFrom = (from != null ? marshalKey(from) : Octets.createSpace(5).marshalUInt(_tableId));
+			Octets keyTo = (to != null ? marshalKey(to) : _tableIdNext);
+			return StorageMapped.this.subIndex(keyFrom, keyTo, inclusive, reverse);
+		}
+
+		@Override
+		public boolean walk(WalkHandler<K> handler, K from, K to, boolean inclusive, boolean reverse)
+		{
+			try
+			{
+				for (Octets key : subIndex(from, to, inclusive, reverse).keySet())
+				{
+					OctetsStreamEx keyOs = OctetsStreamEx.wrap(key.array(), key.size());
+					keyOs.setPosition(_tableIdLen);
+					if (!Helper.onWalkSafe(handler, unmarshalKey(keyOs)))
+						return false;
+				}
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean walkValue(WalkValueHandler<K, V> handler, V beanStub, K from, K to, boolean inclusive, boolean reverse)
+		{
+			OctetsStreamEx val = new OctetsStreamEx();
+			try
+			{
+				for (Entry<Octets, Long> e : subIndex(from, to, inclusive, reverse).entrySet())
+				{
+					Octets key = e.getKey();
+					if (!readValue(key, e.getValue(), val))
+						continue;
+					OctetsStreamEx keyOs = OctetsStreamEx.wrap(key.array(), key.size());
+					keyOs.setPosition(_tableIdLen);
+					if (!Helper.onWalkValueSafe(handler, unmarshalKey(keyOs), toBean(val, beanStub)))
+						return false;
+				}
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean walkRaw(WalkRawHandler<K> handler, K from, K to, boolean inclusive, boolean reverse)
+		{
+			OctetsStreamEx val = new OctetsStreamEx();
+			try
+			{
+				for (Entry<Octets, Long> e : subIndex(from, to, inclusive, reverse).entrySet())
+				{
+					Octets key = e.getKey();
+					if (!readValue(key, e.getValue(), val))
+						continue;
+					OctetsStreamEx keyOs = OctetsStreamEx.wrap(key.array(), key.size());
+					keyOs.setPosition(_tableIdLen);
+					if (!Helper.onWalkRawSafe(handler, unmarshalKey(keyOs), val.getBytes()))
+						return false;
+				}
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return true;
+		}
+
+		/**
+		 * 在有序索引中二分定位切分点,不遍历范围内的记录
+		 */
+		@Override
+		public List<K> splitKeys(K from, K to, int count)
+		{
+			NavigableMap<Octets, Long> m = subIndex(from, to, true, false);
+			if (m.isEmpty())
+				return null;
+			ArrayList<K> keys = new ArrayList<>();
+			try
+			{
+				for (Octets key : ParallelWalker.splitKeys(m.firstKey(), m.lastKey(), count, m::ceilingKey, m::lowerKey))
+				{
+					OctetsStreamEx keyOs = OctetsStreamEx.wrap(key.array(), key.size());
+					keyOs.setPosition(_tableIdLen);
+					keys.add(unmarshalKey(keyOs));
+				}
+			}
+			catch (MarshalException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return keys;
+		}
+	}
+
+	private final class TableOctets<V extends Bean<V>> extends TableBase<Octets, V>
+	{
+		public TableOctets(int tableId, String tableName, V stubV)
+		{
+			super(tableId, tableName, stubV);
+		}
+
+		@Override
+		protected Octets marshalKey(Octets k)
+		{
+			int tableIdLen = _tableIdLen;
+			Octets keyOs = Octets.createSpace(tableIdLen + k.size());
+			if (tableIdLen == 1)
+				keyOs.marshal1((byte)_tableId);
+			else
+				keyOs.marshalUInt(_tableId);
+			keyOs.append(k);
+			return keyOs;
+		}
+
+		@Override
+		protected Octets unmarshalKey(OctetsStream keyOs)
+		{
+			return new Octets(keyOs.array(), keyOs.position(), keyOs.remain());
+		}
+	}
+
+	private final class TableString<V extends Bean<V>> extends TableBase<String, V>
+	{
+		protected TableString(int tableId, String tableName, V stubV)
+		{
+			super(tableId, tableName, stubV);
+		}
+
+		@Override
+		protected Octets marshalKey(String k)
+		{
+			int tableIdLen = _tableIdLen;
+			int bn = Octets.marshalStrLen(k);
+			Octets keyOs = Octets.createSpace(tableIdLen + bn);
+			if (tableIdLen == 1)
+				keyOs.marshal1((byte)_tableId);
+			else
+				keyOs.marshalUInt(_tableId);
+			int cn = k.length();
+			if (bn == cn)
+			{
+				for (int i = 0; i < cn; ++i)
+					keyOs.marshal1((byte)k.charAt(i));
+			}
+			else
+			{
+				for (int i = 0; i < cn; ++i)
+					keyOs.marshalUTF8(k.charAt(i));
+			}
+			return keyOs;
+		}
+
+		@Override
+		protected String unmarshalKey(OctetsStream keyOs)
+		{
+			return new String(keyOs.array(), keyOs.position(), keyOs.remain(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private final class TableBean<K, V extends Bean<V>> extends TableBase<K, V>
+	{
+		private final Bean<?> _stubK;
+
+		protected TableBean(int tableId, String tableName, K stubK, V stubV)
+		{
+			super(tableId, tableName, stubV);
+			_stubK = (Bean<?>)stubK;
+		}
+
+		@Override
+		protected Octets marshalKey(K k)
+		{
+			Bean<?> kb = (Bean<?>)k;
+			int tableIdLen = _tableIdLen;
+			Octets keyOs = new Octets(tableIdLen + kb.initSize());
+			if (tableIdLen == 1)
+				keyOs.marshal1((byte)_tableId);
+			else
+				keyOs.marshalUInt(_tableId);
+			return kb.marshal(keyOs);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		protected K unmarshalKey(OctetsStream keyOs) throws MarshalException
+		{
+			Bean<?> key = _stubK.create();
+			key.unmarshal(keyOs);
+			return (K)key;
+		}
+	}
+
+	public static StorageMapped instance()
+	{
+		return _instance;
+	}
+
+	/**
+	 * 获取当前索引中的记录数量(包括各表的idcounter)
+	 */
+	public int getIndexCount()
+	{
+		return _index.size();
+	}
+
+	/**
+	 * 获取当前打开的分段文件数量
+	 */
+	public int getSegmentCount()
+	{
+		int n = 0;
+		for (Segment seg : _segs)
+			if (seg != null)
+				++n;
+		return n;
+	}
+
+	/**
+	 * 获取当前打开的分段文件的总大小
+	 */
+	public long getSegmentSize()
+	{
+		long n = 0;
+		for (Segment seg : _segs)
+			if (seg != null)
+				n += seg.capacity;
+		return n;
+	}
+
+	@Override
+	public int getPutCount()
+	{
+		return _writeCount;
+	}
+
+	@Override
+	public long getPutSize()
+	{
+		return _writeSize;
+	}
+
+	private Segment getSegment(int segId)
+	{
+		Segment[] segs = _segs;
+		return segId < segs.length ? segs[segId] : null;
+	}
+
+	private void addSegment(Segment seg)
+	{
+		Segment[] segs = _segs;
+		int id = seg.id;
+		if (id >= segs.length)
+			segs = Arrays.copyOf(segs, Math.max(id + 1, segs.length * 2));
+		segs[id] = seg;
+		_segs = segs;
+	}
+
+	private File segmentFile(int segId)
+	{
+		return new File(_dbFile, String.format("%06d", segId) + SEG_SUFFIX);
+	}
+
+	private static MappedByteBuffer mapFile(File file, long size) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			if (size >= 0)
+				raf.setLength(size);
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		}
+	}
+
+	private Segment createSegment(int segId, int size) throws IOException
+	{
+		File file = segmentFile(segId);
+		Segment seg = new Segment(segId, file, mapFile(file, size));
+		seg.buf.putInt(0, SEG_MAGIC);
+		seg.buf.putInt(4, 0);
+		addSegment(seg);
+		return seg;
+	}
+
+	/**
+	 * 确保当前写入的分段中有足够的空间写入指定大小的记录,并保留之后写入提交标记的空间
+	 */
+	private void reserveWrite(int size) throws IOException
+	{
+		Segment seg = _curSeg;
+		if (seg == null)
+			throw new IllegalStateException("db closed");
+		if ((long)_writePos + size + REC_HEAD_SIZE <= seg.capacity)
+			return;
+		int segSize = (int)Math.max((long)Const.mappedFileSize << 20, SEG_HEAD_SIZE + size + REC_HEAD_SIZE);
+		seg = createSegment(seg.id + 1, segSize);
+		_dirtySegs.add(seg);
+		_curSeg = seg;
+		_curBuf = seg.buf.duplicate();
+		_writePos = SEG_HEAD_SIZE;
+	}
+
+	/**
+	 * 追加一条记录到当前写入的分段中
+	 * @param valLen value的长度. REC_DELETED表示删除记录
+	 * @return 记录的位置
+	 */
+	private long append(byte[] key, int keyLen, byte[] val, int valLen) throws IOException
+	{
+		int size = REC_HEAD_SIZE + keyLen + (valLen > 0 ? valLen : 0);
+		reserveWrite(size);
+		ByteBuffer bb = _curBuf;
+		int pos = _writePos;
+		bb.position(pos + REC_HEAD_SIZE);
+		bb.put(key, 0, keyLen);
+		if (valLen > 0)
+			bb.put(val, 0, valLen);
+		bb.putInt(pos + 4, valLen);
+		bb.putInt(pos, keyLen);
+		_writePos = pos + size;
+		++_writeCount;
+		_writeSize += size;
+		return makePos(_curSeg.id, pos);
+	}
+
+	/**
+	 * 指定位置的记录已失效(被覆盖或删除),扣除所在分段的有效字节数
+	 */
+	private void freeRecord(long pos)
+	{
+		Segment seg = getSegment((int)(pos >>> 32));
+		if (seg != null)
+		{
+			int offset = (int)pos;
+			seg.liveSize -= REC_HEAD_SIZE + seg.buf.getInt(offset) + Math.max(seg.buf.getInt(offset + 4), 0);
+		}
+	}
+
+	private void updateIndex(Octets key, long pos, int size)
+	{
+		Long posOld;
+		if (size >= 0)
+		{
+			posOld = _index.put(key, pos);
+			getSegment((int)(pos >>> 32)).liveSize += size;
+		}
+		else
+			posOld = _index.remove(key);
+		if (posOld != null)
+			freeRecord(posOld);
+	}
+
+	private void dbput(Octets key, Octets val)
+	{
+		synchronized (this)
+		{
+			try
+			{
+				long pos = append(key.array(), key.size(), val.array(), val.size());
+				updateIndex(key, pos, REC_HEAD_SIZE + key.size() + val.size());
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException("StorageMapped.put: append failed: " + _dbFile, e);
+			}
+		}
+	}
+
+	private void dbput(Octets key, Bean<?> bean)
+	{
+		OctetsStreamEx val = _threadBuf.get(); // 在写锁之外序列化,只在写锁中追加
+		val.clear();
+		val.marshalZero(); // format
+		bean.marshal(val);
+		dbput(key, val);
+	}
+
+	private void dbremove(Octets key)
+	{
+		synchronized (this)
+		{
+			try
+			{
+				long pos = append(key.array(), key.size(), null, REC_DELETED);
+				getSegment((int)(pos >>> 32)).delSize += REC_HEAD_SIZE + key.size();
+				updateIndex(key, 0, -1);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException("StorageMapped.remove: append failed: " + _dbFile, e);
+			}
+		}
+	}
+
+	/**
+	 * 从映射内存中读取指定位置的记录值
+	 * <p>
+	 * 如果记录所在的分段已被迁移删除,则重新从索引中获取位置
+	 * @return 是否读取成功. 失败表示记录已被删除
+	 */
+	private boolean readValue(Octets key, Long posObj, OctetsStream os)
+	{
+		for (;;)
+		{
+			if (posObj == null)
+				return false;
+			long pos = posObj;
+			Segment seg = getSegment((int)(pos >>> 32));
+			if (seg != null)
+			{
+				MappedByteBuffer buf = seg.buf;
+				int offset = (int)pos;
+				int keyLen = buf.getInt(offset);
+				int valLen = buf.getInt(offset + 4);
+				os.clear();
+				os.resize(valLen);
+				ByteBuffer bb = buf.duplicate();
+				bb.position(offset + REC_HEAD_SIZE + keyLen);
+				bb.get(os.array(), 0, valLen);
+				os.setPosition(0);
+				return true;
+			}
+			posObj = _index.get(key);
+		}
+	}
+
+	/**
+	 * 获取记录值
+	 * @return 当前线程复用的记录值缓冲区. 只在下次读写此引擎之前有效. null表示没有此记录
+	 */
+	private OctetsStreamEx dbget(Octets key)
+	{
+		if (_curSeg == null)
+			throw new IllegalStateException("db closed. key=" + key.dump());
+		OctetsStreamEx os = _threadBuf.get();
+		return readValue(key, _index.get(key), os) ? os : null;
+	}
+
+	private NavigableMap<Octets, Long> subIndex(Octets keyFrom, Octets keyTo, boolean inclusive, boolean reverse)
+	{
+		if (_curSeg == null)
+			throw new IllegalStateException("db closed");
+		if (keyFrom.compareTo(keyTo) > 0)
+		{
+			Octets t = keyFrom;
+			keyFrom = keyTo;
+			keyTo = t;
+		}
+		NavigableMap<Octets, Long> m = _index.subMap(keyFrom, inclusive, keyTo, inclusive);
+		return reverse ? m.descendingMap() : m;
+	}
+
+	/**
+	 * 打开数据库目录并恢复索引
+	 * <p>
+	 * 按分段顺序扫描所有记录,只有遇到提交标记时才把之前的记录加入索引. 最后一个提交标记之后的记录都会被丢弃
+	 */
+	@Override
+	public synchronized void openDB(File file) throws IOException
+	{
+		close();
+		if (!file.isDirectory() && !file.mkdirs())
+			throw new IOException("StorageMapped.openDB: create db path failed: " + file.getAbsolutePath());
+		_dbFile = file;
+		File[] files = file.listFiles((dir, name) -> name.endsWith(SEG_SUFFIX));
+		int[] segIds = new int[files != null ? files.length : 0];
+		int segCount = 0;
+		for (int i = 0; i < segIds.length; ++i)
+		{
+			String name = files[i].getName();
+			try
+			{
+				segIds[segCount] = Integer.parseInt(name.substring(0, name.length() - SEG_SUFFIX.length()));
+				++segCount;
+			}
+			catch (NumberFormatException e)
+			{
+				Log.warn("StorageMapped.openDB: ignore unknown file: {}", name);
+			}
+		}
+		Arrays.sort(segIds, 0, segCount);
+
+		ArrayList<Octets> pendingKeys = new ArrayList<>();
+		ArrayList<Long> pendingPoses = new ArrayList<>();
+		Segment lastSeg = null;
+		int lastPos = 0, lastEnd = 0;
+		for (int i = 0; i < segCount; ++i)
+		{
+			int segId = segIds[i];
+			File segFile = segmentFile(segId);
+			Segment seg = new Segment(segId, segFile, mapFile(segFile, -1));
+			MappedByteBuffer buf = seg.buf;
+			int cap = seg.capacity;
+			if (cap < SEG_HEAD_SIZE || buf.getInt(0) != SEG_MAGIC || buf.getInt(4) == SEG_OBSOLETE)
+			{
+				Log.info("StorageMapped.openDB: delete obsolete segment: {}", segFile.getName());
+				if (!segFile.delete())
+					Log.warn("StorageMapped.openDB: delete segment failed: {}", segFile.getAbsolutePath());
+				continue;
+			}
+			addSegment(seg);
+			int offset = SEG_HEAD_SIZE;
+			while (offset + REC_HEAD_SIZE <= cap)
+			{
+				int keyLen = buf.getInt(offset);
+				if (keyLen == 0)
+					break;
+				if (keyLen == REC_COMMIT)
+				{
+					for (int j = 0, n = pendingKeys.size(); j < n; ++j)
+					{
+						long pos = pendingPoses.get(j);
+						Octets key = pendingKeys.get(j);
+						if (pos >= 0)
+						{
+							Segment s = getSegment((int)(pos >>> 32));
+							int off = (int)pos;
+							updateIndex(key, pos, REC_HEAD_SIZE + key.size() + s.buf.getInt(off + 4));
+						}
+						else
+						{
+							getSegment((int)(~pos >>> 32)).delSize += REC_HEAD_SIZE + key.size();
+							updateIndex(key, 0, -1);
+						}
+					}
+					pendingKeys.clear();
+					pendingPoses.clear();
+					offset += REC_HEAD_SIZE;
+					lastSeg = seg;
+					lastPos = offset;
+					continue;
+				}
+				int valLen = buf.getInt(offset + 4);
+				long end = (long)offset + REC_HEAD_SIZE + keyLen + Math.max(valLen, 0);
+				if (keyLen < 0 || valLen < REC_DELETED || end > cap)
+				{
+					Log.error("StorageMapped.openDB: found broken record in {} at {}", segFile.getName(), offset);
+					break;
+				}
+				byte[] key = new byte[keyLen];
+				ByteBuffer bb = buf.duplicate();
+				bb.position(offset + REC_HEAD_SIZE);
+				bb.get(key);
+				pendingKeys.add(Octets.wrap(key));
+				pendingPoses.add(valLen >= 0 ? makePos(segId, offset) : ~makePos(segId, offset)); // 删除记录取反
+				offset = (int)end;
+			}
+			if (seg == lastSeg)
+				lastEnd = offset;
+		}
+		if (!pendingKeys.isEmpty())
+			Log.warn("StorageMapped.openDB: discard {} uncommitted records", pendingKeys.size());
+
+		for (int i = 0; i < segCount; ++i) // 删除最后提交标记之后的分段
+		{
+			Segment seg = getSegment(segIds[i]);
+			if (seg != null && (lastSeg == null || seg.id > lastSeg.id))
+			{
+				_segs[seg.id] = null;
+				if (!seg.file.delete())
+					Log.warn("StorageMapped.openDB: delete segment failed: {}", seg.file.getAbsolutePath());
+			}
+		}
+		if (lastSeg == null)
+		{
+			lastSeg = createSegment(segCount > 0 ? segIds[segCount - 1] + 1 : 1, Const.mappedFileSize << 20);
+			lastPos = SEG_HEAD_SIZE;
+		}
+		else if (lastEnd > lastPos) // 清除最后提交标记之后未提交的记录
+		{
+			ByteBuffer bb = lastSeg.buf.duplicate();
+			bb.position(lastPos);
+			byte[] zero = new byte[Math.min(lastEnd + REC_HEAD_SIZE, lastSeg.capacity) - lastPos];
+			bb.put(zero);
+			lastSeg.buf.force();
+		}
+		_curSeg = _commitSeg = lastSeg;
+		_curBuf = lastSeg.buf.duplicate();
+		_writePos = _commitPos = lastPos;
+		_writeCount = 0;
+		_writeSize = 0;
+		Log.info("StorageMapped.openDB: {} records in {} segments", _index.size(), getSegmentCount());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <K, V extends Bean<V>> Storage.Table<K, V> openTable(int tableId, String tableName, Object stubK, V stubV)
+	{
+		if (stubK instanceof Octets)
+			return (Storage.Table<K, V>)new TableOctets<>(tableId, tableName, stubV);
+		if (stubK instanceof String)
+			return (Storage.Table<K, V>)new TableString<>(tableId, tableName, stubV);
+		if (stubK instanceof Bean)
+			return new TableBean<>(tableId, tableName, (K)stubK, stubV);
+		throw new UnsupportedOperationException("unsupported key type: " +
+				(stubK != null ? stubK.getClass().getName() : "null") + " for table: " + tableName);
+	}
+
+	@Override
+	public <V extends Bean<V>> Storage.TableLong<V> openTable(int tableId, String tableName, V stubV)
+	{
+		return new TableLong<>(tableId, tableName, stubV);
+	}
+
+	@Override
+	public void putBegin()
+	{
+	}
+
+	@Override
+	public void putFlush(boolean isLast)
+	{
+	}
+
+	/**
+	 * 刷新所有写过的分段,然后写入提交标记并再次刷新
+	 */
+	private void writeCommit()
+	{
+		for (int i = 0, n = _dirtySegs.size(); i < n; ++i)
+			_dirtySegs.get(i).buf.force();
+		int pos = _writePos;
+		_curBuf.putInt(pos + 4, 0);
+		_curBuf.putInt(pos, REC_COMMIT);
+		_curSeg.buf.force();
+		_writePos = _commitPos = pos + REC_HEAD_SIZE;
+		_commitSeg = _curSeg;
+		_dirtySegs.clear();
+		_dirtySegs.add(_curSeg);
+	}
+
+	@Override
+	public synchronized boolean commit()
+	{
+		if (_writeCount != 0)
+		{
+			if (_curSeg == null)
+				throw new IllegalStateException("db closed");
+			try
+			{
+				writeCommit();
+			}
+			catch (Exception e)
+			{
+				Log.error("StorageMapped.commit: force failed", e);
+				return false;
+			}
+			_writeCount = 0;
+			_writeSize = 0;
+			try
+			{
+				compact();
+			}
+			catch (Exception e)
+			{
+				Log.error("StorageMapped.commit: compact failed", e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 反复选出已写满的分段中有效记录比例最低的分段,低于mappedCompactRatio时迁移其中的有效记录并删除此分段
+	 * <p>
+	 * 最旧的分段可以直接丢弃其中的删除记录,因为不会有更旧的分段中存在被删除的记录<br>
+	 * 其它分段需要保留仍可能屏蔽更旧分段中记录的删除记录,并把这部分计入有效比例
+	 */
+	private void compact() throws IOException
+	{
+		for (int i = _segs.length; i > 0; --i) // 每次迁移都会删除一个分段,最多迁移分段的数量次
+		{
+			Segment best = null, oldest = null;
+			long bestRatio = Long.MAX_VALUE;
+			for (Segment seg : _segs)
+			{
+				if (seg == null || seg == _curSeg)
+					continue;
+				if (oldest == null)
+					oldest = seg;
+				long ratio = (seg.liveSize + (seg == oldest ? 0 : seg.delSize)) * 100 / seg.capacity;
+				if (ratio < bestRatio)
+				{
+					best = seg;
+					bestRatio = ratio;
+				}
+			}
+			if (best == null || bestRatio >= Const.mappedCompactRatio)
+				return;
+			compactSegment(best, best == oldest);
+		}
+	}
+
+	/**
+	 * 迁移分段中的有效记录到当前写入的分段并删除此分段
+	 * @param isOldest 是否是最旧的分段. 是则丢弃所有删除记录
+	 */
+	private void compactSegment(Segment seg, boolean isOldest) throws IOException
+	{
+		MappedByteBuffer buf = seg.buf;
+		int cap = seg.capacity, n = 0, d = 0;
+		for (int offset = SEG_HEAD_SIZE; offset + REC_HEAD_SIZE <= cap;)
+		{
+			int keyLen = buf.getInt(offset);
+			if (keyLen == 0)
+				break;
+			if (keyLen == REC_COMMIT)
+			{
+				offset += REC_HEAD_SIZE;
+				continue;
+			}
+			int valLen = buf.getInt(offset + 4);
+			if (valLen >= 0 || !isOldest)
+			{
+				byte[] rec = new byte[keyLen + Math.max(valLen, 0)];
+				ByteBuffer bb = buf.duplicate();
+				bb.position(offset + REC_HEAD_SIZE);
+				bb.get(rec);
+				Octets key = Octets.wrap(rec, keyLen);
+				Long pos = _index.get(key);
+				if (valLen >= 0)
+				{
+					if (pos != null && pos == makePos(seg.id, offset))
+					{
+						byte[] val = Arrays.copyOfRange(rec, keyLen, rec.length);
+						updateIndex(key.clone(), append(key.array(), keyLen, val, valLen), REC_HEAD_SIZE + keyLen + valLen);
+						++n;
+					}
+				}
+				else if (pos == null) // 之后没有再写入此key,删除记录可能仍需屏蔽更旧分段中的记录
+				{
+					long posNew = append(key.array(), keyLen, null, REC_DELETED);
+					getSegment((int)(posNew >>> 32)).delSize += REC_HEAD_SIZE + keyLen;
+					++d;
+				}
+			}
+			offset += REC_HEAD_SIZE + keyLen + Math.max(valLen, 0);
+		}
+		if (n + d > 0)
+			writeCommit();
+		_writeCount = 0;
+		_writeSize = 0;
+		buf.putInt(4, SEG_OBSOLETE); // 即使下面删除文件失败,下次打开时也会忽略并删除
+		buf.force();
+		_segs[seg.id] = null;
+		_dirtySegs.remove(seg);
+		if (!seg.file.delete())
+			Log.warn("StorageMapped.compact: delete segment failed: {}", seg.file.getAbsolutePath());
+		Log.info("StorageMapped.compact: segment {} compacted ({} records, {} deletions moved)", seg.file.getName(), n, d);
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (_curSeg != null)
+			commit();
+		_dbFile = null;
+		_curSeg = _commitSeg = null;
+		_curBuf = null;
+		_segs = new Segment[16];
+		_dirtySegs.clear();
+		_index.clear();
+	}
+
+	/**
+	 * 热备份数据库
+	 * <p>
+	 * 把已提交的所有分段文件复制到备份目录中,备份目录可直接作为数据库目录打开
+	 */
+	@Override
+	public synchronized long backup(File fdst) throws IOException
+	{
+		Segment commitSeg = _commitSeg;
+		if (commitSeg == null)
+			throw new IllegalStateException("db closed");
+		if (!fdst.isDirectory() && !fdst.mkdirs())
+			throw new IOException("create db backup path failed: " + fdst.getAbsolutePath());
+		File[] oldFiles = fdst.listFiles((dir, name) -> name.endsWith(SEG_SUFFIX));
+		if (oldFiles != null)
+		{
+			for (File f : oldFiles)
+				if (!f.delete())
+					throw new IOException("delete old backup file failed: " + f.getAbsolutePath());
+		}
+		long r = 0;
+		for (Segment seg : _segs)
+		{
+			if (seg == null || seg.id > commitSeg.id)
+				continue;
+			long size = (seg == commitSeg ? _commitPos : seg.capacity);
+			try (FileChannel src = FileChannel.open(seg.file.toPath(), StandardOpenOption.READ);
+					FileChannel dst = FileChannel.open(new File(fdst, seg.file.getName()).toPath(),
+							StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				for (long pos = 0; pos < size;)
+					pos += src.transferTo(pos, size - pos, dst);
+			}
+			r += size;
+		}
+		return r;
+	}
+}
@@ -0,0 +1,102 @@
+package jane.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分散读计数的读写锁
+ * <p>
+ * 每个读线程持有独立的读计数槽({@link Slot}),加解读锁只修改自己的槽,线程间没有缓存行竞争<br>
+ * 写锁先设置写标记阻止新的读锁,再遍历全部槽等待已有的读锁释放<br>
+ * 适合读锁极频繁而写锁很少的情况,如事务线程和提交线程. 槽只能由所属的线程加解读锁
+ */
+public final class StripedRWLock
+{
+	/**
+	 * 读计数槽. 只在计数之后填充,避免和随后分配的对象共享缓存行. 计数在父类AtomicLong中,之前无法填充
+	 */
+	public static final class Slot extends AtomicLong
+	{
+		private static final long serialVersionUID = 1L;
+		long					  v1, v2, v3, v4, v5, v6, v7;
+	}
+
+	private final ConcurrentLinkedQueue<Slot> _slots	 = new ConcurrentLinkedQueue<>(); // 全部的读计数槽
+	private final AtomicInteger				  _writeFlag = new AtomicInteger();		  // 写标记(0:无;1:写等待或写独占)
+
+	private static void wait1()
+	{
+		try
+		{
+			Thread.sleep(1); // 忙等,主要用于竞争不多也不着急的情况
+		}
+		catch (InterruptedException e)
+		{
+		}
+	}
+
+	/**
+	 * 创建并注册一个新的读计数槽. 一般每个读线程创建一个
+	 */
+	public Slot newSlot()
+	{
+		Slot slot = new Slot();
+		_slots.add(slot);
+		return slot;
+	}
+
+	/**
+	 * 注销读计数槽. 只能在槽的所属线程不再加读锁时调用
+	 */
+	public void removeSlot(Slot slot)
+	{
+		_slots.remove(slot);
+	}
+
+	public boolean tryReadLock(Slot slot)
+	{
+		final long c = slot.get();
+		slot.set(c + 1); // volatile写,保证下面读写标记时写线程能看到读计数
+		if (c > 0 || _writeFlag.get() == 0) // 重入时写线程必然在等待本槽释放,所以不能退让
+			return true;
+		slot.set(c);
+		return false;
+	}
+
+	public void readLock(Slot slot)
+	{
+		while (!tryReadLock(slot))
+		{
+			do
+				wait1();
+			while (_writeFlag.get() != 0);
+		}
+	}
+
+	public void readUnlock(Slot slot)
+	{
+		slot.lazySet(slot.get() - 1);
+	}
+
+	public void writeLock()
+	{
+		while (!_writeFlag.compareAndSet(0, 1))
+			wait1();
+		for (Slot slot : _slots)
+		{
+			for (int n = 0; slot.get() != 0; ++n)
+			{
+				if (n < 100)
+					Thread.onSpinWait();
+				else
+					wait1();
+			}
+		}
+	}
+
+	public void writeUnlock()
+	{
+		_writeFlag.set(0);
+	}
+}
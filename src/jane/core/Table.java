@@ -1,8 +1,17 @@
 package jane.core;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Supplier;
 import jane.core.SContext.Record;
@@ -11,31 +20,62 @@ import jane.core.Storage.Helper;
 import jane.core.Storage.WalkHandler;
 import jane.core.Storage.WalkRawHandler;
 import jane.core.Storage.WalkValueHandler;
+import jane.core.Storage.WalkViewHandler;
+import jane.core.map.BloomFilter;
+import jane.core.map.ConcurrentTinyLFUMap;
+import jane.core.map.WeightedCache;
 
 /**
  * 通用key类型的数据库表类
  */
 public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableBase<V>
 {
-	private final Storage.Table<K, V> _stoTable; // 存储引擎的表对象
-	private final Map<K, Supplier<V>> _cache;	 // 读缓存. 有大小限制,溢出自动清理
-	private final ConcurrentMap<K, V> _cacheMod; // 写缓存. 不会溢出,保存到数据库存储引擎后清理
+	private final Storage.Table<K, V>				   _stoTable;	 // 存储引擎的表对象
+	private final Map<K, Supplier<V>>				   _cache;		 // 读缓存. 有大小限制,溢出自动清理
+	private final ConcurrentTinyLFUMap<K, Supplier<V>> _cacheBudget; // 使用内存预算时同_cache,否则为null
+	private final ConcurrentMap<K, V>				   _cacheMod;	 // 写缓存. 不会溢出,保存到数据库存储引擎后清理
+	private final Map<K, Boolean>					   _negCache;	 // 存储中不存在记录的key缓存. null表示不使用
 
 	/**
 	 * 创建一个数据库表
 	 * @param tableName 表名
 	 * @param stoTable 存储引擎的表对象. null表示此表是内存表
 	 * @param lockName 此表关联的锁名
-	 * @param cacheSize 此表的读缓存记录数量上限. 如果是内存表则表示超过此上限则会自动丢弃(<=0表示无上限)
+	 * @param cacheSize 此表的读缓存记录数量上限. 如果是内存表则表示超过此上限则会自动丢弃(<=0表示无上限). 使用内存预算(dbCacheBudget)时只表示预计的记录数量
 	 * @param stubV 记录value的存根对象,不要用于记录有用的数据. 这里只用于标记删除的字段,同存根bean
+	 * @param offHeapCache 堆外缓存. null表示不使用,内存表也不使用
 	 */
-	Table(int tableId, String tableName, Storage.Table<K, V> stoTable, String lockName, int cacheSize, V stubV)
+	Table(int tableId, String tableName, Storage.Table<K, V> stoTable, String lockName, int cacheSize, V stubV, OffHeapCache offHeapCache)
 	{
-		super(tableId, tableName, stubV, (lockName != null && !(lockName = lockName.trim()).isEmpty() ? lockName.hashCode() : tableId) * 0x9e3779b1);
+		super(tableId, tableName, stubV, (lockName != null && !(lockName = lockName.trim()).isEmpty() ? lockName.hashCode() : tableId) * 0x9e3779b1,
+				stoTable != null ? offHeapCache : null);
 		_stoTable = stoTable;
-		_cache = Util.newConcurrentLRUMap(cacheSize, tableName);
+		if (stoTable != null && Const.dbCacheBudget > 0)
+		{
+			_cacheBudget = new ConcurrentTinyLFUMap<>(0x10_0000L, cacheSize > 0 ? cacheSize : 0x1_0000,
+					r -> estimateWeight(r.get()), 0.5f, tableName);
+			_cache = _cacheBudget;
+		}
+		else
+		{
+			_cache = Util.newConcurrentLRUMap(cacheSize, tableName);
+			_cacheBudget = null;
+		}
 		_cacheMod = (stoTable != null ? Util.newConcurrentHashMap() : null);
+		_negCache = (stoTable != null && Const.dbNegativeCacheSize > 0 ? Util.newConcurrentLRUMap(Const.dbNegativeCacheSize, tableName + ".neg") : null);
+		if (stoTable != null)
+			initMissStats();
 		_tables.add(this);
+		if (_cacheBudget != null)
+			initCacheBudget();
+	}
+
+	/**
+	 * 创建读缓存的记录引用. 使用内存预算时按强引用缓存,否则使用软引用
+	 */
+	private Supplier<V> newCacheRef(K k, V v)
+	{
+		return _cacheBudget != null ? new StrongRef<>(v) : new CacheRefK<>(_cache, k, v);
 	}
 
 	/**
@@ -52,9 +92,10 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 	 * 尝试依次加锁并保存此表已修改的记录
 	 * <p>
 	 * @param counts 长度必须>=3,用于保存3个统计值,分别是保存前所有修改的记录数,保存后的剩余记录数,保存的记录数
+	 * @param maxCount 最多保存的记录数
 	 */
 	@Override
-	protected void trySaveModified(long[] counts)
+	protected void trySaveModified(long[] counts, long maxCount)
 	{
 		if (_cacheMod == null)
 			return;
@@ -64,27 +105,8 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		{
 			for (K k : _cacheMod.keySet()) //NOSONAR
 			{
-				Lock lock = Procedure.tryLock(lockId(k));
-				if (lock != null)
-				{
-					try
-					{
-						++n;
-						V v = _cacheMod.get(k);
-						if (v == _deleted)
-							_stoTable.remove(k);
-						else
-						{
-							_stoTable.put(k, v);
-							v.setSaveState(1);
-						}
-						_cacheMod.remove(k, v);
-					}
-					finally
-					{
-						lock.unlock();
-					}
-				}
+				if (trySaveRecord(k) && ++n >= maxCount)
+					break;
 			}
 		}
 		finally
@@ -103,20 +125,134 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		if (_cacheMod == null)
 			return 0;
 		for (Entry<K, V> e : _cacheMod.entrySet())
+			saveRecord(e.getKey(), e.getValue());
+		int m = _cacheMod.size();
+		_cacheMod.clear();
+		return m;
+	}
+
+	@Override
+	protected void trySaveModifiedParallel(long[] counts)
+	{
+		if (_cacheMod == null)
+			return;
+		Object[] keys = _cacheMod.keySet().toArray();
+		counts[0] += keys.length;
+		try
 		{
-			K k = e.getKey();
-			V v = e.getValue();
-			if (v == _deleted)
-				_stoTable.remove(k);
-			else
+			counts[2] += saveModifiedRange(keys, 0, keys.length, true);
+		}
+		finally
+		{
+			counts[1] += _cacheMod.size();
+		}
+	}
+
+	@Override
+	protected int saveModifiedParallel()
+	{
+		if (_cacheMod == null)
+			return 0;
+		Object[] keys = _cacheMod.keySet().toArray();
+		saveModifiedRange(keys, 0, keys.length, false);
+		_cacheMod.clear();
+		return keys.length;
+	}
+
+	/**
+	 * 保存已修改记录的key快照中[from,to)范围的记录. 范围过大时拆分成子任务并行保存
+	 * @return 保存的记录数
+	 */
+	@SuppressWarnings("unchecked")
+	private long saveModifiedRange(Object[] keys, int from, int to, boolean tryLock)
+	{
+		if (to - from > Const.dbCommitSplitSize)
+		{
+			int mid = (from + to) >>> 1;
+			ForkJoinTask<Long> task = ForkJoinTask.adapt(() -> saveModifiedRange(keys, mid, to, tryLock)).fork();
+			return saveModifiedRange(keys, from, mid, tryLock) + task.join();
+		}
+		long n = 0;
+		for (int i = from; i < to; ++i)
+		{
+			K k = (K)keys[i];
+			if (!tryLock)
 			{
-				_stoTable.put(k, v);
-				v.setSaveState(1);
+				V v = _cacheMod.get(k);
+				if (v != null)
+					saveRecord(k, v);
+				++n;
 			}
+			else if (trySaveRecord(k))
+				++n;
 		}
-		int m = _cacheMod.size();
-		_cacheMod.clear();
-		return m;
+		return n;
+	}
+
+	private void saveRecord(K k, V v)
+	{
+		if (v == _deleted)
+		{
+			_stoTable.remove(k);
+			if (_offHeapCache != null)
+				_offHeapCache.remove(_tableId, offHeapKey(k));
+		}
+		else
+		{
+			_stoTable.put(k, v);
+			v.setSaveState(1);
+			if (_offHeapCache != null)
+				putOffHeap(offHeapKey(k), v);
+			if (_cacheBudget != null)
+				_cacheBudget.refreshWeight(k);
+		}
+	}
+
+	private Octets offHeapKey(K k)
+	{
+		Octets os = offHeapKeyBuf();
+		RedoLog.marshalKey(os, k);
+		return os;
+	}
+
+	/**
+	 * 尝试加锁并保存一条已修改的记录
+	 * @return 是否加锁成功
+	 */
+	private boolean trySaveRecord(K k)
+	{
+		Lock lock = Procedure.tryLock(lockId(k));
+		if (lock == null)
+			return false;
+		try
+		{
+			V v = _cacheMod.get(k);
+			if (v != null)
+			{
+				saveRecord(k, v);
+				_cacheMod.remove(k, v);
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return true;
+	}
+
+	@Override
+	boolean marshalRedo(Octets os, Object key)
+	{
+		if (_cacheMod == null)
+			return false;
+		V v = _cacheMod.get(key);
+		if (v == null)
+			return false;
+		os.marshal1((byte)(v != _deleted ? 1 : 0));
+		RedoLog.marshalKey(os, key);
+		if (v != _deleted)
+			v.marshal(os);
+		return true;
 	}
 
 	@Override
@@ -131,6 +267,41 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		return _cache.size();
 	}
 
+	@Override
+	long addBloomCacheModKeys(BloomFilter bloom)
+	{
+		if (_stoTable == null)
+			return -1;
+		long n = 0;
+		for (K k : _cacheMod.keySet())
+		{
+			bloom.add(BloomFilter.hash(k.hashCode()));
+			++n;
+		}
+		return n;
+	}
+
+	@Override
+	long addBloomStorageKeys(BloomFilter bloom)
+	{
+		long[] n = new long[1];
+		boolean r = _stoTable.walk(k ->
+		{
+			if (isBloomStopped())
+				return false;
+			bloom.add(BloomFilter.hash(k.hashCode()));
+			++n[0];
+			return true;
+		}, null, null, true, false);
+		return r ? n[0] : -1;
+	}
+
+	@Override
+	WeightedCache getWeightedCache()
+	{
+		return _cacheBudget;
+	}
+
 	@Override
 	public int getCacheModSize()
 	{
@@ -158,28 +329,85 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		{
 			if (v == _deleted)
 				return null;
-			_cache.put(k, new CacheRefK<>(_cache, k, v));
+			_cache.put(k, newCacheRef(k, v));
 			return v;
 		}
-		_readStoCount.getAndIncrement();
-		v = _stoTable.get(k);
+		if (_offHeapCache != null && (v = getOffHeap(offHeapKey(k))) != null)
+		{
+			v.setSaveState(1);
+			_cache.put(k, newCacheRef(k, v));
+			return v;
+		}
+		v = getStorage(k);
 		if (v != null)
 		{
 			v.setSaveState(1);
-			_cache.put(k, new CacheRefK<>(_cache, k, v));
+			_cache.put(k, newCacheRef(k, v));
+			if (_offHeapCache != null)
+				putOffHeap(offHeapKey(k), v);
 		}
 		else if (r != null)
 			_cache.remove(k);
 		return v;
 	}
 
+	/**
+	 * 同getUnsafe,但批量获取多个记录
+	 * <p>
+	 * 缓存中没有的记录会去重后一次批量从存储读取,由存储引擎按存储的key顺序排序<br>
+	 * 没有加锁检查,通常不要调用此方法获取记录
+	 * @return 与keys顺序对应的value列表,不存在的记录为null
+	 */
+	@Deprecated
+	public List<V> getMultiUnsafe(List<K> keys)
+	{
+		int n = keys.size();
+		_readCount.getAndAdd(n);
+		ArrayList<V> values = new ArrayList<>(n);
+		HashSet<K> missKeys = null;
+		for (K k : keys)
+		{
+			V v = getNoStorage(k);
+			if (v == null)
+			{
+				if (missKeys == null)
+					missKeys = new HashSet<>();
+				missKeys.add(k);
+			}
+			values.add(v);
+		}
+		Map<K, V> stoValues = null;
+		if (missKeys != null)
+		{
+			stoValues = getStorageMulti(missKeys);
+			for (Entry<K, V> e : stoValues.entrySet())
+			{
+				K k = e.getKey();
+				V v = e.getValue();
+				v.setSaveState(1);
+				_cache.put(k, newCacheRef(k, v));
+				if (_offHeapCache != null)
+					putOffHeap(offHeapKey(k), v);
+			}
+		}
+		for (int i = 0; i < n; ++i)
+		{
+			V v = values.get(i);
+			if (v == null)
+				values.set(i, stoValues.get(keys.get(i)));
+			else if (v == _deleted)
+				values.set(i, null);
+		}
+		return values;
+	}
+
 	/**
 	 * 同getUnsafe,但有加锁检查
 	 */
 	@Deprecated
 	public V getReadOnly(K k)
 	{
-		if (!Procedure.isLockedByCurrentThread(lockId(k)))
+		if (!Procedure.isReadLockedByCurrentThread(lockId(k)))
 			throw new IllegalAccessError("get unlocked record! table=" + _tableName + ",key=" + k);
 		return getUnsafe(k);
 	}
@@ -219,6 +447,39 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		return getNoLock(k);
 	}
 
+	/**
+	 * 同get,但批量获取多个记录. 缓存中没有的记录会一次批量从存储读取
+	 * @return 与keys顺序对应的记录列表,不存在的记录为null
+	 */
+	public List<S> getMulti(List<K> keys)
+	{
+		for (K k : keys)
+		{
+			if (!Procedure.isLockedByCurrentThread(lockId(k)))
+				throw new IllegalAccessError("get unlocked record! table=" + _tableName + ",key=" + k);
+		}
+		List<V> values = getMultiUnsafe(keys);
+		SContext sctx = SContext.current();
+		ArrayList<S> records = new ArrayList<>(keys.size());
+		for (int i = 0, n = keys.size(); i < n; ++i)
+		{
+			K k = keys.get(i);
+			V v = values.get(i);
+			records.add(v != null ? sctx.addRecord(this, k, v) : sctx.getRecord(this, k));
+		}
+		return records;
+	}
+
+	/**
+	 * 同get,但只需要加读锁. 获取的记录修改时会抛出异常
+	 */
+	public S getShared(K k)
+	{
+		if (!Procedure.isReadLockedByCurrentThread(lockId(k)))
+			throw new IllegalAccessError("get unlocked record! table=" + _tableName + ",key=" + k);
+		return getNoLock(k);
+	}
+
 	/**
 	 * 同get,但在取不到时放入supplier提供的值并返回
 	 */
@@ -312,8 +573,181 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		v = _cacheMod.get(k);
 		if (v != null)
 			return v != _deleted ? v : null;
+		if (_offHeapCache != null && (v = getOffHeap(offHeapKey(k))) != null)
+			return v;
+		return getStorage(k);
+	}
+
+	/**
+	 * 从存储中读取记录. 先用布隆过滤器和不存在记录的缓存排除一定不存在的记录
+	 * <p>
+	 * 只在当前线程持有记录锁时缓存不存在的key,避免和并发的put交错导致缓存过时
+	 */
+	private V getStorage(K k)
+	{
+		if (!bloomMightContain(BloomFilter.hash(k.hashCode())))
+			return null;
+		if (_negCache != null && _negCache.get(k) != null)
+		{
+			_negHitCount.getAndIncrement();
+			return null;
+		}
 		_readStoCount.getAndIncrement();
-		return _stoTable.get(k);
+		V v = _stoTable.get(k);
+		if (v == null)
+		{
+			onStorageMiss();
+			if (_negCache != null && Procedure.isReadLockedByCurrentThread(lockId(k)))
+				_negCache.put(k, Boolean.TRUE);
+		}
+		return v;
+	}
+
+	/**
+	 * 同getUnsafe,但只从缓存中获取,不读存储
+	 * @return 需要读存储时返回null, 确定记录不存在时返回_deleted
+	 */
+	private V getNoStorage(K k)
+	{
+		Supplier<V> r = _cache.get(k);
+		V v;
+		if (r != null && (v = r.get()) != null)
+			return v;
+		if (_cacheMod == null)
+			return _deleted;
+		v = _cacheMod.get(k);
+		if (v != null)
+		{
+			if (v != _deleted)
+				_cache.put(k, newCacheRef(k, v));
+			return v;
+		}
+		if (_offHeapCache != null && (v = getOffHeap(offHeapKey(k))) != null)
+		{
+			v.setSaveState(1);
+			_cache.put(k, newCacheRef(k, v));
+			return v;
+		}
+		return null;
+	}
+
+	/**
+	 * 同getStorage,但批量读取
+	 * @return 存储中存在的记录
+	 */
+	private Map<K, V> getStorageMulti(Collection<K> keys)
+	{
+		ArrayList<K> stoKeys = new ArrayList<>(keys.size());
+		for (K k : keys)
+		{
+			if (!bloomMightContain(BloomFilter.hash(k.hashCode())))
+				continue;
+			if (_negCache != null && _negCache.get(k) != null)
+			{
+				_negHitCount.getAndIncrement();
+				continue;
+			}
+			stoKeys.add(k);
+		}
+		int m = stoKeys.size();
+		HashMap<K, V> values = new HashMap<>(m * 2);
+		if (m == 0)
+			return values;
+		_readStoCount.getAndAdd(m);
+		List<V> stoValues = _stoTable.getMulti(stoKeys);
+		for (int i = 0; i < m; ++i)
+		{
+			K k = stoKeys.get(i);
+			V v = stoValues.get(i);
+			if (v != null)
+				values.put(k, v);
+			else
+			{
+				onStorageMiss();
+				if (_negCache != null && Procedure.isReadLockedByCurrentThread(lockId(k)))
+					_negCache.put(k, Boolean.TRUE);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * 不加事务锁地把一条记录从存储预读到读缓存
+	 * <p>
+	 * 读存储前后比较锁版本号,期间记录有修改或锁被占用时放弃,避免把过时的记录放入缓存
+	 */
+	private void prefetch(K k)
+	{
+		try
+		{
+			int lockId = lockId(k);
+			long version = Procedure.getLockVersion(lockId);
+			if (Procedure.isWriteLocked(lockId))
+				return;
+			Supplier<V> r = _cache.get(k);
+			if (r != null && r.get() != null || _cacheMod.get(k) != null)
+				return;
+			boolean offHeap = false;
+			V v = null;
+			if (_offHeapCache != null)
+				offHeap = ((v = getOffHeap(offHeapKey(k))) != null);
+			if (v == null && (v = getStorage(k)) == null && _negCache == null)
+				return;
+			Lock lock = Procedure.tryLock(lockId);
+			if (lock == null)
+				return;
+			try
+			{
+				if (Procedure.getLockVersion(lockId) != version || _cacheMod.get(k) != null ||
+						(r = _cache.get(k)) != null && r.get() != null)
+					return;
+				if (v != null)
+				{
+					v.setSaveState(1);
+					_cache.put(k, newCacheRef(k, v));
+					if (_offHeapCache != null && !offHeap)
+						putOffHeap(offHeapKey(k), v);
+				}
+				else
+					_negCache.put(k, Boolean.TRUE);
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+		catch (Exception e)
+		{
+			Log.error(e, "prefetch exception: table={},key={}", _tableName, k);
+		}
+	}
+
+	/**
+	 * 在预读线程池中并行地把多条记录从存储预读到读缓存
+	 * <p>
+	 * 用于事务加锁前预先加载冷数据,缩短持有锁时读存储的时间. 已在缓存中或有未保存修改的记录会跳过<br>
+	 * 预读是尽力而为的,预读后的记录仍可能被并发修改或淘汰,不影响正确性
+	 * @return 所有记录预读完成时完成的future. 不会异常完成
+	 */
+	public CompletableFuture<Void> prefetchAsync(Collection<? extends K> keys)
+	{
+		if (_cacheMod == null || keys.isEmpty())
+			return CompletableFuture.completedFuture(null);
+		List<? extends K> keyList = new ArrayList<>(keys);
+		Executor executor = DBManager.instance().getPrefetchThreads();
+		int size = keyList.size();
+		int n = Math.min(size, Const.dbPrefetchThreads);
+		CompletableFuture<?>[] fs = new CompletableFuture<?>[n];
+		for (int i = 0; i < n; ++i)
+		{
+			int from = i;
+			fs[i] = CompletableFuture.runAsync(() ->
+			{
+				for (int j = from; j < size; j += n)
+					prefetch(keyList.get(j));
+			}, executor);
+		}
+		return CompletableFuture.allOf(fs);
 	}
 
 	/**
@@ -353,6 +787,22 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		return v != null && v != _deleted ? v : null;
 	}
 
+	/**
+	 * 只从缓存中获取记录,不会修改缓存. 用于不加锁的乐观读
+	 * @return 缓存中没有时返回null, 确定记录不存在时返回_deleted
+	 */
+	V getCacheOnly(K k)
+	{
+		_readCount.getAndIncrement();
+		Supplier<V> r = _cache.get(k);
+		V v;
+		if (r != null && (v = r.get()) != null)
+			return v;
+		if (_cacheMod == null)
+			return _deleted;
+		return _cacheMod.get(k);
+	}
+
 	/**
 	 * 同getCacheUnsafe,但增加了加锁检查和安全封装,可回滚修改
 	 */
@@ -432,11 +882,14 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 			Procedure.incVersion(lockId(k));
 			if (_cacheMod != null)
 			{
-				_cache.put(k, new CacheRefK<>(_cache, k, v));
+				_cache.put(k, newCacheRef(k, v));
 				V vOld = _cacheMod.put(k, v);
 				if (vOld == null)
 					DBManager.instance().incModCount();
 				v.setSaveState(2);
+				bloomAdd(BloomFilter.hash(k.hashCode()));
+				if (_negCache != null)
+					_negCache.remove(k);
 			}
 			else
 				_cache.put(k, new StrongRef<>(v));
@@ -458,7 +911,8 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 			return v;
 		if (v.stored())
 			throw new IllegalStateException("put shared record: t=" + _tableName + ",k=" + k + ",v=" + v);
-		SContext.current().addOnRollbackDirty(() ->
+		SContext sctx = SContext.current();
+		sctx.addOnRollbackDirty(() ->
 		{
 			if (vOld != null)
 			{
@@ -468,6 +922,7 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 			else
 				removeUnsafe(k);
 		});
+		sctx.addRedo(this, k);
 		putUnsafe(k, v);
 		if (vOld != null)
 			vOld.setSaveState(0);
@@ -509,11 +964,13 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		V vOld = getNoCacheUnsafe(k);
 		if (vOld == null)
 			return null;
-		SContext.current().addOnRollbackDirty(() ->
+		SContext sctx = SContext.current();
+		sctx.addOnRollbackDirty(() ->
 		{
 			vOld.setSaveState(0); // 确保可写入
 			putUnsafe(k, vOld);
 		});
+		sctx.addRedo(this, k);
 		removeUnsafe(k);
 		vOld.setSaveState(0);
 		return vOld;
@@ -585,6 +1042,56 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 		return walkValue(handler, null, null, true, false);
 	}
 
+	/**
+	 * 按记录key的顺序遍历此表的所有key和value,但value只反序列化fields中的字段,其它字段保持默认值
+	 * <p>
+	 * 只需要大bean中少数字段时使用,可以省去其它字段的解码和内存分配<br>
+	 * 注意: 遍历仅从数据库存储层获取(遍历内存表会抛出异常),当前没有checkpoint的cache记录会被无视,所以遍历获取的key和value可能不是最新,修改value不会改动数据库
+	 * @param handler 遍历过程中返回false可中断遍历
+	 * @param fields 需要反序列化的字段ID集合
+	 * @param from 需要遍历的最小key. null表示最小值
+	 * @param to 需要遍历的最大key. null表示最大值
+	 * @param inclusive 遍历是否包含from和to的key
+	 * @param reverse 是否按反序遍历
+	 */
+	public boolean walkValue(WalkValueHandler<K, V> handler, FieldSet fields, K from, K to, boolean inclusive, boolean reverse)
+	{
+		OctetsStream os = new OctetsStream();
+		return _stoTable.walkRaw((k, v) -> handler.onWalk(k, toBean(os, v, fields)), from, to, inclusive, reverse);
+	}
+
+	public boolean walkValue(WalkValueHandler<K, V> handler, FieldSet fields)
+	{
+		return walkValue(handler, fields, null, null, true, false);
+	}
+
+	/**
+	 * 按记录key的顺序遍历此表的所有key和value的只读视图
+	 * <p>
+	 * 视图在原始数据上按需解码字段,不创建bean对象,适合只读取少数字段或按字段过滤的遍历. 视图只在handler调用中有效<br>
+	 * 注意: 遍历仅从数据库存储层获取(遍历内存表会抛出异常),当前没有checkpoint的cache记录会被无视,所以遍历获取的key和value可能不是最新
+	 * @param handler 遍历过程中返回false可中断遍历
+	 * @param from 需要遍历的最小key. null表示最小值
+	 * @param to 需要遍历的最大key. null表示最大值
+	 * @param inclusive 遍历是否包含from和to的key
+	 * @param reverse 是否按反序遍历
+	 */
+	public boolean walkView(WalkViewHandler<K> handler, K from, K to, boolean inclusive, boolean reverse)
+	{
+		BeanView view = new BeanView();
+		return _stoTable.walkRaw((k, v) -> handler.onWalk(k, view.wrapsRecord(v)), from, to, inclusive, reverse);
+	}
+
+	public boolean walkView(WalkViewHandler<K> handler, boolean reverse)
+	{
+		return walkView(handler, null, null, true, reverse);
+	}
+
+	public boolean walkView(WalkViewHandler<K> handler)
+	{
+		return walkView(handler, null, null, true, false);
+	}
+
 	/**
 	 * 按记录key的顺序遍历此表的所有key和原始value数据
 	 * <p>
@@ -609,4 +1116,86 @@ public final class Table<K, V extends Bean<V>, S extends Safe<V>> extends TableB
 	{
 		return walkRaw(handler, null, null, true, false);
 	}
+
+	/**
+	 * 由存储引擎定位若干个大致均匀分布的已有key,把[from,to]切分成多个区间,用于并行遍历
+	 * <p>
+	 * 只定位切分点,不遍历范围内的记录. 无序模式切分成parallelism*16个区间,有序模式切分成parallelism*256个区间,使预读窗口只缓存少量记录
+	 * @return 各区间的起始key(第0个区间从from开始,不在列表中),第i个区间是[splitKeys[i-1],splitKeys[i]). null表示范围内没有记录
+	 */
+	private List<K> splitRange(K from, K to, int parallelism, boolean ordered)
+	{
+		return _stoTable.splitKeys(from, to, parallelism * (ordered ? 256 : 16));
+	}
+
+	private boolean walkRange(List<K> splitKeys, int i, K from, K to, WalkValueHandler<K, V> handler)
+	{
+		K begin = (i > 0 ? splitKeys.get(i - 1) : from);
+		K end = (i < splitKeys.size() ? splitKeys.get(i) : null);
+		return _stoTable.walkValue((k, v) -> end != null && k.equals(end) || handler.onWalk(k, v), _deleted, begin, end != null ? end : to, true, false);
+	}
+
+	private boolean walkRawRange(List<K> splitKeys, int i, K from, K to, WalkRawHandler<K> handler)
+	{
+		K begin = (i > 0 ? splitKeys.get(i - 1) : from);
+		K end = (i < splitKeys.size() ? splitKeys.get(i) : null);
+		return _stoTable.walkRaw((k, v) -> end != null && k.equals(end) || handler.onWalk(k, v), begin, end != null ? end : to, true, false);
+	}
+
+	/**
+	 * 并行遍历此表的所有key和value
+	 * <p>
+	 * 先由存储引擎定位切分点切分区间,再在独立的线程池中并行遍历和反序列化,适合大表的全表统计和数据迁移等<br>
+	 * 无序模式下handler会被多个线程并发调用,必须线程安全. 有序模式下handler只在当前线程按key的存储顺序调用<br>
+	 * 遍历速度受Const.dbWalkRateLimit限制. 其它注意事项同{@link #walkValue(WalkValueHandler, Object, Object, boolean, boolean)}
+	 * @param handler 遍历过程中返回false可中断遍历
+	 * @param from 需要遍历的最小key. null表示最小值
+	 * @param to 需要遍历的最大key. null表示最大值
+	 * @param parallelism 并行遍历的线程数. <=0表示使用Const.dbWalkParallelism
+	 * @param ordered 是否按key的顺序调用handler
+	 */
+	public boolean walkValueParallel(WalkValueHandler<K, V> handler, K from, K to, int parallelism, boolean ordered)
+	{
+		ParallelWalker pw = new ParallelWalker(parallelism > 0 ? parallelism : Const.dbWalkParallelism);
+		List<K> splitKeys = splitRange(from, to, pw.getParallelism(), ordered);
+		if (splitKeys == null)
+			return true;
+		if (!ordered)
+		{
+			return pw.walk(splitKeys.size() + 1, (i, __) -> walkRange(splitKeys, i, from, to,
+					(k, v) -> pw.onRecord() && (handler.onWalk(k, v) || pw.stop())));
+		}
+		return pw.<SimpleImmutableEntry<K, V>>walkOrdered(splitKeys.size() + 1, (i, out) -> walkRange(splitKeys, i, from, to,
+				(k, v) -> pw.onRecord() && out.add(new SimpleImmutableEntry<>(k, v))), e -> handler.onWalk(e.getKey(), e.getValue()));
+	}
+
+	public boolean walkValueParallel(WalkValueHandler<K, V> handler)
+	{
+		return walkValueParallel(handler, null, null, 0, false);
+	}
+
+	/**
+	 * 并行遍历此表的所有key和原始value数据
+	 * <p>
+	 * 同{@link #walkValueParallel(WalkValueHandler, Object, Object, int, boolean)},但不反序列化value
+	 */
+	public boolean walkRawParallel(WalkRawHandler<K> handler, K from, K to, int parallelism, boolean ordered)
+	{
+		ParallelWalker pw = new ParallelWalker(parallelism > 0 ? parallelism : Const.dbWalkParallelism);
+		List<K> splitKeys = splitRange(from, to, pw.getParallelism(), ordered);
+		if (splitKeys == null)
+			return true;
+		if (!ordered)
+		{
+			return pw.walk(splitKeys.size() + 1, (i, __) -> walkRawRange(splitKeys, i, from, to,
+					(k, v) -> pw.onRecord() && (handler.onWalk(k, v) || pw.stop())));
+		}
+		return pw.<SimpleImmutableEntry<K, byte[]>>walkOrdered(splitKeys.size() + 1, (i, out) -> walkRawRange(splitKeys, i, from, to,
+				(k, v) -> pw.onRecord() && out.add(new SimpleImmutableEntry<>(k, v))), e -> handler.onWalk(e.getKey(), e.getValue()));
+	}
+
+	public boolean walkRawParallel(WalkRawHandler<K> handler)
+	{
+		return walkRawParallel(handler, null, null, 0, false);
+	}
 }
@@ -3,49 +3,195 @@ package jane.core;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import jane.core.map.BloomFilter;
+import jane.core.map.WeightedCache;
 
 public abstract class TableBase<V extends Bean<V>>
 {
-	protected static final ArrayList<TableBase<?>> _tables		 = new ArrayList<>(16);	// 所有表的容器
-	protected final String						   _tableName;							// 表名
-	protected final int							   _tableId;							// 表ID
-	protected final int							   _lockId;								// 当前表的锁ID. 即锁名的hash值,一般和记录key的hash值计算得出记录的lockId
-	protected final V							   _deleted;							// 表示已删除的value. 同存根bean
-	protected final AtomicLong					   _readCount	 = new AtomicLong();	// 读操作次数统计
-	protected final AtomicLong					   _readStoCount = new AtomicLong();	// 读数据库存储的次数统计(即cache-miss的次数统计)
+	protected static final ArrayList<TableBase<?>> _tables			 = new ArrayList<>(16);								 // 所有表的容器
+	private static final ThreadLocal<Octets>	   _offHeapKeyBuf	 = ThreadLocal.withInitial(() -> new Octets(0x40));	 // 访问堆外缓存时序列化key的缓冲区
+	private static final ThreadLocal<Octets>	   _offHeapValueBuf	 = ThreadLocal.withInitial(() -> new Octets(0x100)); // 写入堆外缓存时序列化value的缓冲区
+	private static final ThreadLocal<Octets>	   _weightBuf		 = ThreadLocal.withInitial(() -> new Octets(0x100)); // 估算读缓存记录大小时序列化value的缓冲区
+	private static final int					   _cacheOverhead	 = 64;												 // 估算读缓存每条记录除序列化数据以外的额外占用(字节)
+	private static ForkJoinPool					   _commitPool;															 // 提交时并行保存各表的线程池. 只在提交线程中访问
+	private static ThreadPoolExecutor			   _bloomThread;														 // 后台遍历建立布隆过滤器的线程. 首次建立时创建,只在提交线程中访问
+	private static volatile boolean				   _bloomStopped;														 // 是否停止遍历建立布隆过滤器
+	private static int							   _saveSomeIndex;														 // 分批保存时下次开始的表序号. 只在提交线程中访问
+	protected final String						   _tableName;															 // 表名
+	protected final int							   _tableId;															 // 表ID
+	protected final int							   _lockId;																 // 当前表的锁ID. 即锁名的hash值,一般和记录key的hash值计算得出记录的lockId
+	protected final V							   _deleted;															 // 表示已删除的value. 同存根bean
+	protected final AtomicLong					   _readCount		 = new AtomicLong();								 // 读操作次数统计
+	protected final AtomicLong					   _readStoCount	 = new AtomicLong();								 // 读数据库存储的次数统计(即cache-miss的次数统计)
+	protected final OffHeapCache				   _offHeapCache;														 // 堆外缓存. null表示不使用
+	protected final AtomicLong					   _offHeapHitCount	 = new AtomicLong();								 // 读堆外缓存命中的次数统计
+	protected final AtomicLong					   _offHeapMissCount = new AtomicLong();								 // 读堆外缓存未命中的次数统计
+	private long								   _budgetReadCount;													 // 上次分配内存预算时的读操作次数. 只在提交线程中访问
+	private long								   _budgetReadStoCount;													 // 上次分配内存预算时的读数据库存储次数. 只在提交线程中访问
+	private volatile BloomFilter				   _bloom;																 // 存储中记录key的布隆过滤器. null表示未建立或不使用
+	private volatile BloomFilter				   _bloomBuilding;														 // 正在建立的布隆过滤器. 只在建立时非null
+	protected final AtomicLong					   _bloomSkipCount	 = new AtomicLong();								 // 布隆过滤器判断不存在而跳过读存储的次数统计
+	protected final AtomicLong					   _bloomFalseCount	 = new AtomicLong();								 // 布隆过滤器判断可能存在但读存储不存在的次数统计
+	protected final AtomicLong					   _negHitCount		 = new AtomicLong();								 // 命中不存在记录缓存的次数统计
+	private volatile long						   _bloomSkipBase;														 // 建立布隆过滤器时的_bloomSkipCount
+	private volatile long						   _bloomFalseBase;														 // 建立布隆过滤器时的_bloomFalseCount
+	private volatile long						   _bloomKeyCount;														 // 上次建立布隆过滤器时加入的key数量,用于估算下次建立的容量
+	private long								   _bloomRebuildTime;													 // 允许因误判率过高而重建布隆过滤器的时间. 只在提交线程中访问
 
 	public static List<TableBase<?>> getTables()
 	{
 		return Collections.unmodifiableList(_tables);
 	}
 
+	/**
+	 * 获取提交时并行保存的线程池
+	 * @return null表示不并行保存
+	 */
+	private static ForkJoinPool getCommitPool()
+	{
+		ForkJoinPool pool = _commitPool;
+		if (pool == null)
+		{
+			int n = (Const.dbCommitThreads > 0 ? Const.dbCommitThreads : Runtime.getRuntime().availableProcessors());
+			if (n <= 1)
+				return null;
+			_commitPool = pool = new ForkJoinPool(n, p ->
+			{
+				ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				t.setName("CommitWorker-" + t.getPoolIndex());
+				return t;
+			}, null, false);
+		}
+		return pool;
+	}
+
+	/**
+	 * 在提交线程池中并行保存全部表已修改的记录
+	 * <p>
+	 * 每个表一个任务,修改记录过多的表再按key的快照拆分成多个子任务
+	 * @param counts 非null表示尝试加锁保存,并累加3个统计值(同{@link #trySaveModifiedAll}); null表示在所有事务暂停的情况下直接保存
+	 * @return 保存的记录数
+	 */
+	private static long saveModifiedAllParallel(ForkJoinPool pool, long[] counts)
+	{
+		int n = _tables.size();
+		long[][] tableCounts = new long[n][3];
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[n];
+		for (int i = 0; i < n; ++i)
+		{
+			TableBase<?> table = _tables.get(i);
+			long[] c = tableCounts[i];
+			tasks[i] = ForkJoinTask.adapt(() ->
+			{
+				try
+				{
+					if (counts != null)
+						table.trySaveModifiedParallel(c);
+					else
+						c[2] = table.saveModifiedParallel();
+				}
+				catch (Throwable e)
+				{
+					if (counts != null)
+						Log.error(e, "db-commit thread exception(trySaveModified:{}):", table.getTableName());
+					else
+						Log.error(e, "db-commit thread exception(saveModified:{}):", table.getTableName());
+				}
+			});
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		long m = 0;
+		for (long[] c : tableCounts)
+		{
+			if (counts != null)
+			{
+				counts[0] += c[0];
+				counts[1] += c[1];
+			}
+			m += c[2];
+		}
+		if (counts != null)
+			counts[2] += m;
+		return m;
+	}
+
 	/**
 	 * 尝试依次加锁并保存全部表已修改的记录
 	 * <p>
+	 * 配置了多个提交线程时会并行保存
 	 * @param counts 长度必须>=3,用于保存3个统计值,分别是保存前所有修改的记录数,保存后的剩余记录数,保存的记录数
 	 */
 	static void trySaveModifiedAll(long[] counts)
 	{
+		ForkJoinPool pool = getCommitPool();
+		if (pool != null)
+		{
+			saveModifiedAllParallel(pool, counts);
+			return;
+		}
 		for (int i = 0, n = _tables.size(); i < n; ++i)
 		{
 			TableBase<?> table = _tables.get(i);
 			try
 			{
-				table.trySaveModified(counts);
+				table.trySaveModified(counts, Long.MAX_VALUE);
+			}
+			catch (Throwable e)
+			{
+				Log.error(e, "db-commit thread exception(trySaveModified:{}):", table.getTableName());
+			}
+		}
+	}
+
+	/**
+	 * 尝试依次加锁并保存全部表已修改的部分记录
+	 * <p>
+	 * 用于连续提交模式的分批保存. 每次从上次停止的表开始轮流保存,避免排在后面的表长期得不到保存
+	 * @param counts 长度必须>=3,用于保存3个统计值,同{@link #trySaveModifiedAll}. 其中保存前和保存后的记录数只统计遍历过的表
+	 * @param maxCount 最多保存的记录数
+	 */
+	static void trySaveModifiedSome(long[] counts, long maxCount)
+	{
+		int n = _tables.size();
+		if (n <= 0)
+			return;
+		int i = _saveSomeIndex % n;
+		for (int j = 0; j < n && maxCount > 0; ++j)
+		{
+			TableBase<?> table = _tables.get(i);
+			long saved = counts[2];
+			try
+			{
+				table.trySaveModified(counts, maxCount);
 			}
 			catch (Throwable e)
 			{
 				Log.error(e, "db-commit thread exception(trySaveModified:{}):", table.getTableName());
 			}
+			maxCount -= counts[2] - saved;
+			if (maxCount > 0 && ++i >= n)
+				i = 0;
 		}
+		_saveSomeIndex = i;
 	}
 
 	/**
 	 * 在所有事务暂停的情况下直接依次保存全部表已修改的记录
+	 * <p>
+	 * 配置了多个提交线程时会并行保存
 	 */
 	static int saveModifiedAll()
 	{
+		ForkJoinPool pool = getCommitPool();
+		if (pool != null)
+			return (int)saveModifiedAllParallel(pool, null);
 		int m = 0;
 		for (int i = 0, n = _tables.size(); i < n; ++i)
 		{
@@ -62,12 +208,343 @@ public abstract class TableBase<V extends Bean<V>>
 		return m;
 	}
 
-	protected TableBase(int tableId, String tableName, V stubV, int lockId)
+	/**
+	 * 把读缓存的内存预算平均分配给使用预算的各表. 只在打开表时调用
+	 */
+	private static void resetCacheBudget()
+	{
+		int n = 0;
+		for (TableBase<?> table : _tables)
+		{
+			if (table.getWeightedCache() != null)
+				++n;
+		}
+		if (n == 0)
+			return;
+		long share = Math.max(Const.dbCacheBudget * 0x10_0000L / n, 1);
+		for (TableBase<?> table : _tables)
+		{
+			WeightedCache cache = table.getWeightedCache();
+			if (cache != null)
+				cache.setMaxWeight(share);
+		}
+	}
+
+	/**
+	 * 按各表读缓存的使用量和命中率重新分配内存预算. 由提交线程定期调用
+	 * <p>
+	 * 没用满上限的表只保留已用的部分,用满的表按本周期的未命中率增加需求,再按需求的比例分配总预算.
+	 * 每次只向目标值调整一半,每个表至少保留平均值的1/16,避免来回震荡
+	 */
+	static void rebalanceCacheBudget()
+	{
+		int n = 0;
+		for (TableBase<?> table : _tables)
+		{
+			if (table.getWeightedCache() != null)
+				++n;
+		}
+		if (n == 0)
+			return;
+		long budget = Const.dbCacheBudget * 0x10_0000L;
+		double minDemand = (double)budget / n / 16;
+		double[] demands = new double[_tables.size()];
+		double demandSum = 0;
+		for (int i = 0, m = _tables.size(); i < m; ++i)
+		{
+			TableBase<?> table = _tables.get(i);
+			WeightedCache cache = table.getWeightedCache();
+			if (cache == null)
+				continue;
+			long readCount = table.getReadCount();
+			long readStoCount = table.getReadStoCount();
+			long reads = readCount - table._budgetReadCount;
+			long misses = readStoCount - table._budgetReadStoCount;
+			table._budgetReadCount = readCount;
+			table._budgetReadStoCount = readStoCount;
+			long maxWeight = cache.getMaxWeight();
+			long weight = cache.getWeightedSize();
+			double demand = (weight < maxWeight * 0.9 ? weight : maxWeight * (1 + (reads > 0 ? Math.min((double)misses / reads, 1) : 0)));
+			demandSum += (demands[i] = Math.max(demand, minDemand));
+		}
+		for (int i = 0, m = _tables.size(); i < m; ++i)
+		{
+			WeightedCache cache = _tables.get(i).getWeightedCache();
+			if (cache != null)
+				cache.setMaxWeight(Math.max((cache.getMaxWeight() + (long)(budget * demands[i] / demandSum)) / 2, 1));
+		}
+	}
+
+	/**
+	 * 开始建立或重建各表的布隆过滤器. 由提交线程在已保存到存储的记录都已提交时调用
+	 * <p>
+	 * 未建立,或增加的key超过了预计数量时重建. 建立后的误判率超过10%时,按dbBloomRebuildPeriod限制重建的间隔<br>
+	 * 先在当前线程把写缓存中的key加入新的过滤器,再由后台线程遍历存储中的key. 之后增加的key会同时加入新旧过滤器,
+	 * 而写缓存中的记录要等提交线程保存并提交后才会出现在存储中,所以遍历存储时不会遗漏
+	 */
+	static void startBloomFilters()
+	{
+		long now = System.currentTimeMillis();
+		for (TableBase<?> table : _tables)
+		{
+			if (table._bloomBuilding != null)
+				continue;
+			BloomFilter bloom = table._bloom;
+			if (bloom != null && !bloom.isOverloaded())
+			{
+				long skips = table._bloomSkipCount.get() - table._bloomSkipBase;
+				long falses = table._bloomFalseCount.get() - table._bloomFalseBase;
+				if (falses < 1000 || falses * 10 < falses + skips || now < table._bloomRebuildTime)
+					continue;
+			}
+			long n = Math.max(table._bloomKeyCount, (long)table.getCacheSize() + table.getCacheModSize());
+			if (bloom != null)
+				n = Math.max(n, bloom.getCount());
+			BloomFilter bloomNew = new BloomFilter(Math.max(n * 2, 1024), Const.dbBloomBitsPerKey);
+			table._bloomBuilding = bloomNew;
+			long m = table.addBloomCacheModKeys(bloomNew);
+			if (m < 0)
+			{
+				table._bloomBuilding = null;
+				continue;
+			}
+			table._bloomRebuildTime = now + Const.dbBloomRebuildPeriod * 1000L;
+			if (_bloomThread == null)
+			{
+				_bloomThread = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r ->
+				{
+					Thread t = new Thread(r, "BloomThread");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				});
+			}
+			_bloomThread.execute(() -> table.buildBloomFilter(bloomNew, m));
+		}
+	}
+
+	/**
+	 * 停止后台建立布隆过滤器,并等待正在进行的遍历结束. 在关闭存储引擎前调用
+	 */
+	static void stopBloomFilters()
+	{
+		_bloomStopped = true;
+		ThreadPoolExecutor bloomThread = _bloomThread;
+		if (bloomThread != null)
+		{
+			bloomThread.shutdownNow();
+			try
+			{
+				if (!bloomThread.awaitTermination(10, TimeUnit.SECONDS))
+					Log.warn("build bloom filter: wait for stopping timeout");
+			}
+			catch (InterruptedException e)
+			{
+				Log.warn("build bloom filter: wait for stopping interrupted");
+			}
+		}
+	}
+
+	static boolean isBloomStopped()
+	{
+		return _bloomStopped;
+	}
+
+	protected TableBase(int tableId, String tableName, V stubV, int lockId, OffHeapCache offHeapCache)
 	{
 		_tableName = tableName;
 		_tableId = tableId;
 		_lockId = lockId;
 		_deleted = stubV;
+		_offHeapCache = offHeapCache;
+		Metrics.gauge("jane_table_cache_size", "records in table read cache", this::getCacheSize, "table", tableName);
+		Metrics.gauge("jane_table_cache_mod_size", "modified records in table write cache", this::getCacheModSize, "table", tableName);
+		Metrics.counter("jane_table_read_total", "table read count", this::getReadCount, "table", tableName);
+		Metrics.counter("jane_table_read_storage_total", "table read count missed cache", this::getReadStoCount, "table", tableName);
+		if (offHeapCache != null)
+		{
+			Metrics.counter("jane_table_offheap_hit_total", "table off-heap cache hit count", this::getOffHeapHitCount, "table", tableName);
+			Metrics.counter("jane_table_offheap_miss_total", "table off-heap cache miss count", this::getOffHeapMissCount, "table", tableName);
+		}
+	}
+
+	/**
+	 * 获取当前线程访问堆外缓存时序列化key的缓冲区(已清空)
+	 */
+	protected static Octets offHeapKeyBuf()
+	{
+		Octets os = _offHeapKeyBuf.get();
+		os.clear();
+		return os;
+	}
+
+	/**
+	 * 从堆外缓存中获取记录value. 只在开启堆外缓存时调用
+	 * @param key 记录key的序列化数据
+	 * @return null表示不在缓存中
+	 */
+	protected final V getOffHeap(Octets key)
+	{
+		byte[] buf = _offHeapCache.get(_tableId, key);
+		if (buf == null)
+		{
+			_offHeapMissCount.getAndIncrement();
+			return null;
+		}
+		V v = _deleted.create();
+		try
+		{
+			v.unmarshal(OctetsStreamEx.wrap(buf));
+		}
+		catch (Exception e)
+		{
+			Log.error(e, "unmarshal off-heap cache failed: table={}", _tableName);
+			_offHeapCache.remove(_tableId, key);
+			_offHeapMissCount.getAndIncrement();
+			return null;
+		}
+		_offHeapHitCount.getAndIncrement();
+		return v;
+	}
+
+	/**
+	 * 从存储层遍历得到的原始value数据中只反序列化fields中的字段
+	 * @param os 复用的反序列化流
+	 */
+	protected final V toBean(OctetsStream os, byte[] raw, FieldSet fields) throws MarshalException
+	{
+		os.wraps(raw).setPosition(0);
+		int format = os.unmarshalInt1();
+		if (format != 0)
+			throw new IllegalStateException("unknown record value format(" + format + ") in table(" + _tableName + ',' + _tableId + ')');
+		V v = _deleted.create();
+		v.unmarshal(os, fields);
+		return v;
+	}
+
+	/**
+	 * 把记录value写入堆外缓存. 只在开启堆外缓存时调用
+	 * @param key 记录key的序列化数据
+	 */
+	protected final void putOffHeap(Octets key, V v)
+	{
+		Octets os = _offHeapValueBuf.get();
+		os.clear();
+		v.marshal(os);
+		_offHeapCache.put(_tableId, key, os);
+	}
+
+	/**
+	 * 估算记录value在读缓存中的占用大小(字节). 只在使用内存预算的读缓存中计算
+	 * <p>
+	 * 按序列化的长度估算,不超过bean的maxSize
+	 */
+	protected final int estimateWeight(V v)
+	{
+		Octets os = _weightBuf.get();
+		os.clear();
+		v.marshal(os);
+		return _cacheOverhead + Math.min(os.size(), v.maxSize());
+	}
+
+	/**
+	 * 使用内存预算的读缓存创建后调用. 注册统计并重新平均分配预算
+	 */
+	protected final void initCacheBudget()
+	{
+		Metrics.gauge("jane_table_cache_weight", "estimated bytes in table read cache", () -> getWeightedCache().getWeightedSize(), "table", _tableName);
+		Metrics.gauge("jane_table_cache_max_weight", "memory budget of table read cache", () -> getWeightedCache().getMaxWeight(), "table", _tableName);
+		resetCacheBudget();
+	}
+
+	/**
+	 * 不存在记录的统计在有存储的表创建后调用
+	 */
+	protected final void initMissStats()
+	{
+		if (Const.dbBloomBitsPerKey > 0)
+		{
+			Metrics.counter("jane_table_bloom_skip_total", "reads skipped storage by bloom filter", this::getBloomSkipCount, "table", _tableName);
+			Metrics.counter("jane_table_bloom_false_total", "bloom filter false positives", this::getBloomFalseCount, "table", _tableName);
+		}
+		if (Const.dbNegativeCacheSize > 0)
+			Metrics.counter("jane_table_negative_hit_total", "reads skipped storage by negative cache", this::getNegativeHitCount, "table", _tableName);
+	}
+
+	/**
+	 * 在后台线程遍历存储中的全部key加入过滤器,完成后替换旧的过滤器
+	 * @param cacheModCount 已加入的写缓存中的key数量
+	 */
+	private void buildBloomFilter(BloomFilter bloom, long cacheModCount)
+	{
+		try
+		{
+			long time = System.currentTimeMillis();
+			long n = addBloomStorageKeys(bloom);
+			if (n < 0)
+				return;
+			n += cacheModCount;
+			_bloomKeyCount = n;
+			_bloomSkipBase = _bloomSkipCount.get();
+			_bloomFalseBase = _bloomFalseCount.get();
+			_bloom = bloom;
+			Log.info("build bloom filter: table={}, keys={}, capacity={}, {}ms",
+					_tableName, n, bloom.getCapacity(), System.currentTimeMillis() - time);
+		}
+		catch (Exception e)
+		{
+			Log.error(e, "build bloom filter exception: table={}", _tableName);
+		}
+		finally
+		{
+			_bloomBuilding = null;
+		}
+	}
+
+	/**
+	 * 把写缓存中的全部key加入过滤器. 只在提交线程中调用
+	 * @return 加入的key数量. -1表示内存表,不需要布隆过滤器
+	 */
+	abstract long addBloomCacheModKeys(BloomFilter bloom);
+
+	/**
+	 * 遍历存储中的全部key加入过滤器. 在后台线程中调用
+	 * @return 加入的key数量. -1表示已停止建立
+	 */
+	abstract long addBloomStorageKeys(BloomFilter bloom) throws Exception;
+
+	/**
+	 * 增加记录后把key加入布隆过滤器. 需要在加入写缓存之后调用
+	 */
+	protected final void bloomAdd(long hash)
+	{
+		BloomFilter bloom = _bloomBuilding; // 先取正在建立的,避免建立完成的瞬间漏掉
+		if (bloom != null)
+			bloom.add(hash);
+		bloom = _bloom;
+		if (bloom != null)
+			bloom.add(hash);
+	}
+
+	/**
+	 * 判断记录是否可能在存储中. 布隆过滤器未建立时总是返回true
+	 */
+	protected final boolean bloomMightContain(long hash)
+	{
+		BloomFilter bloom = _bloom;
+		if (bloom == null || bloom.mightContain(hash))
+			return true;
+		_bloomSkipCount.getAndIncrement();
+		return false;
+	}
+
+	/**
+	 * 读存储得到不存在的记录时调用,用于统计布隆过滤器的误判
+	 */
+	protected final void onStorageMiss()
+	{
+		if (_bloom != null)
+			_bloomFalseCount.getAndIncrement();
 	}
 
 	/**
@@ -101,6 +578,11 @@ public abstract class TableBase<V extends Bean<V>>
 	 */
 	public abstract int getCacheModSize();
 
+	/**
+	 * 获取使用内存预算的读缓存. null表示不使用预算
+	 */
+	abstract WeightedCache getWeightedCache();
+
 	/**
 	 * 获取对当前表读取的统计次数
 	 */
@@ -117,15 +599,89 @@ public abstract class TableBase<V extends Bean<V>>
 		return _readStoCount.get();
 	}
 
+	/**
+	 * 获取读堆外缓存命中的统计次数
+	 */
+	public long getOffHeapHitCount()
+	{
+		return _offHeapHitCount.get();
+	}
+
+	/**
+	 * 获取读堆外缓存未命中的统计次数(之后会读数据库存储)
+	 */
+	public long getOffHeapMissCount()
+	{
+		return _offHeapMissCount.get();
+	}
+
+	/**
+	 * 获取布隆过滤器判断不存在而跳过读存储的统计次数
+	 */
+	public long getBloomSkipCount()
+	{
+		return _bloomSkipCount.get();
+	}
+
+	/**
+	 * 获取布隆过滤器判断可能存在但读存储不存在的统计次数(误判)
+	 */
+	public long getBloomFalseCount()
+	{
+		return _bloomFalseCount.get();
+	}
+
+	/**
+	 * 获取布隆过滤器对不存在记录的误判率. 即误判次数/(误判次数+跳过次数), -1表示无结果
+	 */
+	public double getBloomFalsePositiveRate()
+	{
+		long falses = _bloomFalseCount.get();
+		long total = falses + _bloomSkipCount.get();
+		return total > 0 ? (double)falses / total : -1;
+	}
+
+	/**
+	 * 获取命中不存在记录缓存的统计次数
+	 */
+	public long getNegativeHitCount()
+	{
+		return _negHitCount.get();
+	}
+
 	/**
 	 * 尝试依次加锁并保存此表已修改的记录
 	 * <p>
 	 * @param counts 长度必须>=3,用于保存3个统计值,分别是保存前所有修改的记录数,保存后的剩余记录数,保存的记录数
+	 * @param maxCount 最多保存的记录数
 	 */
-	protected abstract void trySaveModified(long[] counts);
+	protected abstract void trySaveModified(long[] counts, long maxCount);
 
 	/**
 	 * 在所有事务暂停的情况下直接依次保存此表已修改的记录
 	 */
 	protected abstract int saveModified();
+
+	/**
+	 * 尝试加锁并并行保存此表已修改的记录
+	 * <p>
+	 * 只能在提交线程池的任务中调用,修改记录过多时会拆分成子任务
+	 * @param counts 长度必须>=3,用于保存3个统计值,同{@link #trySaveModified}
+	 */
+	protected abstract void trySaveModifiedParallel(long[] counts);
+
+	/**
+	 * 在所有事务暂停的情况下直接并行保存此表已修改的记录
+	 * <p>
+	 * 只能在提交线程池的任务中调用,修改记录过多时会拆分成子任务
+	 */
+	protected abstract int saveModifiedParallel();
+
+	/**
+	 * 把此表指定记录在写缓存中的当前状态序列化成重做日志的条目(flag+key+[value])
+	 * <p>
+	 * 只在事务提交时持有此记录锁的情况下调用
+	 * @return 是否有需要记录的修改
+	 */
+	abstract boolean marshalRedo(Octets os, Object key);
 }
@@ -1,5 +1,12 @@
 package jane.core;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
@@ -10,10 +17,14 @@ import jane.core.Storage.Helper;
 import jane.core.Storage.WalkLongHandler;
 import jane.core.Storage.WalkLongRawHandler;
 import jane.core.Storage.WalkLongValueHandler;
+import jane.core.Storage.WalkLongViewHandler;
+import jane.core.map.BloomFilter;
 import jane.core.map.LongConcurrentHashMap;
+import jane.core.map.LongConcurrentTinyLFUMap;
 import jane.core.map.LongMap;
 import jane.core.map.LongMap.LongIterator;
 import jane.core.map.LongMap.MapIterator;
+import jane.core.map.WeightedCache;
 
 /**
  * 使用ID类型作为key的数据库表类
@@ -23,31 +34,59 @@ import jane.core.map.LongMap.MapIterator;
  */
 public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends TableBase<V>
 {
-	private final Storage.TableLong<V> _stoTable;							// 存储引擎的表对象
-	private final LongMap<Supplier<V>> _cache;								// 读缓存. 有大小限制,溢出自动清理
-	private final LongMap<V>		   _cacheMod;							// 写缓存. 不会溢出,保存到数据库存储引擎后清理
-	private final AtomicLong		   _idCounter	 = new AtomicLong();	// 用于自增长ID的计数器
-	private final AtomicBoolean		   _idCounterMod = new AtomicBoolean();	// idCounter是否待存状态(有修改未存库)
-	private int						   _autoIdBegin	 = Const.autoIdBegin;	// 自增长ID的初始值, 可运行时指定
-	private int						   _autoIdStride = Const.autoIdStride;	// 自增长ID的分配跨度, 可运行时指定
+	private final Storage.TableLong<V>					_stoTable;							 // 存储引擎的表对象
+	private final LongMap<Supplier<V>>					_cache;								 // 读缓存. 有大小限制,溢出自动清理
+	private final LongConcurrentTinyLFUMap<Supplier<V>>	_cacheBudget;						 // 使用内存预算时同_cache,否则为null
+	private final LongMap<V>							_cacheMod;							 // 写缓存. 不会溢出,保存到数据库存储引擎后清理
+	private final LongMap<Boolean>						_negCache;							 // 存储中不存在记录的key缓存. null表示不使用
+	private final AtomicLong							_idCounter	  = new AtomicLong();	 // 用于自增长ID的计数器
+	private final AtomicBoolean							_idCounterMod = new AtomicBoolean(); // idCounter是否待存状态(有修改未存库)
+	private int											_autoIdBegin  = Const.autoIdBegin;	 // 自增长ID的初始值, 可运行时指定
+	private int											_autoIdStride = Const.autoIdStride;	 // 自增长ID的分配跨度, 可运行时指定
 
 	/**
 	 * 创建一个数据库表
 	 * @param tableName 表名
 	 * @param stoTable 存储引擎的表对象. null表示此表是内存表
 	 * @param lockName 此表关联的锁名
-	 * @param cacheSize 此表的读缓存记录数量上限. 如果是内存表则表示超过此上限则会自动丢弃(<=0表示无上限)
+	 * @param cacheSize 此表的读缓存记录数量上限. 如果是内存表则表示超过此上限则会自动丢弃(<=0表示无上限). 使用内存预算(dbCacheBudget)时只表示预计的记录数量
 	 * @param stubV 记录value的存根对象,不要用于记录有用的数据. 这里只用于标记删除的字段,同存根bean
+	 * @param offHeapCache 堆外缓存. null表示不使用,内存表也不使用
 	 */
-	TableLong(int tableId, String tableName, Storage.TableLong<V> stoTable, String lockName, int cacheSize, V stubV)
+	TableLong(int tableId, String tableName, Storage.TableLong<V> stoTable, String lockName, int cacheSize, V stubV, OffHeapCache offHeapCache)
 	{
-		super(tableId, tableName, stubV, (lockName != null && !(lockName = lockName.trim()).isEmpty() ? lockName.hashCode() : tableId) * 0x9e3779b1);
+		super(tableId, tableName, stubV, (lockName != null && !(lockName = lockName.trim()).isEmpty() ? lockName.hashCode() : tableId) * 0x9e3779b1,
+				stoTable != null ? offHeapCache : null);
 		_stoTable = stoTable;
-		_cache = Util.newLongConcurrentLRUMap(cacheSize, tableName);
+		if (stoTable != null && Const.dbCacheBudget > 0)
+		{
+			_cacheBudget = new LongConcurrentTinyLFUMap<>(0x10_0000L, cacheSize > 0 ? cacheSize : 0x1_0000,
+					r -> estimateWeight(r.get()), 0.5f, tableName);
+			_cache = _cacheBudget;
+		}
+		else
+		{
+			_cache = Util.newLongConcurrentLRUMap(cacheSize, tableName);
+			_cacheBudget = null;
+		}
 		_cacheMod = (stoTable != null ? new LongConcurrentHashMap<>() : null);
+		_negCache = (stoTable != null && Const.dbNegativeCacheSize > 0 ? Util.newLongConcurrentLRUMap(Const.dbNegativeCacheSize, tableName + ".neg") : null);
 		if (stoTable != null)
+		{
 			_idCounter.set(_stoTable.getIdCounter());
+			initMissStats();
+		}
 		_tables.add(this);
+		if (_cacheBudget != null)
+			initCacheBudget();
+	}
+
+	/**
+	 * 创建读缓存的记录引用. 使用内存预算时按强引用缓存,否则使用软引用
+	 */
+	private Supplier<V> newCacheRef(long k, V v)
+	{
+		return _cacheBudget != null ? new StrongRef<>(v) : new CacheRefLong<>(_cache, k, v);
 	}
 
 	/**
@@ -92,9 +131,10 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 	 * 尝试依次加锁并保存此表已修改的记录
 	 * <p>
 	 * @param counts 长度必须>=3,用于保存3个统计值,分别是保存前所有修改的记录数,保存后的剩余记录数,保存的记录数
+	 * @param maxCount 最多保存的记录数
 	 */
 	@Override
-	protected void trySaveModified(long[] counts)
+	protected void trySaveModified(long[] counts, long maxCount)
 	{
 		if (_cacheMod == null)
 			return;
@@ -102,30 +142,10 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		long n = 0;
 		try
 		{
-			for (LongIterator it = _cacheMod.keyIterator(); it.hasNext();)
+			for (LongIterator it = _cacheMod.keyIterator(); it.hasNext() && n < maxCount;)
 			{
-				long k = it.next();
-				Lock lock = Procedure.tryLock(lockId(k));
-				if (lock != null)
-				{
-					try
-					{
-						++n;
-						V v = _cacheMod.get(k);
-						if (v == _deleted)
-							_stoTable.remove(k);
-						else
-						{
-							_stoTable.put(k, v);
-							v.setSaveState(1);
-						}
-						_cacheMod.remove(k, v);
-					}
-					finally
-					{
-						lock.unlock();
-					}
-				}
+				if (trySaveRecord(it.next()))
+					++n;
 			}
 		}
 		finally
@@ -144,17 +164,7 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		if (_cacheMod == null)
 			return 0;
 		for (MapIterator<V> it = _cacheMod.entryIterator(); it.moveToNext();)
-		{
-			long k = it.key();
-			V v = it.value();
-			if (v == _deleted)
-				_stoTable.remove(k);
-			else
-			{
-				_stoTable.put(k, v);
-				v.setSaveState(1);
-			}
-		}
+			saveRecord(it.key(), it.value());
 		int m = _cacheMod.size();
 		_cacheMod.clear();
 		_stoTable.setIdCounter(_idCounter.get());
@@ -162,6 +172,148 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		return m;
 	}
 
+	/**
+	 * 获取已修改记录的key快照
+	 */
+	private long[] getModifiedKeys()
+	{
+		long[] keys = new long[_cacheMod.size()];
+		int n = 0;
+		for (LongIterator it = _cacheMod.keyIterator(); it.hasNext();)
+		{
+			if (n == keys.length)
+				keys = Arrays.copyOf(keys, n * 2 + 16);
+			keys[n++] = it.next();
+		}
+		return n == keys.length ? keys : Arrays.copyOf(keys, n);
+	}
+
+	@Override
+	protected void trySaveModifiedParallel(long[] counts)
+	{
+		if (_cacheMod == null)
+			return;
+		long[] keys = getModifiedKeys();
+		counts[0] += keys.length;
+		try
+		{
+			counts[2] += saveModifiedRange(keys, 0, keys.length, true);
+		}
+		finally
+		{
+			counts[1] += _cacheMod.size();
+		}
+	}
+
+	@Override
+	protected int saveModifiedParallel()
+	{
+		if (_cacheMod == null)
+			return 0;
+		long[] keys = getModifiedKeys();
+		saveModifiedRange(keys, 0, keys.length, false);
+		_cacheMod.clear();
+		_stoTable.setIdCounter(_idCounter.get());
+		_idCounterMod.set(false);
+		return keys.length;
+	}
+
+	/**
+	 * 保存已修改记录的key快照中[from,to)范围的记录. 范围过大时拆分成子任务并行保存
+	 * @return 保存的记录数
+	 */
+	private long saveModifiedRange(long[] keys, int from, int to, boolean tryLock)
+	{
+		if (to - from > Const.dbCommitSplitSize)
+		{
+			int mid = (from + to) >>> 1;
+			ForkJoinTask<Long> task = ForkJoinTask.adapt(() -> saveModifiedRange(keys, mid, to, tryLock)).fork();
+			return saveModifiedRange(keys, from, mid, tryLock) + task.join();
+		}
+		long n = 0;
+		for (int i = from; i < to; ++i)
+		{
+			long k = keys[i];
+			if (!tryLock)
+			{
+				V v = _cacheMod.get(k);
+				if (v != null)
+					saveRecord(k, v);
+				++n;
+			}
+			else if (trySaveRecord(k))
+				++n;
+		}
+		return n;
+	}
+
+	private void saveRecord(long k, V v)
+	{
+		if (v == _deleted)
+		{
+			_stoTable.remove(k);
+			if (_offHeapCache != null)
+				_offHeapCache.remove(_tableId, offHeapKey(k));
+		}
+		else
+		{
+			_stoTable.put(k, v);
+			v.setSaveState(1);
+			if (_offHeapCache != null)
+				putOffHeap(offHeapKey(k), v);
+			if (_cacheBudget != null)
+				_cacheBudget.refreshWeight(k);
+		}
+	}
+
+	private Octets offHeapKey(long k)
+	{
+		Octets os = offHeapKeyBuf();
+		os.marshal(k);
+		return os;
+	}
+
+	/**
+	 * 尝试加锁并保存一条已修改的记录
+	 * @return 是否加锁成功
+	 */
+	private boolean trySaveRecord(long k)
+	{
+		Lock lock = Procedure.tryLock(lockId(k));
+		if (lock == null)
+			return false;
+		try
+		{
+			V v = _cacheMod.get(k);
+			if (v != null)
+			{
+				saveRecord(k, v);
+				_cacheMod.remove(k, v);
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return true;
+	}
+
+	@Override
+	boolean marshalRedo(Octets os, Object key)
+	{
+		if (_cacheMod == null)
+			return false;
+		long k = (Long)key;
+		V v = _cacheMod.get(k);
+		if (v == null)
+			return false;
+		os.marshal1((byte)(v != _deleted ? 1 : 0));
+		os.marshal(k);
+		if (v != _deleted)
+			v.marshal(os);
+		return true;
+	}
+
 	@Override
 	public int getAverageValueSize()
 	{
@@ -174,6 +326,38 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		return _cache.size();
 	}
 
+	@Override
+	long addBloomCacheModKeys(BloomFilter bloom)
+	{
+		if (_stoTable == null)
+			return -1;
+		long n = 0;
+		for (LongIterator it = _cacheMod.keyIterator(); it.hasNext(); ++n)
+			bloom.add(BloomFilter.hash(it.next()));
+		return n;
+	}
+
+	@Override
+	long addBloomStorageKeys(BloomFilter bloom)
+	{
+		long[] n = new long[1];
+		boolean r = _stoTable.walk(k ->
+		{
+			if (isBloomStopped())
+				return false;
+			bloom.add(BloomFilter.hash(k));
+			++n[0];
+			return true;
+		}, 0, -1, true, false);
+		return r ? n[0] : -1;
+	}
+
+	@Override
+	WeightedCache getWeightedCache()
+	{
+		return _cacheBudget;
+	}
+
 	@Override
 	public int getCacheModSize()
 	{
@@ -201,28 +385,97 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		{
 			if (v == _deleted)
 				return null;
-			_cache.put(k, new CacheRefLong<>(_cache, k, v));
+			_cache.put(k, newCacheRef(k, v));
 			return v;
 		}
-		_readStoCount.getAndIncrement();
-		v = _stoTable.get(k);
+		if (_offHeapCache != null && (v = getOffHeap(offHeapKey(k))) != null)
+		{
+			v.setSaveState(1);
+			_cache.put(k, newCacheRef(k, v));
+			return v;
+		}
+		v = getStorage(k);
 		if (v != null)
 		{
 			v.setSaveState(1);
-			_cache.put(k, new CacheRefLong<>(_cache, k, v));
+			_cache.put(k, newCacheRef(k, v));
+			if (_offHeapCache != null)
+				putOffHeap(offHeapKey(k), v);
 		}
 		else if (r != null)
 			_cache.remove(k);
 		return v;
 	}
 
+	/**
+	 * 同getUnsafe,但批量获取多个记录
+	 * <p>
+	 * 缓存中没有的记录会排序去重后一次批量从存储读取<br>
+	 * 没有加锁检查,通常不要调用此方法获取记录
+	 * @return 与keys顺序对应的value列表,不存在的记录为null
+	 */
+	@Deprecated
+	public List<V> getMultiUnsafe(long... keys)
+	{
+		int n = keys.length;
+		_readCount.getAndAdd(n);
+		ArrayList<V> values = new ArrayList<>(n);
+		long[] missKeys = null;
+		int m = 0;
+		for (long k : keys)
+		{
+			V v = getNoStorage(k);
+			if (v == null)
+			{
+				if (missKeys == null)
+					missKeys = new long[n];
+				missKeys[m++] = k;
+			}
+			values.add(v);
+		}
+		List<V> stoValues = null;
+		if (m > 0)
+		{
+			Arrays.sort(missKeys, 0, m);
+			int u = 1;
+			for (int i = 1; i < m; ++i)
+			{
+				if (missKeys[i] != missKeys[u - 1])
+					missKeys[u++] = missKeys[i];
+			}
+			missKeys = Arrays.copyOf(missKeys, u);
+			stoValues = getStorageMulti(missKeys);
+			for (int i = 0; i < u; ++i)
+			{
+				V v = stoValues.get(i);
+				if (v != null)
+				{
+					long k = missKeys[i];
+					v.setSaveState(1);
+					_cache.put(k, newCacheRef(k, v));
+					if (_offHeapCache != null)
+						putOffHeap(offHeapKey(k), v);
+				}
+			}
+		}
+		for (int i = 0; i < n; ++i)
+		{
+			V v = values.get(i);
+			if (v == null)
+				values.set(i, stoValues.get(Arrays.binarySearch(missKeys, keys[i])));
+			else if (v == _deleted)
+				values.set(i, null);
+		}
+		return values;
+	}
+
 	/**
 	 * 同getUnsafe,但有加锁检查
 	 */
 	@Deprecated
 	public V getReadOnly(long k)
 	{
-		if (!Procedure.isLockedByCurrentThread(lockId(k)))
+		if (!Procedure.isReadLockedByCurrentThread(lockId(k)))
 			throw new IllegalAccessError("get unlocked record! table=" + _tableName + ",key=" + k);
 		return getUnsafe(k);
 	}
@@ -262,6 +515,39 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		return getNoLock(k);
 	}
 
+	/**
+	 * 同get,但批量获取多个记录. 缓存中没有的记录会一次批量从存储读取
+	 * @return 与keys顺序对应的记录列表,不存在的记录为null
+	 */
+	public List<S> getMulti(long... keys)
+	{
+		for (long k : keys)
+		{
+			if (!Procedure.isLockedByCurrentThread(lockId(k)))
+				throw new IllegalAccessError("get unlocked record! table=" + _tableName + ",key=" + k);
+		}
+		List<V> values = getMultiUnsafe(keys);
+		SContext sctx = SContext.current();
+		ArrayList<S> records = new ArrayList<>(keys.length);
+		for (int i = 0, n = keys.length; i < n; ++i)
+		{
+			long k = keys[i];
+			V v = values.get(i);
+			records.add(v != null ? sctx.addRecord(this, k, v) : sctx.getRecord(this, k));
+		}
+		return records;
+	}
+
+	/**
+	 * 同get,但只需要加读锁. 获取的记录修改时会抛出异常
+	 */
+	public S getShared(long k)
+	{
+		if (!Procedure.isReadLockedByCurrentThread(lockId(k)))
+			throw new IllegalAccessError("get unlocked record! table=" + _tableName + ",key=" + k);
+		return getNoLock(k);
+	}
+
 	/**
 	 * 同get,但在取不到时放入supplier提供的值并返回
 	 */
@@ -355,8 +641,178 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		v = _cacheMod.get(k);
 		if (v != null)
 			return v != _deleted ? v : null;
+		if (_offHeapCache != null && (v = getOffHeap(offHeapKey(k))) != null)
+			return v;
+		return getStorage(k);
+	}
+
+	/**
+	 * 从存储中读取记录. 先用布隆过滤器和不存在记录的缓存排除一定不存在的记录
+	 * <p>
+	 * 只在当前线程持有记录锁时缓存不存在的key,避免和并发的put交错导致缓存过时
+	 */
+	private V getStorage(long k)
+	{
+		if (!bloomMightContain(BloomFilter.hash(k)))
+			return null;
+		if (_negCache != null && _negCache.get(k) != null)
+		{
+			_negHitCount.getAndIncrement();
+			return null;
+		}
 		_readStoCount.getAndIncrement();
-		return _stoTable.get(k);
+		V v = _stoTable.get(k);
+		if (v == null)
+		{
+			onStorageMiss();
+			if (_negCache != null && Procedure.isReadLockedByCurrentThread(lockId(k)))
+				_negCache.put(k, Boolean.TRUE);
+		}
+		return v;
+	}
+
+	/**
+	 * 同getUnsafe,但只从缓存中获取,不读存储
+	 * @return 需要读存储时返回null, 确定记录不存在时返回_deleted
+	 */
+	private V getNoStorage(long k)
+	{
+		Supplier<V> r = _cache.get(k);
+		V v;
+		if (r != null && (v = r.get()) != null)
+			return v;
+		if (_cacheMod == null)
+			return _deleted;
+		v = _cacheMod.get(k);
+		if (v != null)
+		{
+			if (v != _deleted)
+				_cache.put(k, newCacheRef(k, v));
+			return v;
+		}
+		if (_offHeapCache != null && (v = getOffHeap(offHeapKey(k))) != null)
+		{
+			v.setSaveState(1);
+			_cache.put(k, newCacheRef(k, v));
+			return v;
+		}
+		return null;
+	}
+
+	/**
+	 * 同getStorage,但批量读取
+	 * @param keys 必须已从小到大排序
+	 * @return 与keys顺序对应的value列表,不存在的记录为null
+	 */
+	private List<V> getStorageMulti(long[] keys)
+	{
+		int n = keys.length;
+		long[] stoKeys = new long[n];
+		int m = 0;
+		for (long k : keys)
+		{
+			if (!bloomMightContain(BloomFilter.hash(k)))
+				continue;
+			if (_negCache != null && _negCache.get(k) != null)
+			{
+				_negHitCount.getAndIncrement();
+				continue;
+			}
+			stoKeys[m++] = k;
+		}
+		List<V> stoValues = (m > 0 ? _stoTable.getMulti(m < n ? Arrays.copyOf(stoKeys, m) : stoKeys) : null);
+		_readStoCount.getAndAdd(m);
+		ArrayList<V> values = new ArrayList<>(n);
+		for (int i = 0, j = 0; i < n; ++i)
+		{
+			long k = keys[i];
+			V v = null;
+			if (j < m && stoKeys[j] == k && (v = stoValues.get(j++)) == null)
+			{
+				onStorageMiss();
+				if (_negCache != null && Procedure.isReadLockedByCurrentThread(lockId(k)))
+					_negCache.put(k, Boolean.TRUE);
+			}
+			values.add(v);
+		}
+		return values;
+	}
+
+	/**
+	 * 不加事务锁地把一条记录从存储预读到读缓存
+	 * <p>
+	 * 读存储前后比较锁版本号,期间记录有修改或锁被占用时放弃,避免把过时的记录放入缓存
+	 */
+	private void prefetch(long k)
+	{
+		try
+		{
+			int lockId = lockId(k);
+			long version = Procedure.getLockVersion(lockId);
+			if (Procedure.isWriteLocked(lockId))
+				return;
+			Supplier<V> r = _cache.get(k);
+			if (r != null && r.get() != null || _cacheMod.get(k) != null)
+				return;
+			boolean offHeap = false;
+			V v = null;
+			if (_offHeapCache != null)
+				offHeap = ((v = getOffHeap(offHeapKey(k))) != null);
+			if (v == null && (v = getStorage(k)) == null && _negCache == null)
+				return;
+			Lock lock = Procedure.tryLock(lockId);
+			if (lock == null)
+				return;
+			try
+			{
+				if (Procedure.getLockVersion(lockId) != version || _cacheMod.get(k) != null ||
+						(r = _cache.get(k)) != null && r.get() != null)
+					return;
+				if (v != null)
+				{
+					v.setSaveState(1);
+					_cache.put(k, newCacheRef(k, v));
+					if (_offHeapCache != null && !offHeap)
+						putOffHeap(offHeapKey(k), v);
+				}
+				else
+					_negCache.put(k, Boolean.TRUE);
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+		catch (Exception e)
+		{
+			Log.error(e, "prefetch exception: table={},key={}", _tableName, k);
+		}
+	}
+
+	/**
+	 * 在预读线程池中并行地把多条记录从存储预读到读缓存
+	 * <p>
+	 * 用于事务加锁前预先加载冷数据,缩短持有锁时读存储的时间. 已在缓存中或有未保存修改的记录会跳过<br>
+	 * 预读是尽力而为的,预读后的记录仍可能被并发修改或淘汰,不影响正确性
+	 * @return 所有记录预读完成时完成的future. 不会异常完成
+	 */
+	public CompletableFuture<Void> prefetchAsync(long... keys)
+	{
+		if (_cacheMod == null || keys.length == 0)
+			return CompletableFuture.completedFuture(null);
+		Executor executor = DBManager.instance().getPrefetchThreads();
+		int n = Math.min(keys.length, Const.dbPrefetchThreads);
+		CompletableFuture<?>[] fs = new CompletableFuture<?>[n];
+		for (int i = 0; i < n; ++i)
+		{
+			int from = i;
+			fs[i] = CompletableFuture.runAsync(() ->
+			{
+				for (int j = from; j < keys.length; j += n)
+					prefetch(keys[j]);
+			}, executor);
+		}
+		return CompletableFuture.allOf(fs);
 	}
 
 	/**
@@ -396,6 +852,22 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		return v != null && v != _deleted ? v : null;
 	}
 
+	/**
+	 * 只从缓存中获取记录,不会修改缓存. 用于不加锁的乐观读
+	 * @return 缓存中没有时返回null, 确定记录不存在时返回_deleted
+	 */
+	V getCacheOnly(long k)
+	{
+		_readCount.getAndIncrement();
+		Supplier<V> r = _cache.get(k);
+		V v;
+		if (r != null && (v = r.get()) != null)
+			return v;
+		if (_cacheMod == null)
+			return _deleted;
+		return _cacheMod.get(k);
+	}
+
 	/**
 	 * 同getCacheUnsafe,但增加了加锁检查和安全封装,可回滚修改
 	 */
@@ -475,11 +947,14 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 			Procedure.incVersion(lockId(k));
 			if (_cacheMod != null)
 			{
-				_cache.put(k, new CacheRefLong<>(_cache, k, v));
+				_cache.put(k, newCacheRef(k, v));
 				V vOld = _cacheMod.put(k, v);
 				if (vOld == null)
 					DBManager.instance().incModCount();
 				v.setSaveState(2);
+				bloomAdd(BloomFilter.hash(k));
+				if (_negCache != null)
+					_negCache.remove(k);
 			}
 			else
 				_cache.put(k, new StrongRef<>(v));
@@ -501,7 +976,8 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 			return v;
 		if (v.stored())
 			throw new IllegalStateException("put shared record: t=" + _tableName + ",k=" + k + ",v=" + v);
-		SContext.current().addOnRollbackDirty(() ->
+		SContext sctx = SContext.current();
+		sctx.addOnRollbackDirty(() ->
 		{
 			if (vOld != null)
 			{
@@ -511,6 +987,7 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 			else
 				removeUnsafe(k);
 		});
+		sctx.addRedo(this, k);
 		putUnsafe(k, v);
 		if (vOld != null)
 			vOld.setSaveState(0);
@@ -590,11 +1067,13 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		V vOld = getNoCacheUnsafe(k);
 		if (vOld == null)
 			return null;
-		SContext.current().addOnRollbackDirty(() ->
+		SContext sctx = SContext.current();
+		sctx.addOnRollbackDirty(() ->
 		{
 			vOld.setSaveState(0); // 确保可写入
 			putUnsafe(k, vOld);
 		});
+		sctx.addRedo(this, k);
 		removeUnsafe(k);
 		vOld.setSaveState(0);
 		return vOld;
@@ -666,6 +1145,56 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 		return walkValue(handler, 0, -1, true, false);
 	}
 
+	/**
+	 * 按记录key的顺序遍历此表的所有key和value,但value只反序列化fields中的字段,其它字段保持默认值
+	 * <p>
+	 * 只需要大bean中少数字段时使用,可以省去其它字段的解码和内存分配<br>
+	 * 注意: 遍历仅从数据库存储层获取(遍历内存表会抛出异常),当前没有checkpoint的cache记录会被无视,所以遍历获取的key和value可能不是最新,修改value不会改动数据库
+	 * @param handler 遍历过程中返回false可中断遍历
+	 * @param fields 需要反序列化的字段ID集合
+	 * @param from 需要遍历的最小key. null表示最小值
+	 * @param to 需要遍历的最大key. null表示最大值
+	 * @param inclusive 遍历是否包含from和to的key
+	 * @param reverse 是否按反序遍历
+	 */
+	public boolean walkValue(WalkLongValueHandler<V> handler, FieldSet fields, long from, long to, boolean inclusive, boolean reverse)
+	{
+		OctetsStream os = new OctetsStream();
+		return _stoTable.walkRaw((k, v) -> handler.onWalk(k, toBean(os, v, fields)), from, to, inclusive, reverse);
+	}
+
+	public boolean walkValue(WalkLongValueHandler<V> handler, FieldSet fields)
+	{
+		return walkValue(handler, fields, 0, -1, true, false);
+	}
+
+	/**
+	 * 按记录key的顺序遍历此表的所有key和value的只读视图
+	 * <p>
+	 * 视图在原始数据上按需解码字段,不创建bean对象,适合只读取少数字段或按字段过滤的遍历. 视图只在handler调用中有效<br>
+	 * 注意: 遍历仅从数据库存储层获取(遍历内存表会抛出异常),当前没有checkpoint的cache记录会被无视,所以遍历获取的key和value可能不是最新
+	 * @param handler 遍历过程中返回false可中断遍历
+	 * @param from 需要遍历的最小key. null表示最小值
+	 * @param to 需要遍历的最大key. null表示最大值
+	 * @param inclusive 遍历是否包含from和to的key
+	 * @param reverse 是否按反序遍历
+	 */
+	public boolean walkView(WalkLongViewHandler handler, long from, long to, boolean inclusive, boolean reverse)
+	{
+		BeanView view = new BeanView();
+		return _stoTable.walkRaw((k, v) -> handler.onWalk(k, view.wrapsRecord(v)), from, to, inclusive, reverse);
+	}
+
+	public boolean walkView(WalkLongViewHandler handler, boolean reverse)
+	{
+		return walkView(handler, 0, -1, true, reverse);
+	}
+
+	public boolean walkView(WalkLongViewHandler handler)
+	{
+		return walkView(handler, 0, -1, true, false);
+	}
+
 	/**
 	 * 按记录key的顺序遍历此表的所有key和原始value数据
 	 * <p>
@@ -690,4 +1219,111 @@ public final class TableLong<V extends Bean<V>, S extends Safe<V>> extends Table
 	{
 		return walkRaw(handler, 0, -1, true, false);
 	}
+
+	/**
+	 * 把[from,to]内实际存在记录的ID范围平均切分成多个区间,用于并行遍历
+	 * <p>
+	 * 按ID的跨度切分后把每个边界定位到其后第一个已有的ID,去掉没有记录的区间,只定位边界,不遍历范围内的记录<br>
+	 * 无序模式切分成parallelism*16个区间,有序模式切分成parallelism*256个区间,使预读窗口只缓存少量记录. ID分布不均匀时各区间的记录数量也不均匀
+	 * @return 区间边界数组,第i个区间是[bounds[i],bounds[i+1]-1]. null表示范围内没有记录
+	 */
+	private long[] splitRange(long from, long to, int parallelism, boolean ordered)
+	{
+		long[] minMax = { -1, -1 };
+		_stoTable.walk(k ->
+		{
+			minMax[0] = k;
+			return false;
+		}, from, to, true, false);
+		if (minMax[0] < 0)
+			return null;
+		_stoTable.walk(k ->
+		{
+			minMax[1] = k;
+			return false;
+		}, from, to, true, true);
+		long min = minMax[0], max = minMax[1];
+		long span = max - min + 1;
+		int n = (int)Math.min(parallelism * (ordered ? 256L : 16L), span);
+		long step = span / n, rem = span % n;
+		long[] bounds = new long[n + 1];
+		long[] next = new long[1];
+		int m = 0;
+		bounds[m++] = min;
+		for (int i = 1; i < n; ++i)
+		{
+			long b = min + step * i + Math.min(i, rem);
+			if (b <= bounds[m - 1])
+				continue;
+			next[0] = -1;
+			_stoTable.walk(k ->
+			{
+				next[0] = k;
+				return false;
+			}, b, max, true, false);
+			if (next[0] > bounds[m - 1])
+				bounds[m++] = next[0];
+		}
+		bounds[m++] = max + 1;
+		return m == bounds.length ? bounds : Arrays.copyOf(bounds, m);
+	}
+
+	/**
+	 * 并行遍历此表的所有key和value
+	 * <p>
+	 * 把[from,to]内的ID范围切分成多个区间,在独立的线程池中并行遍历和反序列化,适合大表的全表统计和数据迁移等<br>
+	 * 无序模式下handler会被多个线程并发调用,必须线程安全. 有序模式下handler只在当前线程按key从小到大的顺序调用<br>
+	 * 遍历速度受Const.dbWalkRateLimit限制. 其它注意事项同{@link #walkValue(WalkLongValueHandler, long, long, boolean, boolean)}
+	 * @param handler 遍历过程中返回false可中断遍历
+	 * @param from 需要遍历的最小key
+	 * @param to 需要遍历的最大key
+	 * @param parallelism 并行遍历的线程数. <=0表示使用Const.dbWalkParallelism
+	 * @param ordered 是否按key的顺序调用handler
+	 */
+	public boolean walkValueParallel(WalkLongValueHandler<V> handler, long from, long to, int parallelism, boolean ordered)
+	{
+		ParallelWalker pw = new ParallelWalker(parallelism > 0 ? parallelism : Const.dbWalkParallelism);
+		long[] bounds = splitRange(from, to, pw.getParallelism(), ordered);
+		if (bounds == null)
+			return true;
+		if (!ordered)
+		{
+			return pw.walk(bounds.length - 1, (i, __) -> _stoTable.walkValue((k, v) -> pw.onRecord() && (handler.onWalk(k, v) || pw.stop()),
+					_deleted, bounds[i], bounds[i + 1] - 1, true, false));
+		}
+		return pw.<SimpleImmutableEntry<Long, V>>walkOrdered(bounds.length - 1, (i, out) -> _stoTable.walkValue(
+				(k, v) -> pw.onRecord() && out.add(new SimpleImmutableEntry<>(k, v)), _deleted, bounds[i], bounds[i + 1] - 1, true, false),
+				e -> handler.onWalk(e.getKey(), e.getValue()));
+	}
+
+	public boolean walkValueParallel(WalkLongValueHandler<V> handler)
+	{
+		return walkValueParallel(handler, 0, Long.MAX_VALUE, 0, false);
+	}
+
+	/**
+	 * 并行遍历此表的所有key和原始value数据
+	 * <p>
+	 * 同{@link #walkValueParallel(WalkLongValueHandler, long, long, int, boolean)},但不反序列化value
+	 */
+	public boolean walkRawParallel(WalkLongRawHandler handler, long from, long to, int parallelism, boolean ordered)
+	{
+		ParallelWalker pw = new ParallelWalker(parallelism > 0 ? parallelism : Const.dbWalkParallelism);
+		long[] bounds = splitRange(from, to, pw.getParallelism(), ordered);
+		if (bounds == null)
+			return true;
+		if (!ordered)
+		{
+			return pw.walk(bounds.length - 1, (i, __) -> _stoTable.walkRaw((k, v) -> pw.onRecord() && (handler.onWalk(k, v) || pw.stop()),
+					bounds[i], bounds[i + 1] - 1, true, false));
+		}
+		return pw.<SimpleImmutableEntry<Long, byte[]>>walkOrdered(bounds.length - 1, (i, out) -> _stoTable.walkRaw(
+				(k, v) -> pw.onRecord() && out.add(new SimpleImmutableEntry<>(k, v)), bounds[i], bounds[i + 1] - 1, true, false),
+				e -> handler.onWalk(e.getKey(), e.getValue()));
+	}
+
+	public boolean walkRawParallel(WalkLongRawHandler handler)
+	{
+		return walkRawParallel(handler, 0, Long.MAX_VALUE, 0, false);
+	}
 }
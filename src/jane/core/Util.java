@@ -24,8 +24,11 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import jane.core.map.ConcurrentLRUMap;
+import jane.core.map.ConcurrentTinyLFUMap;
 import jane.core.map.LongConcurrentHashMap;
 import jane.core.map.LongConcurrentLRUMap;
+import jane.core.map.LongConcurrentTinyLFUMap;
+import jane.core.map.LongHashMap;
 import jane.core.map.LongMap;
 
 /**
@@ -58,19 +61,31 @@ public final class Util
 
 	/**
 	 * 使用{@link ConcurrentLRUMap}创建可并发带LRU自动丢弃的HashMap
+	 * <p>
+	 * 配置dbCachePolicy=tinylfu时使用{@link ConcurrentTinyLFUMap}
 	 */
 	public static <K, V> Map<K, V> newConcurrentLRUMap(int maxCount, String name)
 	{
-		return maxCount > 0 ? new ConcurrentLRUMap<>(maxCount, 0.5f, name) : newConcurrentHashMap();
+		if (maxCount <= 0)
+			return newConcurrentHashMap();
+		if ("tinylfu".equalsIgnoreCase(Const.dbCachePolicy))
+			return new ConcurrentTinyLFUMap<>(maxCount, 0.5f, name);
+		return new ConcurrentLRUMap<>(maxCount, 0.5f, name);
 		// return new ConcurrentLinkedHashMap.Builder().maximumWeightedCapacity(maxCount).initialCapacity(maxCount).<K, V>build();
 	}
 
 	/**
 	 * 使用{@link LongConcurrentLRUMap}创建可并发带LRU自动丢弃的HashMap
+	 * <p>
+	 * 配置dbCachePolicy=tinylfu时使用{@link LongConcurrentTinyLFUMap}
 	 */
 	public static <V> LongMap<V> newLongConcurrentLRUMap(int maxCount, String name)
 	{
-		return maxCount > 0 ? new LongConcurrentLRUMap<>(maxCount, 0.5f, name) : new LongConcurrentHashMap<>(16, 0.5f);
+		if (maxCount <= 0)
+			return new LongConcurrentHashMap<>(16, 0.5f);
+		if ("tinylfu".equalsIgnoreCase(Const.dbCachePolicy))
+			return new LongConcurrentTinyLFUMap<>(maxCount, 0.5f, name);
+		return new LongConcurrentLRUMap<>(maxCount, 0.5f, name);
 		// return new ConcurrentLinkedHashMap.Builder().maximumWeightedCapacity(maxCount).initialCapacity(maxCount).<V>buildLong();
 	}
 
@@ -175,6 +190,18 @@ public final class Util
 		return dst;
 	}
 
+	/**
+	 * 把src容器的内容深度拷贝覆盖到dst容器中
+	 * @return dst容器
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> LongHashMap<V> appendDeep(LongHashMap<V> src, LongHashMap<V> dst)
+	{
+		if (src != null && !src.empty() && src != dst)
+			src.foreach((k, v) -> dst.put(k, v instanceof Bean ? (V)((Bean<?>)v).clone() : v));
+		return dst;
+	}
+
 	/**
 	 * 把序列容器里的元素转成字符串输出到{@link StringBuilder}中
 	 */
@@ -0,0 +1,110 @@
+package jane.core.map;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 可并发的布隆过滤器
+ * <p>
+ * 只能增加不能删除. 判断不存在是确定的,判断可能存在时有一定的误判率. 按每个key占用的位数确定误判率,如10位约1%<br>
+ * 输入是key的64位hash值,调用者需要保证hash值分布均匀
+ */
+public final class BloomFilter
+{
+	private final AtomicLongArray bits;
+	private final long			  bitMask;
+	private final int			  hashCount;
+	private final long			  capacity;
+	private final AtomicLong	  count	= new AtomicLong();	// 增加新key的估计数量
+
+	/**
+	 * @param capacity 预计的key数量,超过后误判率会上升
+	 * @param bitsPerKey 每个key占用的位数. 范围:[1,64]
+	 */
+	public BloomFilter(long capacity, int bitsPerKey)
+	{
+		if (bitsPerKey < 1 || bitsPerKey > 64)
+			throw new IllegalArgumentException("bitsPerKey must be in [1,64]");
+		this.capacity = Math.max(capacity, 1);
+		long n = Math.max(Long.highestOneBit(this.capacity * bitsPerKey - 1) << 1, 64);
+		if (n > (1L << 36)) // 最多2^30个long,避免数组长度溢出
+			n = 1L << 36;
+		bits = new AtomicLongArray((int)(n >>> 6));
+		bitMask = n - 1;
+		hashCount = Math.max(Math.min((int)Math.round(bitsPerKey * 0.69), 16), 1); // ln2
+	}
+
+	/**
+	 * 把long值混合成分布均匀的64位hash值
+	 */
+	public static long hash(long k)
+	{
+		k = (k ^ (k >>> 33)) * 0xff51afd7ed558ccdL;
+		k = (k ^ (k >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return k ^ (k >>> 33);
+	}
+
+	public long getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * 获取已增加的不同key的估计数量. 因误判会偏少
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * 已增加的key数量是否超过了预计的数量
+	 */
+	public boolean isOverloaded()
+	{
+		return count.get() > capacity;
+	}
+
+	/**
+	 * 增加一个key
+	 * @return 是否改变了过滤器(即之前判断为不存在)
+	 */
+	public boolean add(long hash)
+	{
+		long h1 = hash, h2 = (hash >>> 32) | 1;
+		boolean changed = false;
+		for (int i = 0; i < hashCount; ++i, h1 += h2)
+		{
+			long bitIdx = h1 & bitMask;
+			int idx = (int)(bitIdx >>> 6);
+			long mask = 1L << bitIdx;
+			for (long v; ((v = bits.get(idx)) & mask) == 0;)
+			{
+				if (bits.compareAndSet(idx, v, v | mask))
+				{
+					changed = true;
+					break;
+				}
+			}
+		}
+		if (changed)
+			count.getAndIncrement();
+		return changed;
+	}
+
+	/**
+	 * 判断key是否可能存在
+	 * @return false表示一定不存在
+	 */
+	public boolean mightContain(long hash)
+	{
+		long h1 = hash, h2 = (hash >>> 32) | 1;
+		for (int i = 0; i < hashCount; ++i, h1 += h2)
+		{
+			long bitIdx = h1 & bitMask;
+			if ((bits.get((int)(bitIdx >>> 6)) & (1L << bitIdx)) == 0)
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,237 @@
+package jane.core.map;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * 基于ConcurrentHashMap和W-TinyLFU淘汰策略({@link TinyLFUPolicy})的并发缓存
+ * <p>
+ * 记录数量会短暂超过上限,由读写线程批量处理后恢复. 替换已有key的value会创建新节点,按新记录进入窗口<br>
+ * 指定weigher时按value的权重之和限制容量,否则按记录数量
+ */
+public final class ConcurrentTinyLFUMap<K, V> implements Map<K, V>, WeightedCache
+{
+	private static final class CacheNode<K, V> extends TinyLFUPolicy.Node
+	{
+		final K key;
+		final V value;
+
+		CacheNode(K k, V v, int w)
+		{
+			super(k.hashCode(), w);
+			key = k;
+			value = v;
+		}
+	}
+
+	private final ConcurrentHashMap<K, CacheNode<K, V>>	map;
+	private final TinyLFUPolicy<CacheNode<K, V>>		policy;
+	private final ToIntFunction<? super V>				weigher;
+	private final String								name;
+
+	public ConcurrentTinyLFUMap(int maxSize, float loadFactor, String name)
+	{
+		this(maxSize, maxSize, null, loadFactor, name);
+	}
+
+	/**
+	 * @param maxWeight 总权重上限
+	 * @param expectedSize 预计的记录数量,用于确定初始容量和访问频率统计的大小
+	 * @param weigher 计算value的权重,在put和refreshWeight时计算. null表示每条记录的权重为1
+	 */
+	public ConcurrentTinyLFUMap(long maxWeight, int expectedSize, ToIntFunction<? super V> weigher, float loadFactor, String name)
+	{
+		map = new ConcurrentHashMap<>(Math.max(expectedSize + expectedSize / 4, 16), loadFactor);
+		policy = new TinyLFUPolicy<CacheNode<K, V>>(maxWeight, expectedSize)
+		{
+			@Override
+			boolean removeFromMap(CacheNode<K, V> node)
+			{
+				return map.remove(node.key, node);
+			}
+		};
+		this.weigher = weigher;
+		this.name = name;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getMaxSize()
+	{
+		return (int)Math.min(policy.maxWeight(), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public long getWeightedSize()
+	{
+		return policy.weightedSize();
+	}
+
+	@Override
+	public long getMaxWeight()
+	{
+		return policy.maxWeight();
+	}
+
+	@Override
+	public void setMaxWeight(long maxWeight)
+	{
+		policy.setMaxWeight(maxWeight);
+	}
+
+	/**
+	 * 获取淘汰的记录数量
+	 */
+	public long getEvictCount()
+	{
+		return policy.evictCount();
+	}
+
+	/**
+	 * value的内容改变后重新计算记录的权重. 没有指定weigher或记录不存在时忽略
+	 */
+	public void refreshWeight(Object key)
+	{
+		if (weigher == null)
+			return;
+		CacheNode<K, V> node = map.get(key);
+		if (node != null)
+		{
+			node.weight = Math.max(weigher.applyAsInt(node.value), 1);
+			policy.afterWrite(node);
+		}
+	}
+
+	/**
+	 * 立即处理缓冲的读写记录. 一般无需调用
+	 */
+	public void cleanUp()
+	{
+		policy.cleanUp();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return map.isEmpty();
+	}
+
+	@Override
+	public int size()
+	{
+		return map.size();
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return map.containsKey(key);
+	}
+
+	@Deprecated
+	@Override
+	public boolean containsValue(Object value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public V get(Object key)
+	{
+		CacheNode<K, V> node = map.get(key);
+		if (node == null)
+			return null;
+		policy.afterRead(node);
+		return node.value;
+	}
+
+	@Override
+	public V put(K key, V value)
+	{
+		if (value == null)
+			return null;
+		CacheNode<K, V> node = new CacheNode<>(key, value, weigher != null ? Math.max(weigher.applyAsInt(value), 1) : 1);
+		CacheNode<K, V> nodeOld = map.put(key, node);
+		if (nodeOld != null)
+		{
+			nodeOld.state = TinyLFUPolicy.STATE_RETIRED;
+			policy.afterWrite(nodeOld);
+		}
+		policy.afterWrite(node);
+		return nodeOld != null ? nodeOld.value : null;
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m)
+	{
+		for (Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	@Override
+	public V remove(Object key)
+	{
+		CacheNode<K, V> nodeOld = map.remove(key);
+		if (nodeOld == null)
+			return null;
+		nodeOld.state = TinyLFUPolicy.STATE_RETIRED;
+		policy.afterWrite(nodeOld);
+		return nodeOld.value;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value)
+	{
+		CacheNode<K, V> node = map.get(key);
+		if (node == null || !node.value.equals(value) || !map.remove(key, node))
+			return false;
+		node.state = TinyLFUPolicy.STATE_RETIRED;
+		policy.afterWrite(node);
+		return true;
+	}
+
+	@Override
+	public void clear()
+	{
+		for (K k : map.keySet())
+			remove(k);
+	}
+
+	@Override
+	public Set<K> keySet()
+	{
+		return map.keySet();
+	}
+
+	/**
+	 * 不支持
+	 */
+	@Deprecated
+	@Override
+	public Collection<V> values()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * 不支持
+	 */
+	@Deprecated
+	@Override
+	public Set<Entry<K, V>> entrySet()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + '(' + name + ':' + map.size() + '/' + policy.maxWeight() + ')';
+	}
+}
@@ -0,0 +1,97 @@
+package jane.core.map;
+
+/**
+ * 估算访问频率的Count-Min Sketch
+ * <p>
+ * 每个计数器4位(最大15),每个long存16个计数器,每次访问更新4个计数器. 总的增加次数达到采样数量(容量的10倍)时,
+ * 全部计数器减半,使频率随时间衰减<br>
+ * 非线程安全,需要外部同步
+ */
+final class FrequencySketch
+{
+	private static final long[] SEEDS		= { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long	RESET_MASK	= 0x7777_7777_7777_7777L;
+	private static final long	ONE_MASK	= 0x1111_1111_1111_1111L;
+
+	private final long[] table;
+	private final int	 tableMask;
+	private final int	 sampleSize; // 总增加次数达到此值时减半
+	private int			 size;		 // 当前的总增加次数
+
+	FrequencySketch(int maxSize)
+	{
+		int n = IntHashMap.nextPowerOfTwo(Math.max(Math.min(maxSize, 1 << 30), 16));
+		table = new long[n];
+		tableMask = n - 1;
+		sampleSize = (maxSize < (Integer.MAX_VALUE / 10) ? maxSize * 10 : Integer.MAX_VALUE);
+	}
+
+	private static int spread(int x)
+	{
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private int indexOf(int hash, int i)
+	{
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += (h >>> 32);
+		return (int)h & tableMask;
+	}
+
+	/**
+	 * 获取估算的访问频率. 范围[0,15]
+	 */
+	int frequency(int hash)
+	{
+		hash = spread(hash);
+		int start = (hash & 3) << 2;
+		int freq = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; ++i)
+		{
+			int offset = (start + i) << 2;
+			int count = (int)((table[indexOf(hash, i)] >>> offset) & 0xf);
+			if (count < freq)
+				freq = count;
+		}
+		return freq;
+	}
+
+	/**
+	 * 访问频率加1. 已达最大值时忽略
+	 */
+	void increment(int hash)
+	{
+		hash = spread(hash);
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; ++i)
+		{
+			int index = indexOf(hash, i);
+			int offset = (start + i) << 2;
+			long mask = 0xfL << offset;
+			long v = table[index];
+			if ((v & mask) != mask)
+			{
+				table[index] = v + (1L << offset);
+				added = true;
+			}
+		}
+		if (added && ++size >= sampleSize)
+			reset();
+	}
+
+	private void reset()
+	{
+		int count = 0;
+		long[] t = table;
+		for (int i = 0, n = t.length; i < n; ++i)
+		{
+			long v = t[i];
+			count += Long.bitCount(v & ONE_MASK);
+			t[i] = (v >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+}
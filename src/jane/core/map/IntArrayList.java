@@ -0,0 +1,258 @@
+package jane.core.map;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 元素为int的数组列表
+ * <p>
+ * 直接用int[]保存元素,没有装箱开销
+ */
+public final class IntArrayList implements Comparable<IntArrayList>, Cloneable
+{
+	private static final int[] EMPTY = new int[0];
+	private int[]			   buffer;
+	private int				   size;
+
+	public IntArrayList()
+	{
+		buffer = EMPTY;
+	}
+
+	public IntArrayList(int initialCapacity)
+	{
+		buffer = (initialCapacity > 0 ? new int[initialCapacity] : EMPTY);
+	}
+
+	public IntArrayList(IntArrayList list)
+	{
+		buffer = (list.size > 0 ? Arrays.copyOf(list.buffer, list.size) : EMPTY);
+		size = list.size;
+	}
+
+	public int[] array()
+	{
+		return buffer;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public void ensureCapacity(int capacity)
+	{
+		int[] buf = buffer;
+		if (capacity > buf.length)
+		{
+			int newCapacity = buf.length + (buf.length >> 1) + 4;
+			buffer = Arrays.copyOf(buf, Math.max(newCapacity, capacity));
+		}
+	}
+
+	private void checkIndex(int idx)
+	{
+		if (idx < 0 || idx >= size)
+			throw new IndexOutOfBoundsException("index=" + idx + ",size=" + size);
+	}
+
+	public int get(int idx)
+	{
+		checkIndex(idx);
+		return buffer[idx];
+	}
+
+	public int set(int idx, int v)
+	{
+		checkIndex(idx);
+		int[] buf = buffer;
+		int vOld = buf[idx];
+		buf[idx] = v;
+		return vOld;
+	}
+
+	public void add(int v)
+	{
+		int n = size;
+		if (n == buffer.length)
+			ensureCapacity(n + 1);
+		buffer[n] = v;
+		size = n + 1;
+	}
+
+	public void add(int idx, int v)
+	{
+		int n = size;
+		if (idx < 0 || idx > n)
+			throw new IndexOutOfBoundsException("index=" + idx + ",size=" + n);
+		if (n == buffer.length)
+			ensureCapacity(n + 1);
+		int[] buf = buffer;
+		if (idx < n)
+			System.arraycopy(buf, idx, buf, idx + 1, n - idx);
+		buf[idx] = v;
+		size = n + 1;
+	}
+
+	public void addAll(IntArrayList list)
+	{
+		int n = list.size;
+		if (n > 0)
+		{
+			ensureCapacity(size + n);
+			System.arraycopy(list.buffer, 0, buffer, size, n);
+			size += n;
+		}
+	}
+
+	public int removeAt(int idx)
+	{
+		checkIndex(idx);
+		int[] buf = buffer;
+		int v = buf[idx];
+		int n = --size - idx;
+		if (n > 0)
+			System.arraycopy(buf, idx + 1, buf, idx, n);
+		return v;
+	}
+
+	public int removeLast()
+	{
+		if (size <= 0)
+			throw new IndexOutOfBoundsException("removeLast from empty list");
+		return buffer[--size];
+	}
+
+	public boolean removeValue(int v)
+	{
+		int idx = indexOf(v);
+		if (idx < 0)
+			return false;
+		removeAt(idx);
+		return true;
+	}
+
+	public int indexOf(int v)
+	{
+		int[] buf = buffer;
+		for (int i = 0, n = size; i < n; ++i)
+		{
+			if (buf[i] == v)
+				return i;
+		}
+		return -1;
+	}
+
+	public int lastIndexOf(int v)
+	{
+		int[] buf = buffer;
+		for (int i = size - 1; i >= 0; --i)
+		{
+			if (buf[i] == v)
+				return i;
+		}
+		return -1;
+	}
+
+	public boolean contains(int v)
+	{
+		return indexOf(v) >= 0;
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public void shrink()
+	{
+		if (buffer.length > size)
+			buffer = (size > 0 ? Arrays.copyOf(buffer, size) : EMPTY);
+	}
+
+	public int[] toArray()
+	{
+		return size > 0 ? Arrays.copyOf(buffer, size) : EMPTY;
+	}
+
+	public void foreach(IntConsumer consumer)
+	{
+		int[] buf = buffer;
+		for (int i = 0, n = size; i < n; ++i)
+			consumer.accept(buf[i]);
+	}
+
+	@Override
+	public IntArrayList clone()
+	{
+		return new IntArrayList(this);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int[] buf = buffer;
+		int h = 1;
+		for (int i = 0, n = size; i < n; ++i)
+			h = 31 * h + buf[i];
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o)
+			return true;
+		if (!(o instanceof IntArrayList))
+			return false;
+		IntArrayList list = (IntArrayList)o;
+		int n = size;
+		if (n != list.size)
+			return false;
+		int[] buf0 = buffer, buf1 = list.buffer;
+		for (int i = 0; i < n; ++i)
+		{
+			if (buf0[i] != buf1[i])
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int compareTo(IntArrayList list)
+	{
+		int n0 = size, n1 = list.size;
+		int[] buf0 = buffer, buf1 = list.buffer;
+		for (int i = 0, n = Math.min(n0, n1); i < n; ++i)
+		{
+			int c = Integer.compare(buf0[i], buf1[i]);
+			if (c != 0)
+				return c;
+		}
+		return n0 - n1;
+	}
+
+	public StringBuilder appendTo(StringBuilder s)
+	{
+		int n = size;
+		if (n == 0)
+			return s.append("{}");
+		int[] buf = buffer;
+		s.append('{');
+		for (int i = 0; i < n; ++i)
+			s.append(buf[i]).append(',');
+		s.setCharAt(s.length() - 1, '}');
+		return s;
+	}
+
+	@Override
+	public String toString()
+	{
+		return appendTo(new StringBuilder(size * 4 + 2)).toString();
+	}
+}
@@ -0,0 +1,241 @@
+package jane.core.map;
+
+import java.util.Iterator;
+import java.util.function.ToIntFunction;
+
+/**
+ * 基于LongConcurrentHashMap和W-TinyLFU淘汰策略({@link TinyLFUPolicy})的并发缓存
+ * <p>
+ * 记录数量会短暂超过上限,由读写线程批量处理后恢复. 替换已有key的value会创建新节点,按新记录进入窗口<br>
+ * 指定weigher时按value的权重之和限制容量,否则按记录数量
+ */
+public final class LongConcurrentTinyLFUMap<V> extends LongMap<V> implements WeightedCache
+{
+	private static final class CacheNode<V> extends TinyLFUPolicy.Node
+	{
+		final long key;
+		final V	   value;
+
+		CacheNode(long k, V v, int w)
+		{
+			super((int)(k ^ (k >>> 32)), w);
+			key = k;
+			value = v;
+		}
+	}
+
+	private final LongConcurrentHashMap<CacheNode<V>> map;
+	private final TinyLFUPolicy<CacheNode<V>>		  policy;
+	private final ToIntFunction<? super V>			  weigher;
+	private final String							  name;
+
+	public LongConcurrentTinyLFUMap(int maxSize, float loadFactor, String name)
+	{
+		this(maxSize, maxSize, null, loadFactor, name);
+	}
+
+	/**
+	 * @param maxWeight 总权重上限
+	 * @param expectedSize 预计的记录数量,用于确定初始容量和访问频率统计的大小
+	 * @param weigher 计算value的权重,在put和refreshWeight时计算. null表示每条记录的权重为1
+	 */
+	public LongConcurrentTinyLFUMap(long maxWeight, int expectedSize, ToIntFunction<? super V> weigher, float loadFactor, String name)
+	{
+		map = new LongConcurrentHashMap<>(Math.max(expectedSize + expectedSize / 4, 16), loadFactor);
+		policy = new TinyLFUPolicy<CacheNode<V>>(maxWeight, expectedSize)
+		{
+			@Override
+			boolean removeFromMap(CacheNode<V> node)
+			{
+				return map.remove(node.key, node);
+			}
+		};
+		this.weigher = weigher;
+		this.name = name;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getMaxSize()
+	{
+		return (int)Math.min(policy.maxWeight(), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public long getWeightedSize()
+	{
+		return policy.weightedSize();
+	}
+
+	@Override
+	public long getMaxWeight()
+	{
+		return policy.maxWeight();
+	}
+
+	@Override
+	public void setMaxWeight(long maxWeight)
+	{
+		policy.setMaxWeight(maxWeight);
+	}
+
+	/**
+	 * 获取淘汰的记录数量
+	 */
+	public long getEvictCount()
+	{
+		return policy.evictCount();
+	}
+
+	/**
+	 * value的内容改变后重新计算记录的权重. 没有指定weigher或记录不存在时忽略
+	 */
+	public void refreshWeight(long key)
+	{
+		if (weigher == null)
+			return;
+		CacheNode<V> node = map.get(key);
+		if (node != null)
+		{
+			node.weight = Math.max(weigher.applyAsInt(node.value), 1);
+			policy.afterWrite(node);
+		}
+	}
+
+	/**
+	 * 立即处理缓冲的读写记录. 一般无需调用
+	 */
+	public void cleanUp()
+	{
+		policy.cleanUp();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return map.isEmpty();
+	}
+
+	@Override
+	public int size()
+	{
+		return map.size();
+	}
+
+	@Override
+	public V get(long key)
+	{
+		CacheNode<V> node = map.get(key);
+		if (node == null)
+			return null;
+		policy.afterRead(node);
+		return node.value;
+	}
+
+	@Override
+	public V put(long key, V value)
+	{
+		if (value == null)
+			return null;
+		CacheNode<V> node = new CacheNode<>(key, value, weigher != null ? Math.max(weigher.applyAsInt(value), 1) : 1);
+		CacheNode<V> nodeOld = map.put(key, node);
+		if (nodeOld != null)
+		{
+			nodeOld.state = TinyLFUPolicy.STATE_RETIRED;
+			policy.afterWrite(nodeOld);
+		}
+		policy.afterWrite(node);
+		return nodeOld != null ? nodeOld.value : null;
+	}
+
+	@Override
+	public V remove(long key)
+	{
+		CacheNode<V> nodeOld = map.remove(key);
+		if (nodeOld == null)
+			return null;
+		nodeOld.state = TinyLFUPolicy.STATE_RETIRED;
+		policy.afterWrite(nodeOld);
+		return nodeOld.value;
+	}
+
+	@Override
+	public boolean remove(long key, V value)
+	{
+		CacheNode<V> node = map.get(key);
+		if (node == null || !node.value.equals(value) || !map.remove(key, node))
+			return false;
+		node.state = TinyLFUPolicy.STATE_RETIRED;
+		policy.afterWrite(node);
+		return true;
+	}
+
+	@Override
+	public void clear()
+	{
+		for (LongIterator it = map.keyIterator(); it.hasNext();)
+			remove(it.next());
+	}
+
+	@Override
+	public LongIterator keyIterator()
+	{
+		return map.keyIterator();
+	}
+
+	@Override
+	public Iterator<V> iterator()
+	{
+		Iterator<CacheNode<V>> it = map.iterator();
+		return new Iterator<V>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public V next()
+			{
+				return it.next().value;
+			}
+		};
+	}
+
+	@Override
+	public MapIterator<V> entryIterator()
+	{
+		MapIterator<CacheNode<V>> it = map.entryIterator();
+		return new MapIterator<V>()
+		{
+			@Override
+			public boolean moveToNext()
+			{
+				return it.moveToNext();
+			}
+
+			@Override
+			public long key()
+			{
+				return it.key();
+			}
+
+			@Override
+			public V value()
+			{
+				return it.value().value;
+			}
+
+			@Deprecated
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -1,5 +1,6 @@
 package jane.core.map;
 
+import java.util.Objects;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 import java.util.function.LongConsumer;
@@ -478,6 +479,42 @@ public class LongHashMap<V> implements Cloneable
 		return map;
 	}
 
+	@Override
+	public int hashCode()
+	{
+		int h = (hasZeroValue ? Objects.hashCode(zeroValue) : 0);
+		long[] kt = keyTable;
+		V[] vt = valueTable;
+		for (int i = 0, n = tableSize; i < n; i++)
+		{
+			long key = kt[i];
+			if (key != EMPTY)
+				h += (int)(key ^ (key >>> 32)) ^ Objects.hashCode(vt[i]);
+		}
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o)
+			return true;
+		if (!(o instanceof LongHashMap))
+			return false;
+		LongHashMap<?> map = (LongHashMap<?>)o;
+		if (size != map.size || hasZeroValue != map.hasZeroValue || !Objects.equals(zeroValue, map.zeroValue))
+			return false;
+		long[] kt = keyTable;
+		V[] vt = valueTable;
+		for (int i = 0, n = tableSize; i < n; i++)
+		{
+			long key = kt[i];
+			if (key != EMPTY && !Objects.equals(vt[i], map.get(key)))
+				return false;
+		}
+		return true;
+	}
+
 	@Override
 	public String toString()
 	{
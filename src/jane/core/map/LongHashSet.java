@@ -0,0 +1,144 @@
+package jane.core.map;
+
+import java.util.function.LongConsumer;
+
+/**
+ * 元素为long的无序集合
+ * <p>
+ * 基于{@link LongHashMap},所有元素共享同一个value对象,没有装箱开销
+ */
+public final class LongHashSet implements Cloneable
+{
+	private static final Object		 PRESENT = new Object();
+	private final LongHashMap<Object> map;
+
+	public LongHashSet()
+	{
+		map = new LongHashMap<>();
+	}
+
+	public LongHashSet(int initialCapacity)
+	{
+		map = new LongHashMap<>(initialCapacity);
+	}
+
+	private LongHashSet(LongHashMap<Object> map)
+	{
+		this.map = map;
+	}
+
+	public int size()
+	{
+		return map.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return map.empty();
+	}
+
+	public boolean contains(long v)
+	{
+		return map.get(v) != null;
+	}
+
+	public boolean add(long v)
+	{
+		return map.put(v, PRESENT) == null;
+	}
+
+	public void addAll(LongHashSet set)
+	{
+		if (set != this)
+			set.map.foreachKey(this::add);
+	}
+
+	public boolean remove(long v)
+	{
+		return map.remove(v) != null;
+	}
+
+	public void clear()
+	{
+		map.clear();
+	}
+
+	public void ensureCapacity(int capacity)
+	{
+		map.ensureCapacity(capacity);
+	}
+
+	public long[] toArray()
+	{
+		long[] r = new long[map.size()];
+		int[] i = new int[1];
+		map.foreachKey(v -> r[i[0]++] = v);
+		return r;
+	}
+
+	public void foreach(LongConsumer consumer)
+	{
+		map.foreachKey(consumer);
+	}
+
+	@Override
+	public LongHashSet clone()
+	{
+		try
+		{
+			return new LongHashSet(map.clone());
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new Error(e);
+		}
+	}
+
+	@Override
+	public int hashCode()
+	{
+		long[] kt = map.getKeyTable();
+		long h = 0;
+		for (int i = 0, n = map.getTableSize(); i < n; ++i)
+			h += kt[i]; // EMPTY(0)不影响结果
+		return (int)(h ^ (h >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o)
+			return true;
+		if (!(o instanceof LongHashSet))
+			return false;
+		LongHashSet set = (LongHashSet)o;
+		if (map.size() != set.map.size())
+			return false;
+		if (map.hasZeroValue() && !set.map.hasZeroValue())
+			return false;
+		long[] kt = map.getKeyTable();
+		for (int i = 0, n = map.getTableSize(); i < n; ++i)
+		{
+			long k = kt[i];
+			if (k != LongHashMap.EMPTY && !set.contains(k))
+				return false;
+		}
+		return true;
+	}
+
+	public StringBuilder appendTo(StringBuilder s)
+	{
+		if (map.empty())
+			return s.append("{}");
+		s.append('{');
+		map.foreachKey(v -> s.append(v).append(','));
+		s.setCharAt(s.length() - 1, '}');
+		return s;
+	}
+
+	@Override
+	public String toString()
+	{
+		return appendTo(new StringBuilder(map.size() * 8 + 2)).toString();
+	}
+}
@@ -0,0 +1,426 @@
+package jane.core.map;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * W-TinyLFU的淘汰策略. 由{@link ConcurrentTinyLFUMap}和{@link LongConcurrentTinyLFUMap}共用
+ * <p>
+ * 新记录先进入窗口LRU(容量的1%),挤出窗口后进入主区域的试用段,试用段的记录再次访问时晋升到保护段(主区域的80%)<br>
+ * 超出容量时比较窗口挤出的候选者和试用段最久未访问的记录的访问频率({@link FrequencySketch}),淘汰频率低的,
+ * 所以只访问一次的大量记录(如遍历)不会冲掉经常访问的记录<br>
+ * 读写操作只记录到缓冲区,由调用线程在抢到锁时批量处理,不使用单独的清理线程. 读缓冲区满时会丢弃记录,只影响淘汰的精度<br>
+ * 容量按节点的权重(默认每个节点为1)计算,可以运行时调整. 节点的权重也可以修改
+ */
+abstract class TinyLFUPolicy<N extends TinyLFUPolicy.Node>
+{
+	static final int QUEUE_NONE		 = 0;
+	static final int QUEUE_WINDOW	 = 1;
+	static final int QUEUE_PROBATION = 2;
+	static final int QUEUE_PROTECTED = 3;
+
+	static final int STATE_ALIVE   = 0;
+	static final int STATE_RETIRED = 1; // 已从容器中删除,等待从策略中移除
+	static final int STATE_DEAD	   = 2; // 已从容器和策略中移除
+
+	private static final int DRAIN_IDLE		  = 0;
+	private static final int DRAIN_REQUIRED	  = 1;
+	private static final int DRAIN_PROCESSING = 2;
+
+	private static final int READ_BUFFER_COUNT			 = IntHashMap.nextPowerOfTwo(Runtime.getRuntime().availableProcessors());
+	private static final int READ_BUFFER_THRESHOLD		 = 32;
+	private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_THRESHOLD * 2;
+	private static final int READ_BUFFER_SIZE			 = READ_BUFFER_DRAIN_THRESHOLD * 2;
+	private static final int WRITE_BUFFER_DRAIN_MAX		 = 256;
+
+	/**
+	 * 策略中的节点. prev,next,queue,appliedWeight只在持有锁时访问
+	 */
+	static class Node
+	{
+		final int	 hash;			// key的hash值,用于估算访问频率
+		volatile int weight;		// 权重,修改后需要调用afterWrite
+		int			 appliedWeight;	// 策略中已计入的权重
+		Node		 prev;
+		Node		 next;
+		int			 queue;			// 所在的队列
+		volatile int state;
+
+		Node(int hash)
+		{
+			this(hash, 1);
+		}
+
+		Node(int hash, int weight)
+		{
+			this.hash = hash;
+			this.weight = weight;
+		}
+	}
+
+	private static final class Deque
+	{
+		final Node head = new Node(0); // 循环链表的哨兵,head.next是最久未访问的节点
+
+		Deque()
+		{
+			head.prev = head.next = head;
+		}
+
+		Node first()
+		{
+			Node n = head.next;
+			return n != head ? n : null;
+		}
+
+		Node last()
+		{
+			Node n = head.prev;
+			return n != head ? n : null;
+		}
+
+		void addLast(Node n)
+		{
+			Node p = head.prev;
+			n.prev = p;
+			n.next = head;
+			p.next = n;
+			head.prev = n;
+		}
+
+		static void unlink(Node n)
+		{
+			n.prev.next = n.next;
+			n.next.prev = n.prev;
+			n.prev = n.next = null;
+		}
+
+		void moveToLast(Node n)
+		{
+			if (head.prev != n)
+			{
+				unlink(n);
+				addLast(n);
+			}
+		}
+	}
+
+	private final ReentrantLock				  lock		  = new ReentrantLock();
+	private final AtomicInteger				  drainStatus = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Node> writeBuffer = new ConcurrentLinkedQueue<>();
+	private final AtomicReferenceArray<Node>  readBuffer  = new AtomicReferenceArray<>(READ_BUFFER_COUNT * READ_BUFFER_SIZE);
+	private final AtomicLong[]				  readWriteCounts;																 // 每个读缓冲区的写入计数
+	private final AtomicLong[]				  readDrainCounts;																 // 每个读缓冲区上次处理时的写入计数
+	private final long[]					  readReadCounts;																 // 每个读缓冲区的读出计数
+	private final FrequencySketch			  sketch;
+	private final Deque						  window	  = new Deque();
+	private final Deque						  probation	  = new Deque();
+	private final Deque						  protect	  = new Deque();
+	private volatile long					  maxWeight;
+	private long							  maxWindow;
+	private long							  maxProtected;
+	private long							  windowWeight;
+	private long							  protectedWeight;
+	private long							  weightedSize;																	 // 策略中的节点总权重
+	private int								  probationCount;																 // 试用段的节点数量
+	private long							  evictCount;
+
+	/**
+	 * @param maxWeight 总权重上限
+	 * @param expectedSize 预计的节点数量,用于确定访问频率统计的大小
+	 */
+	TinyLFUPolicy(long maxWeight, int expectedSize)
+	{
+		if (maxWeight <= 0)
+			throw new IllegalArgumentException("maxWeight must be > 0");
+		setLimits(maxWeight);
+		sketch = new FrequencySketch(Math.max(expectedSize, 1));
+		readWriteCounts = new AtomicLong[READ_BUFFER_COUNT];
+		readDrainCounts = new AtomicLong[READ_BUFFER_COUNT];
+		readReadCounts = new long[READ_BUFFER_COUNT];
+		for (int i = 0; i < READ_BUFFER_COUNT; ++i)
+		{
+			readWriteCounts[i] = new AtomicLong();
+			readDrainCounts[i] = new AtomicLong();
+		}
+	}
+
+	/**
+	 * 淘汰时从容器中删除节点. 只在持有锁时调用
+	 * @return 节点已不在容器中时返回false
+	 */
+	abstract boolean removeFromMap(N node);
+
+	long maxWeight()
+	{
+		return maxWeight;
+	}
+
+	/**
+	 * 获取当前的总权重. 不含缓冲区中未处理的记录
+	 */
+	long weightedSize()
+	{
+		return weightedSize;
+	}
+
+	private void setLimits(long w)
+	{
+		maxWeight = w;
+		maxWindow = Math.max(w / 100, 1);
+		maxProtected = (long)((w - maxWindow) * 0.8);
+	}
+
+	/**
+	 * 调整总权重上限. 缩小时立即淘汰超出的部分
+	 */
+	final void setMaxWeight(long w)
+	{
+		if (w <= 0)
+			throw new IllegalArgumentException("maxWeight must be > 0");
+		lock.lock();
+		try
+		{
+			setLimits(w);
+			drain();
+			evict();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	long evictCount()
+	{
+		return evictCount;
+	}
+
+	/**
+	 * 记录一次读取. 由读取的线程在get之后调用
+	 */
+	final void afterRead(Node node)
+	{
+		int bufIdx = (int)Thread.currentThread().getId() & (READ_BUFFER_COUNT - 1);
+		AtomicLong counter = readWriteCounts[bufIdx];
+		long writeCount = counter.get();
+		counter.lazySet(writeCount + 1); // 并发时可能互相覆盖,丢失少量读取记录不影响正确性
+		readBuffer.lazySet(bufIdx * READ_BUFFER_SIZE + (int)(writeCount & (READ_BUFFER_SIZE - 1)), node);
+		int status = drainStatus.get();
+		if (status == DRAIN_REQUIRED || (status == DRAIN_IDLE && writeCount - readDrainCounts[bufIdx].get() >= READ_BUFFER_THRESHOLD))
+			tryDrain();
+	}
+
+	/**
+	 * 记录一次增加,删除或修改权重. 由修改的线程在修改容器之后调用,删除前应先把节点标记为STATE_RETIRED
+	 */
+	final void afterWrite(Node node)
+	{
+		writeBuffer.offer(node);
+		drainStatus.lazySet(DRAIN_REQUIRED);
+		tryDrain();
+	}
+
+	private void tryDrain()
+	{
+		if (lock.tryLock())
+		{
+			try
+			{
+				drainStatus.lazySet(DRAIN_PROCESSING);
+				drain();
+			}
+			finally
+			{
+				drainStatus.compareAndSet(DRAIN_PROCESSING, DRAIN_IDLE);
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 处理全部缓冲区. 会阻塞等待其它线程的处理
+	 */
+	final void cleanUp()
+	{
+		lock.lock();
+		try
+		{
+			drain();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void drain()
+	{
+		for (int i = 0; i < READ_BUFFER_COUNT; ++i)
+			drainReadBuffer(i);
+		for (int i = 0; i < WRITE_BUFFER_DRAIN_MAX; ++i)
+		{
+			Node node = writeBuffer.poll();
+			if (node == null)
+				break;
+			applyWrite(node);
+		}
+		if (!writeBuffer.isEmpty())
+			drainStatus.lazySet(DRAIN_REQUIRED);
+	}
+
+	private void drainReadBuffer(int bufIdx)
+	{
+		long writeCount = readWriteCounts[bufIdx].get();
+		long readCount = readReadCounts[bufIdx];
+		int base = bufIdx * READ_BUFFER_SIZE;
+		for (int i = 0; i < READ_BUFFER_DRAIN_THRESHOLD; ++i, ++readCount)
+		{
+			int idx = base + (int)(readCount & (READ_BUFFER_SIZE - 1));
+			Node node = readBuffer.get(idx);
+			if (node == null)
+				break;
+			readBuffer.lazySet(idx, null);
+			applyRead(node);
+		}
+		readReadCounts[bufIdx] = readCount;
+		readDrainCounts[bufIdx].lazySet(writeCount);
+	}
+
+	private void applyRead(Node node)
+	{
+		sketch.increment(node.hash);
+		switch (node.queue)
+		{
+		case QUEUE_WINDOW:
+			window.moveToLast(node);
+			break;
+		case QUEUE_PROBATION:
+			Deque.unlink(node);
+			--probationCount;
+			node.queue = QUEUE_PROTECTED;
+			protect.addLast(node);
+			protectedWeight += node.appliedWeight;
+			while (protectedWeight > maxProtected)
+			{
+				Node demoted = protect.first();
+				Deque.unlink(demoted);
+				protectedWeight -= demoted.appliedWeight;
+				demoted.queue = QUEUE_PROBATION;
+				probation.addLast(demoted);
+				++probationCount;
+			}
+			break;
+		case QUEUE_PROTECTED:
+			protect.moveToLast(node);
+			break;
+		default: // 还没加入或已经移除
+		}
+	}
+
+	private void applyWrite(Node node)
+	{
+		int state = node.state;
+		if (state == STATE_ALIVE)
+		{
+			int weight = node.weight;
+			int queue = node.queue;
+			if (queue == QUEUE_NONE)
+			{
+				sketch.increment(node.hash);
+				node.queue = QUEUE_WINDOW;
+				node.appliedWeight = weight;
+				window.addLast(node);
+				windowWeight += weight;
+				weightedSize += weight;
+				evict();
+			}
+			else if (weight != node.appliedWeight) // 修改了权重
+			{
+				int delta = weight - node.appliedWeight;
+				node.appliedWeight = weight;
+				if (queue == QUEUE_WINDOW)
+					windowWeight += delta;
+				else if (queue == QUEUE_PROTECTED)
+					protectedWeight += delta;
+				weightedSize += delta;
+				evict();
+			}
+		}
+		else if (state == STATE_RETIRED)
+		{
+			unlink(node);
+			node.state = STATE_DEAD;
+		}
+	}
+
+	private void unlink(Node node)
+	{
+		int queue = node.queue;
+		if (queue == QUEUE_NONE)
+			return;
+		Deque.unlink(node);
+		node.queue = QUEUE_NONE;
+		if (queue == QUEUE_WINDOW)
+			windowWeight -= node.appliedWeight;
+		else if (queue == QUEUE_PROTECTED)
+			protectedWeight -= node.appliedWeight;
+		else
+			--probationCount;
+		weightedSize -= node.appliedWeight;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void evictNode(Node node)
+	{
+		unlink(node);
+		if (removeFromMap((N)node))
+			++evictCount;
+		node.state = STATE_DEAD;
+	}
+
+	private void evict()
+	{
+		int candidates = 0; // 本次从窗口移到试用段末尾的候选者数量
+		while (windowWeight > maxWindow)
+		{
+			Node node = window.first();
+			Deque.unlink(node);
+			windowWeight -= node.appliedWeight;
+			node.queue = QUEUE_PROBATION;
+			probation.addLast(node);
+			++probationCount;
+			++candidates;
+		}
+		while (weightedSize > maxWeight)
+		{
+			Node victim = probation.first();
+			if (victim == null) // 试用段为空时只能淘汰保护段或窗口的节点
+			{
+				Node node = protect.first();
+				evictNode(node != null ? node : window.first());
+				continue;
+			}
+			Node candidate = (candidates > 0 ? probation.last() : null);
+			if (candidate != null && candidate != victim && candidate.appliedWeight > maxWeight) // 超过总上限的候选者直接淘汰
+			{
+				--candidates;
+				evictNode(candidate);
+			}
+			else if (candidate == null || candidate == victim || sketch.frequency(candidate.hash) > sketch.frequency(victim.hash))
+			{
+				if (probationCount <= candidates) // 试用段里只有候选者时,淘汰的也是候选者
+					--candidates;
+				evictNode(victim);
+			}
+			else
+			{
+				--candidates;
+				evictNode(candidate);
+			}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package jane.core.map;
+
+/**
+ * 按权重(如估算的字节数)限制容量的缓存
+ */
+public interface WeightedCache
+{
+	/**
+	 * 获取当前的总权重. 不含尚未处理的读写记录
+	 */
+	long getWeightedSize();
+
+	/**
+	 * 获取总权重上限
+	 */
+	long getMaxWeight();
+
+	/**
+	 * 调整总权重上限. 缩小时立即淘汰超出的部分
+	 */
+	void setMaxWeight(long maxWeight);
+}
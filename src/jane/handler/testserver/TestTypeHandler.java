@@ -35,6 +35,9 @@ public final class TestTypeHandler implements BeanHandler<TestType>
 	|*| LinkedHashMap<Octets, TestBean> v18; // 有序映射容器(LinkedHashMap)
 	|*| TestBean v19; // 嵌入其它bean
 	|*| java.lang.String v20; // 非序列化字段
+	|*| IntArrayList v21; // 基础类型数组容器(IntArrayList)
+	|*| LongHashSet v22; // 基础类型无序集合容器(LongHashSet)
+	|*| LongHashMap<TestBean> v23; // 基础类型key的无序映射容器(LongHashMap)
 	\*/
 
 	@Override
@@ -0,0 +1,107 @@
+package jane.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.Random;
+import jane.core.map.LongConcurrentHashMap;
+import jane.core.map.LongConcurrentLRUMap;
+import jane.core.map.LongConcurrentTinyLFUMap;
+import jane.core.map.LongMap;
+
+// 对比读缓存的命中率
+// RUN: java jane.test.TestCacheHitRatio [cacheSize] [traceFile]
+// traceFile每行的第一列是整数key(如ARC/LIRS的trace),不指定则生成zipf分布的热点访问并周期性地插入大范围的遍历
+public final class TestCacheHitRatio
+{
+	private static long[] loadTrace(String filename) throws Exception
+	{
+		long[] keys = new long[1 << 20];
+		int n = 0;
+		try (BufferedReader br = new BufferedReader(new FileReader(filename)))
+		{
+			for (String line; (line = br.readLine()) != null;)
+			{
+				line = line.trim();
+				if (line.isEmpty() || line.charAt(0) == '#')
+					continue;
+				int p = line.indexOf(' ');
+				if (n == keys.length)
+					keys = Arrays.copyOf(keys, n * 2);
+				keys[n++] = Long.parseLong(p < 0 ? line : line.substring(0, p));
+			}
+		}
+		return Arrays.copyOf(keys, n);
+	}
+
+	private static long[] genTrace(int itemCount, int accessCount, int scanPeriod, int scanSize)
+	{
+		double[] cdf = new double[itemCount];
+		double sum = 0;
+		for (int i = 0; i < itemCount; ++i)
+			cdf[i] = (sum += 1 / Math.pow(i + 1, 0.9));
+		Random rand = new Random(12345);
+		long[] keys = new long[accessCount];
+		long scanKey = itemCount;
+		for (int i = 0; i < accessCount;)
+		{
+			if (scanPeriod > 0 && i % scanPeriod == 0 && i > 0)
+			{
+				for (int j = 0; j < scanSize && i < accessCount; ++j)
+					keys[i++] = scanKey++;
+			}
+			else
+			{
+				int idx = Arrays.binarySearch(cdf, rand.nextDouble() * sum);
+				keys[i++] = (idx >= 0 ? idx : -idx - 1);
+			}
+		}
+		return keys;
+	}
+
+	private static double replay(LongMap<Long> cache, long[] keys, Runnable afterPut)
+	{
+		long hit = 0;
+		for (long k : keys)
+		{
+			if (cache.get(k) != null)
+				++hit;
+			else
+			{
+				cache.put(k, k);
+				if (afterPut != null)
+					afterPut.run();
+			}
+		}
+		return (double)hit * 100 / keys.length;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int cacheSize = (args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+		long[] keys = (args.length > 1 ? loadTrace(args[1]) : genTrace(1_000_000, 5_000_000, 200_000, 100_000));
+		LongConcurrentHashMap<Boolean> distinct = new LongConcurrentHashMap<>();
+		for (long k : keys)
+			distinct.put(k, Boolean.TRUE);
+		System.out.format("trace: %d accesses, %d distinct keys, cacheSize=%d%n", keys.length, distinct.size(), cacheSize);
+
+		// LRU的清理是异步的,单线程回放时来不及清理,这里超出容量的1/16时同步清理,使两者的容量接近
+		int upperSize = cacheSize + Math.max(cacheSize / 16, 1);
+		LongConcurrentLRUMap<Long> lru = new LongConcurrentLRUMap<>(upperSize, cacheSize, cacheSize, upperSize + 256, 0.5f, "TestLRU");
+		long t = System.nanoTime();
+		double ratio = replay(lru, keys, () ->
+		{
+			if (lru.size() >= upperSize)
+				lru.sweep();
+		});
+		System.out.format("LongConcurrentLRUMap:     hit=%.2f%% size=%d time=%dms%n",
+				ratio, lru.size(), (System.nanoTime() - t) / 1_000_000);
+
+		LongConcurrentTinyLFUMap<Long> lfu = new LongConcurrentTinyLFUMap<>(cacheSize, 0.5f, "TestTinyLFU");
+		t = System.nanoTime();
+		ratio = replay(lfu, keys, null);
+		lfu.cleanUp();
+		System.out.format("LongConcurrentTinyLFUMap: hit=%.2f%% size=%d time=%dms evict=%d%n",
+				ratio, lfu.size(), (System.nanoTime() - t) / 1_000_000, lfu.getEvictCount());
+	}
+}
@@ -0,0 +1,191 @@
+package jane.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import jane.core.Bean;
+import jane.core.Const;
+import jane.core.DBManager;
+import jane.core.Log;
+import jane.core.Octets;
+import jane.core.ProcThread;
+import jane.core.Procedure;
+import jane.core.Storage;
+import jane.core.StorageLevelDB;
+import jane.bean.AllTables;
+import jane.bean.TestType;
+
+/**
+ * 测试连续提交模式下连续两轮按写缓冲区大小触发的提交
+ * <p>
+ * 第一轮提交后仍要继续分批保存,只在写满下一轮时再提交,不能每次检查都暂停事务提交
+ */
+public final class TestCommitEpoch
+{
+	private static final int RECORD_SIZE  = 2048; // 每条记录的大约字节数
+	private static final int EPOCH_COUNT  = 500;  // 约写满一轮(1MB)所需的记录数
+	private static final int BATCH_COUNT  = 20;	  // 每批写入的记录数
+	private static final int BATCH_PERIOD = 20;	  // 每批写入的间隔(毫秒)
+
+	private static final AtomicInteger commitCount = new AtomicInteger(); // 存储引擎的提交次数
+
+	/**
+	 * 统计提交次数的存储引擎封装
+	 */
+	private static final class CountStorage implements Storage
+	{
+		private final Storage sto;
+
+		CountStorage(Storage sto)
+		{
+			this.sto = sto;
+		}
+
+		@Override
+		public void openDB(File file) throws IOException
+		{
+			sto.openDB(file);
+		}
+
+		@Override
+		public <K, V extends Bean<V>> Table<K, V> openTable(int tableId, String tableName, Object stubK, V stubV)
+		{
+			return sto.openTable(tableId, tableName, stubK, stubV);
+		}
+
+		@Override
+		public <V extends Bean<V>> TableLong<V> openTable(int tableId, String tableName, V stubV)
+		{
+			return sto.openTable(tableId, tableName, stubV);
+		}
+
+		@Override
+		public void putBegin()
+		{
+			sto.putBegin();
+		}
+
+		@Override
+		public void putFlush(boolean isLast)
+		{
+			sto.putFlush(isLast);
+		}
+
+		@Override
+		public int getPutCount()
+		{
+			return sto.getPutCount();
+		}
+
+		@Override
+		public long getPutSize()
+		{
+			return sto.getPutSize();
+		}
+
+		@Override
+		public boolean commit()
+		{
+			commitCount.getAndIncrement();
+			return sto.commit();
+		}
+
+		@Override
+		public void close()
+		{
+			sto.close();
+		}
+
+		@Override
+		public long backup(File file) throws IOException
+		{
+			return sto.backup(file);
+		}
+	}
+
+	private static void write(int from, int count) throws Exception
+	{
+		for (int i = 0; i < count; i += BATCH_COUNT)
+		{
+			int begin = from + i, end = Math.min(begin + BATCH_COUNT, from + count);
+			Thread t = new ProcThread(null, () ->
+			{
+				try
+				{
+					for (long id = begin + 1; id <= end; ++id)
+					{
+						long k = id;
+						new Procedure()
+						{
+							@Override
+							protected void onProcess() throws Exception
+							{
+								lock(AllTables.TestTable.lockId(k));
+								TestType v = new TestType();
+								v.setV4((int)k);
+								v.setV8(new Octets(new byte[RECORD_SIZE]));
+								AllTables.TestTable.put(k, v);
+							}
+						}.execute();
+					}
+				}
+				catch (Exception e)
+				{
+					Log.error("write exception:", e);
+				}
+			});
+			t.start();
+			t.join();
+			Thread.sleep(BATCH_PERIOD);
+		}
+	}
+
+	private static void waitCommit(int count) throws InterruptedException
+	{
+		for (int i = 0; i < 500 && commitCount.get() < count; ++i)
+			Thread.sleep(10);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		File prop = File.createTempFile("jane", ".properties");
+		prop.deleteOnExit();
+		try (FileOutputStream os = new FileOutputStream(prop))
+		{
+			os.write(("dbFilename = db/testepoch\n" +
+					"dbCommitInterval = 50\n" +
+					"dbCommitEpochSize = 1\n" +
+					"dbCommitPeriod = 3600\n" +
+					"dbCommitModCount = 100000000\n").getBytes());
+		}
+		System.setProperty("jane.prop", prop.getPath());
+
+		DBManager.instance().startup(new CountStorage(StorageLevelDB.instance()), Const.dbFilename, null);
+		AllTables.register();
+
+		// 第一轮: 写满一轮后提交一次
+		write(0, EPOCH_COUNT * 6 / 5);
+		waitCommit(1);
+		int n = commitCount.get();
+		Log.info("first epoch: {} commits", n);
+		if (n != 1)
+			throw new AssertionError("first epoch commits: " + n);
+
+		// 第二轮: 少量修改只分批保存,不能立即触发提交
+		write(EPOCH_COUNT * 6 / 5, EPOCH_COUNT / 5);
+		Thread.sleep(500);
+		if (commitCount.get() != n)
+			throw new AssertionError("commits before second epoch full: " + (commitCount.get() - n));
+
+		// 第二轮: 写满后再提交一次
+		write(EPOCH_COUNT * 7 / 5, EPOCH_COUNT);
+		waitCommit(n + 1);
+		Thread.sleep(500);
+		Log.info("second epoch: {} commits", commitCount.get() - n);
+		if (commitCount.get() != n + 1)
+			throw new AssertionError("second epoch commits: " + (commitCount.get() - n));
+		Log.info("end");
+		System.exit(0);
+	}
+}
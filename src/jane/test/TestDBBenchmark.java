@@ -101,6 +101,7 @@ public final class TestDBBenchmark
 		DBManager.instance().checkpoint();
 		Log.info("end");
 		Log.info("CacheRefRemoveCount={}", CacheRef.getRefRemoveCount());
+		Log.info("OffHeapCache: hit={}, miss={}", Benchmark.getOffHeapHitCount(), Benchmark.getOffHeapMissCount());
 		System.exit(0);
 	}
 }
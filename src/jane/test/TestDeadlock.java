@@ -0,0 +1,159 @@
+package jane.test;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import jane.core.Const;
+import jane.core.Log;
+import jane.core.ProcThread;
+import jane.core.Procedure;
+
+/**
+ * 测试事务等待锁时的死锁检测
+ * <p>
+ * 两个事务各持有一个锁后再交叉加对方的锁,只有一方应被选为重做的事务,两个事务都应远早于死锁超时完成<br>
+ * 分别测试两个事务同时开始等待,以及一方已经开始等待后另一方才检测到死锁的情况<br>
+ * 事务的加锁接口总是按锁的顺序加锁,不会形成死锁,所以其中一方通过内部方法不按顺序直接加锁
+ */
+public final class TestDeadlock
+{
+	private static final int LOCK_ID1 = 1; // 第一个锁ID
+	private static final int LOCK_ID2 = 2; // 第二个锁ID
+
+	private static final MethodHandle getLock;			 // Procedure.getLock(int)
+	private static final MethodHandle lockInterruptibly; // Procedure.IndexLock.lockInterruptibly()
+
+	static
+	{
+		try
+		{
+			Class<?> cls = Class.forName("jane.core.Procedure$IndexLock");
+			getLock = MethodHandles.privateLookupIn(Procedure.class, MethodHandles.lookup())
+					.findStatic(Procedure.class, "getLock", MethodType.methodType(cls, int.class));
+			lockInterruptibly = MethodHandles.privateLookupIn(cls, MethodHandles.lookup())
+					.findVirtual(cls, "lockInterruptibly", MethodType.methodType(void.class));
+		}
+		catch (Exception e)
+		{
+			throw new Error(e);
+		}
+	}
+
+	private static final class CrossProcedure extends Procedure
+	{
+		private final int			 lockId1;
+		private final int			 lockId2;
+		private final boolean		 outOfOrder;					 // 是否不按顺序直接加第二个锁
+		private final long			 delay;							 // 加第二个锁前等待的毫秒数
+		private final CountDownLatch locked;						 // 两个事务都持有了第一个锁
+		private final AtomicInteger	 tryCount = new AtomicInteger(); // 执行onProcess的次数
+		private volatile boolean	 finished;						 // 是否已完成
+
+		CrossProcedure(int lockId1, int lockId2, boolean outOfOrder, long delay, CountDownLatch locked)
+		{
+			this.lockId1 = lockId1;
+			this.lockId2 = lockId2;
+			this.outOfOrder = outOfOrder;
+			this.delay = delay;
+			this.locked = locked;
+		}
+
+		@Override
+		protected void onProcess() throws Exception
+		{
+			tryCount.getAndIncrement();
+			lock(lockId1);
+			locked.countDown();
+			locked.await();
+			if (delay > 0 && tryCount.get() == 1)
+				Thread.sleep(delay);
+			if (!outOfOrder)
+			{
+				appendLock(lockId2);
+				finished = true;
+				return;
+			}
+			lockOutOfOrder(lockId2).writeLock().unlock();
+			finished = true;
+		}
+	}
+
+	/**
+	 * 不按顺序直接加写锁. 不记录到事务已加的锁中,只在等待时参与死锁检测
+	 */
+	private static ReentrantReadWriteLock lockOutOfOrder(int lockId) throws Exception
+	{
+		try
+		{
+			ReentrantReadWriteLock lock = (ReentrantReadWriteLock)getLock.invoke(lockId);
+			lockInterruptibly.invoke(lock);
+			return lock;
+		}
+		catch (Exception | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new Exception(e);
+		}
+	}
+
+	private static Thread start(String name, Procedure p)
+	{
+		Thread t = new ProcThread(name, () ->
+		{
+			try
+			{
+				p.execute();
+			}
+			catch (Exception e)
+			{
+				Log.error(name + " exception:", e);
+			}
+		});
+		t.start();
+		return t;
+	}
+
+	/**
+	 * 运行一次交叉加锁的测试
+	 * @param delay 按顺序加锁的一方第一次执行时在加第二个锁前等待的毫秒数,使另一方先开始等待
+	 */
+	private static void test(long delay) throws Exception
+	{
+		long redoCount = ProcThread.getDeadlockRedoCount();
+		CountDownLatch locked = new CountDownLatch(2);
+		CrossProcedure p1 = new CrossProcedure(LOCK_ID1, LOCK_ID2, false, delay, locked);
+		CrossProcedure p2 = new CrossProcedure(LOCK_ID2, LOCK_ID1, true, 0, locked);
+		long timeout = Const.procedureDeadlockTimeout * 1000L / 5;
+		long t = System.currentTimeMillis();
+		Thread t1 = start("CrossProc-1", p1);
+		Thread t2 = start("CrossProc-2", p2);
+		t1.join(timeout);
+		t2.join(Math.max(timeout - (System.currentTimeMillis() - t), 1));
+		t = System.currentTimeMillis() - t;
+
+		long redo = ProcThread.getDeadlockRedoCount() - redoCount;
+		System.out.println("delay=" + delay + ", time=" + t + "ms, tries=" + p1.tryCount.get() + "/" + p2.tryCount.get() + ", deadlockRedo=" + redo);
+		if (!p1.finished || !p2.finished)
+			throw new AssertionError("procedures not finished in " + timeout + "ms");
+		if (redo == 0)
+			throw new AssertionError("deadlock not detected");
+		if (redo != 1 || p1.tryCount.get() + p2.tryCount.get() != 3)
+			throw new AssertionError("more than one procedure redone for deadlock");
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (Const.deadlockDetectDepth <= 0)
+			throw new IllegalStateException("deadlockDetectDepth must be > 0");
+		test(0);
+		test(200);
+		System.out.println("end");
+		System.exit(0);
+	}
+}
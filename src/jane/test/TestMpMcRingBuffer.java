@@ -1,114 +1,18 @@
 package jane.test;
 
-import java.util.concurrent.atomic.AtomicLong;
+import jane.core.MpmcRingBuffer;
 
 /**
- * 无锁的定长Object Ring Buffer队列
+ * {@link MpmcRingBuffer}的性能测试
  * result: 501ms / 1000_0000
  */
-public final class TestMpMcRingBuffer<T>
+public final class TestMpMcRingBuffer
 {
-	static class PaddingAtomicLong extends AtomicLong
-	{
-		private static final long serialVersionUID = 1L;
-		long					  v3, v4, v5, v6, v7;
-	}
-
-	private final Object[]			buffer;
-	private final int				idxMask;
-	private final AtomicLong		writeIdx	= new AtomicLong();
-	private final PaddingAtomicLong	readHeadIdx	= new PaddingAtomicLong();
-	private final PaddingAtomicLong	readTailIdx	= new PaddingAtomicLong();
-	private long					writeCacheIdx;
-	private long					readCacheIdx;
-
-	/**
-	 * @param bufSize buffer数组的长度. 必须是2的幂
-	 */
-	public TestMpMcRingBuffer(int bufSize)
-	{
-		if (bufSize <= 0 || Integer.highestOneBit(bufSize) != bufSize)
-			throw new IllegalArgumentException();
-		buffer = new Object[bufSize];
-		idxMask = bufSize - 1;
-	}
-
-	public int size()
-	{
-		return (int)(writeIdx.get() - readHeadIdx.get());
-	}
-
-	public boolean offer(T obj)
-	{
-		if (obj == null)
-			throw new NullPointerException();
-		for (;;)
-		{
-			long wi = writeIdx.get();
-			long p = wi - idxMask;
-			if (readCacheIdx < p && (readCacheIdx = readTailIdx.get()) < p)
-				return false;
-			if (writeIdx.compareAndSet(wi, wi + 1))
-			{
-				buffer[(int)wi & idxMask] = obj;
-				return true;
-			}
-		}
-	}
-
-	@SuppressWarnings("unchecked")
-	public T poll()
-	{
-		for (;;)
-		{
-			long ri = readHeadIdx.get();
-			if (ri == writeCacheIdx && ri == (writeCacheIdx = writeIdx.get()))
-				return null;
-			long ri1 = ri + 1;
-			if (readHeadIdx.compareAndSet(ri, ri1))
-			{
-				for (int i = (int)ri & idxMask, n = 0;;)
-				{
-					Object obj = buffer[i];
-					if (obj != null)
-					{
-						buffer[i] = null;
-						for (n = 0;;)
-						{
-							if (readTailIdx.compareAndSet(ri, ri1))
-								return (T)obj;
-							if (++n > 127)
-								Thread.yield();
-						}
-					}
-					if (++n > 127)
-						Thread.yield();
-				}
-			}
-		}
-	}
-
-	@SuppressWarnings("unchecked")
-	public T peek()
-	{
-		for (int n = 0;;)
-		{
-			long ri = readHeadIdx.get();
-			if (ri == writeIdx.get())
-				return null;
-			Object obj = buffer[(int)ri & idxMask];
-			if (obj != null && readHeadIdx.get() == ri)
-				return (T)obj;
-			if (++n > 127)
-				Thread.yield();
-		}
-	}
-
-	public void put(T obj) throws InterruptedException
+	private static <T> void put(MpmcRingBuffer<T> buf, T obj) throws InterruptedException
 	{
 		for (int n = 0;;)
 		{
-			if (offer(obj))
+			if (buf.offer(obj))
 				return;
 			if (++n > 1000)
 				Thread.sleep(50);
@@ -117,11 +21,11 @@ public final class TestMpMcRingBuffer<T>
 		}
 	}
 
-	public T take() throws InterruptedException
+	private static <T> T take(MpmcRingBuffer<T> buf) throws InterruptedException
 	{
 		for (int n = 0;;)
 		{
-			T obj = poll();
+			T obj = buf.poll();
 			if (obj != null)
 				return obj;
 			if (++n > 1000)
@@ -140,7 +44,7 @@ public final class TestMpMcRingBuffer<T>
 		final int WRITER_COUNT = 1;
 		final int READER_COUNT = 1;
 
-		final TestMpMcRingBuffer<Integer> buf = new TestMpMcRingBuffer<>(BUF_SIZE);
+		final MpmcRingBuffer<Integer> buf = new MpmcRingBuffer<>(BUF_SIZE);
 		final long[] wrs = new long[WRITER_COUNT * 8];
 		final long[] rrs = new long[READER_COUNT * 8];
 		final Thread[] wts = new Thread[WRITER_COUNT];
@@ -157,7 +61,7 @@ public final class TestMpMcRingBuffer<T>
 					{
 						int v = j & 127;
 						wrs[k * 8] += v;
-						buf.put(Integer.valueOf(v));
+						put(buf, Integer.valueOf(v));
 					}
 				}
 				catch (InterruptedException e)
@@ -176,7 +80,7 @@ public final class TestMpMcRingBuffer<T>
 				try
 				{
 					for (int j = k; j < TEST_COUNT; j += WRITER_COUNT)
-						rrs[k * 8] += buf.take();
+						rrs[k * 8] += take(buf);
 				}
 				catch (InterruptedException e)
 				{
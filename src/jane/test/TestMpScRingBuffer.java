@@ -1,103 +1,18 @@
 package jane.test;
 
-import java.util.concurrent.atomic.AtomicLong;
-// import sun.misc.Contended; //NOSONAR
+import jane.core.MpscRingBuffer;
 
 /**
- * 无锁的单消费者的定长Object Ring Buffer队列. 消费者只能固定一个线程访问
+ * {@link MpscRingBuffer}的性能测试
  * result: 381ms / 1000_0000
  */
-// @SuppressWarnings("restriction")
-public final class TestMpScRingBuffer<T>
+public final class TestMpScRingBuffer
 {
-	static class PaddingAtomicLong extends AtomicLong
-	{
-		private static final long serialVersionUID = 1L;
-		long					  v3, v4, v5, v6, v7;
-	}
-
-	private final Object[]			buffer;
-	private final int				idxMask;
-	private final PaddingAtomicLong	writeIdx = new PaddingAtomicLong();
-	private final PaddingAtomicLong	readIdx	 = new PaddingAtomicLong();
-	private /*@Contended*/ long		writeCacheIdx;
-	private /*@Contended*/ long		readCacheIdx;
-
-	/**
-	 * @param bufSize buffer数组的长度. 必须是2的幂,至少是2. 实际的buffer长度是bufSize-1
-	 */
-	public TestMpScRingBuffer(int bufSize)
-	{
-		if (bufSize < 2 || Integer.highestOneBit(bufSize) != bufSize)
-			throw new IllegalArgumentException();
-		buffer = new Object[bufSize];
-		idxMask = bufSize - 1;
-	}
-
-	public int size()
-	{
-		return (int)(writeIdx.get() - readIdx.get());
-	}
-
-	public boolean offer(T obj)
-	{
-		if (obj == null)
-			throw new NullPointerException();
-		for (;;)
-		{
-			long wi = writeIdx.get();
-			long p = wi - idxMask;
-			if (readCacheIdx <= p && (readCacheIdx = readIdx.get()) <= p)
-				return false;
-			if (writeIdx.compareAndSet(wi, wi + 1))
-			{
-				buffer[(int)wi & idxMask] = obj;
-				return true;
-			}
-		}
-	}
-
-	@SuppressWarnings("unchecked")
-	public T poll()
-	{
-		long ri = readIdx.get();
-		if (ri == writeCacheIdx && ri == (writeCacheIdx = writeIdx.get()))
-			return null;
-		readIdx.lazySet(ri + 1);
-		for (int i = (int)ri & idxMask, n = 0;;)
-		{
-			Object obj = buffer[i];
-			if (obj != null)
-			{
-				buffer[i] = null;
-				return (T)obj;
-			}
-			if (++n > 50)
-				Thread.yield();
-		}
-	}
-
-	@SuppressWarnings("unchecked")
-	public T peek()
-	{
-		long ri = readIdx.get();
-		if (ri == writeIdx.get())
-			return null;
-		for (int i = (int)ri & idxMask, n = 0;;)
-		{
-			Object obj = buffer[i];
-			if (obj != null)
-				return (T)obj;
-			if (++n > 50)
-				Thread.yield();
-		}
-	}
-
-	public void put(T obj) throws InterruptedException
+	private static <T> void put(MpscRingBuffer<T> buf, T obj) throws InterruptedException
 	{
 		for (int n = 0;;)
 		{
-			if (offer(obj))
+			if (buf.offer(obj))
 				return;
 			if (++n > 1000)
 				Thread.sleep(50);
@@ -106,11 +21,11 @@ public final class TestMpScRingBuffer<T>
 		}
 	}
 
-	public T take() throws InterruptedException
+	private static <T> T take(MpscRingBuffer<T> buf) throws InterruptedException
 	{
 		for (int n = 0;;)
 		{
-			T obj = poll();
+			T obj = buf.poll();
 			if (obj != null)
 				return obj;
 			if (++n > 1000)
@@ -128,7 +43,7 @@ public final class TestMpScRingBuffer<T>
 		final int BUF_SIZE = 64 * 1024;
 		final int WRITER_COUNT = 1;
 
-		final TestMpScRingBuffer<Integer> buf = new TestMpScRingBuffer<>(BUF_SIZE);
+		final MpscRingBuffer<Integer> buf = new MpscRingBuffer<>(BUF_SIZE);
 		final long[] wrs = new long[WRITER_COUNT * 8];
 		final long[] rrs = new long[1];
 		final Thread[] wts = new Thread[WRITER_COUNT];
@@ -144,7 +59,7 @@ public final class TestMpScRingBuffer<T>
 					{
 						int v = j & 127;
 						wrs[k * 8] += v;
-						buf.put(Integer.valueOf(v));
+						put(buf, Integer.valueOf(v));
 					}
 				}
 				catch (InterruptedException e)
@@ -160,7 +75,7 @@ public final class TestMpScRingBuffer<T>
 			try
 			{
 				for (int i = 0; i < TEST_COUNT; ++i)
-					rrs[0] += buf.take();
+					rrs[0] += take(buf);
 			}
 			catch (InterruptedException e)
 			{
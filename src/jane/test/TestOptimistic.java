@@ -0,0 +1,170 @@
+package jane.test;
+
+import static jane.bean.AllTables.TestTable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import jane.core.DBManager;
+import jane.core.Log;
+import jane.core.OptimisticProcedure;
+import jane.core.ProcThread;
+import jane.core.Procedure;
+import jane.bean.AllTables;
+import jane.bean.TestType;
+
+/**
+ * 乐观只读事务的压力测试
+ * <p>
+ * 写事务在一组记录间转移数值,并周期性地修改后Undo回滚;读事务用乐观读的方式累加这组记录,总和必须始终不变
+ */
+public final class TestOptimistic
+{
+	private static final long BASE_ID	   = 0x1000_0000L; // 测试记录的起始key,避免和其它测试的记录冲突
+	private static final int  KEY_COUNT	   = 8;			   // 测试记录的数量,不能超过maxLockPerProcedure
+	private static final int  TOTAL		   = 8000;		   // 测试记录的数值总和
+	private static final int  UNDO_PERIOD  = 10;		   // 写事务每隔多少次回滚一次
+	private static final int  WRITER_COUNT = 2;			   // 写线程的数量
+	private static final int  READER_COUNT = 4;			   // 读线程的数量
+	private static final int  DURATION	   = 5000;		   // 测试的时长(毫秒)
+
+	private static final AtomicLong writeCount  = new AtomicLong(); // 写事务提交的次数
+	private static final AtomicLong undoCount	= new AtomicLong(); // 写事务回滚的次数
+	private static final AtomicLong readCount	= new AtomicLong(); // 读事务完成的次数
+	private static final AtomicLong lockedCount = new AtomicLong(); // 读事务改为加读锁执行的次数
+	private static final AtomicLong errorCount	= new AtomicLong(); // 读到总和不一致的次数
+	private static volatile boolean stopped;						// 是否停止测试
+
+	private static final class Writer extends Procedure
+	{
+		private int n;
+
+		@Override
+		protected void onProcess() throws Exception
+		{
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			long k1 = BASE_ID + rand.nextInt(KEY_COUNT);
+			long k2 = BASE_ID + (k1 - BASE_ID + 1 + rand.nextInt(KEY_COUNT - 1)) % KEY_COUNT;
+			lock(TestTable.lockId(k1), TestTable.lockId(k2));
+			TestType.Safe a = TestTable.get(k1);
+			TestType.Safe b = TestTable.get(k2);
+			int d = rand.nextInt(100);
+			a.setV4(a.getV4() - d);
+			if (rand.nextInt(16) == 0) // 偶尔整体替换记录
+			{
+				TestType v = new TestType();
+				v.setV4(b.getV4() + d);
+				TestTable.put(k2, v);
+			}
+			else
+				b.setV4(b.getV4() + d);
+			if (++n % UNDO_PERIOD == 0)
+			{
+				undoCount.getAndIncrement();
+				undo();
+			}
+			writeCount.getAndIncrement();
+		}
+	}
+
+	private static final class Reader extends OptimisticProcedure
+	{
+		@Override
+		protected void onRead() throws Exception
+		{
+			long sum = 0;
+			for (int i = 0; i < KEY_COUNT; ++i)
+			{
+				TestType v = read(TestTable, BASE_ID + i);
+				if (v == null)
+					throw new IllegalStateException("record not found: " + (BASE_ID + i));
+				sum += v.getV4();
+			}
+			long s = sum;
+			boolean locked = isLockedMode();
+			addOnCommit(() ->
+			{
+				readCount.getAndIncrement();
+				if (locked)
+					lockedCount.getAndIncrement();
+				if (s != TOTAL)
+				{
+					errorCount.getAndIncrement();
+					Log.error("check sum failed: {} != {}, locked={}", s, TOTAL, locked);
+				}
+			});
+		}
+	}
+
+	private static Thread start(String name, Procedure p)
+	{
+		Thread t = new ProcThread(name, () ->
+		{
+			try
+			{
+				while (!stopped)
+					p.execute();
+			}
+			catch (Exception e)
+			{
+				Log.error(name + " exception:", e);
+			}
+		});
+		t.start();
+		return t;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		DBManager.instance().startup();
+		AllTables.register();
+		System.out.println("start");
+
+		Thread pt = new ProcThread(null, () ->
+		{
+			new Procedure()
+			{
+				@Override
+				protected void onProcess() throws Exception
+				{
+					for (int i = 0; i < KEY_COUNT; ++i)
+					{
+						TestType v = new TestType();
+						v.setV4(TOTAL / KEY_COUNT);
+						long k = BASE_ID + i;
+						appendLock(TestTable.lockId(k));
+						TestTable.put(k, v);
+					}
+				}
+			}.run();
+		});
+		pt.start();
+		pt.join();
+
+		Thread[] threads = new Thread[WRITER_COUNT + READER_COUNT];
+		for (int i = 0; i < WRITER_COUNT; ++i)
+			threads[i] = start("Writer-" + i, new Writer());
+		for (int i = 0; i < READER_COUNT; ++i)
+			threads[WRITER_COUNT + i] = start("Reader-" + i, new Reader());
+		Thread.sleep(DURATION);
+		stopped = true;
+		for (Thread t : threads)
+			t.join();
+
+		long r = readCount.get(), l = lockedCount.get();
+		System.out.println("write=" + writeCount.get() + ", undo=" + undoCount.get() +
+				", read=" + r + ", optimistic=" + (r - l) + ", locked=" + l + ", error=" + errorCount.get());
+		if (errorCount.get() != 0)
+			throw new AssertionError("inconsistent reads: " + errorCount.get());
+		if (writeCount.get() == 0 || undoCount.get() == 0 || r == l)
+			throw new AssertionError("not enough concurrent operations");
+
+		pt = new ProcThread(null, () -> new Reader().run());
+		pt.start();
+		pt.join();
+		if (readCount.get() != r + 1 || errorCount.get() != 0)
+			throw new AssertionError("final check failed");
+		System.out.println("checkpoint");
+		DBManager.instance().checkpoint();
+		System.out.println("end");
+		System.exit(0);
+	}
+}
@@ -0,0 +1,80 @@
+package jane.test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jane.core.RingBlockingQueue;
+
+/**
+ * 事务线程池任务队列的性能对比: LinkedBlockingQueue vs RingBlockingQueue
+ * <p>
+ * 参数: [工作线程数] [提交线程数] [每个提交线程的任务数] [ring buffer容量]
+ */
+public final class TestProcExecutor
+{
+	private static long test(String name, BlockingQueue<Runnable> queue, int threadCount, int writerCount, int taskCount) throws InterruptedException
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, queue, r ->
+		{
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		}, (r, e) ->
+		{
+			try
+			{
+				while (!e.getQueue().offer(r, 100, TimeUnit.MILLISECONDS))
+				{
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				throw new RuntimeException(ex);
+			}
+		});
+		executor.prestartAllCoreThreads();
+		AtomicLong sum = new AtomicLong();
+		CountDownLatch done = new CountDownLatch(writerCount * taskCount);
+		Thread[] writers = new Thread[writerCount];
+		long t = System.nanoTime();
+		for (int i = 0; i < writerCount; ++i)
+		{
+			writers[i] = new Thread(() ->
+			{
+				for (int j = 0; j < taskCount; ++j)
+				{
+					int v = j & 127;
+					executor.execute(() ->
+					{
+						sum.getAndAdd(v);
+						done.countDown();
+					});
+				}
+			}, "WriterThread" + i);
+			writers[i].start();
+		}
+		done.await();
+		t = (System.nanoTime() - t) / 1_000_000;
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		System.out.format("%s: sum = %d, time = %d ms%n", name, sum.get(), t);
+		return t;
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int threadCount = (args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors());
+		int writerCount = (args.length > 1 ? Integer.parseInt(args[1]) : 2);
+		int taskCount = (args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000);
+		int queueSize = (args.length > 3 ? Integer.parseInt(args[3]) : 64 * 1024);
+
+		for (int i = 0; i < 3; ++i)
+		{
+			test("LinkedBlockingQueue", new LinkedBlockingQueue<>(), threadCount, writerCount, taskCount);
+			test("RingBlockingQueue", new RingBlockingQueue(queueSize, threadCount == 1), threadCount, writerCount, taskCount);
+		}
+	}
+}
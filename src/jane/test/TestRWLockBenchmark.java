@@ -0,0 +1,103 @@
+package jane.test;
+
+import java.util.concurrent.CountDownLatch;
+import jane.core.FastRWLock;
+import jane.core.StripedRWLock;
+
+/**
+ * 对比FastRWLock和StripedRWLock在多线程频繁加解读锁(偶尔加写锁)时的吞吐量
+ * <p>
+ * 参数: [线程数] [每线程读锁次数] [写锁间隔毫秒(0表示不加写锁)]
+ */
+public final class TestRWLockBenchmark
+{
+	private static volatile boolean _stop;
+
+	private static long run(int threadCount, int count, int writeInterval, Runnable[] readers, Runnable writeLock, Runnable writeUnlock) throws Exception
+	{
+		final CountDownLatch cdl = new CountDownLatch(threadCount);
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; ++i)
+		{
+			Runnable r = readers[i];
+			threads[i] = new Thread(() ->
+			{
+				for (int j = 0; j < count; ++j)
+					r.run();
+				cdl.countDown();
+			});
+		}
+		_stop = false;
+		Thread writer = new Thread(() ->
+		{
+			while (!_stop && writeInterval > 0)
+			{
+				try
+				{
+					Thread.sleep(writeInterval);
+				}
+				catch (InterruptedException e)
+				{
+					break;
+				}
+				writeLock.run();
+				writeUnlock.run();
+			}
+		});
+		long t = System.nanoTime();
+		for (Thread thread : threads)
+			thread.start();
+		writer.start();
+		cdl.await();
+		t = System.nanoTime() - t;
+		_stop = true;
+		writer.join();
+		return t;
+	}
+
+	private static long testFast(int threadCount, int count, int writeInterval) throws Exception
+	{
+		final FastRWLock lock = new FastRWLock();
+		Runnable[] readers = new Runnable[threadCount];
+		for (int i = 0; i < threadCount; ++i)
+		{
+			readers[i] = () ->
+			{
+				lock.readLock();
+				lock.readUnlock();
+			};
+		}
+		return run(threadCount, count, writeInterval, readers, lock::writeLock, lock::writeUnlock);
+	}
+
+	private static long testStriped(int threadCount, int count, int writeInterval) throws Exception
+	{
+		final StripedRWLock lock = new StripedRWLock();
+		Runnable[] readers = new Runnable[threadCount];
+		for (int i = 0; i < threadCount; ++i)
+		{
+			final StripedRWLock.Slot slot = lock.newSlot();
+			readers[i] = () ->
+			{
+				lock.readLock(slot);
+				lock.readUnlock(slot);
+			};
+		}
+		return run(threadCount, count, writeInterval, readers, lock::writeLock, lock::writeUnlock);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int threadCount = (args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors());
+		int count = (args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000);
+		int writeInterval = (args.length > 2 ? Integer.parseInt(args[2]) : 10);
+		System.out.format("threads=%d, count=%d, writeInterval=%dms%n", threadCount, count, writeInterval);
+		for (int i = 0; i < 5; ++i)
+		{
+			long t1 = testFast(threadCount, count, writeInterval);
+			long t2 = testStriped(threadCount, count, writeInterval);
+			System.out.format("FastRWLock: %d ms (%.1f ns/op), StripedRWLock: %d ms (%.1f ns/op)%n",
+					t1 / 1_000_000, (double)t1 / count, t2 / 1_000_000, (double)t2 / count);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package jane.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import jane.core.Const;
+import jane.core.Octets;
+import jane.core.Storage;
+import jane.core.StorageMapped;
+import jane.bean.TestBean;
+
+public final class TestStorageMapped
+{
+	private static long segmentBytes(File dir)
+	{
+		long size = 0;
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".seg"));
+		if (files != null)
+		{
+			for (File f : files)
+				size += f.length();
+		}
+		return size;
+	}
+
+	/**
+	 * 最旧的分段一直保持大部分有效时,反复覆盖写其它记录,总文件大小也不能无限增长
+	 */
+	private static void testCompact() throws Exception
+	{
+		final int longCount = 40000; // 长期有效的记录数,约占满第一个分段的9成
+		final int hotCount = 10000;	 // 反复覆盖写的记录数
+		final int rounds = 100;
+		final File file = new File("db/testmapped2");
+		StorageMapped sto = new StorageMapped();
+		sto.openDB(file);
+		Storage.TableLong<TestBean> tl = sto.openTable(1, "tl", TestBean.BEAN_STUB);
+		sto.putBegin();
+		for (int i = 0; i < longCount; ++i)
+			tl.put(i, new TestBean(-1, i));
+		sto.commit();
+		long maxSize = 0;
+		for (int r = 0; r < rounds; ++r)
+		{
+			sto.putBegin();
+			for (int i = 0; i < hotCount; ++i)
+				tl.put(longCount + i, new TestBean(r, i));
+			if (r == rounds / 2) // 删除最旧分段中的记录,之后整理新分段时要保留这些删除记录
+			{
+				for (int i = 0; i < longCount; i += 10)
+					tl.remove(i);
+			}
+			sto.commit();
+			maxSize = Math.max(maxSize, segmentBytes(file));
+		}
+		long limit = (long)Const.mappedFileSize << 22; // 有效数据约1.1个分段,按默认的整理比例最多占4个分段
+		System.out.format("compact: max %d bytes, %d segments%n", maxSize, sto.getSegmentCount());
+		if (maxSize > limit)
+			throw new AssertionError("segment files too large: " + maxSize + " > " + limit);
+		sto.close();
+
+		sto.openDB(file);
+		tl = sto.openTable(1, "tl", TestBean.BEAN_STUB);
+		for (int i = 0; i < longCount; ++i)
+		{
+			TestBean b = tl.get(i);
+			if (i % 10 == 0 ? b != null : b == null || b.getValue2() != i)
+				throw new AssertionError("compact: tl.get(" + i + ")=" + b);
+		}
+		for (int i = 0; i < hotCount; ++i)
+		{
+			TestBean b = tl.get(longCount + i);
+			if (b == null || b.getValue1() != rounds - 1 || b.getValue2() != i)
+				throw new AssertionError("compact: tl.get(" + (longCount + i) + ")=" + b);
+		}
+		sto.close();
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (System.getProperty("jane.prop") == null) // 使用1MB的分段,以便较少的数据就能触发分段整理
+		{
+			File prop = File.createTempFile("jane", ".properties");
+			prop.deleteOnExit();
+			try (FileOutputStream os = new FileOutputStream(prop))
+			{
+				os.write("mappedFileSize = 1\n".getBytes());
+			}
+			System.setProperty("jane.prop", prop.getPath());
+		}
+		final int count = (args.length > 0 ? Integer.parseInt(args[0]) : 100000);
+		final File file = new File("db/testmapped");
+		System.out.println("begin");
+
+		StorageMapped sto = new StorageMapped();
+		sto.openDB(file);
+		Storage.TableLong<TestBean> tl = sto.openTable(1, "tl", TestBean.BEAN_STUB);
+		Storage.Table<Octets, TestBean> to = sto.openTable(2, "to", new Octets(), TestBean.BEAN_STUB);
+		long t = System.currentTimeMillis();
+		for (int r = 0; r < 3; ++r) // 多轮覆盖写,用于触发分段整理
+		{
+			sto.putBegin();
+			for (int i = 0; i < count; ++i)
+			{
+				TestBean b = new TestBean();
+				b.setValue1(r);
+				b.setValue2(i);
+				tl.put(i, b);
+				to.put(Octets.wrap(String.valueOf(i)), b);
+			}
+			for (int i = 0; i < count; i += 2)
+				tl.remove(i);
+			tl.setIdCounter(count + r);
+			sto.commit();
+		}
+		System.out.format("put: %d ms%n", System.currentTimeMillis() - t);
+		sto.close();
+
+		t = System.currentTimeMillis();
+		sto.openDB(file);
+		System.out.format("open: %d records, %d segments, %d ms%n", sto.getIndexCount(), sto.getSegmentCount(), System.currentTimeMillis() - t);
+		tl = sto.openTable(1, "tl", TestBean.BEAN_STUB);
+		to = sto.openTable(2, "to", new Octets(), TestBean.BEAN_STUB);
+		if (tl.getIdCounter() != count + 2)
+			throw new AssertionError("idCounter=" + tl.getIdCounter());
+		t = System.currentTimeMillis();
+		for (int i = 0; i < count; ++i)
+		{
+			TestBean b = tl.get(i);
+			if ((i & 1) == 0 ? b != null : b == null || b.getValue1() != 2 || b.getValue2() != i)
+				throw new AssertionError("tl.get(" + i + ")=" + b);
+			b = to.get(Octets.wrap(String.valueOf(i)));
+			if (b == null || b.getValue2() != i)
+				throw new AssertionError("to.get(" + i + ")=" + b);
+		}
+		System.out.format("get: %d ms%n", System.currentTimeMillis() - t);
+		long[] n = new long[1];
+		tl.walkValue((k, v) ->
+		{
+			if (v.getValue2() != k || (k & 1) == 0)
+				throw new AssertionError("walk: " + k + "=>" + v);
+			++n[0];
+			return true;
+		}, TestBean.BEAN_STUB, 0, -1, true, false);
+		if (n[0] != count / 2)
+			throw new AssertionError("walk count=" + n[0]);
+		System.out.format("backup: %d bytes%n", sto.backup(new File("db/testmapped.bak")));
+		sto.close();
+		testCompact();
+		System.out.println("end");
+	}
+}
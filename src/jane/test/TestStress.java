@@ -277,8 +277,8 @@ public final class TestStress extends Procedure
 		for (;;) //NOSONAR
 		{
 			long curRemoveCount = CacheRef.getRefRemoveCount();
-			Log.info("TQ=" + dbm.getProcThreads().getQueue().size() +
-					"  TA=" + dbm.getProcThreads().getActiveCount() +
+			Log.info("TQ=" + dbm.getProcSubmittedCount() +
+					"  TA=" + dbm.getProcRunningCount() +
 					"  RR=" + (curRemoveCount - lastRemoveCount) +
 					"  C=" + counter.getAndSet(0));
 			lastRemoveCount = curRemoveCount;
@@ -123,6 +123,50 @@ public final class TestUndo
 					System.out.println("=== 6");
 				}
 			}.run();
+
+			new Procedure()
+			{
+				@Override
+				@SuppressWarnings("deprecation")
+				protected void onProcess() throws Exception
+				{
+					TestType.Safe a = TestTable.lockGet(1);
+					a.getV21().add(1);
+					a.getV22().add(2);
+					a.getV23().put(3, new TestBean(33, 44).safe());
+					System.out.println("=== 7: " + a.unsafe());
+				}
+			}.run();
+
+			new Procedure()
+			{
+				@Override
+				@SuppressWarnings("deprecation")
+				protected void onProcess() throws Exception
+				{
+					TestType.Safe a = TestTable.lockGet(1);
+					a.getV21().set(0, 11);
+					a.getV21().add(0, 10);
+					a.getV22().remove(2);
+					a.getV22().add(22);
+					a.getV23().get(3).setValue1(55);
+					a.getV23().remove(3);
+					a.getV23().put(4, new TestBean(66, 77).safe());
+					System.out.println("=== 8: " + a.unsafe());
+					throw new Exception("only-for-test-rollback");
+				}
+			}.run();
+
+			new Procedure()
+			{
+				@Override
+				@SuppressWarnings("deprecation")
+				protected void onProcess() throws Exception
+				{
+					TestType.Safe a = TestTable.lockGet(1);
+					System.out.println("=== 9: " + a.unsafe());
+				}
+			}.run();
 		});
 
 		pt.start();
@@ -0,0 +1,274 @@
+package jane.test.bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import jane.core.ProcThread;
+
+/**
+ * 核心热点路径的基准测试框架
+ * <p>
+ * 仿照JMH的吞吐量模式: 每个基准先预热若干轮,再测量若干轮,每轮固定时间,以全部线程的总ops/s为结果<br>
+ * 测试线程都是{@link ProcThread},可直接执行事务. 结果按JMH的JSON格式输出,便于用现成的工具做回归对比<br>
+ * 配置(系统属性): bench.warmup(预热轮数,默认3), bench.iterations(测量轮数,默认5), bench.time(每轮毫秒数,默认1000),
+ * bench.threads(多线程基准的线程数,<=0表示CPU核数,默认0), bench.out(JSON结果文件,默认bench-result.json)<br>
+ * 参数: 可选的正则表达式,只运行名字匹配的基准<br>
+ * 运行: ant bench -Dbench.filter=Map
+ */
+public final class Bench
+{
+	/**
+	 * 基准测试的操作
+	 */
+	public interface Op
+	{
+		/**
+		 * 执行n次操作
+		 * @param tid 测试线程的序号,从0开始
+		 * @return 任意的计算结果,用于防止操作被JIT优化掉
+		 */
+		long run(int tid, int n) throws Exception;
+	}
+
+	private static final class Entry
+	{
+		final String   name;
+		final int	   threads;
+		final int	   batch;  // 每次调用Op执行的操作次数
+		final Runnable setup;  // 运行前的准备工作,可为null
+		final Op	   op;
+		double[]	   scores; // 每轮测量的ops/s
+
+		Entry(String name, int threads, int batch, Runnable setup, Op op)
+		{
+			this.name = name;
+			this.threads = threads;
+			this.batch = batch;
+			this.setup = setup;
+			this.op = op;
+		}
+	}
+
+	public static final int	WARMUP		= Integer.getInteger("bench.warmup", 3);
+	public static final int	ITERATIONS	= Math.max(Integer.getInteger("bench.iterations", 5), 1);
+	public static final int	TIME		= Math.max(Integer.getInteger("bench.time", 1000), 10);
+	public static final int	THREADS		= threads(Integer.getInteger("bench.threads", 0));
+
+	private static final ArrayList<Entry> _entries = new ArrayList<>();
+	private static volatile long		  _sink;								// 汇总Op的结果,防止被优化掉
+
+	private Bench()
+	{
+	}
+
+	private static int threads(int n)
+	{
+		return n > 0 ? n : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * 注册一个基准测试
+	 * @param name 基准的名字. 习惯用"类名.方法名"
+	 * @param threads 并发的线程数
+	 * @param batch 每次调用Op执行的操作次数. 越大则计时和调用的额外开销越小,但每轮结束得越不及时
+	 */
+	public static void add(String name, int threads, int batch, Op op)
+	{
+		_entries.add(new Entry(name, threads, batch, null, op));
+	}
+
+	/**
+	 * 注册一个需要准备工作的基准测试
+	 * @param setup 在第一轮运行前,在单独的ProcThread中执行. 多个基准共用时需要自行保证只执行一次
+	 */
+	public static void add(String name, int threads, int batch, Runnable setup, Op op)
+	{
+		_entries.add(new Entry(name, threads, batch, setup, op));
+	}
+
+	private static double runIteration(Entry e) throws Exception
+	{
+		int threads = e.threads;
+		AtomicLong opCount = new AtomicLong();
+		Throwable[] error = new Throwable[1];
+		long[] times = new long[2];
+		CyclicBarrier barrier = new CyclicBarrier(threads, () ->
+		{
+			long t = System.nanoTime();
+			if (times[0] == 0)
+				times[0] = t;
+			else
+				times[1] = t;
+		});
+		Thread[] ts = new Thread[threads];
+		for (int i = 0; i < threads; ++i)
+		{
+			int tid = i;
+			ts[i] = new ProcThread("BenchThread-" + i, () ->
+			{
+				try
+				{
+					long r = 0, n = 0;
+					int batch = e.batch;
+					barrier.await();
+					long deadline = times[0] + TIME * 1_000_000L;
+					do
+					{
+						r += e.op.run(tid, batch);
+						n += batch;
+					}
+					while (System.nanoTime() < deadline);
+					barrier.await();
+					opCount.addAndGet(n);
+					_sink += r;
+				}
+				catch (Throwable ex)
+				{
+					synchronized (error)
+					{
+						if (error[0] == null)
+							error[0] = ex;
+					}
+					barrier.reset();
+				}
+			});
+			ts[i].start();
+		}
+		for (Thread t : ts)
+			t.join();
+		if (error[0] != null)
+			throw new IllegalStateException("benchmark failed: " + e.name, error[0]);
+		return opCount.get() * 1e9 / (times[1] - times[0]);
+	}
+
+	private static void run(Entry e) throws Exception
+	{
+		if (e.setup != null)
+		{
+			Throwable[] error = new Throwable[1];
+			Thread t = new ProcThread("BenchSetup", () ->
+			{
+				try
+				{
+					e.setup.run();
+				}
+				catch (Throwable ex)
+				{
+					error[0] = ex;
+				}
+			});
+			t.start();
+			t.join();
+			if (error[0] != null)
+				throw new IllegalStateException("benchmark setup failed: " + e.name, error[0]);
+		}
+		for (int i = 0; i < WARMUP; ++i)
+			System.out.format(Locale.ROOT, "%s (threads=%d) warmup %d: %.0f ops/s%n", e.name, e.threads, i + 1, runIteration(e));
+		e.scores = new double[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; ++i)
+		{
+			e.scores[i] = runIteration(e);
+			System.out.format(Locale.ROOT, "%s (threads=%d) iteration %d: %.0f ops/s%n", e.name, e.threads, i + 1, e.scores[i]);
+		}
+	}
+
+	private static double mean(double[] vs)
+	{
+		double s = 0;
+		for (double v : vs)
+			s += v;
+		return s / vs.length;
+	}
+
+	/**
+	 * 近似JMH的99.9%置信区间半宽. 按正态分布估算,测量轮数很少时偏小
+	 */
+	private static double error(double[] vs)
+	{
+		int n = vs.length;
+		if (n < 2)
+			return Double.NaN;
+		double m = mean(vs), s = 0;
+		for (double v : vs)
+			s += (v - m) * (v - m);
+		return 3.29 * Math.sqrt(s / (n - 1) / n);
+	}
+
+	private static StringBuilder appendDouble(StringBuilder sb, double v)
+	{
+		return Double.isNaN(v) ? sb.append("\"NaN\"") : sb.append(String.format(Locale.ROOT, "%.3f", v));
+	}
+
+	private static String toJson(ArrayList<Entry> entries)
+	{
+		StringBuilder sb = new StringBuilder(1024);
+		sb.append("[\n");
+		for (int i = 0, n = entries.size(); i < n; ++i)
+		{
+			Entry e = entries.get(i);
+			double score = mean(e.scores), err = error(e.scores);
+			sb.append("  {\n");
+			sb.append("    \"benchmark\" : \"").append(e.name).append("\",\n");
+			sb.append("    \"mode\" : \"thrpt\",\n");
+			sb.append("    \"threads\" : ").append(e.threads).append(",\n");
+			sb.append("    \"forks\" : 1,\n");
+			sb.append("    \"jvm\" : \"").append(System.getProperty("java.home").replace("\\", "\\\\")).append("\",\n");
+			sb.append("    \"jdkVersion\" : \"").append(System.getProperty("java.version")).append("\",\n");
+			sb.append("    \"warmupIterations\" : ").append(WARMUP).append(",\n");
+			sb.append("    \"warmupTime\" : \"").append(TIME).append(" ms\",\n");
+			sb.append("    \"measurementIterations\" : ").append(ITERATIONS).append(",\n");
+			sb.append("    \"measurementTime\" : \"").append(TIME).append(" ms\",\n");
+			sb.append("    \"primaryMetric\" : {\n");
+			appendDouble(sb.append("      \"score\" : "), score).append(",\n");
+			appendDouble(sb.append("      \"scoreError\" : "), err).append(",\n");
+			appendDouble(appendDouble(sb.append("      \"scoreConfidence\" : [ "), score - err).append(", "), score + err).append(" ],\n");
+			sb.append("      \"scoreUnit\" : \"ops/s\",\n");
+			sb.append("      \"rawData\" : [ [ ");
+			for (int j = 0; j < e.scores.length; ++j)
+				appendDouble(j == 0 ? sb : sb.append(", "), e.scores[j]);
+			sb.append(" ] ]\n    },\n");
+			sb.append("    \"secondaryMetrics\" : {}\n");
+			sb.append(i + 1 < n ? "  },\n" : "  }\n");
+		}
+		return sb.append("]\n").toString();
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		Pattern filter = (args.length > 0 && !args[0].isEmpty() ? Pattern.compile(args[0]) : null);
+		BenchMarshal.register();
+		BenchMap.register();
+		BenchDB.register();
+
+		ArrayList<Entry> done = new ArrayList<>();
+		for (Entry e : _entries)
+		{
+			if (filter == null || filter.matcher(e.name).find())
+			{
+				run(e);
+				done.add(e);
+			}
+		}
+		BenchDB.shutdown();
+
+		System.out.println("\nBenchmark                                          Threads            Score        Error  Units");
+		for (Entry e : done)
+			System.out.format(Locale.ROOT, "%-50s %7d %16.0f %12.0f  ops/s%n", e.name, e.threads, mean(e.scores), error(e.scores));
+		String out = System.getProperty("bench.out", "bench-result.json");
+		try (FileOutputStream fos = new FileOutputStream(out))
+		{
+			fos.write(toJson(done).getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException e)
+		{
+			System.err.println("write result failed: " + out + ": " + e);
+		}
+		System.out.println("result: " + out + " (sink=" + _sink + ')');
+		System.exit(0);
+	}
+}
@@ -0,0 +1,256 @@
+package jane.test.bench;
+
+import static jane.bean.AllTables.Benchmark;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import jane.core.DBManager;
+import jane.core.Procedure;
+import jane.core.Storage;
+import jane.core.StorageLevelDB;
+import jane.bean.AllTables;
+import jane.bean.TestBean;
+
+/**
+ * 事务和存储的基准测试
+ * <p>
+ * 数据库建在临时目录中. 事务直接在测试线程中执行,不经过DBManager的调度
+ */
+public final class BenchDB
+{
+	private static final int KEY_COUNT	 = 65536; // 事务测试的记录数量
+	private static final int LOCK_HOT	 = 16;	  // 锁竞争测试使用的lockId数量
+	private static final int COMMIT_SIZE = 100;	  // 存储测试每次提交的记录数量
+
+	private static File						   _dbPath;
+	private static StorageLevelDB			   _sto;	 // 单独测试的存储实例,不和提交线程共享
+	private static Storage.TableLong<TestBean> _stoTable;
+
+	private static final class LockProc extends Procedure
+	{
+		int		lockId0;
+		int		lockId1;
+		int		lockId2;
+		boolean	append;	// 是否用appendLock逐个追加锁
+
+		@Override
+		protected void onProcess() throws Exception
+		{
+			if (append)
+			{
+				lock(lockId0);
+				appendLock(lockId1);
+				appendLock(lockId2);
+			}
+			else
+				lock(lockId0, lockId1, lockId2);
+		}
+	}
+
+	private static final class ModifyProc extends Procedure
+	{
+		long	id;
+		boolean	undo;
+
+		@Override
+		protected void onProcess() throws Exception
+		{
+			TestBean.Safe b = lockGet(Benchmark, id);
+			b.setValue1(b.getValue1() + 1);
+			b.setValue2(id);
+			if (undo)
+				undo();
+		}
+	}
+
+	private BenchDB()
+	{
+	}
+
+	private static synchronized void init()
+	{
+		if (_dbPath != null)
+			return;
+		try
+		{
+			_dbPath = Files.createTempDirectory("jane-bench").toFile();
+			System.out.println("bench db path: " + _dbPath.getAbsolutePath());
+			DBManager.instance().startup(StorageLevelDB.instance(), new File(_dbPath, "jane").getPath(), _dbPath.getPath());
+			AllTables.register();
+			for (int i = 0; i < KEY_COUNT; ++i)
+			{
+				long id = i;
+				boolean ok = new Procedure()
+				{
+					@Override
+					protected void onProcess() throws Exception
+					{
+						TestBean b = new TestBean();
+						b.setValue2(id);
+						lockGet(Benchmark, id);
+						Benchmark.put(id, b);
+					}
+				}.execute();
+				if (!ok)
+					throw new IllegalStateException("init record failed: " + id);
+			}
+
+			_sto = new StorageLevelDB();
+			_sto.openDB(new File(_dbPath, "sto"));
+			_stoTable = _sto.openTable(100, "BenchStorage", TestBean.BEAN_STUB);
+			_sto.putBegin();
+			for (int i = 0; i < KEY_COUNT; ++i)
+			{
+				TestBean b = new TestBean();
+				b.setValue2(i);
+				_stoTable.put(i, b);
+			}
+			_sto.putFlush(true);
+			_sto.commit();
+		}
+		catch (Exception e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static void register()
+	{
+		int threads = Bench.THREADS;
+		LockProc[] lockProcs = new LockProc[threads];
+		ModifyProc[] modifyProcs = new ModifyProc[threads];
+
+		Bench.add("BenchDB.procLock", threads, 100, BenchDB::init, (tid, n) ->
+		{
+			LockProc p = lockProcs[tid];
+			if (p == null)
+				lockProcs[tid] = p = new LockProc();
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			p.append = false;
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				p.lockId0 = rand.nextInt();
+				p.lockId1 = rand.nextInt();
+				p.lockId2 = rand.nextInt();
+				if (p.execute())
+					++r;
+			}
+			return r;
+		});
+
+		Bench.add("BenchDB.procAppendLock", threads, 100, BenchDB::init, (tid, n) ->
+		{
+			LockProc p = lockProcs[tid];
+			if (p == null)
+				lockProcs[tid] = p = new LockProc();
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			p.append = true;
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				p.lockId0 = rand.nextInt();
+				p.lockId1 = rand.nextInt();
+				p.lockId2 = rand.nextInt();
+				if (p.execute())
+					++r;
+			}
+			return r;
+		});
+
+		Bench.add("BenchDB.procLockContended", threads, 100, BenchDB::init, (tid, n) ->
+		{
+			LockProc p = lockProcs[tid];
+			if (p == null)
+				lockProcs[tid] = p = new LockProc();
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			p.append = false;
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				p.lockId0 = rand.nextInt(LOCK_HOT);
+				p.lockId1 = rand.nextInt(LOCK_HOT);
+				p.lockId2 = rand.nextInt(LOCK_HOT);
+				if (p.execute())
+					++r;
+			}
+			return r;
+		});
+
+		Bench.add("BenchDB.contextCommit", threads, 100, BenchDB::init, (tid, n) ->
+		{
+			ModifyProc p = modifyProcs[tid];
+			if (p == null)
+				modifyProcs[tid] = p = new ModifyProc();
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			p.undo = false;
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				p.id = rand.nextInt(KEY_COUNT);
+				if (p.execute())
+					++r;
+			}
+			return r;
+		});
+
+		Bench.add("BenchDB.contextRollback", threads, 100, BenchDB::init, (tid, n) ->
+		{
+			ModifyProc p = modifyProcs[tid];
+			if (p == null)
+				modifyProcs[tid] = p = new ModifyProc();
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			p.undo = true;
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				p.id = rand.nextInt(KEY_COUNT);
+				if (!p.execute())
+					++r;
+			}
+			return r;
+		});
+
+		Bench.add("BenchDB.storageGet", threads, 100, BenchDB::init, (tid, n) ->
+		{
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				TestBean b = _stoTable.get(rand.nextInt(KEY_COUNT));
+				if (b != null)
+					r += b.getValue2();
+			}
+			return r;
+		});
+
+		Bench.add("BenchDB.storageCommit", 1, 1, BenchDB::init, (tid, n) -> // 每次操作提交COMMIT_SIZE条记录
+		{
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			TestBean b = new TestBean();
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				_sto.putBegin();
+				for (int j = 0; j < COMMIT_SIZE; ++j)
+				{
+					int k = rand.nextInt(KEY_COUNT);
+					b.setValue2(k);
+					_stoTable.put(k, b);
+				}
+				_sto.putFlush(true);
+				if (_sto.commit())
+					++r;
+			}
+			return r;
+		});
+	}
+
+	public static synchronized void shutdown()
+	{
+		if (_dbPath == null)
+			return;
+		_sto.close();
+		DBManager.instance().shutdown();
+	}
+}
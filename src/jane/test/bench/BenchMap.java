@@ -0,0 +1,141 @@
+package jane.test.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import jane.core.map.ConcurrentLRUMap;
+import jane.core.map.LongConcurrentHashMap;
+import jane.core.map.LongConcurrentLRUMap;
+
+/**
+ * 并发容器的基准测试. 都是多线程竞争访问
+ * <p>
+ * get: 全部命中的读取; mix: 10%写入,键范围是容量的2倍,会不断触发LRU淘汰
+ */
+public final class BenchMap
+{
+	private static final int	   CAPACITY	= 65536;
+	private static final Integer[] KEYS		= new Integer[CAPACITY * 2]; // 预先装箱的key,避免测到装箱的开销
+
+	static
+	{
+		for (int i = 0; i < KEYS.length; ++i)
+			KEYS[i] = i;
+	}
+
+	private BenchMap()
+	{
+	}
+
+	public static void register()
+	{
+		int threads = Bench.THREADS;
+		int mask = CAPACITY - 1, mask2 = CAPACITY * 2 - 1;
+
+		ConcurrentLRUMap<Integer, Integer> lruGet = new ConcurrentLRUMap<>(CAPACITY, 0.5f, "BenchLRUGet");
+		for (int i = 0; i < CAPACITY; ++i)
+			lruGet.put(KEYS[i], KEYS[i]);
+		Bench.add("BenchMap.lruGet", threads, 1000, (tid, n) ->
+		{
+			long r = 0;
+			for (int i = 0, k = ThreadLocalRandom.current().nextInt(); i < n; ++i, k += 0x9e3779b9)
+			{
+				Integer v = lruGet.get(KEYS[(k >>> 8) & mask]);
+				if (v != null)
+					r += v;
+			}
+			return r;
+		});
+
+		ConcurrentLRUMap<Integer, Integer> lruMix = new ConcurrentLRUMap<>(CAPACITY, 0.5f, "BenchLRUMix");
+		Bench.add("BenchMap.lruMix", threads, 1000, (tid, n) ->
+		{
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				Integer k = KEYS[rand.nextInt() & mask2];
+				if (rand.nextInt(10) == 0)
+					lruMix.put(k, k);
+				else
+				{
+					Integer v = lruMix.get(k);
+					if (v != null)
+						r += v;
+				}
+			}
+			return r;
+		});
+
+		LongConcurrentLRUMap<Integer> longLruGet = new LongConcurrentLRUMap<>(CAPACITY, 0.5f, "BenchLongLRUGet");
+		for (int i = 0; i < CAPACITY; ++i)
+			longLruGet.put(i, KEYS[i]);
+		Bench.add("BenchMap.longLruGet", threads, 1000, (tid, n) ->
+		{
+			long r = 0;
+			for (int i = 0, k = ThreadLocalRandom.current().nextInt(); i < n; ++i, k += 0x9e3779b9)
+			{
+				Integer v = longLruGet.get((k >>> 8) & mask);
+				if (v != null)
+					r += v;
+			}
+			return r;
+		});
+
+		LongConcurrentLRUMap<Integer> longLruMix = new LongConcurrentLRUMap<>(CAPACITY, 0.5f, "BenchLongLRUMix");
+		Bench.add("BenchMap.longLruMix", threads, 1000, (tid, n) ->
+		{
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				int k = rand.nextInt() & mask2;
+				if (rand.nextInt(10) == 0)
+					longLruMix.put(k, KEYS[k]);
+				else
+				{
+					Integer v = longLruMix.get(k);
+					if (v != null)
+						r += v;
+				}
+			}
+			return r;
+		});
+
+		LongConcurrentHashMap<Integer> hashGet = new LongConcurrentHashMap<>(CAPACITY * 2);
+		for (int i = 0; i < CAPACITY; ++i)
+			hashGet.put(i, KEYS[i]);
+		Bench.add("BenchMap.longHashGet", threads, 1000, (tid, n) ->
+		{
+			long r = 0;
+			for (int i = 0, k = ThreadLocalRandom.current().nextInt(); i < n; ++i, k += 0x9e3779b9)
+			{
+				Integer v = hashGet.get((k >>> 8) & mask);
+				if (v != null)
+					r += v;
+			}
+			return r;
+		});
+
+		LongConcurrentHashMap<Integer> hashMix = new LongConcurrentHashMap<>(CAPACITY * 4);
+		Bench.add("BenchMap.longHashMix", threads, 1000, (tid, n) ->
+		{
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				int k = rand.nextInt() & mask2;
+				int op = rand.nextInt(10);
+				if (op == 0)
+					hashMix.put(k, KEYS[k]);
+				else if (op == 1)
+					hashMix.remove(k);
+				else
+				{
+					Integer v = hashMix.get(k);
+					if (v != null)
+						r += v;
+				}
+			}
+			return r;
+		});
+	}
+}
@@ -0,0 +1,155 @@
+package jane.test.bench;
+
+import java.lang.reflect.Proxy;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import jane.core.Bean;
+import jane.core.BeanCodec;
+import jane.core.NetManager;
+import jane.core.Octets;
+import jane.core.OctetsStream;
+import jane.bean.AllBeans;
+import jane.bean.TestBean;
+import jane.bean.TestType;
+
+/**
+ * 序列化和协议编解码的基准测试
+ */
+public final class BenchMarshal
+{
+	private static final class Sink // 接收BeanCodec输出的下一级过滤器
+	{
+		Object last;
+
+		NextFilter create()
+		{
+			return (NextFilter)Proxy.newProxyInstance(NextFilter.class.getClassLoader(), new Class<?>[] { NextFilter.class }, (proxy, method, args) ->
+			{
+				if (args != null && args.length == 1)
+					last = args[0];
+				return null;
+			});
+		}
+	}
+
+	private BenchMarshal()
+	{
+	}
+
+	static TestType createTestType()
+	{
+		TestType t = new TestType();
+		t.setV1(true);
+		t.setV2((byte)2);
+		t.setV3((short)300);
+		t.setV4(-40000);
+		t.setV5(5_000_000_000L);
+		t.setV6(6.5f);
+		t.setV7(7.25);
+		t.setV8(Octets.wrap("octets"));
+		t.setV9("string");
+		for (int i = 0; i < 8; ++i)
+		{
+			t.getV10().add((i & 1) != 0);
+			t.getV13().add((long)i * 1000);
+			t.getV16().put((long)i, "v" + i);
+			t.getV21().add(i * 100);
+		}
+		t.getV19().setValue1(19);
+		t.getV19().setValue2(190);
+		TestBean b = new TestBean();
+		b.setValue1(23);
+		t.getV23().put(23, b);
+		return t;
+	}
+
+	public static void register()
+	{
+		TestType bean = createTestType();
+		int beanSize = bean.marshal(new Octets()).size();
+		Octets[] marshalBufs = new Octets[Bench.THREADS];
+		Bench.add("BenchMarshal.marshalBean", 1, 1000, (tid, n) ->
+		{
+			Octets os = marshalBufs[tid];
+			if (os == null)
+				marshalBufs[tid] = os = new Octets(beanSize);
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				os.clear();
+				r += bean.marshal(os).size();
+			}
+			return r;
+		});
+
+		byte[] beanData = bean.marshal(new Octets()).getBytes();
+		Bench.add("BenchMarshal.unmarshalBean", 1, 1000, (tid, n) ->
+		{
+			OctetsStream os = OctetsStream.wrap(beanData);
+			TestType b = new TestType();
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				os.setPosition(0);
+				b.reset();
+				b.unmarshal(os);
+				r += b.getV4();
+			}
+			return r;
+		});
+
+		Bench.add("BenchMarshal.marshalVarInt", 1, 10000, (tid, n) ->
+		{
+			OctetsStream os = new OctetsStream(16 * 5);
+			long r = 0;
+			for (int i = 0; i < n; i += 16)
+			{
+				os.clear();
+				for (int j = 0; j < 16; ++j)
+					os.marshal((long)(i + j) << (j * 4));
+				os.setPosition(0);
+				for (int j = 0; j < 16; ++j)
+					r += os.unmarshalLong();
+			}
+			return r;
+		});
+
+		NetManager mgr = new NetManager();
+		mgr.setHandlers(AllBeans.getTestServerHandlers());
+		Bench.add("BenchMarshal.codecEncode", 1, 1000, (tid, n) ->
+		{
+			BeanCodec codec = new BeanCodec(mgr);
+			Sink sink = new Sink();
+			NextFilter next = sink.create();
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				codec.filterWrite(next, null, bean);
+				r += ((IoBuffer)sink.last).remaining();
+			}
+			return r;
+		});
+
+		BeanCodec encoder = new BeanCodec(mgr);
+		Sink encoded = new Sink();
+		encoder.filterWrite(encoded.create(), null, bean);
+		IoBuffer packet = (IoBuffer)encoded.last;
+		byte[] packetData = new byte[packet.remaining()];
+		packet.get(packetData);
+		Bench.add("BenchMarshal.codecDecode", 1, 1000, (tid, n) ->
+		{
+			BeanCodec codec = new BeanCodec(mgr);
+			Sink sink = new Sink();
+			NextFilter next = sink.create();
+			IoBuffer buf = IoBuffer.wrap(packetData);
+			long r = 0;
+			for (int i = 0; i < n; ++i)
+			{
+				buf.position(0);
+				codec.messageReceived(next, null, buf);
+				r += ((Bean<?>)sink.last).type();
+			}
+			return r;
+		});
+	}
+}
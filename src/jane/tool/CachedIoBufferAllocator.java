@@ -3,28 +3,43 @@ package jane.tool;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.buffer.IoBufferAllocator;
 import org.apache.mina.core.buffer.SimpleBufferAllocator;
+import jane.core.Metrics;
 
 /**
  * 注意: 强烈建议不要在经常分配销毁的线程上使用此分配器分配IoBuffer
+ * <p>
+ * 每个线程先使用自己的缓冲区池,满了或空了再使用全局共享的有界池.
+ * 这样在工作线程分配,在网络IO线程释放的缓冲区也能被回收重用
  */
 public final class CachedIoBufferAllocator implements IoBufferAllocator
 {
 	private static final int DEFAULT_MAX_POOL_SIZE			= 8;
 	private static final int DEFAULT_MAX_CACHED_BUFFER_SIZE	= 1 << 16; // 64KB
+	private static final int SHARED_POOL_FACTOR				= 16;	   // 共享池大小是每线程池大小的倍数
 
 	private static final AtomicLong	allocCount = new AtomicLong();
 	private static final AtomicLong	reuseCount = new AtomicLong();
 	private static final AtomicLong	freeCount  = new AtomicLong();
 
+	static
+	{
+		Metrics.counter("jane_iobuffer_alloc_total", "io buffers allocated", CachedIoBufferAllocator::getAllocCount);
+		Metrics.counter("jane_iobuffer_reuse_total", "io buffers reused from pool", CachedIoBufferAllocator::getReuseCount);
+		Metrics.counter("jane_iobuffer_free_total", "io buffers returned to pool", CachedIoBufferAllocator::getFreeCount);
+	}
+
 	private final int									  maxPoolSize;
 	private final int									  maxCachedBufferSize;					 // 2^n:[0,0x4000_4000]
 	private final ThreadLocal<ArrayDeque<CachedBuffer>[]> heapBuffers	= new CacheThreadLocal();
 	private final ThreadLocal<ArrayDeque<CachedBuffer>[]> directBuffers	= new CacheThreadLocal();
 	private final int[]									  checkPoolSize	= new int[32];
+	private final ArrayBlockingQueue<CachedBuffer>[]	  sharedHeapBuffers;					 // 全局共享的堆缓冲区池
+	private final ArrayBlockingQueue<CachedBuffer>[]	  sharedDirectBuffers;					 // 全局共享的直接缓冲区池
 
 	private final class CacheThreadLocal extends ThreadLocal<ArrayDeque<CachedBuffer>[]>
 	{
@@ -80,6 +95,18 @@ public final class CachedIoBufferAllocator implements IoBufferAllocator
 	{
 		this.maxPoolSize = maxPoolSize;
 		this.maxCachedBufferSize = Integer.highestOneBit(Math.max(maxCachedBufferSize, 0));
+		sharedHeapBuffers = createSharedPool();
+		sharedDirectBuffers = createSharedPool();
+	}
+
+	private ArrayBlockingQueue<CachedBuffer>[] createSharedPool()
+	{
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ArrayBlockingQueue<CachedBuffer>[] poolMap = new ArrayBlockingQueue[32];
+		int sharedPoolSize = Math.max(maxPoolSize * SHARED_POOL_FACTOR, 1);
+		for (int k = 1; k <= maxCachedBufferSize; k += k)
+			poolMap[getIdx(k)] = new ArrayBlockingQueue<>(sharedPoolSize);
+		return poolMap;
 	}
 
 	@Override
@@ -98,7 +125,10 @@ public final class CachedIoBufferAllocator implements IoBufferAllocator
 		IoBuffer buf;
 		if (actualCapacity <= maxCachedBufferSize)
 		{
-			buf = (direct ? directBuffers : heapBuffers).get()[getIdx(actualCapacity)].pollFirst();
+			int idx = getIdx(actualCapacity);
+			buf = (direct ? directBuffers : heapBuffers).get()[idx].pollFirst();
+			if (buf == null)
+				buf = (direct ? sharedDirectBuffers : sharedHeapBuffers)[idx].poll();
 			if (buf != null)
 			{
 				buf.clear();
@@ -147,12 +177,14 @@ public final class CachedIoBufferAllocator implements IoBufferAllocator
 		@Override
 		public void free() //NOTE: DO NOT double free
 		{
-			ArrayDeque<CachedBuffer> pool = (buf.isDirect() ? directBuffers : heapBuffers).get()[getIdx(buf.capacity())];
+			boolean direct = buf.isDirect();
+			int idx = getIdx(buf.capacity());
+			ArrayDeque<CachedBuffer> pool = (direct ? directBuffers : heapBuffers).get()[idx];
 			if (pool.size() < maxPoolSize)
-			{
 				pool.addFirst(this);
-				freeCount.getAndIncrement();
-			}
+			else if (!(direct ? sharedDirectBuffers : sharedHeapBuffers)[idx].offer(this))
+				return;
+			freeCount.getAndIncrement();
 		}
 	}
 }
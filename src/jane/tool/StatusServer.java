@@ -12,11 +12,16 @@ import jane.core.CacheRef;
 import jane.core.DBManager;
 import jane.core.DBSimpleManager;
 import jane.core.HttpCodec;
+import jane.core.LogHistogram;
+import jane.core.Metrics;
 import jane.core.NetManager;
 import jane.core.Octets;
 import jane.core.OctetsStream;
+import jane.core.ProcStat;
 import jane.core.ProcThread;
+import jane.core.Storage;
 import jane.core.StorageLevelDB;
+import jane.core.StorageMapped;
 import jane.core.TableBase;
 
 public class StatusServer extends NetManager
@@ -27,6 +32,16 @@ public class StatusServer extends NetManager
 			"Connection: keep-alive",
 			"Cache-Control: no-cache",
 			"Pragma: no-cache"));
+	private static final Octets promExtraHead = HttpCodec.createExtraHead(Arrays.asList(
+			"Server: jane",
+			"Content-Type: text/plain; version=0.0.4; charset=utf-8",
+			"Connection: keep-alive",
+			"Cache-Control: no-cache"));
+	private static final Octets jsonExtraHead = HttpCodec.createExtraHead(Arrays.asList(
+			"Server: jane",
+			"Content-Type: application/json; charset=utf-8",
+			"Connection: keep-alive",
+			"Cache-Control: no-cache"));
 
 	public StatusServer()
 	{
@@ -122,12 +137,24 @@ public class StatusServer extends NetManager
 			ThreadPoolExecutor tpe = dbMgr.getProcThreads();
 			list.add(new SimpleEntry<String, Object>("jane.ProcSessionCount", formatter.format(dbMgr.getSessionCount())));
 			list.add(new SimpleEntry<String, Object>("jane.ProcWaitingCount", formatter.format(dbMgr.getProcQueuedCount())));
-			list.add(new SimpleEntry<String, Object>("jane.ProcQueueCount", formatter.format(tpe.getQueue().size())));
-			list.add(new SimpleEntry<String, Object>("jane.ProcThreadCount", tpe.getActiveCount() + "/" + tpe.getPoolSize() + "/" + tpe.getLargestPoolSize()));
-			list.add(new SimpleEntry<String, Object>("jane.ProcCompletedCount", formatter.format(tpe.getCompletedTaskCount())));
+			list.add(new SimpleEntry<String, Object>("jane.ProcQueueCount", formatter.format(dbMgr.getProcSubmittedCount())));
+			list.add(new SimpleEntry<String, Object>("jane.ProcThreadCount", tpe != null ? tpe.getActiveCount() + "/" + tpe.getPoolSize() + "/" + tpe.getLargestPoolSize() :
+					dbMgr.getProcRunningCount() + "/" + dbMgr.getProcShards().length));
+			list.add(new SimpleEntry<String, Object>("jane.ProcCompletedCount", formatter.format(dbMgr.getProcCompletedCount())));
 		}
 		list.add(new SimpleEntry<String, Object>("jane.CacheRefRemoveCount", formatter.format(CacheRef.getRefRemoveCount())));
 		list.add(new SimpleEntry<String, Object>("jane.ProcInterruptCount", formatter.format(ProcThread.getInterruptCount())));
+		list.add(new SimpleEntry<String, Object>("jane.ProcDeadlockRedoCount", formatter.format(ProcThread.getDeadlockRedoCount())));
+		for (ProcStat stat : ProcStat.getAll())
+		{
+			LogHistogram exec = stat.getExecTime();
+			LogHistogram wait = stat.getLockWaitTime();
+			list.add(new SimpleEntry<String, Object>("jane.Proc:" + stat.getName(), String.format(
+					"count=%d redo=%d undo=%d exception=%d exec(us):p50=%d,p99=%d,max=%d lockWait(us):p99=%d,max=%d",
+					exec.getCount(), stat.getRedoCount(), stat.getUndoCount(), stat.getExceptionCount(),
+					exec.getPercentile(50) / 1000, exec.getPercentile(99) / 1000, exec.getMax() / 1000,
+					wait.getPercentile(99) / 1000, wait.getMax() / 1000)));
+		}
 		list.add(new SimpleEntry<String, Object>("jane.AskWaitingCount", formatter.format(NetManager.getAskCount())));
 
 		return list;
@@ -179,18 +206,36 @@ public class StatusServer extends NetManager
 		// sb.append(sto.getProperty("leveldb.sstables")).append("</pre>\n");
 	}
 
+	public static void genMappedInfo(StringBuilder sb)
+	{
+		StorageMapped sto = StorageMapped.instance();
+		sb.append("<p><b>Mapped stats</b><br><pre>");
+		sb.append("records: ").append(sto.getIndexCount()).append('\n');
+		sb.append("segments: ").append(sto.getSegmentCount()).append(" (").append(sto.getSegmentSize()).append("B)\n");
+		sb.append("</pre>\n");
+	}
+
 	@Override
 	public void messageReceived(IoSession session, Object message)
 	{
-		if (HttpCodec.getHeadPath((OctetsStream)message).endsWith("/favicon.ico"))
+		String path = HttpCodec.getHeadPath((OctetsStream)message);
+		if (path.endsWith("/favicon.ico"))
 			HttpCodec.sendHead(session, "404 Not Found", 0, extraHead);
+		else if (path.endsWith("/metrics"))
+			HttpCodec.sendHead(session, null, 0, promExtraHead, Metrics.writePrometheus(Metrics.localBuffer()));
+		else if (path.endsWith("/metrics.json"))
+			HttpCodec.sendHead(session, null, 0, jsonExtraHead, Metrics.writeJson(Metrics.localBuffer()));
 		else
 		{
 			StringBuilder sb = new StringBuilder(4000);
 			sb.append("<html><head><meta http-equiv=\"content-type\" content=\"text/html;charset=utf-8\"/><title>Jane Status</title></head><body>\n");
 			genStatus(sb);
 			sb.append("<p>\n");
-			genLevelDBInfo(sb);
+			Storage sto = (DBManager.hasCreated() ? DBManager.instance().getStorage() : null);
+			if (sto instanceof StorageMapped)
+				genMappedInfo(sb);
+			else
+				genLevelDBInfo(sb);
 			sb.append("</body></html>\n");
 			Octets data = Octets.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
 			HttpCodec.sendHead(session, null, 0, extraHead, data);
@@ -116,6 +116,16 @@ public #(bean.final)class #(bean.name) extends Bean<#(bean.name)>
 		}}
 	}
 
+	@Override
+	public OctetsStream unmarshal(OctetsStream _s_, FieldSet _f_) throws MarshalException
+	{
+		for (;;) { int _i_ = _s_.unmarshalInt1(), _t_ = _i_ & 3; if ((_i_ >>= 2) == 63) _i_ += _s_.unmarshalInt1(); if (_i_ > 0 && !_f_.contains(_i_)) { _s_.unmarshalSkipVar(_t_); continue; } switch(_i_)
+		{
+			case 0: return _s_;
+#(##(var.unmarshal)#)#			default: _s_.unmarshalSkipVar(_t_);
+		}}
+	}
+
 	@Override
 	public #(bean.name) clone()
 	{
@@ -934,6 +944,73 @@ typedef.linkedhashmap = merge(typedef.hashmap,
 	new = function(var) return "\t\t#(var.name) = new LinkedHashMap<>(#(var.cap));\n" end,
 	init = function(var) return "Util.appendDeep(#(var.name), this.#(var.name) = new LinkedHashMap<>(#(var.cap)))" end,
 })
+typedef.intvector = merge(typedef.vector, -- vector<int>的基础类型容器(primitive=true)
+{
+	import = { "jane.core.map.IntArrayList", "jane.core.SIntList" },
+	type = "IntArrayList", type_i = "IntArrayList", stype = "SIntList",
+	new = "\t\t#(var.name) = new IntArrayList(#(var.cap));\n",
+	init = "this.#(var.name) = (#(var.name) != null ? #(var.name).clone() : new IntArrayList(#(var.cap)))",
+	assign = "this.#(var.name).clear(); this.#(var.name).addAll(_b_.#(var.name))",
+	compareto = "this.#(var.name).compareTo(_b_.#(var.name))",
+	tostring = "this.#(var.name).appendTo(_s_).append(',')",
+})
+typedef.longset = merge(typedef.list, -- set<long>的基础类型容器(primitive=true)
+{
+	import = { "jane.core.map.LongHashSet", "jane.core.SLongSet" },
+	type = "LongHashSet", type_i = "LongHashSet", stype = "SLongSet",
+	new = "\t\t#(var.name) = new LongHashSet(#(var.cap));\n",
+	init = "this.#(var.name) = (#(var.name) != null ? #(var.name).clone() : new LongHashSet(#(var.cap)))",
+	assign = "this.#(var.name).clear(); this.#(var.name).addAll(_b_.#(var.name))",
+	marshal = function(var)
+		if var.id <= 0 then return "" end
+		return var.id < 63 and
+			format([[		if (!this.#(var.name).isEmpty())
+		{
+			_s_.marshal2(0x%04x).marshalUInt(this.#(var.name).size());
+			this.#(var.name).foreach(_s_::marshal);
+		}
+]], var.id * 0x400 + 0x300 + subtypeid(var.k)) or
+			format([[		if (!this.#(var.name).isEmpty())
+		{
+			_s_.marshal3(0x%06x).marshalUInt(this.#(var.name).size());
+			this.#(var.name).foreach(_s_::marshal);
+		}
+]], 0xff0000 + (var.id - 63) * 0x100 + subtypeid(var.k))
+	end,
+	compareto = "this.#(var.name).size() - _b_.#(var.name).size()",
+	tostring = "this.#(var.name).appendTo(_s_).append(',')",
+})
+typedef.longmap = merge(typedef.hashmap, -- map<long,*>的基础类型key容器(primitive=true)
+{
+	import = { "jane.core.map.LongHashMap", "jane.core.Util", "jane.core.SLongMap" },
+	type = function(var) return "LongHashMap<" .. subtypename(var, var.v) .. ">" end,
+	type_i = function(var) return "LongHashMap<" .. subtypename(var, var.v) .. ">" end,
+	stype = function(var) return "SLongMap<" .. subtypename(var, var.v) .. ", " .. subtypename_safe(var, var.v) .. ">" end,
+	field = "",
+	safecache = "",
+	new = "\t\t#(var.name) = new LongHashMap<>(#(var.cap));\n",
+	init = "Util.appendDeep(#(var.name), this.#(var.name) = new LongHashMap<>(#(var.cap)))",
+	assign = "this.#(var.name).clear(); Util.appendDeep(_b_.#(var.name), this.#(var.name))",
+	getsafe = typedef.vector.getsafe,
+	marshal = function(var)
+		if var.id <= 0 then return "" end
+		return var.id < 63 and
+			format([[		if (!this.#(var.name).empty())
+		{
+			_s_.marshal2(0x%04x).marshalUInt(this.#(var.name).size());
+			this.#(var.name).foreach((k, v) -> _s_.marshal(k).marshal(v));
+		}
+]], var.id * 0x400 + 0x340 + subtypeid(var.k) * 8 + subtypeid(var.v)) or
+			format([[		if (!this.#(var.name).empty())
+		{
+			_s_.marshal3(0x%06x).marshalUInt(this.#(var.name).size());
+			this.#(var.name).foreach((k, v) -> _s_.marshal(k).marshal(v));
+		}
+]], 0xff0040 + (var.id - 63) * 0x100 + subtypeid(var.k) * 8 + subtypeid(var.v))
+	end,
+	compareto = "this.#(var.name).size() - _b_.#(var.name).size()",
+	tostring = "_s_.append(this.#(var.name)).append(',')",
+})
 typedef.bean = merge(typedef.octets,
 {
 	import = {},
@@ -1071,6 +1148,12 @@ local function do_var(var)
 	if var.k and not typedef[var.k] and typedef[lower(var.k)] then var.k = lower(var.k) end
 	if var.v and not typedef[var.v] and typedef[lower(var.v)] then var.v = lower(var.v) end
 	if not def then def = var.id > 0 and typedef.bean or typedef.ref end
+	if var.primitive then -- 使用基础类型的容器,避免装箱
+		if def == typedef.vector and typedef[var.k] == typedef.int then def = typedef.intvector
+		elseif def == typedef.hashset and typedef[var.k] == typedef.long then def = typedef.longset
+		elseif def == typedef.hashmap and typedef[var.k] == typedef.long then def = typedef.longmap
+		else error("ERROR: primitive only supports vector<int>, set<long>, map<long,*>: " .. var.name .. ": " .. var.type) end
+	end
 	if type(def) == "table" then
 		for k, v in pairs(def) do
 			if type(v) == "function" then v = v(var) end
@@ -1184,7 +1267,7 @@ end
 function bean(bean)
 	bean_common(bean)
 
-	bean.import = { ["jane.core.Bean"] = true, ["jane.core.MarshalException"] = true, ["jane.core.Octets"] = true, ["jane.core.OctetsStream"] = true, ["jane.core.SContext"] = true }
+	bean.import = { ["jane.core.Bean"] = true, ["jane.core.FieldSet"] = true, ["jane.core.MarshalException"] = true, ["jane.core.Octets"] = true, ["jane.core.OctetsStream"] = true, ["jane.core.SContext"] = true }
 	local vartypes = { bean.name }
 	local id_used = {}
 	for _, var in ipairs(bean) do